@@ -0,0 +1,31 @@
+package org.example.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.example.services.ProjectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the hunks per second of splitting a hunk into groups of consecutive added lines. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddedLinesBenchmark {
+
+  private final ProjectService projectService = new ProjectService(null, null, null, null);
+
+  @Benchmark
+  public List<String> extractAddedLinesFromContent(HunkCorpus corpus) {
+    return projectService.extractAddedLinesFromContent(corpus.content);
+  }
+}
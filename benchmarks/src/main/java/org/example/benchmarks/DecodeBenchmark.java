@@ -0,0 +1,49 @@
+package org.example.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonBinaryReader;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.example.daos.HunkRecordCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the hunks per second of decoding the BSON of a hunk document as the driver receives it,
+ * into a Document or into a hunk record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+  @Param({"document", "record"})
+  public String decoder;
+
+  private Decoder<?> hunkDecoder;
+
+  @Setup
+  public void setUp() {
+    hunkDecoder = "document".equals(decoder) ? new DocumentCodec() : new HunkRecordCodec();
+  }
+
+  @Benchmark
+  public Object decode(HunkCorpus corpus) {
+    return hunkDecoder.decode(
+        new BsonBinaryReader(ByteBuffer.wrap(corpus.bson)), DecoderContext.builder().build());
+  }
+}
@@ -0,0 +1,102 @@
+package org.example.benchmarks;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+import com.mongodb.MongoClientSettings;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.example.daos.CommentCodec;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the comments per second of encoding comments to BSON, as the driver does for every
+ * comment of a bulk write, with the automatic POJO codec or the hand-written comment codec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodeBenchmark {
+  private static final int COMMENTS = 1000;
+
+  @Param({"pojo", "codec", "compact"})
+  public String codec;
+
+  private Codec<CommentDTO> commentCodec;
+  private List<CommentDTO> comments;
+
+  @Setup
+  public void setUp() {
+    if ("pojo".equals(codec)) {
+      commentCodec =
+          fromRegistries(
+                  MongoClientSettings.getDefaultCodecRegistry(),
+                  fromProviders(PojoCodecProvider.builder().automatic(true).build()))
+              .get(CommentDTO.class);
+    } else {
+      commentCodec = new CommentCodec("compact".equals(codec));
+    }
+
+    HunkContext hunkContext =
+        new HunkContext(
+            "commons-lang",
+            LocalDateTime.now(),
+            new ObjectId(),
+            120,
+            118,
+            new ObjectId(),
+            "https://github.com/apache/commons-lang",
+            new ObjectId(),
+            "master",
+            new ObjectId(),
+            "5f0e3a1c9d7b2e4f6a8c0e1d3b5f7a9c2e4d6f8a",
+            new ObjectId(),
+            new ObjectId(),
+            "src/main/java/org/apache/commons/lang3/StringUtils.java");
+    comments = new ArrayList<>();
+    for (int i = 0; i < COMMENTS; i++) {
+      CommentDTO commentDTO =
+          new CommentDTO("// TODO handle the empty string case " + i, false, CommentType.LINE);
+      commentDTO.setId(new ObjectId());
+      commentDTO.setContentHash(Integer.toHexString(i));
+      commentDTO.setHunkContext(hunkContext);
+      comments.add(commentDTO);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMENTS)
+  public int encode() {
+    BasicOutputBuffer buffer = new BasicOutputBuffer();
+    EncoderContext encoderContext = EncoderContext.builder().build();
+    for (CommentDTO commentDTO : comments) {
+      commentCodec.encode(new BsonBinaryWriter(buffer), commentDTO, encoderContext);
+    }
+    return buffer.getSize();
+  }
+}
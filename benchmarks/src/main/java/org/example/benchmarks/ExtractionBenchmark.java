@@ -0,0 +1,64 @@
+package org.example.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.example.ExtractorConfiguration;
+import org.example.models.CommentDTO;
+import org.example.services.CommentService;
+import org.example.services.ProjectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the hunks per second of extracting and filtering the comments of every group of added
+ * lines of a hunk, and of the whole extraction of a hunk including the comment IDs and
+ * content hashes. Every benchmark runs with both comment scanners.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractionBenchmark {
+
+  @Param({"javaparser", "lexer"})
+  public String scanner;
+
+  private CommentService commentService;
+  private ProjectService projectService;
+
+  @Setup
+  public void setUp() {
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    config.setProperty("extractor.comments.scanner", scanner);
+    ExtractorConfiguration extractorConfig = new ExtractorConfiguration(config);
+    commentService =
+        new CommentService(
+            null, extractorConfig.getCommentScanner(), extractorConfig.getCommentClassifier());
+    projectService = new ProjectService(null, null, null, commentService, extractorConfig);
+  }
+
+  @Benchmark
+  public void extractComments(HunkCorpus corpus, Blackhole blackhole) {
+    for (String addedLines : projectService.extractAddedLinesFromContent(corpus.content)) {
+      blackhole.consume(commentService.extractComments(addedLines));
+    }
+  }
+
+  @Benchmark
+  public List<CommentDTO> extractCommentsFromHunk(HunkCorpus corpus) {
+    return projectService.extractCommentsFromHunk(corpus.record);
+  }
+}
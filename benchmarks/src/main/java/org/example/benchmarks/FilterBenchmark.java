@@ -0,0 +1,57 @@
+package org.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.example.models.ScannedComment;
+import org.example.services.CommentClassifier;
+import org.example.services.CommentScanner;
+import org.example.services.LexicalCommentScanner;
+import org.example.services.ProjectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the hunks per second of classifying every comment of a hunk with the checks behind the
+ * comment filters. The comments are scanned once before the measurement, so only the checks are
+ * measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+  private final CommentClassifier commentClassifier = new CommentClassifier();
+  private List<String> comments;
+
+  @Setup
+  public void setUp(HunkCorpus corpus) {
+    CommentScanner commentScanner = new LexicalCommentScanner();
+    ProjectService projectService = new ProjectService(null, null, null, null);
+    comments = new ArrayList<>();
+    for (String addedLines : projectService.extractAddedLinesFromContent(corpus.content)) {
+      for (ScannedComment comment : commentScanner.scan(addedLines)) {
+        comments.add(comment.getContent());
+      }
+    }
+  }
+
+  @Benchmark
+  public void classify(Blackhole blackhole) {
+    for (String comment : comments) {
+      blackhole.consume(commentClassifier.classify(comment));
+    }
+  }
+}
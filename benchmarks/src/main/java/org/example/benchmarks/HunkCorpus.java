@@ -0,0 +1,85 @@
+package org.example.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.example.daos.HunkRecordCodec;
+import org.example.models.HunkRecord;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A hunk of the checked-in corpus. The corpus covers a small hunk, a huge hunk, a hunk that is
+ * mostly comments and a hunk without any comment, so a change can be measured on the kinds of
+ * hunks that dominate a run.
+ */
+@State(Scope.Benchmark)
+public class HunkCorpus {
+
+  @Param({"small", "huge", "comment-heavy", "comment-free"})
+  public String hunk;
+
+  /** The content of the hunk, in unified diff format. */
+  public String content;
+
+  /** The hunk joined with its metadata, as stored in the intermediate hunk collection. */
+  public Document document;
+
+  /** The BSON of the document, as received from the server. */
+  public byte[] bson;
+
+  /** The hunk as read from the intermediate hunk collection. */
+  public HunkRecord record;
+
+  @Setup
+  public void load() {
+    content = read("/corpus/" + hunk + ".diff");
+    document =
+        new Document("name", "benchmark")
+            .append(
+                "hunk",
+                new Document("_id", new ObjectId())
+                    .append("new_start", 1)
+                    .append("old_start", 1)
+                    .append("content", content))
+            .append(
+                "commit",
+                new Document("_id", new ObjectId())
+                    .append("revision_hash", "0000000000000000000000000000000000000000")
+                    .append("committer_date", new Date()))
+            .append(
+                "vcs_system",
+                new Document("_id", new ObjectId()).append("url", "https://example.org/vcs"))
+            .append("branch", new Document("_id", new ObjectId()).append("name", "master"))
+            .append("file_action", new Document("_id", new ObjectId()))
+            .append("file", new Document("_id", new ObjectId()).append("path", hunk + ".java"));
+    RawBsonDocument raw = new RawBsonDocument(document, new DocumentCodec());
+    bson = raw.getByteBuffer().array();
+    record =
+        new HunkRecordCodec()
+            .decode(
+                new BsonBinaryReader(raw.getByteBuffer().asNIO()),
+                DecoderContext.builder().build());
+  }
+
+  private static String read(String resource) {
+    try (InputStream in = HunkCorpus.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalArgumentException("No hunk in the corpus at " + resource);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.example.benchmarks;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.example.daos.CommentDao;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.FailedComment;
+import org.example.services.CommentWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the bulk writes per second of the comment writer with its writes on platform threads or
+ * on virtual threads, at several numbers of writes in flight. Every bulk write waits a fixed
+ * round-trip time instead of writing to a server, so the benchmark shows how well the threads
+ * overlap waiting writes. Virtual threads need a Java 21 runtime; on an older runtime both modes
+ * use platform threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriterThreadsBenchmark {
+  private static final int BATCH_SIZE = 10;
+  private static final int BATCHES = 2048;
+  private static final long ROUND_TRIP_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  @Param({"platform", "virtual"})
+  public String threads;
+
+  @Param({"4", "64", "512"})
+  public int inFlight;
+
+  private MongoClient mongoClient;
+  private CommentWriter commentWriter;
+  private List<CommentDTO> comments;
+
+  @Setup
+  public void setUp() {
+    // the client never connects, since the data access object does not use it
+    mongoClient = MongoClients.create("mongodb://localhost:27017/?serverSelectionTimeoutMS=1");
+    commentWriter =
+        new CommentWriter(
+            new WaitingCommentDao(mongoClient),
+            BATCH_SIZE,
+            inFlight,
+            0,
+            0,
+            "virtual".equals(threads));
+    comments = new ArrayList<>();
+    for (int i = 0; i < BATCH_SIZE * BATCHES; i++) {
+      comments.add(new CommentDTO("// comment " + i, false, CommentType.LINE));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    commentWriter.close();
+    mongoClient.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCHES)
+  public void write() throws Exception {
+    commentWriter.write(comments).get();
+  }
+
+  /** A data access object whose bulk writes only wait for the round-trip time. */
+  private static final class WaitingCommentDao extends CommentDao {
+    private WaitingCommentDao(MongoClient mongoClient) {
+      super("smartshark", "comments", mongoClient);
+    }
+
+    @Override
+    public List<FailedComment> insertUnordered(List<CommentDTO> commentDTOs) {
+      LockSupport.parkNanos(ROUND_TRIP_NANOS);
+      return List.of();
+    }
+
+    @Override
+    public void addContentCounts(List<CommentDTO> commentDTOs) {}
+  }
+}
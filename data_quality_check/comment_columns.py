@@ -0,0 +1,148 @@
+"""Reads comment column files written by the comment extractor.
+
+A comment column file holds the comments column by column in chunks, see
+org.example.daos.CommentColumns for its layout. Only the bytes of the requested
+columns are read, so a notebook that needs the content and type of the comments
+reads a small part of the file:
+
+    from comment_columns import read_comment_columns
+    df = pd.DataFrame(read_comment_columns("comments_only_java.ccol", ["content", "type"]))
+"""
+
+import struct
+from datetime import datetime, timedelta, timezone
+
+from bson import ObjectId
+
+MAGIC = 0x4C4F4343
+VERSION = 1
+NAMES = [
+    "_id",
+    "content",
+    "content_hash",
+    "filtered",
+    "type",
+    "project_name",
+    "vcs_id",
+    "vcs_url",
+    "branch_id",
+    "branch_name",
+    "commit_id",
+    "commit_hash",
+    "committer_date",
+    "file_action_id",
+    "file_id",
+    "file_path",
+    "hunk_id",
+    "hunk_new_start",
+    "hunk_old_start",
+]
+TYPES = [None, "BLOCK", "LINE", "JAVADOC", "GROUPED_LINE"]
+TYPE_BITS = 3
+EPOCH = datetime(1970, 1, 1, tzinfo=timezone.utc)
+
+
+def read_comment_columns(path, columns=None):
+    """Returns a dict from column name to a list with the value of every comment.
+
+    :param path: the comment column file
+    :param columns: the names of the columns to read, or None for every column
+    """
+    columns = NAMES if columns is None else list(columns)
+    unknown = set(columns) - set(NAMES)
+    if unknown:
+        raise ValueError(f"Unknown comment columns {sorted(unknown)}")
+    values = {name: [] for name in columns}
+    with open(path, "rb") as file:
+        magic, version = struct.unpack("<iB", file.read(5))
+        if magic != MAGIC or version != VERSION:
+            raise ValueError(f"{path} is not a comment column file of version {VERSION}")
+        while True:
+            header = file.read(4 + 4 * len(NAMES))
+            if not header:
+                return values
+            comments, *lengths = struct.unpack(f"<i{len(NAMES)}i", header)
+            for name, length in zip(NAMES, lengths):
+                if name in values:
+                    values[name].extend(_decode(name, file.read(length), comments))
+                else:
+                    file.seek(length, 1)
+
+
+def _decode(name, column, comments):
+    if name == "filtered":
+        return [_bits(column, i, 1) == 1 for i in range(comments)]
+    if name == "type":
+        return [TYPES[_bits(column, i * TYPE_BITS, TYPE_BITS)] for i in range(comments)]
+    reader = _VarintReader(column)
+    if name == "_id" or name.endswith("_id"):
+        return _object_ids(reader, comments)
+    if name == "committer_date":
+        return _dates(reader, comments)
+    if name in ("hunk_new_start", "hunk_old_start"):
+        return [_unzigzag(reader.next()) for _ in range(comments)]
+    return _strings(reader, comments)
+
+
+def _strings(reader, comments):
+    dictionary = [reader.bytes(reader.next()).decode("utf-8") for _ in range(reader.next())]
+    return [None if code == 0 else dictionary[code - 1] for code in reader.take(comments)]
+
+
+def _object_ids(reader, comments):
+    ids, previous, timestamp, rest = [], None, 0, 0
+    for _ in range(comments):
+        tag = reader.next()
+        if tag == 2:
+            timestamp = (timestamp + _unzigzag(reader.next())) & 0xFFFFFFFF
+            rest = (rest + _unzigzag(reader.next())) & 0xFFFFFFFFFFFFFFFF
+            previous = ObjectId(struct.pack(">IQ", timestamp, rest))
+        ids.append(None if tag == 0 else previous)
+    return ids
+
+
+def _dates(reader, comments):
+    dates, millis = [], 0
+    for value in reader.take(comments):
+        if value == 0:
+            dates.append(None)
+        else:
+            millis += _unzigzag(value - 1)
+            dates.append(EPOCH + timedelta(milliseconds=millis))
+    return dates
+
+
+def _bits(column, first_bit, bits):
+    value = 0
+    for i in range(bits):
+        bit = first_bit + i
+        value |= (column[bit // 8] >> bit % 8 & 1) << i
+    return value
+
+
+def _unzigzag(value):
+    return value >> 1 ^ -(value & 1)
+
+
+class _VarintReader:
+    def __init__(self, data):
+        self.data = data
+        self.position = 0
+
+    def next(self):
+        value, shift = 0, 0
+        while True:
+            byte = self.data[self.position]
+            self.position += 1
+            value |= (byte & 0x7F) << shift
+            if byte < 0x80:
+                return value
+            shift += 7
+
+    def take(self, count):
+        return [self.next() for _ in range(count)]
+
+    def bytes(self, length):
+        start = self.position
+        self.position += length
+        return self.data[start : self.position]
@@ -0,0 +1,475 @@
+package org.example;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.example.daos.CommentDao;
+import org.example.daos.HunkDAO;
+import org.example.services.CommentCache;
+import org.example.services.CommentClassifier;
+import org.example.services.CommentScanner;
+import org.example.services.JavaParserCommentScanner;
+import org.example.services.LexicalCommentScanner;
+
+/**
+ * This class represents the tuning settings of the comment extraction run. Every setting has a
+ * default, so an application.properties file without an extractor section keeps working.
+ */
+public class ExtractorConfiguration {
+  private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 2;
+  private static final int DEFAULT_PAGE_SIZE = 100_000;
+  private static final int DEFAULT_MIN_PAGE_SIZE = 1000;
+  private static final long DEFAULT_PAGE_LATENCY_GOAL_MILLIS = 5000;
+  private static final int DEFAULT_READ_BATCH_SIZE = 1000;
+  private static final int DEFAULT_WRITE_BATCH_SIZE = 1000;
+  private static final int DEFAULT_WRITES_IN_FLIGHT = 4;
+  private static final int DEFAULT_WRITE_MAX_RETRIES = 5;
+  private static final long DEFAULT_WRITE_RETRY_BACKOFF_MILLIS = 500;
+  private static final int DEFAULT_MATERIALIZE_PARALLELISM = 4;
+  private static final long DEFAULT_METRICS_REPORT_SECONDS = 60;
+  private static final long DEFAULT_CACHE_MAX_ENTRIES = 100_000;
+  private static final long DEFAULT_CACHE_MAX_MB = 64;
+  private static final int DEFAULT_COORDINATION_RANGES = 64;
+  private static final long DEFAULT_COORDINATION_LEASE_SECONDS = 300;
+  private static final long BYTES_IN_MB = 1024 * 1024;
+  private static final String JAVAPARSER_SCANNER = "javaparser";
+  private static final String LEXICAL_SCANNER = "lexer";
+  private static final String PROJECT_PARTITION = "project";
+  private static final String VCS_SYSTEM_PARTITION = "vcs_system";
+  private static final String AGGREGATION_ENGINE = "aggregation";
+  private static final String STREAMING_JOIN_ENGINE = "streaming";
+  private static final String PLATFORM_THREADS = "platform";
+  private static final String VIRTUAL_THREADS = "virtual";
+
+  private final PropertiesConfiguration config;
+
+  /** Constructs a new instance of ExtractorConfiguration that only uses the default settings. */
+  public ExtractorConfiguration() {
+    this(new PropertiesConfiguration());
+  }
+
+  /**
+   * Constructs a new instance of ExtractorConfiguration with the specified config.
+   *
+   * @param config The configuration properties used to tune the extraction run.
+   */
+  public ExtractorConfiguration(PropertiesConfiguration config) {
+    this.config = config;
+  }
+
+  /**
+   * Returns the number of pages that may wait between two stages of the extraction pipeline before
+   * the producing stage blocks.
+   *
+   * @return The capacity of the queues between the pipeline stages.
+   */
+  public int getPipelineQueueCapacity() {
+    return config.getInt("extractor.pipeline.queue.capacity", DEFAULT_PIPELINE_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Returns the number of worker threads that extract comments from the hunks of a page. Every
+   * worker uses its own parser. A single worker extracts the comments on the parse stage itself.
+   *
+   * @return The number of parse workers, by default the number of available processors.
+   */
+  public int getParseWorkers() {
+    return config.getInt("extractor.parse.workers", Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Returns the maximum number of hunks in a page of the extraction pipeline. The hunks of a page,
+   * and the comments extracted from them, are held in memory at once.
+   *
+   * @return The maximum page size.
+   */
+  public int getPageSize() {
+    return config.getInt("extractor.page.size", DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * Returns whether the size of the pages and of the comment write batches is adjusted during the
+   * run, see {@link org.example.services.PageSizeController}, instead of fixed.
+   *
+   * @return True to adjust the page and write batch sizes, false for fixed sizes, the default.
+   */
+  public boolean isAdaptivePageSize() {
+    return config.getBoolean("extractor.page.adaptive", false);
+  }
+
+  /**
+   * Returns the minimum number of hunks in a page when the page size is adjusted. The first page
+   * of an adaptive run has this size.
+   *
+   * @return The minimum page size.
+   */
+  public int getMinPageSize() {
+    return config.getInt("extractor.page.min.size", DEFAULT_MIN_PAGE_SIZE);
+  }
+
+  /**
+   * Returns the estimated memory that the pages of hunks and their comments may take together when
+   * the page size is adjusted.
+   *
+   * @return The heap budget in megabytes, by default half of the maximum heap.
+   */
+  public long getPageHeapBudgetMb() {
+    return config.getLong(
+        "extractor.page.heap.budget.mb", Runtime.getRuntime().maxMemory() / 2 / BYTES_IN_MB);
+  }
+
+  /**
+   * Returns the time that fetching or parsing one page should take when the page size is adjusted.
+   *
+   * @return The latency goal of a page in milliseconds.
+   */
+  public long getPageLatencyGoalMillis() {
+    return config.getLong("extractor.page.latency.goal.ms", DEFAULT_PAGE_LATENCY_GOAL_MILLIS);
+  }
+
+  /**
+   * Returns whether a run continues after the newest checkpoint of an earlier run, instead of
+   * starting at the first hunk. A run that outputs the initial hunks also only outputs the hunks of
+   * commits after the high-water marks of an earlier run, and skips its finished partitions.
+   *
+   * @return True to resume from the newest checkpoint, which is the default.
+   */
+  public boolean isResume() {
+    return config.getBoolean("extractor.resume", true);
+  }
+
+  /**
+   * Returns whether the hunks are read with one server-side cursor instead of a new sorted and
+   * limited query for every page. The cursor only fetches the fields of a hunk that are used.
+   *
+   * @return True to read the hunks with one cursor, which is the default.
+   */
+  public boolean isCursorRead() {
+    return config.getBoolean("extractor.read.cursor", true);
+  }
+
+  /**
+   * Returns the number of hunks that the cursor fetches from the server at once.
+   *
+   * @return The batch size of the hunk cursor.
+   */
+  public int getReadBatchSize() {
+    return config.getInt("extractor.read.batch.size", DEFAULT_READ_BATCH_SIZE);
+  }
+
+  /**
+   * Returns the maximum number of comments in one unordered bulk write. When the page size is
+   * adjusted, smaller batches may be written.
+   *
+   * @return The size of a comment write batch.
+   */
+  public int getWriteBatchSize() {
+    return config.getInt("extractor.write.batch.size", DEFAULT_WRITE_BATCH_SIZE);
+  }
+
+  /**
+   * Returns the maximum number of comment write batches that run at the same time. The write stage
+   * blocks when this number of batches is in flight.
+   *
+   * @return The number of comment write batches in flight.
+   */
+  public int getWritesInFlight() {
+    return config.getInt("extractor.write.in.flight", DEFAULT_WRITES_IN_FLIGHT);
+  }
+
+  /**
+   * Returns the maximum number of retries of a comment whose write failed with a transient error,
+   * before it is added to the dead-letter collection.
+   *
+   * @return The maximum number of write retries.
+   */
+  public int getWriteMaxRetries() {
+    return config.getInt("extractor.write.max.retries", DEFAULT_WRITE_MAX_RETRIES);
+  }
+
+  /**
+   * Returns the wait before the first retry of a failed comment write. The wait doubles for every
+   * next retry.
+   *
+   * @return The initial retry backoff in milliseconds.
+   */
+  public long getWriteRetryBackoffMillis() {
+    return config.getLong("extractor.write.retry.backoff.ms", DEFAULT_WRITE_RETRY_BACKOFF_MILLIS);
+  }
+
+  /**
+   * Returns whether the tasks that wait on MongoDB run on virtual threads instead of platform
+   * threads: the read and write stages of the pipeline, which also adds the checkpoints, and the
+   * comment write batches. Comments are still extracted by a fixed pool of platform threads.
+   * Virtual threads need Java 21 or newer; on an older runtime platform threads are used.
+   *
+   * @return True for "virtual" threads, false for "platform" threads, which is the default.
+   * @throws IllegalArgumentException If the configured threads are unknown.
+   */
+  public boolean isVirtualThreads() {
+    String threads = config.getString("extractor.threads", PLATFORM_THREADS);
+    if (PLATFORM_THREADS.equals(threads)) {
+      return false;
+    } else if (VIRTUAL_THREADS.equals(threads)) {
+      return true;
+    }
+    throw new IllegalArgumentException("Unknown extractor.threads: " + threads);
+  }
+
+  /**
+   * Returns whether comments are written without their empty strings and zero hunk start lines, in
+   * addition to their null fields.
+   *
+   * @return True to write compact comments, false to write the same fields as before, the default.
+   */
+  public boolean isCompactComments() {
+    return config.getBoolean("extractor.write.compact", false);
+  }
+
+  /**
+   * Returns the scanner that finds the comments in the added lines of a hunk. The "javaparser"
+   * scanner parses the lines with JavaParser, the "lexer" scanner only tokenizes them and reports
+   * the same comments in less time.
+   *
+   * @return The configured comment scanner, by default the JavaParser scanner.
+   * @throws IllegalArgumentException If the configured scanner is unknown.
+   */
+  public CommentScanner getCommentScanner() {
+    String scanner = config.getString("extractor.comments.scanner", JAVAPARSER_SCANNER);
+    if (JAVAPARSER_SCANNER.equals(scanner)) {
+      return new JavaParserCommentScanner();
+    } else if (LEXICAL_SCANNER.equals(scanner)) {
+      return new LexicalCommentScanner();
+    }
+    throw new IllegalArgumentException("Unknown extractor.comments.scanner: " + scanner);
+  }
+
+  /**
+   * Returns the classifier that decides which comments are filtered out. The SATD tags, license
+   * words and auto-generated phrases are comma-separated lists that are matched case-insensitively,
+   * for example {@code extractor.filter.satd.tags=fixme,xxx,todo,hack,kludge}.
+   *
+   * @return The comment classifier, by default with the rules of Maldonado et al. (2017).
+   */
+  public CommentClassifier getCommentClassifier() {
+    return new CommentClassifier(
+        getList("extractor.filter.satd.tags", CommentClassifier.DEFAULT_SATD_TAGS),
+        getList("extractor.filter.license.words", CommentClassifier.DEFAULT_LICENSE_WORDS),
+        getList(
+            "extractor.filter.autogenerated.phrases",
+            CommentClassifier.DEFAULT_AUTO_GENERATED_PHRASES));
+  }
+
+  /**
+   * Returns the cache of the comments of line groups, which skips scanning and classifying line
+   * groups that were seen before. The cache holds at most {@code extractor.cache.max.entries} line
+   * groups and an estimated {@code extractor.cache.max.mb} megabytes of comments.
+   *
+   * @return The comment cache, or null if {@code extractor.cache.enabled} is false, the default.
+   */
+  public CommentCache getCommentCache() {
+    if (!config.getBoolean("extractor.cache.enabled", false)) {
+      return null;
+    }
+    return new CommentCache(
+        config.getLong("extractor.cache.max.entries", DEFAULT_CACHE_MAX_ENTRIES),
+        config.getLong("extractor.cache.max.mb", DEFAULT_CACHE_MAX_MB) * BYTES_IN_MB);
+  }
+
+  /**
+   * Returns whether a run first outputs the initial hunks of the commits that were added to
+   * SmartSHARK since the last run to the intermediate hunk collection, before it extracts comments.
+   *
+   * @return True to output the initial hunks, false to only extract comments from the hunks that
+   *     were output before, which is the default.
+   */
+  public boolean isMaterializeEnabled() {
+    return config.getBoolean("extractor.materialize.enabled", false);
+  }
+
+  /**
+   * Returns whether the initial hunks are output in one partition per vcs system of a project,
+   * instead of one partition per project. A project with several repositories is then split over
+   * several partitions.
+   *
+   * @return True if the partitions are vcs systems, false if they are projects, which is the
+   *     default.
+   * @throws IllegalArgumentException If the configured partition is unknown.
+   */
+  public boolean isPartitionedByVcsSystem() {
+    String partition = config.getString("extractor.materialize.partition", PROJECT_PARTITION);
+    if (PROJECT_PARTITION.equals(partition)) {
+      return false;
+    } else if (VCS_SYSTEM_PARTITION.equals(partition)) {
+      return true;
+    }
+    throw new IllegalArgumentException("Unknown extractor.materialize.partition: " + partition);
+  }
+
+  /**
+   * Returns whether the initial hunks are joined in memory from one indexed read of every
+   * SmartSHARK collection, instead of by an aggregation with correlated $lookup stages. The
+   * "aggregation" engine joins on the server, the "streaming" engine joins on the client.
+   *
+   * @return True for the streaming join, false for the aggregation, which is the default if the
+   *     intermediate database is on the SmartSHARK server.
+   * @throws IllegalArgumentException If the configured engine is unknown.
+   */
+  public boolean isStreamingJoin() {
+    String engine = config.getString("extractor.materialize.engine");
+    if (engine == null) {
+      //    the aggregation can only merge into a database on its own server
+      return !isTargetOnSourceServer();
+    } else if (AGGREGATION_ENGINE.equals(engine)) {
+      return false;
+    } else if (STREAMING_JOIN_ENGINE.equals(engine)) {
+      return true;
+    }
+    throw new IllegalArgumentException("Unknown extractor.materialize.engine: " + engine);
+  }
+
+  /**
+   * Returns whether the comment database is on the server of the SmartSHARK database, see {@link
+   * MongoDBConfiguration#isTargetOnSourceServer()}.
+   *
+   * @return True if the source and target connection profiles connect to the same hosts.
+   */
+  public boolean isTargetOnSourceServer() {
+    return new MongoDBConfiguration(config).isTargetOnSourceServer();
+  }
+
+  /**
+   * Returns the length of the committer-date windows that every project or vcs system partition is
+   * split into, so a large project is output by several smaller aggregations.
+   *
+   * @return The window length in days, or 0 to not split partitions by committer date, which is the
+   *     default.
+   */
+  public int getMaterializeWindowDays() {
+    return config.getInt("extractor.materialize.window.days", 0);
+  }
+
+  /**
+   * Returns the number of partitions whose initial hunks are output at the same time.
+   *
+   * @return The number of concurrent partition aggregations.
+   */
+  public int getMaterializeParallelism() {
+    return config.getInt("extractor.materialize.parallelism", DEFAULT_MATERIALIZE_PARALLELISM);
+  }
+
+  /**
+   * Returns the database that the initial hunks are merged into.
+   *
+   * @return The target database, by default the intermediate database that the hunks are read from.
+   */
+  public String getMaterializeDatabase() {
+    return config.getString(
+        "extractor.materialize.database", config.getString("mongodb.database.comments"));
+  }
+
+  /**
+   * Returns the collection that the initial hunks are merged into.
+   *
+   * @return The target collection, by default the intermediate hunk collection.
+   */
+  public String getMaterializeCollection() {
+    return config.getString("extractor.materialize.collection", HunkDAO.HUNKS_COLLECTION_INTERMED);
+  }
+
+  /**
+   * Returns the number of seconds between two reports of the extraction metrics. The metrics are
+   * always reported once more when the extraction finishes.
+   *
+   * @return The report interval in seconds, or 0 to only report the final metrics.
+   */
+  public long getMetricsReportSeconds() {
+    return config.getLong("extractor.metrics.report.seconds", DEFAULT_METRICS_REPORT_SECONDS);
+  }
+
+  /**
+   * Returns whether this process is one of several worker processes that split the hunks between
+   * them. The hunks are split into ranges of IDs in the hunk range collection, and every worker
+   * leases a range, extracts its comments and marks it as finished until no range is left. The
+   * workers ignore the checkpoints of the configurations collection.
+   *
+   * @return True to run as a coordinated worker, false to process every hunk in this process, which
+   *     is the default.
+   */
+  public boolean isCoordinated() {
+    return config.getBoolean("extractor.coordination.enabled", false);
+  }
+
+  /**
+   * Returns the number of ranges that the hunks are split into by the first coordinated worker.
+   * More ranges than workers let a worker that finishes early take over more of the work.
+   *
+   * @return The number of hunk ranges.
+   */
+  public int getCoordinationRanges() {
+    return config.getInt("extractor.coordination.ranges", DEFAULT_COORDINATION_RANGES);
+  }
+
+  /**
+   * Returns the duration of the lease of a coordinated worker on a range. A worker renews its lease
+   * while it works on the range; when a worker stops, another worker takes the range over after the
+   * lease expires.
+   *
+   * @return The lease duration in seconds.
+   */
+  public long getCoordinationLeaseSeconds() {
+    return config.getLong(
+        "extractor.coordination.lease.seconds", DEFAULT_COORDINATION_LEASE_SECONDS);
+  }
+
+  /**
+   * Returns the ID that a coordinated worker holds its leases under. Every worker needs its own ID.
+   *
+   * @return The worker ID, by default the process ID and host name of this process.
+   */
+  public String getWorkerId() {
+    return config.getString(
+        "extractor.coordination.worker.id", ManagementFactory.getRuntimeMXBean().getName());
+  }
+
+  /**
+   * Returns the local export of the intermediate hunk collection that comments are extracted from
+   * in an offline run, which does not connect to MongoDB. The export is a ".bson" file as written
+   * by mongodump, or a file with one JSON document per line as written by mongoexport.
+   *
+   * @return The hunk file, or null to extract the comments of the hunk collection, the default.
+   */
+  public Path getOfflineSource() {
+    String source = config.getString("extractor.offline.source");
+    return source == null || source.isEmpty() ? null : Path.of(source);
+  }
+
+  /**
+   * Returns the file that an offline run writes the extracted comments to: a ".bson" file that can
+   * be loaded with mongorestore, a ".ccol" comment column file, or any other file for one JSON
+   * document per line that can be loaded with mongoimport.
+   *
+   * @return The comment file, by default a .bson file named after the comments collection.
+   */
+  public Path getOfflineSink() {
+    return Path.of(
+        config.getString("extractor.offline.sink", CommentDao.COMMENTS_COLLECTION + ".bson"));
+  }
+
+  /**
+   * Returns the comment column file that the comments collection is exported to instead of
+   * extracting comments. See {@link org.example.daos.CommentColumns} for its layout.
+   *
+   * @return The comment column file, or null to extract comments, the default.
+   */
+  public Path getColumnExport() {
+    String export = config.getString("extractor.export.columns");
+    return export == null || export.isEmpty() ? null : Path.of(export);
+  }
+
+  private List<String> getList(String key, List<String> defaultList) {
+    return config.containsKey(key) ? Arrays.asList(config.getStringArray(key)) : defaultList;
+  }
+}
@@ -1,10 +1,8 @@
 package org.example;
 
 import com.mongodb.client.MongoClient;
-import java.text.ParseException;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.bson.types.ObjectId;
 import org.example.daos.CommentDao;
 import org.example.daos.ConfigDAO;
 import org.example.daos.HunkDAO;
@@ -14,7 +12,7 @@ import org.example.services.HunkService;
 import org.example.services.ProjectService;
 
 public class Main {
-  public static void main(String[] args) throws ConfigurationException, ParseException {
+  public static void main(String[] args) throws ConfigurationException {
     /**
      * The main method for the project. Initializes the necessary components for the program to run
      * and calls the projectService extract and persist comments per project. Uses an
@@ -26,45 +24,80 @@ public class Main {
     PropertiesConfiguration config = new PropertiesConfiguration("application.properties");
 
     MongoDBConfiguration mongoConfig = new MongoDBConfiguration(config);
+    ExtractorConfiguration extractorConfig = new ExtractorConfiguration(config);
 
-    MongoClient mongoClient = mongoConfig.getMongoClient();
+    //    an offline run reads the hunks from a local file and writes the comments to a local file,
+    //    so it has no data access objects and does not connect to MongoDB
+    if (extractorConfig.getOfflineSource() != null) {
+      CommentService commentService =
+          new CommentService(
+              null,
+              extractorConfig.getCommentScanner(),
+              extractorConfig.getCommentClassifier(),
+              extractorConfig.getCommentCache());
+      new ProjectService(null, null, null, commentService, extractorConfig)
+          .addCommentsFromFile(
+              extractorConfig.getOfflineSource(),
+              extractorConfig.getOfflineSink(),
+              extractorConfig.getPageSize());
+      return;
+    }
+
+    //    the SmartSHARK database is read and the comment database is written with clients of their
+    //    own, so each has its own connection pool, read preference and write concern
+    MongoClient sourceClient = mongoConfig.getSourceClient();
+    MongoClient targetClient = mongoConfig.getTargetClient();
 
     ProjectDao projectDao =
         new ProjectDao(
             config.getString("mongodb.database"),
             config.getString("mongodb.database.comments"),
-            mongoClient);
+            sourceClient,
+            targetClient);
     CommentDao commentDao =
         new CommentDao(
             config.getString("mongodb.database"),
             config.getString("mongodb.database.comments"),
-            mongoClient);
+            targetClient,
+            extractorConfig.isCompactComments());
+    commentDao.createIndexes();
     HunkDAO hunkDAO =
         new HunkDAO(
             config.getString("mongodb.database"),
             config.getString("mongodb.database.comments"),
-            mongoClient);
+            targetClient);
     ConfigDAO configDAO =
         new ConfigDAO(
             config.getString("mongodb.database"),
             config.getString("mongodb.database.comments"),
-            mongoClient);
+            targetClient);
 
     HunkService hunkService = new HunkService(hunkDAO);
-    CommentService commentService = new CommentService(commentDao);
+    CommentService commentService =
+        new CommentService(
+            commentDao,
+            extractorConfig.getCommentScanner(),
+            extractorConfig.getCommentClassifier(),
+            extractorConfig.getCommentCache());
     ProjectService projectService =
-        new ProjectService(projectDao, hunkService, configDAO, commentService);
+        new ProjectService(projectDao, hunkService, configDAO, commentService, extractorConfig);
+
+    //    an export writes the comments collection to a comment column file instead of extracting
+    //    comments
+    if (extractorConfig.getColumnExport() != null) {
+      commentService.exportComments(
+          extractorConfig.getColumnExport(), extractorConfig.getReadBatchSize());
+      return;
+    }
 
-    //    TODO need to configure this in command line if users want to start processing
-    //    hunks from a certain hunk ordered by the creation time of the hunk in the intermediate
-    //    database.
-    ObjectId lastSeenId = new ObjectId("63095e9d2c57ac341b55dc61");
     //    TODO setup command line interface with an argparser for usability.
-    //        TODO need pass limit as one command line argument
     //        TODO also need to pass getInitialHunks for first hunk retrieval and saving
     //        TODO commandline argument outputOriginalHunks and objectId both optional
 
-    //    for first time and general usage: set outputOriginalHunks to true
-    projectService.addCommentsByProject(100_000, false);
+    //    for first time and general usage: set extractor.materialize.enabled to true, which only
+    //    outputs the hunks of commits added since the last run. The run resumes after the newest
+    //    checkpoint, or before the first new hunk, unless extractor.resume is false.
+    projectService.addCommentsByProject(
+        extractorConfig.getPageSize(), extractorConfig.isMaterializeEnabled());
   }
 }
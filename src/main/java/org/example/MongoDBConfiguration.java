@@ -1,11 +1,37 @@
 package org.example;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.configuration.PropertiesConfiguration;
 
-/** This class represents the configuration of a MongoDB database connection. */
+/**
+ * This class represents the configuration of a MongoDB database connection.
+ *
+ * <p>The SmartSHARK database and the comment database each get a client of their own, set up by a
+ * connection profile: the "source" profile for the SmartSHARK database, which is mostly read, and
+ * the "target" profile for the comment database, which the hunks and comments are written to. The
+ * keys of a profile start with "mongodb.source." or "mongodb.target.". A profile connects to its
+ * own "uri", or to the server of the shared connection keys without it, and every other key of the
+ * profile overrides the same option of the connection string. A profile without keys gets the
+ * options of the connection string, so two clients with their own connection pools are created.
+ */
 public class MongoDBConfiguration {
+  /** The profile of the client of the SmartSHARK database. */
+  public static final String SOURCE_PROFILE = "source";
+
+  /** The profile of the client of the comment database. */
+  public static final String TARGET_PROFILE = "target";
+
   private final PropertiesConfiguration config;
 
   /**
@@ -25,6 +51,150 @@ public class MongoDBConfiguration {
    *     properties.
    */
   public MongoClient getMongoClient() {
+    return MongoClients.create(getSharedUri());
+  }
+
+  /**
+   * Returns a new client of the SmartSHARK database, set up by the source profile.
+   *
+   * @return A new client, which must be closed after use.
+   */
+  public MongoClient getSourceClient() {
+    return MongoClients.create(getClientSettings(SOURCE_PROFILE));
+  }
+
+  /**
+   * Returns a new client of the comment database, set up by the target profile.
+   *
+   * @return A new client, which must be closed after use.
+   */
+  public MongoClient getTargetClient() {
+    return MongoClients.create(getClientSettings(TARGET_PROFILE));
+  }
+
+  /**
+   * Returns whether the comment database is on the server of the SmartSHARK database, so a query of
+   * the SmartSHARK database can write to it. The profiles are on one server if neither has its own
+   * "uri", or if their connection strings name the same hosts.
+   *
+   * @return True if the source and target profiles connect to the same hosts.
+   */
+  public boolean isTargetOnSourceServer() {
+    if (!config.containsKey(uriKey(SOURCE_PROFILE))
+        && !config.containsKey(uriKey(TARGET_PROFILE))) {
+      return true;
+    }
+    return getHosts(SOURCE_PROFILE).equals(getHosts(TARGET_PROFILE));
+  }
+
+  /**
+   * Returns the settings of the client of a connection profile. The keys of the profile are:
+   *
+   * <ul>
+   *   <li>uri: the connection string, by default the connection string of the shared keys
+   *   <li>pool.max.size and pool.min.size: the number of connections of the connection pool
+   *   <li>compressors: a comma-separated list of wire compressors, in order of preference, out of
+   *       zstd, snappy and zlib
+   *   <li>read.preference: the read preference, such as primary or secondaryPreferred
+   *   <li>write.concern: the number of members that acknowledge a write, or majority
+   *   <li>write.journal: whether a write is acknowledged after it was written to the journal
+   *   <li>socket.connect.timeout.ms and socket.read.timeout.ms: the socket timeouts, where 0 is no
+   *       timeout
+   * </ul>
+   *
+   * @param profile The name of the profile, {@link #SOURCE_PROFILE} or {@link #TARGET_PROFILE}.
+   * @return The settings of the client.
+   * @throws IllegalArgumentException If a key of the profile has an unknown value.
+   */
+  public MongoClientSettings getClientSettings(String profile) {
+    String prefix = "mongodb." + profile + ".";
+    ConnectionString connectionString = new ConnectionString(getUri(profile));
+    MongoClientSettings.Builder settings =
+        MongoClientSettings.builder().applyConnectionString(connectionString);
+
+    if (config.containsKey(prefix + "pool.max.size")) {
+      int maxSize = config.getInt(prefix + "pool.max.size");
+      settings.applyToConnectionPoolSettings(pool -> pool.maxSize(maxSize));
+    }
+    if (config.containsKey(prefix + "pool.min.size")) {
+      int minSize = config.getInt(prefix + "pool.min.size");
+      settings.applyToConnectionPoolSettings(pool -> pool.minSize(minSize));
+    }
+    if (config.containsKey(prefix + "compressors")) {
+      List<MongoCompressor> compressors = new ArrayList<>();
+      for (String compressor : config.getStringArray(prefix + "compressors")) {
+        compressors.add(getCompressor(prefix, compressor.trim()));
+      }
+      settings.compressorList(compressors);
+    }
+    if (config.containsKey(prefix + "read.preference")) {
+      String readPreference = config.getString(prefix + "read.preference");
+      settings.readPreference(ReadPreference.valueOf(readPreference));
+    }
+    if (config.containsKey(prefix + "write.concern")
+        || config.containsKey(prefix + "write.journal")) {
+      settings.writeConcern(getWriteConcern(prefix, connectionString.getWriteConcern()));
+    }
+    if (config.containsKey(prefix + "socket.connect.timeout.ms")) {
+      int connectTimeout = config.getInt(prefix + "socket.connect.timeout.ms");
+      settings.applyToSocketSettings(
+          socket -> socket.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS));
+    }
+    if (config.containsKey(prefix + "socket.read.timeout.ms")) {
+      int readTimeout = config.getInt(prefix + "socket.read.timeout.ms");
+      settings.applyToSocketSettings(
+          socket -> socket.readTimeout(readTimeout, TimeUnit.MILLISECONDS));
+    }
+    return settings.build();
+  }
+
+  private MongoCompressor getCompressor(String prefix, String compressor) {
+    switch (compressor) {
+      case "zstd":
+        return MongoCompressor.createZstdCompressor();
+      case "snappy":
+        return MongoCompressor.createSnappyCompressor();
+      case "zlib":
+        return MongoCompressor.createZlibCompressor();
+      default:
+        throw new IllegalArgumentException(
+            "Unknown " + prefix + "compressors value: " + compressor);
+    }
+  }
+
+  private WriteConcern getWriteConcern(String prefix, WriteConcern writeConcern) {
+    if (writeConcern == null) {
+      writeConcern = WriteConcern.ACKNOWLEDGED;
+    }
+    String w = config.getString(prefix + "write.concern");
+    if (w != null && !w.isEmpty()) {
+      writeConcern =
+          w.chars().allMatch(Character::isDigit)
+              ? new WriteConcern(Integer.parseInt(w))
+              : new WriteConcern(w);
+    }
+    if (config.containsKey(prefix + "write.journal")) {
+      writeConcern = writeConcern.withJournal(config.getBoolean(prefix + "write.journal"));
+    }
+    return writeConcern;
+  }
+
+  private Set<String> getHosts(String profile) {
+    return new HashSet<>(new ConnectionString(getUri(profile)).getHosts());
+  }
+
+  private static String uriKey(String profile) {
+    return "mongodb." + profile + ".uri";
+  }
+
+  private String getUri(String profile) {
+    String key = uriKey(profile);
+    //    the list delimiter of the configuration splits the hosts of a replica set, so they are
+    //    joined again
+    return config.containsKey(key) ? String.join(",", config.getStringArray(key)) : getSharedUri();
+  }
+
+  private String getSharedUri() {
     String uri = config.getString("mongodb.uri");
     String user = config.getString("mongodb.user");
     String password = config.getString("mongodb.password");
@@ -32,8 +202,6 @@ public class MongoDBConfiguration {
     String port = config.getString("mongodb.port");
     String options = config.getString("mongodb.options");
 
-    String fullUri = String.format(uri, user, password, host, port, options);
-
-    return MongoClients.create(fullUri);
+    return String.format(uri, user, password, host, port, options);
   }
 }
@@ -14,6 +14,7 @@ public abstract class AbstractDao {
   protected MongoDatabase db;
   protected MongoDatabase commentDb;
   protected MongoClient mongoClient;
+  protected MongoClient commentMongoClient;
 
   /**
    * Constructs an abstract data access object with a MongoDB client, a SMARTSHARK database, and a
@@ -24,9 +25,28 @@ public abstract class AbstractDao {
    * @param mongoClient The MongoDB client used to connect to the databases.
    */
   public AbstractDao(String SMARTSHARK_DATABASE, String COMMENT_DATABASE, MongoClient mongoClient) {
+    this(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient, mongoClient);
+  }
+
+  /**
+   * Constructs an abstract data access object with a client of the SMARTSHARK database and a
+   * client of the comment database, so both databases can be on different servers and have their
+   * own connection settings.
+   *
+   * @param SMARTSHARK_DATABASE The name of the SMARTSHARK database.
+   * @param COMMENT_DATABASE The name of the comment database.
+   * @param mongoClient The MongoDB client used to connect to the SMARTSHARK database.
+   * @param commentMongoClient The MongoDB client used to connect to the comment database.
+   */
+  public AbstractDao(
+      String SMARTSHARK_DATABASE,
+      String COMMENT_DATABASE,
+      MongoClient mongoClient,
+      MongoClient commentMongoClient) {
     this.COMMENT_DATABASE = COMMENT_DATABASE;
     this.mongoClient = mongoClient;
+    this.commentMongoClient = commentMongoClient;
     db = this.mongoClient.getDatabase(SMARTSHARK_DATABASE);
-    commentDb = this.mongoClient.getDatabase(this.COMMENT_DATABASE);
+    commentDb = this.commentMongoClient.getDatabase(this.COMMENT_DATABASE);
   }
 }
@@ -0,0 +1,226 @@
+package org.example.daos;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkContext;
+
+/**
+ * Writes comments directly with a BsonWriter, instead of through the property models of the
+ * automatic POJO codec. The fields have the names and the order that the POJO codec writes: the ID
+ * first and then every field in alphabetical order of its Java property. Like the POJO codec, null
+ * fields are left out.
+ *
+ * <p>In compact mode, empty strings and hunk start lines of 0 are left out too. The filtered flag
+ * is always written, since the deduplicated comments are queried by it. A field that is left out
+ * is read back as its default value.
+ */
+public class CommentCodec implements Codec<CommentDTO> {
+  private final boolean compact;
+
+  /**
+   * Constructs a new CommentCodec.
+   *
+   * @param compact whether to also leave out empty strings and hunk start lines of 0
+   */
+  public CommentCodec(boolean compact) {
+    this.compact = compact;
+  }
+
+  @Override
+  public void encode(BsonWriter writer, CommentDTO commentDTO, EncoderContext encoderContext) {
+    writer.writeStartDocument();
+    writeObjectId(writer, "_id", commentDTO.getId());
+    writeObjectId(writer, "branch_id", commentDTO.getBranchId());
+    writeString(writer, "branch_name", commentDTO.getBranchName());
+    writeString(writer, "commit_hash", commentDTO.getCommitHash());
+    writeObjectId(writer, "commit_id", commentDTO.getCommitId());
+    LocalDateTime committerDate = commentDTO.getCommitterDate();
+    if (committerDate != null) {
+      writer.writeDateTime(
+          "committer_date", committerDate.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+    writeString(writer, "content", commentDTO.getContent());
+    writeString(writer, "content_hash", commentDTO.getContentHash());
+    writeObjectId(writer, "file_action_id", commentDTO.getFileActionId());
+    writeObjectId(writer, "file_id", commentDTO.getFileId());
+    writeString(writer, "file_path", commentDTO.getFilePath());
+    writer.writeBoolean("filtered", commentDTO.isFiltered());
+    writeObjectId(writer, "hunk_id", commentDTO.getHunkId());
+    writeInt(writer, "hunk_new_start", commentDTO.getHunkNewStart());
+    writeInt(writer, "hunk_old_start", commentDTO.getHunkOldStart());
+    writeString(writer, "project_name", commentDTO.getProjectName());
+    if (commentDTO.getType() != null) {
+      writer.writeString("type", commentDTO.getType().name());
+    }
+    writeObjectId(writer, "vcs_id", commentDTO.getVcsId());
+    writeString(writer, "vcs_url", commentDTO.getVcsUrl());
+    writer.writeEndDocument();
+  }
+
+  private void writeObjectId(BsonWriter writer, String name, ObjectId value) {
+    if (value != null) {
+      writer.writeObjectId(name, value);
+    }
+  }
+
+  private void writeString(BsonWriter writer, String name, String value) {
+    if (value != null && !(compact && value.isEmpty())) {
+      writer.writeString(name, value);
+    }
+  }
+
+  private void writeInt(BsonWriter writer, String name, int value) {
+    if (!(compact && value == 0)) {
+      writer.writeInt32(name, value);
+    }
+  }
+
+  @Override
+  public CommentDTO decode(BsonReader reader, DecoderContext decoderContext) {
+    ObjectId id = null;
+    String content = "";
+    String contentHash = null;
+    boolean filtered = false;
+    CommentType type = null;
+    String projectName = null;
+    LocalDateTime committerDate = null;
+    ObjectId hunkId = null;
+    int hunkNewStart = 0;
+    int hunkOldStart = 0;
+    ObjectId vcsId = null;
+    String vcsUrl = null;
+    ObjectId branchId = null;
+    String branchName = null;
+    ObjectId commitId = null;
+    String commitHash = null;
+    ObjectId fileActionId = null;
+    ObjectId fileId = null;
+    String filePath = null;
+    boolean hasHunkContext = false;
+
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String name = reader.readName();
+      if (reader.getCurrentBsonType() == BsonType.NULL) {
+        reader.readNull();
+        continue;
+      }
+      switch (name) {
+        case "_id":
+          id = reader.readObjectId();
+          break;
+        case "content":
+          content = reader.readString();
+          break;
+        case "content_hash":
+          contentHash = reader.readString();
+          break;
+        case "filtered":
+          filtered = reader.readBoolean();
+          break;
+        case "type":
+          type = CommentType.valueOf(reader.readString());
+          break;
+        case "project_name":
+          projectName = reader.readString();
+          hasHunkContext = true;
+          break;
+        case "committer_date":
+          committerDate =
+              LocalDateTime.ofInstant(
+                  Instant.ofEpochMilli(reader.readDateTime()), ZoneOffset.UTC);
+          hasHunkContext = true;
+          break;
+        case "hunk_id":
+          hunkId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "hunk_new_start":
+          hunkNewStart = reader.readInt32();
+          hasHunkContext |= hunkNewStart != 0;
+          break;
+        case "hunk_old_start":
+          hunkOldStart = reader.readInt32();
+          hasHunkContext |= hunkOldStart != 0;
+          break;
+        case "vcs_id":
+          vcsId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "vcs_url":
+          vcsUrl = reader.readString();
+          hasHunkContext = true;
+          break;
+        case "branch_id":
+          branchId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "branch_name":
+          branchName = reader.readString();
+          hasHunkContext = true;
+          break;
+        case "commit_id":
+          commitId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "commit_hash":
+          commitHash = reader.readString();
+          hasHunkContext = true;
+          break;
+        case "file_action_id":
+          fileActionId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "file_id":
+          fileId = reader.readObjectId();
+          hasHunkContext = true;
+          break;
+        case "file_path":
+          filePath = reader.readString();
+          hasHunkContext = true;
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+
+    CommentDTO commentDTO = new CommentDTO(content, filtered, type);
+    commentDTO.setId(id);
+    commentDTO.setContentHash(contentHash);
+    if (hasHunkContext) {
+      commentDTO.setHunkContext(
+          new HunkContext(
+              projectName,
+              committerDate,
+              hunkId,
+              hunkNewStart,
+              hunkOldStart,
+              vcsId,
+              vcsUrl,
+              branchId,
+              branchName,
+              commitId,
+              commitHash,
+              fileActionId,
+              fileId,
+              filePath));
+    }
+    return commentDTO;
+  }
+
+  @Override
+  public Class<CommentDTO> getEncoderClass() {
+    return CommentDTO.class;
+  }
+}
@@ -0,0 +1,341 @@
+package org.example.daos;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.bson.types.ObjectId;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkContext;
+
+/**
+ * Reads the comments of a comment column file, see {@link CommentColumns} for its layout. Only the
+ * bytes of the projected columns are read from the file; the other columns of a chunk are skipped,
+ * so reading the contents and types of the comments reads a small part of the file. A field of a
+ * column that is not projected is read as its default value, like a field that is left out of a
+ * comment document: an empty content, null, false or 0. The type column is always read, since a
+ * comment cannot be created without a type.
+ *
+ * <p>The chunks are read one at a time, and the comments are returned in the order of the file.
+ */
+public class CommentColumnReader implements Iterator<CommentDTO>, Closeable {
+  private static final CommentType[] TYPES = CommentType.values();
+  private static final HunkContext EMPTY_HUNK_CONTEXT =
+      new HunkContext(null, null, null, 0, 0, null, null, null, null, null, null, null, null, null);
+
+  private final Path path;
+  private final FileChannel channel;
+  private final Set<String> columns;
+  private final Map<String, Object> values = new HashMap<>();
+  private long position = CommentColumns.FILE_HEADER_BYTES;
+  private long bytesRead;
+  private int chunkComments;
+  private int row;
+
+  /**
+   * Opens a comment column file and reads every column.
+   *
+   * @param path the comment column file
+   * @throws UncheckedIOException if the file cannot be opened
+   * @throws IllegalStateException if the file is not a comment column file
+   */
+  public CommentColumnReader(Path path) {
+    this(path, CommentColumns.NAMES);
+  }
+
+  /**
+   * Opens a comment column file and reads the given columns.
+   *
+   * @param path the comment column file
+   * @param columns the names of the columns to read, see {@link CommentColumns#NAMES}
+   * @throws UncheckedIOException if the file cannot be opened
+   * @throws IllegalArgumentException if a column does not exist
+   * @throws IllegalStateException if the file is not a comment column file
+   */
+  public CommentColumnReader(Path path, Collection<String> columns) {
+    this.path = path;
+    this.columns = new LinkedHashSet<>(columns);
+    this.columns.add("type");
+    for (String column : this.columns) {
+      if (!CommentColumns.NAMES.contains(column)) {
+        throw new IllegalArgumentException("Unknown comment column " + column);
+      }
+    }
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open comment column file " + path, e);
+    }
+    ByteBuffer header = read(0, CommentColumns.FILE_HEADER_BYTES);
+    if (header.getInt() != CommentColumns.MAGIC || header.get() != CommentColumns.VERSION) {
+      close();
+      throw new IllegalStateException(path + " is not a comment column file of version 1");
+    }
+  }
+
+  /**
+   * Returns the number of bytes that were read from the file so far.
+   *
+   * @return the number of bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (row == chunkComments) {
+      readChunk();
+    }
+    return row < chunkComments;
+  }
+
+  @Override
+  public CommentDTO next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    CommentDTO commentDTO =
+        new CommentDTO(stringAt("content", ""), booleanAt("filtered"), typeAt("type"));
+    commentDTO.setId(objectIdAt("_id"));
+    commentDTO.setContentHash(stringAt("content_hash", null));
+    HunkContext hunkContext =
+        new HunkContext(
+            stringAt("project_name", null),
+            dateAt("committer_date"),
+            objectIdAt("hunk_id"),
+            intAt("hunk_new_start"),
+            intAt("hunk_old_start"),
+            objectIdAt("vcs_id"),
+            stringAt("vcs_url", null),
+            objectIdAt("branch_id"),
+            stringAt("branch_name", null),
+            objectIdAt("commit_id"),
+            stringAt("commit_hash", null),
+            objectIdAt("file_action_id"),
+            objectIdAt("file_id"),
+            stringAt("file_path", null));
+    if (!hunkContext.equals(EMPTY_HUNK_CONTEXT)) {
+      commentDTO.setHunkContext(hunkContext);
+    }
+    row++;
+    return commentDTO;
+  }
+
+  private String stringAt(String column, String absent) {
+    String[] strings = (String[]) values.get(column);
+    return strings == null ? absent : strings[row];
+  }
+
+  private ObjectId objectIdAt(String column) {
+    ObjectId[] ids = (ObjectId[]) values.get(column);
+    return ids == null ? null : ids[row];
+  }
+
+  private LocalDateTime dateAt(String column) {
+    LocalDateTime[] dates = (LocalDateTime[]) values.get(column);
+    return dates == null ? null : dates[row];
+  }
+
+  private int intAt(String column) {
+    int[] ints = (int[]) values.get(column);
+    return ints == null ? 0 : ints[row];
+  }
+
+  private CommentType typeAt(String column) {
+    return ((CommentType[]) values.get(column))[row];
+  }
+
+  private boolean booleanAt(String column) {
+    boolean[] booleans = (boolean[]) values.get(column);
+    return booleans != null && booleans[row];
+  }
+
+  /** Reads the projected columns of the next chunk, if there is one. */
+  private void readChunk() {
+    long size;
+    try {
+      size = channel.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read comment column file " + path, e);
+    }
+    if (position >= size) {
+      return;
+    }
+    ByteBuffer header = read(position, CommentColumns.CHUNK_HEADER_BYTES);
+    int comments = header.getInt();
+    long columnPosition = position + CommentColumns.CHUNK_HEADER_BYTES;
+    values.clear();
+    for (String name : CommentColumns.NAMES) {
+      int length = header.getInt();
+      if (columns.contains(name)) {
+        values.put(name, decodeColumn(name, read(columnPosition, length), comments));
+      }
+      columnPosition += length;
+    }
+    position = columnPosition;
+    chunkComments = comments;
+    row = 0;
+  }
+
+  private Object decodeColumn(String name, ByteBuffer column, int comments) {
+    switch (name) {
+      case "_id":
+      case "vcs_id":
+      case "branch_id":
+      case "commit_id":
+      case "file_action_id":
+      case "file_id":
+      case "hunk_id":
+        return decodeObjectIds(column, comments);
+      case "content":
+      case "content_hash":
+      case "project_name":
+      case "vcs_url":
+      case "branch_name":
+      case "commit_hash":
+      case "file_path":
+        return decodeStrings(column, comments);
+      case "committer_date":
+        return decodeDates(column, comments);
+      case "hunk_new_start":
+      case "hunk_old_start":
+        return decodeInts(column, comments);
+      case "filtered":
+        boolean[] filtered = new boolean[comments];
+        for (int i = 0; i < comments; i++) {
+          filtered[i] = readBits(column, i, 1) != 0;
+        }
+        return filtered;
+      case "type":
+        CommentType[] types = new CommentType[comments];
+        for (int i = 0; i < comments; i++) {
+          int code = readBits(column, i * CommentColumns.TYPE_BITS, CommentColumns.TYPE_BITS);
+          types[i] = code == 0 ? null : TYPES[code - 1];
+        }
+        return types;
+      default:
+        throw new IllegalStateException("Unknown comment column " + name);
+    }
+  }
+
+  private static String[] decodeStrings(ByteBuffer column, int comments) {
+    String[] dictionary = new String[(int) readVarint(column)];
+    for (int i = 0; i < dictionary.length; i++) {
+      byte[] bytes = new byte[(int) readVarint(column)];
+      column.get(bytes);
+      dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    String[] strings = new String[comments];
+    for (int i = 0; i < comments; i++) {
+      int code = (int) readVarint(column);
+      strings[i] = code == 0 ? null : dictionary[code - 1];
+    }
+    return strings;
+  }
+
+  private static ObjectId[] decodeObjectIds(ByteBuffer column, int comments) {
+    ObjectId[] ids = new ObjectId[comments];
+    ObjectId previous = null;
+    int timestamp = 0;
+    long rest = 0;
+    for (int i = 0; i < comments; i++) {
+      int tag = (int) readVarint(column);
+      if (tag == CommentColumns.OBJECT_ID_REPEATED) {
+        ids[i] = previous;
+      } else if (tag == CommentColumns.OBJECT_ID_DELTA) {
+        timestamp += (int) unzigzag(readVarint(column));
+        rest += unzigzag(readVarint(column));
+        previous = new ObjectId(ByteBuffer.allocate(12).putInt(timestamp).putLong(rest).flip());
+        ids[i] = previous;
+      }
+    }
+    return ids;
+  }
+
+  private static LocalDateTime[] decodeDates(ByteBuffer column, int comments) {
+    LocalDateTime[] dates = new LocalDateTime[comments];
+    long millis = 0;
+    for (int i = 0; i < comments; i++) {
+      long value = readVarint(column);
+      if (value != 0) {
+        millis += unzigzag(value - 1);
+        dates[i] = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+      }
+    }
+    return dates;
+  }
+
+  private static int[] decodeInts(ByteBuffer column, int comments) {
+    int[] ints = new int[comments];
+    for (int i = 0; i < comments; i++) {
+      ints[i] = (int) unzigzag(readVarint(column));
+    }
+    return ints;
+  }
+
+  private static int readBits(ByteBuffer column, int firstBit, int bits) {
+    int value = 0;
+    for (int i = 0; i < bits; i++) {
+      int bit = firstBit + i;
+      value |= (column.get(bit / Byte.SIZE) >>> bit % Byte.SIZE & 1) << i;
+    }
+    return value;
+  }
+
+  private static long unzigzag(long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+  private static long readVarint(ByteBuffer column) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = column.get();
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private ByteBuffer read(long from, int length) {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, from + buffer.position()) < 0) {
+          throw new EOFException("Truncated data at byte " + from + " of " + path);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read comment column file " + path, e);
+    }
+    bytesRead += length;
+    return buffer.flip();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not close comment column file " + path, e);
+    }
+  }
+}
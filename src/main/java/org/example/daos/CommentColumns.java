@@ -0,0 +1,86 @@
+package org.example.daos;
+
+import java.util.List;
+
+/**
+ * The layout of a comment column file, which holds comments column by column instead of document
+ * by document, so the metadata that many comments share is stored once per chunk and a reader can
+ * skip the columns it does not need.
+ *
+ * <p>The file starts with the 4 bytes of {@link #MAGIC} and a version byte, followed by chunks of
+ * at most a fixed number of comments. A chunk starts with its number of comments and the byte
+ * length of each column, in the order of {@link #NAMES}, followed by the bytes of the columns.
+ * Numbers in the chunk header are 4-byte little-endian integers; numbers in a column are unsigned
+ * LEB128 varints, and signed numbers are zigzag-encoded first. Every chunk can be decoded on its
+ * own. The columns are encoded as follows:
+ *
+ * <ul>
+ *   <li>strings: the dictionary of the distinct strings of the chunk as a count and then the
+ *       length and UTF-8 bytes of each string, followed by one code per comment: 0 for null,
+ *       otherwise the position of the string in the dictionary plus one
+ *   <li>object IDs: one tag per comment: 0 for null, 1 for the same ID as the previous ID of the
+ *       column, 2 for an ID that follows as the difference of its 4-byte timestamp and of its other
+ *       8 bytes to the previous ID
+ *   <li>dates: one number per comment: 0 for null, otherwise the zigzag-encoded difference of its
+ *       epoch milliseconds to the previous date of the column plus one
+ *   <li>hunk start lines: one zigzag-encoded number per comment
+ *   <li>the filtered flag: one bit per comment, starting at the lowest bit of the first byte
+ *   <li>the comment type: three bits per comment in the same bit order: 0 for null, otherwise the
+ *       ordinal of the type plus one
+ * </ul>
+ *
+ * <p>The column names are the field names of the comments collection.
+ */
+public final class CommentColumns {
+  /** The first bytes of a comment column file, "CCOL" in ASCII. */
+  public static final int MAGIC = 0x4c4f4343;
+
+  /** The extension of a comment column file. */
+  public static final String FILE_EXTENSION = ".ccol";
+
+  /** The version of the layout. */
+  public static final byte VERSION = 1;
+
+  /** The column names in the order of the columns of a chunk. */
+  public static final List<String> NAMES =
+      List.of(
+          "_id",
+          "content",
+          "content_hash",
+          "filtered",
+          "type",
+          "project_name",
+          "vcs_id",
+          "vcs_url",
+          "branch_id",
+          "branch_name",
+          "commit_id",
+          "commit_hash",
+          "committer_date",
+          "file_action_id",
+          "file_id",
+          "file_path",
+          "hunk_id",
+          "hunk_new_start",
+          "hunk_old_start");
+
+  /** The number of bytes of the magic number and the version. */
+  public static final int FILE_HEADER_BYTES = 5;
+
+  /** The number of bytes of the number of comments and the column lengths of a chunk. */
+  public static final int CHUNK_HEADER_BYTES = 4 + 4 * NAMES.size();
+
+  /** The number of bits of an encoded comment type. */
+  public static final int TYPE_BITS = 3;
+
+  /** The tag of a null object ID. */
+  public static final int OBJECT_ID_NULL = 0;
+
+  /** The tag of an object ID that is the same as the previous ID of the column. */
+  public static final int OBJECT_ID_REPEATED = 1;
+
+  /** The tag of an object ID that follows as the difference to the previous ID of the column. */
+  public static final int OBJECT_ID_DELTA = 2;
+
+  private CommentColumns() {}
+}
@@ -1,35 +1,60 @@
 package org.example.daos;
 
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
 import org.bson.conversions.Bson;
 import org.example.models.CommentDTO;
+import org.example.models.FailedComment;
 
 /**
  * The CommentDao class extends the AbstractDao class and represents a data access object for
  * comments stored in a MongoDB database. It provides methods for adding comments to the database
- * and retrieving deduplicated comments using aggregation pipelines. The class utilizes the
- * CommentDTO class for creating and mapping comments to the MongoDB database.
+ * and retrieving deduplicated comments. The class utilizes the CommentDTO class for creating and
+ * mapping comments to the MongoDB database.
+ *
+ * <p>Every unique non-filtered comment content of a project is kept in the comment contents
+ * collection, together with the number of comments of the project with that content. The counts
+ * are upserted when comments are added, so the deduplicated comments can be queried directly.
  */
 public class CommentDao extends AbstractDao {
 
   public static final String COMMENTS_COLLECTION = "comments_only_java";
   public static final String DEDUPLICATED_COMMENTS_COLLECTION = "deduplicated_nonfiltered_comments";
+  public static final String DEAD_LETTER_COLLECTION = "comments_dead_letter";
+  public static final String CONTENTS_COLLECTION = "comment_contents";
   private final MongoCollection<CommentDTO> commentsCollection;
+  private final MongoCollection<FailedComment> deadLetterCollection;
   private final MongoCollection<Document> commentsCollectionsWithoutPojo;
+  private final MongoCollection<Document> contentsCollection;
 
   /**
-   * Constructs a new CommentDao instance.
+   * Constructs a new CommentDao instance that writes every field of a comment that is not null.
    *
    * @param smartsharkDatabaseName The name of the SmartSHARK database.
    * @param commentDatabaseName The name of the comment database.
@@ -37,9 +62,28 @@ public class CommentDao extends AbstractDao {
    */
   public CommentDao(
       String smartsharkDatabaseName, String commentDatabaseName, MongoClient mongoClient) {
+    this(smartsharkDatabaseName, commentDatabaseName, mongoClient, false);
+  }
+
+  /**
+   * Constructs a new CommentDao instance. Comments are written by a {@link CommentCodec}, also when
+   * they are part of a dead letter.
+   *
+   * @param smartsharkDatabaseName The name of the SmartSHARK database.
+   * @param commentDatabaseName The name of the comment database.
+   * @param mongoClient The MongoClient instance used to connect to the MongoDB server.
+   * @param compactComments Whether to also leave out the empty strings and zero start lines of
+   *     comments.
+   */
+  public CommentDao(
+      String smartsharkDatabaseName,
+      String commentDatabaseName,
+      MongoClient mongoClient,
+      boolean compactComments) {
     super(smartsharkDatabaseName, commentDatabaseName, mongoClient);
     CodecRegistry pojoCodecRegistry =
         fromRegistries(
+            fromCodecs(new CommentCodec(compactComments)),
             MongoClientSettings.getDefaultCodecRegistry(),
             fromProviders(PojoCodecProvider.builder().automatic(true).build()));
     commentsCollection =
@@ -47,25 +91,137 @@ public class CommentDao extends AbstractDao {
             .getCollection(COMMENTS_COLLECTION, CommentDTO.class)
             .withCodecRegistry(pojoCodecRegistry);
     commentsCollectionsWithoutPojo = commentDb.getCollection(COMMENTS_COLLECTION);
+    deadLetterCollection =
+        commentDb
+            .getCollection(DEAD_LETTER_COLLECTION, FailedComment.class)
+            .withCodecRegistry(pojoCodecRegistry);
+    contentsCollection = commentDb.getCollection(CONTENTS_COLLECTION);
   }
 
   /**
-   * Adds a list of CommentDTO objects to the database.
+   * Creates the indexes used to look up comments by content hash and the unique contents of a
+   * project by count. Creating an index that already exists does nothing.
+   */
+  public void createIndexes() {
+    commentsCollectionsWithoutPojo.createIndex(Indexes.ascending("content_hash"));
+    contentsCollection.createIndex(
+        Indexes.compoundIndex(Indexes.ascending("project_name"), Indexes.descending("count")));
+  }
+
+  /**
+   * Inserts a batch of comments with an unordered bulk write, so a comment that cannot be written
+   * does not stop the other comments of the batch from being written.
    *
-   * @param commentDTOs The list of CommentDTO objects to add to the database.
+   * @param commentDTOs The batch of comments to insert.
+   * @return The comments that could not be written, with the error of their write.
+   * @throws com.mongodb.MongoException If the batch as a whole could not be written, for example
+   *     because the connection to the server was lost.
    */
-  public void addComments(List<CommentDTO> commentDTOs) {
+  public List<FailedComment> insertUnordered(List<CommentDTO> commentDTOs) {
+    List<FailedComment> failedComments = new ArrayList<>();
     try {
-      commentsCollection.insertMany(commentDTOs);
+      commentsCollection.insertMany(commentDTOs, new InsertManyOptions().ordered(false));
     } catch (MongoBulkWriteException e) {
-      System.out.println("Could not add comments: " + e);
-      System.exit(1);
+      for (BulkWriteError error : e.getWriteErrors()) {
+        failedComments.add(
+            new FailedComment(
+                commentDTOs.get(error.getIndex()), error.getCode(), error.getMessage()));
+      }
+      if (e.getWriteConcernError() != null) {
+        System.out.println("Comments written without write concern: " + e.getWriteConcernError());
+      }
+    }
+    return failedComments;
+  }
+
+  /**
+   * Adds comments that can never be written to the dead-letter collection.
+   *
+   * @param failedComments The comments with the error of their last write attempt.
+   */
+  public void addDeadLetters(List<FailedComment> failedComments) {
+    deadLetterCollection.insertMany(failedComments, new InsertManyOptions().ordered(false));
+  }
+
+  /**
+   * Adds the given newly added comments to the counts of their contents in the comment contents
+   * collection, with one unordered bulk upsert. Filtered comments are not counted.
+   *
+   * @param commentDTOs The comments that were newly added to the comments collection.
+   */
+  public void addContentCounts(List<CommentDTO> commentDTOs) {
+    Map<Document, Integer> counts = new LinkedHashMap<>();
+    Map<Document, CommentDTO> examples = new LinkedHashMap<>();
+    for (CommentDTO commentDTO : commentDTOs) {
+      if (commentDTO.isFiltered()) {
+        continue;
+      }
+      Document key =
+          new Document("project_name", commentDTO.getProjectName())
+              .append("content_hash", commentDTO.getContentHash());
+      counts.merge(key, 1, Integer::sum);
+      examples.putIfAbsent(key, commentDTO);
+    }
+    if (counts.isEmpty()) {
+      return;
     }
+
+    List<WriteModel<Document>> upserts = new ArrayList<>();
+    for (Map.Entry<Document, Integer> count : counts.entrySet()) {
+      CommentDTO example = examples.get(count.getKey());
+      upserts.add(
+          new UpdateOneModel<>(
+              Filters.eq("_id", count.getKey()),
+              Updates.combine(
+                  Updates.setOnInsert("project_name", example.getProjectName()),
+                  Updates.setOnInsert("content_hash", example.getContentHash()),
+                  Updates.setOnInsert("content", example.getContent()),
+                  Updates.inc("count", count.getValue())),
+              new UpdateOptions().upsert(true)));
+    }
+    contentsCollection.bulkWrite(upserts, new BulkWriteOptions().ordered(false));
+  }
+
+  /**
+   * Returns the unique non-filtered comment contents of a project, most common first.
+   *
+   * @param projectName The name of the project.
+   * @return Documents with the project_name, content_hash, content and count of every unique
+   *     content of the project.
+   */
+  public List<Document> getUniqueContents(String projectName) {
+    return contentsCollection
+        .find(Filters.eq("project_name", projectName))
+        .sort(Sorts.descending("count"))
+        .into(new ArrayList<>());
+  }
+
+  /**
+   * Opens a cursor over every comment of the comments collection, in the order of their IDs.
+   *
+   * @param batchSize The number of comments that the cursor fetches at a time.
+   * @return The cursor, which must be closed after use.
+   */
+  public MongoCursor<CommentDTO> openCommentCursor(int batchSize) {
+    return commentsCollection.find().sort(Sorts.ascending("_id")).batchSize(batchSize).cursor();
+  }
+
+  /**
+   * Returns the comments with the given content hash.
+   *
+   * @param contentHash The content hash of a unique comment content.
+   * @return The comments with that content, in all projects.
+   */
+  public List<Document> getCommentsByContentHash(String contentHash) {
+    return commentsCollectionsWithoutPojo
+        .find(Filters.eq("content_hash", contentHash))
+        .into(new ArrayList<>());
   }
 
   /**
    * Retrieves and adds deduplicated comments to the deduplicated comments collection using an
-   * aggregation pipeline.
+   * aggregation pipeline over the whole comments collection. The comment contents collection holds
+   * the same groups without the aggregation, see {@link #getUniqueContents(String)}.
    */
   public void getAndAddDeduplicatedComments() {
     // aggregation pipeline
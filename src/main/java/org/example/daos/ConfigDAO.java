@@ -1,20 +1,56 @@
 package org.example.daos;
 
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoWriteException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.example.models.HunkPartition;
+import org.example.models.HunkRange;
+import org.example.models.PendingOutput;
 
 /**
  * A DAO class for MongoDB database connection and operations related to configurations. Extends the
  * AbstractDao class.
+ *
+ * <p>The hunk range collection coordinates worker processes that extract comments at the same time.
+ * It holds a plan document and one document per range of hunk IDs. A worker holds the plan or a
+ * range under a lease that it renews while it works; a lease that is not renewed expires and lets
+ * another worker take over. Leases are compared with the clock of the server, so the clocks of the
+ * workers do not have to agree.
  */
 public class ConfigDAO extends AbstractDao {
   public static final String CONFIGS_COLLECTION = "config";
+  public static final String PARTITIONS_COLLECTION = "hunk_partitions";
+  public static final String WATERMARKS_COLLECTION = "hunk_watermarks";
+  public static final String RANGES_COLLECTION = "hunk_ranges";
+  private static final String RESUME_FLOOR_ID = "resume_floor";
+  private static final String PLAN_ID = "plan";
+  private static final String PLANNING = "planning";
+  private static final String PLANNED = "planned";
+  private static final String PENDING = "pending";
+  private static final String LEASED = "leased";
+  private static final String DONE = "done";
   private final MongoCollection<Document> configsCollection;
+  private final MongoCollection<Document> partitionsCollection;
+  private final MongoCollection<Document> watermarksCollection;
+  private final MongoCollection<Document> rangesCollection;
 
   /**
    * Constructs a ConfigDAO object.
@@ -26,10 +62,14 @@ public class ConfigDAO extends AbstractDao {
   public ConfigDAO(String SMARTSHARK_DATABASE, String COMMENT_DATABASE, MongoClient mongoClient) {
     super(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient);
     configsCollection = commentDb.getCollection(CONFIGS_COLLECTION);
+    partitionsCollection = commentDb.getCollection(PARTITIONS_COLLECTION);
+    watermarksCollection = commentDb.getCollection(WATERMARKS_COLLECTION);
+    rangesCollection = commentDb.getCollection(RANGES_COLLECTION);
   }
 
   /**
-   * Adds the last created hunk's Mongodb Object ID to the configurations collection.
+   * Adds the last created hunk's Mongodb Object ID to the configurations collection, and clears the
+   * resume floor once the checkpoint has passed it.
    *
    * @param id the ID to be added.
    */
@@ -38,8 +78,424 @@ public class ConfigDAO extends AbstractDao {
     try {
       configsCollection.insertOne(
           new Document(Map.ofEntries(Map.entry("date_time", now), Map.entry("last_id", id))));
+      configsCollection.deleteOne(
+          Filters.and(Filters.eq("_id", RESUME_FLOOR_ID), Filters.lte("first_hunk_id", id)));
     } catch (MongoWriteException e) {
       System.out.println(e.getMessage());
     }
   }
+
+  /**
+   * Returns the resume floor: the lowest ID of the hunks that were output after the newest
+   * checkpoint was added. New hunks can sort before that checkpoint, so a resumed run continues
+   * before the floor instead of after the checkpoint.
+   *
+   * @return the ID of the first hunk that was output but not processed yet, or null if there is
+   *     none.
+   */
+  public ObjectId getResumeFloor() {
+    Document floor = configsCollection.find(Filters.eq("_id", RESUME_FLOOR_ID)).first();
+    return floor == null ? null : floor.getObjectId("first_hunk_id");
+  }
+
+  /**
+   * Clears the resume floor after hunk ranges were planned from the given ID on, unless the floor
+   * was lowered below it meanwhile.
+   *
+   * @param coveredFrom the lowest hunk ID that the planned ranges cover.
+   */
+  public void clearResumeFloor(ObjectId coveredFrom) {
+    configsCollection.deleteOne(
+        Filters.and(Filters.eq("_id", RESUME_FLOOR_ID), Filters.gte("first_hunk_id", coveredFrom)));
+  }
+
+  /**
+   * Lowers the resume floor to the given hunk ID, if the floor is higher or not set. The floor is
+   * set before the high-water mark of the output hunks moves, so the hunks are processed even if
+   * the run stops before it reaches them.
+   *
+   * @param firstHunkId the lowest ID of the hunks that were output.
+   */
+  public void lowerResumeFloor(ObjectId firstHunkId) {
+    configsCollection.updateOne(
+        Filters.eq("_id", RESUME_FLOOR_ID),
+        Updates.combine(
+            Updates.min("first_hunk_id", firstHunkId),
+            Updates.set("date_time", LocalDateTime.now())),
+        new UpdateOptions().upsert(true));
+  }
+
+  /**
+   * Returns the newest checkpoint: the highest hunk ID added to the configurations collection.
+   * Pages of hunks are processed in ID order, so every hunk up to this ID has been processed.
+   *
+   * @return the ID of the last processed hunk, or null if no checkpoint has been added yet.
+   */
+  public ObjectId getLastId() {
+    Document checkpoint =
+        configsCollection
+            .find(Filters.exists("last_id"))
+            .sort(Sorts.descending("last_id"))
+            .first();
+    return checkpoint == null ? null : checkpoint.getObjectId("last_id");
+  }
+
+  /**
+   * Returns the keys of the hunk partitions that were completely output to the given target
+   * collection.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @return the keys of the finished partitions, see {@link HunkPartition#getKey()}.
+   */
+  public Set<String> getFinishedPartitions(String target) {
+    Set<String> keys = new HashSet<>();
+    for (Document partition : partitionsCollection.find(Filters.eq("target", target))) {
+      keys.add(partition.getString("partition"));
+    }
+    return keys;
+  }
+
+  /**
+   * Records that every hunk of a partition was output to the given target collection, so a
+   * restarted run skips the partition.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @param partition the finished partition.
+   */
+  public void addFinishedPartition(String target, HunkPartition partition) {
+    Document id = new Document("target", target).append("partition", partition.getKey());
+    partitionsCollection.replaceOne(
+        Filters.eq("_id", id),
+        new Document("_id", id)
+            .append("target", target)
+            .append("partition", partition.getKey())
+            .append("project_id", partition.getProjectId())
+            .append("vcs_system_id", partition.getVcsSystemId())
+            .append("commit_id_after", partition.getCommitIdAfter())
+            .append("commit_id_until", partition.getCommitIdUntil())
+            .append("committed_from", partition.getCommittedFrom())
+            .append("committed_until", partition.getCommittedUntil())
+            .append("finished_at", LocalDateTime.now()),
+        new ReplaceOptions().upsert(true));
+  }
+
+  /**
+   * Returns the high-water marks of the projects and vcs systems whose hunks were output to the
+   * given target collection: the highest commit ID whose hunks were output.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @return the highest output commit ID by {@link HunkPartition#getSourceKey()}.
+   */
+  public Map<String, ObjectId> getWatermarks(String target) {
+    Map<String, ObjectId> watermarks = new HashMap<>();
+    for (Document watermark :
+        watermarksCollection.find(
+            Filters.and(Filters.eq("target", target), Filters.exists("last_commit_id")))) {
+      watermarks.put(watermark.getString("source"), watermark.getObjectId("last_commit_id"));
+    }
+    return watermarks;
+  }
+
+  /**
+   * Returns the outputs to the given target collection that were planned but whose high-water mark
+   * has not moved yet, because the run that planned them stopped or failed.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @return the pending outputs by {@link HunkPartition#getSourceKey()}.
+   */
+  public Map<String, PendingOutput> getPendingOutputs(String target) {
+    Map<String, PendingOutput> pendingOutputs = new HashMap<>();
+    for (Document watermark :
+        watermarksCollection.find(
+            Filters.and(Filters.eq("target", target), Filters.exists("pending_commit_id")))) {
+      pendingOutputs.put(
+          watermark.getString("source"),
+          new PendingOutput(
+              watermark.getObjectId("pending_commit_id"), watermark.getDate("pending_planned_at")));
+    }
+    return pendingOutputs;
+  }
+
+  /**
+   * Records the planned output of the new commits of the project or vcs system of a partition
+   * before its hunks are output, next to its high-water mark.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @param partition a partition of the project or vcs system.
+   * @param pendingOutput the highest commit ID to output and the time the output was planned.
+   */
+  public void setPendingOutput(
+      String target, HunkPartition partition, PendingOutput pendingOutput) {
+    Document id = new Document("target", target).append("source", partition.getSourceKey());
+    watermarksCollection.updateOne(
+        Filters.eq("_id", id),
+        Updates.combine(
+            Updates.set("target", target),
+            Updates.set("source", partition.getSourceKey()),
+            Updates.set("pending_commit_id", pendingOutput.getCommitIdUntil()),
+            Updates.set("pending_planned_at", pendingOutput.getPlannedAt())),
+        new UpdateOptions().upsert(true));
+  }
+
+  /**
+   * Sets the high-water mark of the project or vcs system of a partition after the hunks of every
+   * commit up to the given commit ID were output to the given target collection, and clears its
+   * pending output.
+   *
+   * @param target the target database and collection, as "database.collection".
+   * @param partition a partition of the project or vcs system.
+   * @param lastCommitId the highest commit ID whose hunks were output.
+   */
+  public void setWatermark(String target, HunkPartition partition, ObjectId lastCommitId) {
+    Document id = new Document("target", target).append("source", partition.getSourceKey());
+    watermarksCollection.replaceOne(
+        Filters.eq("_id", id),
+        new Document("_id", id)
+            .append("target", target)
+            .append("source", partition.getSourceKey())
+            .append("last_commit_id", lastCommitId)
+            .append("updated_at", LocalDateTime.now()),
+        new ReplaceOptions().upsert(true));
+  }
+
+  /**
+   * Returns whether the hunks have been split into ranges that workers can claim.
+   *
+   * @return true if the plan of the hunk ranges is complete.
+   */
+  public boolean isRangePlanReady() {
+    return rangesCollection.countDocuments(
+            Filters.and(Filters.eq("_id", PLAN_ID), Filters.eq("state", PLANNED)))
+        > 0;
+  }
+
+  /**
+   * Tries to become the worker that splits the hunks into ranges: either no worker has started the
+   * plan, or the lease of the worker that started it has expired.
+   *
+   * @param workerId the ID of the worker.
+   * @param leaseMillis the duration of the lease on the plan.
+   * @return true if the worker holds the plan, false if another worker holds or finished it.
+   */
+  public boolean claimRangePlan(String workerId, long leaseMillis) {
+    try {
+      rangesCollection.insertOne(
+          new Document("_id", PLAN_ID).append("state", PLANNING).append("owner", workerId));
+    } catch (MongoWriteException e) {
+      if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+        throw e;
+      }
+    }
+    // the worker that inserted the plan holds it, any other worker only once its lease expired
+    return rangesCollection
+            .updateOne(
+                Filters.and(
+                    Filters.eq("_id", PLAN_ID),
+                    Filters.eq("state", PLANNING),
+                    Filters.or(Filters.eq("owner", workerId), leaseExpired())),
+                List.of(lease(workerId, PLANNING, leaseMillis)))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Returns the generation of the plan of the hunk ranges, which grows every time the plan is
+   * reopened for hunks that were output after it was made.
+   *
+   * @return the generation of the plan, 0 for the first plan or if there is no plan yet.
+   */
+  public int getRangePlanGeneration() {
+    Document plan = rangesCollection.find(Filters.eq("_id", PLAN_ID)).first();
+    return plan == null ? 0 : plan.getInteger("generation", 0);
+  }
+
+  /**
+   * Tries to become the worker that plans the next generation of ranges of a complete plan. Only
+   * one worker can reopen a generation, and a worker that read an older generation cannot reopen
+   * the plan while another worker replaces its ranges.
+   *
+   * @param workerId the ID of the worker.
+   * @param generation the generation of the complete plan, see {@link #getRangePlanGeneration()}.
+   * @param leaseMillis the duration of the lease on the plan.
+   * @return true if the worker holds the plan of the next generation, false if the plan is not
+   *     complete or another worker reopened it.
+   */
+  public boolean reopenRangePlan(String workerId, int generation, long leaseMillis) {
+    Bson currentGeneration =
+        generation == 0 ? Filters.in("generation", null, 0) : Filters.eq("generation", generation);
+    return rangesCollection
+            .updateOne(
+                Filters.and(
+                    Filters.eq("_id", PLAN_ID), Filters.eq("state", PLANNED), currentGeneration),
+                List.of(
+                    lease(workerId, PLANNING, leaseMillis),
+                    new Document("$set", new Document("generation", generation + 1))))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Replaces the ranges of an unfinished plan with the given ranges and completes the plan, if the
+   * worker still holds it.
+   *
+   * @param workerId the ID of the worker that holds the plan.
+   * @param ranges the ranges of hunk IDs, which together cover every hunk ID.
+   * @param leaseMillis the duration of the lease on the plan while the ranges are replaced.
+   * @return true if the plan was completed, false if another worker took it over.
+   */
+  public boolean setRanges(String workerId, List<HunkRange> ranges, long leaseMillis) {
+    // a fresh lease keeps other workers from taking the plan over while its ranges are replaced
+    Bson heldPlan =
+        Filters.and(
+            Filters.eq("_id", PLAN_ID),
+            Filters.eq("state", PLANNING),
+            Filters.eq("owner", workerId));
+    if (rangesCollection
+            .updateOne(heldPlan, List.of(lease(workerId, PLANNING, leaseMillis)))
+            .getMatchedCount()
+        == 0) {
+      return false;
+    }
+    rangesCollection.deleteMany(Filters.ne("_id", PLAN_ID));
+    List<Document> documents = new ArrayList<>();
+    for (HunkRange range : ranges) {
+      documents.add(
+          new Document("_id", range.getIndex())
+              .append("after_id", range.getAfterId())
+              .append("until_id", range.getUntilId())
+              .append("state", PENDING)
+              .append("attempts", 0));
+    }
+    if (!documents.isEmpty()) {
+      rangesCollection.insertMany(documents);
+    }
+    return rangesCollection
+            .updateOne(
+                heldPlan,
+                List.of(
+                    new Document(
+                        "$set",
+                        new Document("state", PLANNED)
+                            .append("ranges", ranges.size())
+                            .append("planned_at", "$$NOW"))))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Leases the first range that no worker has finished or holds a lease on, which is either a new
+   * range or a range whose worker stopped renewing its lease.
+   *
+   * @param workerId the ID of the worker.
+   * @param leaseMillis the duration of the lease.
+   * @return the leased range, or null if every range is finished or leased by another worker.
+   */
+  public HunkRange claimRange(String workerId, long leaseMillis) {
+    Document attempts = new Document("$ifNull", List.of("$attempts", 0));
+    Document range =
+        rangesCollection.findOneAndUpdate(
+            Filters.or(
+                Filters.eq("state", PENDING),
+                Filters.and(Filters.eq("state", LEASED), leaseExpired())),
+            List.of(
+                lease(workerId, LEASED, leaseMillis),
+                new Document(
+                    "$set", new Document("attempts", new Document("$add", List.of(attempts, 1))))),
+            new FindOneAndUpdateOptions()
+                .sort(Sorts.ascending("_id"))
+                .returnDocument(ReturnDocument.AFTER));
+    if (range == null) {
+      return null;
+    }
+    return new HunkRange(
+        range.getInteger("_id"),
+        range.getObjectId("after_id"),
+        range.getObjectId("until_id"),
+        range.getObjectId("last_id"));
+  }
+
+  /**
+   * Extends the lease of a range, if the worker still holds it.
+   *
+   * @param range the leased range.
+   * @param workerId the ID of the worker.
+   * @param leaseMillis the duration of the lease from now on.
+   * @return true if the lease was extended, false if another worker took the range over.
+   */
+  public boolean renewRangeLease(HunkRange range, String workerId, long leaseMillis) {
+    return rangesCollection
+            .updateOne(heldRange(range, workerId), List.of(lease(workerId, LEASED, leaseMillis)))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Records the last hunk of a range whose comments were written, so a worker that takes the range
+   * over continues after it, and extends the lease of the range.
+   *
+   * @param range the leased range.
+   * @param workerId the ID of the worker.
+   * @param lastId the ID of the last processed hunk of the range.
+   * @param leaseMillis the duration of the lease from now on.
+   * @return true if the checkpoint was recorded, false if another worker took the range over.
+   */
+  public boolean addRangeCheckpoint(
+      HunkRange range, String workerId, ObjectId lastId, long leaseMillis) {
+    return rangesCollection
+            .updateOne(
+                heldRange(range, workerId),
+                List.of(
+                    lease(workerId, LEASED, leaseMillis),
+                    new Document("$set", new Document("last_id", lastId))))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Marks a range as finished, if the worker still holds it.
+   *
+   * @param range the leased range.
+   * @param workerId the ID of the worker.
+   * @return true if the range was finished, false if another worker took the range over.
+   */
+  public boolean finishRange(HunkRange range, String workerId) {
+    return rangesCollection
+            .updateOne(
+                heldRange(range, workerId),
+                List.of(
+                    new Document(
+                        "$set", new Document("state", DONE).append("finished_at", "$$NOW"))))
+            .getMatchedCount()
+        > 0;
+  }
+
+  /**
+   * Returns the number of ranges that are not finished, whether or not a worker holds them.
+   *
+   * @return the number of new and leased ranges.
+   */
+  public long countUnfinishedRanges() {
+    return rangesCollection.countDocuments(Filters.in("state", PENDING, LEASED));
+  }
+
+  private static Bson heldRange(HunkRange range, String workerId) {
+    return Filters.and(
+        Filters.eq("_id", range.getIndex()),
+        Filters.eq("state", LEASED),
+        Filters.eq("owner", workerId));
+  }
+
+  /** Matches a plan or range whose lease has expired on the clock of the server. */
+  private static Bson leaseExpired() {
+    return Filters.expr(new Document("$lt", List.of("$lease_until", "$$NOW")));
+  }
+
+  /** Sets the state and owner of a plan or range and a lease that ends after the given duration. */
+  private static Bson lease(String workerId, String state, long leaseMillis) {
+    return new Document(
+        "$set",
+        new Document("state", state)
+            .append("owner", workerId)
+            .append("lease_until", new Document("$add", List.of("$$NOW", leaseMillis))));
+  }
 }
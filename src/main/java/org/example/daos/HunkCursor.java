@@ -0,0 +1,77 @@
+package org.example.daos;
+
+import com.mongodb.MongoCursorNotFoundException;
+import com.mongodb.client.MongoCursor;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import org.bson.types.ObjectId;
+import org.example.models.HunkRecord;
+
+/**
+ * Iterates over hunks ordered by ID with one server-side cursor, so the hunks are fetched in
+ * batches and can be released one at a time. If the server has dropped the cursor because it was
+ * idle for too long, a new cursor is opened after the last returned hunk.
+ */
+public class HunkCursor implements HunkReader {
+  private static final int MAX_RESUMES_WITHOUT_PROGRESS = 3;
+
+  private final Function<ObjectId, MongoCursor<HunkRecord>> cursorOpener;
+  private MongoCursor<HunkRecord> cursor;
+  private ObjectId lastId;
+  private int resumesWithoutProgress;
+
+  /**
+   * Constructs a new HunkCursor and opens its first cursor.
+   *
+   * @param cursorOpener opens a cursor over the hunks after the given ID, or over all hunks if the
+   *     ID is null
+   * @param lastSeenId the ID of the last processed hunk, or null to start at the first hunk
+   */
+  public HunkCursor(Function<ObjectId, MongoCursor<HunkRecord>> cursorOpener, ObjectId lastSeenId) {
+    this.cursorOpener = cursorOpener;
+    this.lastId = lastSeenId;
+    this.cursor = cursorOpener.apply(lastSeenId);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (true) {
+      try {
+        return cursor.hasNext();
+      } catch (MongoCursorNotFoundException e) {
+        resume(e);
+      }
+    }
+  }
+
+  @Override
+  public HunkRecord next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    while (true) {
+      try {
+        HunkRecord hunk = cursor.next();
+        lastId = hunk.getId();
+        resumesWithoutProgress = 0;
+        return hunk;
+      } catch (MongoCursorNotFoundException e) {
+        resume(e);
+      }
+    }
+  }
+
+  private void resume(MongoCursorNotFoundException e) {
+    if (++resumesWithoutProgress > MAX_RESUMES_WITHOUT_PROGRESS) {
+      throw e;
+    }
+    System.out.printf("Hunk cursor was closed by the server, resuming after hunk %s%n", lastId);
+    cursor.close();
+    cursor = cursorOpener.apply(lastId);
+  }
+
+  @Override
+  public void close() {
+    cursor.close();
+  }
+}
@@ -1,18 +1,54 @@
 package org.example.daos;
 
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BucketAutoOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import java.util.ArrayList;
 import java.util.List;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.example.models.HunkRecord;
 
-/** Provides data access methods for the intermediate Hunk collection in the MongoDB database. */
+/**
+ * Provides data access methods for the intermediate Hunk collection in the MongoDB database. Hunks
+ * are read as {@link HunkRecord}s by a {@link HunkRecordCodec}, which only decodes the {@link
+ * #EXTRACTED_FIELDS} of a hunk.
+ */
 public class HunkDAO extends AbstractDao {
 
   public static final String HUNKS_COLLECTION_INTERMED = "hunk";
+
+  /** The fields of a hunk document that are read to extract and map its comments. */
+  public static final List<String> EXTRACTED_FIELDS =
+      List.of(
+          "_id",
+          "name",
+          "hunk._id",
+          "hunk.content",
+          "hunk.new_start",
+          "hunk.old_start",
+          "commit._id",
+          "commit.committer_date",
+          "commit.revision_hash",
+          "vcs_system._id",
+          "vcs_system.url",
+          "branch._id",
+          "branch.name",
+          "file_action._id",
+          "file._id",
+          "file.path");
+
   private final MongoCollection<Document> hunksCollectionIntermed;
+  private final MongoCollection<HunkRecord> hunkRecords;
 
   /**
    * Constructs a new HunkDAO with the given database names and MongoClient.
@@ -24,6 +60,13 @@ public class HunkDAO extends AbstractDao {
   public HunkDAO(String SMARTSHARK_DATABASE, String COMMENT_DATABASE, MongoClient mongoClient) {
     super(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient);
     hunksCollectionIntermed = commentDb.getCollection(HUNKS_COLLECTION_INTERMED);
+    hunkRecords =
+        commentDb
+            .getCollection(HUNKS_COLLECTION_INTERMED, HunkRecord.class)
+            .withCodecRegistry(
+                fromRegistries(
+                    fromCodecs(new HunkRecordCodec()),
+                    MongoClientSettings.getDefaultCodecRegistry()));
   }
 
   /**
@@ -34,12 +77,8 @@ public class HunkDAO extends AbstractDao {
    * @param limit the maximum number of documents to return
    * @return a list of hunks from the intermediate Hunk collection
    */
-  public List<Document> getHunks(ObjectId lastSeenId, int limit) {
-    return hunksCollectionIntermed
-        .find(Filters.gt("_id", lastSeenId))
-        .sort(new Document("_id", 1))
-        .limit(limit)
-        .into(new ArrayList<>());
+  public List<HunkRecord> getHunks(ObjectId lastSeenId, int limit) {
+    return getHunks(lastSeenId, null, limit);
   }
 
   /**
@@ -49,10 +88,26 @@ public class HunkDAO extends AbstractDao {
    * @param limit the maximum number of documents to return
    * @return a list of hunks from the intermediate Hunk collection
    */
-  public List<Document> getHunks(int limit) {
-    return hunksCollectionIntermed
-        .find()
+  public List<HunkRecord> getHunks(int limit) {
+    return getHunks(null, null, limit);
+  }
+
+  /**
+   * Returns a list of hunks from the intermediate Hunk collection with IDs greater than the first
+   * specified ID and at most the second specified ID, sorted by ID in ascending order, limited to
+   * the specified number of documents.
+   *
+   * @param lastSeenId the ID of the last Hunk seen by the client, or null to start at the first
+   *     hunk
+   * @param untilId the highest ID to return, or null to return hunks up to the last hunk
+   * @param limit the maximum number of documents to return
+   * @return a list of hunks from the intermediate Hunk collection
+   */
+  public List<HunkRecord> getHunks(ObjectId lastSeenId, ObjectId untilId, int limit) {
+    return hunkRecords
+        .find(idRange(lastSeenId, untilId))
         .sort(new Document("_id", 1))
+        .projection(Projections.include(EXTRACTED_FIELDS))
         .limit(limit)
         .into(new ArrayList<>());
   }
@@ -77,4 +132,106 @@ public class HunkDAO extends AbstractDao {
   public long getHunksCount(ObjectId lastSeenId) {
     return hunksCollectionIntermed.countDocuments(Filters.gt("_id", lastSeenId));
   }
+
+  /**
+   * Returns the number of documents in the intermediate Hunk collection with IDs greater than the
+   * first specified ID and at most the second specified ID.
+   *
+   * @param lastSeenId the ID of the last Hunk seen by the client, or null to count from the first
+   *     hunk
+   * @param untilId the highest ID to count, or null to count up to the last hunk
+   * @return the number of documents in the intermediate Hunk collection in the range of IDs
+   */
+  public long getHunksCount(ObjectId lastSeenId, ObjectId untilId) {
+    return hunksCollectionIntermed.countDocuments(idRange(lastSeenId, untilId));
+  }
+
+  /**
+   * Splits the IDs of the intermediate Hunk collection into ranges of about the same number of
+   * hunks, with a $bucketAuto stage over the IDs.
+   *
+   * @param ranges the number of ranges to split the IDs into
+   * @return the highest ID of every range in ascending order, which may be fewer than requested if
+   *     the collection has fewer hunks than ranges
+   */
+  public List<ObjectId> getRangeEnds(int ranges) {
+    return getRangeEnds(null, ranges);
+  }
+
+  /**
+   * Splits the IDs of the intermediate Hunk collection after the given ID into ranges of about the
+   * same number of hunks, with a $bucketAuto stage over the IDs.
+   *
+   * @param afterId the ID after which the IDs are split, or null to split every ID
+   * @param ranges the number of ranges to split the IDs into
+   * @return the highest ID of every range in ascending order, which may be fewer than requested if
+   *     there are fewer hunks than ranges after the ID
+   */
+  public List<ObjectId> getRangeEnds(ObjectId afterId, int ranges) {
+    List<ObjectId> ends = new ArrayList<>();
+    for (Document bucket :
+        hunksCollectionIntermed
+            .aggregate(
+                List.of(
+                    Aggregates.match(idRange(afterId, null)),
+                    Aggregates.project(Projections.include("_id")),
+                    Aggregates.bucketAuto(
+                        "$_id",
+                        ranges,
+                        new BucketAutoOptions().output(Accumulators.max("last_id", "$_id")))))
+            .allowDiskUse(true)) {
+      ends.add(bucket.getObjectId("last_id"));
+    }
+    return ends;
+  }
+
+  /**
+   * Opens a cursor over the hunks in the intermediate Hunk collection with IDs greater than the
+   * specified ID, sorted by ID in ascending order. Only the {@link #EXTRACTED_FIELDS} of a hunk are
+   * returned. The cursor fetches the hunks in batches of the specified size and resumes after the
+   * last returned hunk if the server closes it.
+   *
+   * @param lastSeenId the ID of the last Hunk seen by the client, or null to start at the first
+   *     hunk
+   * @param batchSize the number of hunks fetched from the server at once
+   * @return a cursor over the hunks, which must be closed after use
+   */
+  public HunkCursor openHunkCursor(ObjectId lastSeenId, int batchSize) {
+    return openHunkCursor(lastSeenId, null, batchSize);
+  }
+
+  /**
+   * Opens a cursor over the hunks in the intermediate Hunk collection with IDs greater than the
+   * first specified ID and at most the second specified ID, like {@link #openHunkCursor(ObjectId,
+   * int)}.
+   *
+   * @param lastSeenId the ID of the last Hunk seen by the client, or null to start at the first
+   *     hunk
+   * @param untilId the highest ID to return, or null to return hunks up to the last hunk
+   * @param batchSize the number of hunks fetched from the server at once
+   * @return a cursor over the hunks, which must be closed after use
+   */
+  public HunkCursor openHunkCursor(ObjectId lastSeenId, ObjectId untilId, int batchSize) {
+    Bson projection = Projections.include(EXTRACTED_FIELDS);
+    return new HunkCursor(
+        afterId ->
+            hunkRecords
+                .find(idRange(afterId, untilId))
+                .sort(new Document("_id", 1))
+                .projection(projection)
+                .batchSize(batchSize)
+                .cursor(),
+        lastSeenId);
+  }
+
+  private static Bson idRange(ObjectId afterId, ObjectId untilId) {
+    List<Bson> filters = new ArrayList<>();
+    if (afterId != null) {
+      filters.add(Filters.gt("_id", afterId));
+    }
+    if (untilId != null) {
+      filters.add(Filters.lte("_id", untilId));
+    }
+    return filters.isEmpty() ? new Document() : Filters.and(filters);
+  }
 }
@@ -0,0 +1,174 @@
+package org.example.daos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import org.bson.BsonBinaryReader;
+import org.bson.codecs.DecoderContext;
+import org.bson.json.JsonReader;
+import org.example.models.HunkRecord;
+
+/**
+ * Reads the hunks of a local export of the intermediate hunk collection, so comments can be
+ * extracted without a MongoDB server. A file that ends in ".bson" holds the BSON documents of the
+ * hunks one after the other, as written by mongodump. Any other file holds one JSON document per
+ * line in MongoDB Extended JSON, as written by mongoexport.
+ *
+ * <p>The file is memory-mapped in windows, so its pages are read by the operating system instead of
+ * being copied through a buffer, and files larger than one mapping can be read. A BSON document is
+ * decoded by a {@link HunkRecordCodec} straight from the mapped bytes. The hunks are returned in
+ * the order of the file.
+ */
+public class HunkFileReader implements HunkReader {
+  /** The default size of a mapped window of the file. */
+  public static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+
+  private static final int BSON_LENGTH_BYTES = 4;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long size;
+  private final long windowBytes;
+  private final boolean bson;
+  private final HunkRecordCodec codec = new HunkRecordCodec();
+  private final DecoderContext decoderContext = DecoderContext.builder().build();
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long position;
+  private HunkRecord next;
+
+  /**
+   * Opens a hunk export with windows of the default size.
+   *
+   * @param path the .bson file or JSON lines file of the hunks
+   * @throws UncheckedIOException if the file cannot be opened
+   */
+  public HunkFileReader(Path path) {
+    this(path, DEFAULT_WINDOW_BYTES);
+  }
+
+  /**
+   * Opens a hunk export.
+   *
+   * @param path the .bson file or JSON lines file of the hunks
+   * @param windowBytes the number of bytes of the file that are mapped at once, which must be at
+   *     least the size of the largest hunk document
+   * @throws UncheckedIOException if the file cannot be opened
+   */
+  public HunkFileReader(Path path, long windowBytes) {
+    this.path = path;
+    this.windowBytes = Math.min(windowBytes, Integer.MAX_VALUE);
+    this.bson = path.getFileName().toString().endsWith(".bson");
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      size = channel.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open hunk file " + path, e);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = bson ? readBsonDocument() : readJsonLine();
+    }
+    return next != null;
+  }
+
+  @Override
+  public HunkRecord next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    HunkRecord hunk = next;
+    next = null;
+    return hunk;
+  }
+
+  private HunkRecord readBsonDocument() {
+    if (position >= size) {
+      return null;
+    }
+    map(position, BSON_LENGTH_BYTES);
+    int length = window.getInt((int) (position - windowStart));
+    if (length < BSON_LENGTH_BYTES + 1) {
+      throw new IllegalStateException(
+          String.format(
+              "Invalid BSON document length %d at byte %d of %s", length, position, path));
+    }
+    map(position, length);
+    ByteBuffer document =
+        window.slice((int) (position - windowStart), length).order(ByteOrder.LITTLE_ENDIAN);
+    position += length;
+    try (BsonBinaryReader reader = new BsonBinaryReader(document)) {
+      return codec.decode(reader, decoderContext);
+    }
+  }
+
+  private HunkRecord readJsonLine() {
+    while (position < size) {
+      map(position, 1);
+      int start = (int) (position - windowStart);
+      int end = start;
+      while (end < window.limit() && window.get(end) != '\n') {
+        end++;
+      }
+      if (end == window.limit() && windowStart + end < size) {
+        // the line continues after the window, so the window is moved to the start of the line
+        if (start == 0) {
+          throw new IllegalStateException(
+              String.format("Line at byte %d of %s is longer than a window", position, path));
+        }
+        window = null;
+        continue;
+      }
+      position = windowStart + end + 1;
+      byte[] line = new byte[end - start];
+      window.get(start, line);
+      String json = new String(line, StandardCharsets.UTF_8);
+      if (!json.isBlank()) {
+        return codec.decode(new JsonReader(json), decoderContext);
+      }
+    }
+    return null;
+  }
+
+  /** Maps the window that holds the given bytes, unless the current window holds them. */
+  private void map(long from, int length) {
+    if (window != null && from >= windowStart && from + length <= windowStart + window.limit()) {
+      return;
+    }
+    if (from + length > size) {
+      throw new IllegalStateException(
+          String.format("Truncated document at byte %d of %s", from, path));
+    }
+    try {
+      window =
+          channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, windowBytes));
+      windowStart = from;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not map hunk file " + path, e);
+    }
+    window.order(ByteOrder.LITTLE_ENDIAN);
+    if (length > window.limit()) {
+      throw new IllegalStateException(
+          String.format("Document at byte %d of %s is larger than a window", from, path));
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not close hunk file " + path, e);
+    }
+  }
+}
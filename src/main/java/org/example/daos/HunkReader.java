@@ -0,0 +1,14 @@
+package org.example.daos;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import org.example.models.HunkRecord;
+
+/**
+ * Iterates over the hunks of a hunk source, such as a cursor over the intermediate hunk collection
+ * or a local export of that collection. A reader must be closed after use.
+ */
+public interface HunkReader extends Iterator<HunkRecord>, Closeable {
+  @Override
+  void close();
+}
@@ -0,0 +1,290 @@
+package org.example.daos;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BsonInput;
+import org.bson.io.BsonInputMark;
+import org.bson.types.ObjectId;
+import org.example.models.HunkContext;
+import org.example.models.HunkRecord;
+
+/**
+ * Decodes the documents of the intermediate hunk collection straight into {@link HunkRecord}s,
+ * instead of into Documents with a boxed value and a map entry per field. Only the fields that are
+ * used to extract comments are read; every other field is skipped without decoding it. The content
+ * of a hunk is copied as UTF-8 bytes from the BSON of the document and only decoded when it is
+ * read.
+ *
+ * <p>The strings that many hunks share, such as the project name and the file path, are interned,
+ * so the hunks of a page hold one instance of each.
+ */
+public class HunkRecordCodec implements Codec<HunkRecord> {
+  private static final int DICTIONARY_SIZE = 100_000;
+
+  private final StringDictionary dictionary = new StringDictionary(DICTIONARY_SIZE);
+
+  /** The fields of a hunk document that are read while decoding it. */
+  private static final class Fields {
+    private ObjectId id;
+    private String projectName;
+    private ObjectId hunkId;
+    private byte[] content;
+    private int hunkNewStart;
+    private int hunkOldStart;
+    private ObjectId commitId;
+    private LocalDateTime committerDate;
+    private String commitHash;
+    private ObjectId vcsId;
+    private String vcsUrl;
+    private ObjectId branchId;
+    private String branchName;
+    private ObjectId fileActionId;
+    private ObjectId fileId;
+    private String filePath;
+  }
+
+  @Override
+  public HunkRecord decode(BsonReader reader, DecoderContext decoderContext) {
+    Fields fields = new Fields();
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String name = reader.readName();
+      if (reader.getCurrentBsonType() == BsonType.NULL) {
+        reader.readNull();
+        continue;
+      }
+      switch (name) {
+        case "_id":
+          fields.id = reader.readObjectId();
+          break;
+        case "name":
+          fields.projectName = dictionary.intern(reader.readString());
+          break;
+        case "hunk":
+        case "commit":
+        case "vcs_system":
+        case "branch":
+        case "file_action":
+        case "file":
+          readEmbedded(reader, name, fields);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+
+    return new HunkRecord(
+        fields.id,
+        new HunkContext(
+            fields.projectName,
+            fields.committerDate,
+            fields.hunkId,
+            fields.hunkNewStart,
+            fields.hunkOldStart,
+            fields.vcsId,
+            fields.vcsUrl,
+            fields.branchId,
+            fields.branchName,
+            fields.commitId,
+            fields.commitHash,
+            fields.fileActionId,
+            fields.fileId,
+            fields.filePath),
+        fields.content);
+  }
+
+  /** Reads the fields of one of the joined SmartSHARK documents of a hunk. */
+  private void readEmbedded(BsonReader reader, String document, Fields fields) {
+    reader.readStartDocument();
+    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+      String name = reader.readName();
+      if (reader.getCurrentBsonType() == BsonType.NULL) {
+        reader.readNull();
+      } else if (!readEmbeddedField(reader, document, name, fields)) {
+        reader.skipValue();
+      }
+    }
+    reader.readEndDocument();
+  }
+
+  /** Reads a field of a joined document, and returns false if the field is not used. */
+  private boolean readEmbeddedField(
+      BsonReader reader, String document, String name, Fields fields) {
+    boolean id = "_id".equals(name);
+    switch (document) {
+      case "hunk":
+        if (id) {
+          fields.hunkId = reader.readObjectId();
+        } else if ("content".equals(name)) {
+          fields.content = readUtf8(reader);
+        } else if ("new_start".equals(name)) {
+          fields.hunkNewStart = readInt(reader);
+        } else if ("old_start".equals(name)) {
+          fields.hunkOldStart = readInt(reader);
+        } else {
+          return false;
+        }
+        return true;
+      case "commit":
+        if (id) {
+          fields.commitId = reader.readObjectId();
+        } else if ("committer_date".equals(name)) {
+          // like Date.toInstant().atZone(ZoneId.systemDefault()) on a decoded Document
+          fields.committerDate =
+              LocalDateTime.ofInstant(
+                  Instant.ofEpochMilli(reader.readDateTime()), ZoneId.systemDefault());
+        } else if ("revision_hash".equals(name)) {
+          fields.commitHash = dictionary.intern(reader.readString());
+        } else {
+          return false;
+        }
+        return true;
+      case "vcs_system":
+        if (id) {
+          fields.vcsId = reader.readObjectId();
+        } else if ("url".equals(name)) {
+          fields.vcsUrl = dictionary.intern(reader.readString());
+        } else {
+          return false;
+        }
+        return true;
+      case "branch":
+        if (id) {
+          fields.branchId = reader.readObjectId();
+        } else if ("name".equals(name)) {
+          fields.branchName = dictionary.intern(reader.readString());
+        } else {
+          return false;
+        }
+        return true;
+      case "file_action":
+        if (id) {
+          fields.fileActionId = reader.readObjectId();
+          return true;
+        }
+        return false;
+      case "file":
+        if (id) {
+          fields.fileId = reader.readObjectId();
+        } else if ("path".equals(name)) {
+          fields.filePath = dictionary.intern(reader.readString());
+        } else {
+          return false;
+        }
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Reads a string value as its UTF-8 bytes. A binary reader copies the bytes straight from its
+   * input, without decoding them into a string and encoding them again.
+   */
+  private static byte[] readUtf8(BsonReader reader) {
+    if (!(reader instanceof BsonBinaryReader) || reader.getCurrentBsonType() != BsonType.STRING) {
+      return reader.readString().getBytes(StandardCharsets.UTF_8);
+    }
+    BsonInput input = ((BsonBinaryReader) reader).getBsonInput();
+    BsonInputMark mark = input.getMark(Integer.MAX_VALUE);
+    int length = input.readInt32();
+    if (length <= 0) {
+      throw new BsonInvalidOperationException("Invalid string length " + length);
+    }
+    // the length includes the terminating null byte
+    byte[] bytes = new byte[length - 1];
+    input.readBytes(bytes);
+    // the reader itself still has to move past the value
+    mark.reset();
+    reader.skipValue();
+    return bytes;
+  }
+
+  private static int readInt(BsonReader reader) {
+    switch (reader.getCurrentBsonType()) {
+      case INT64:
+        return (int) reader.readInt64();
+      case DOUBLE:
+        return (int) reader.readDouble();
+      default:
+        return reader.readInt32();
+    }
+  }
+
+  /**
+   * Writes a hunk with the fields and nesting of the intermediate hunk collection. Null fields are
+   * left out.
+   */
+  @Override
+  public void encode(BsonWriter writer, HunkRecord hunk, EncoderContext encoderContext) {
+    HunkContext context = hunk.getHunkContext();
+    writer.writeStartDocument();
+    writeObjectId(writer, "_id", hunk.getId());
+    writeString(writer, "name", context.getProjectName());
+
+    writer.writeStartDocument("hunk");
+    writeObjectId(writer, "_id", context.getHunkId());
+    writeString(writer, "content", hunk.getContent());
+    writer.writeInt32("new_start", context.getHunkNewStart());
+    writer.writeInt32("old_start", context.getHunkOldStart());
+    writer.writeEndDocument();
+
+    writer.writeStartDocument("commit");
+    writeObjectId(writer, "_id", context.getCommitId());
+    if (context.getCommitterDate() != null) {
+      writer.writeDateTime(
+          "committer_date",
+          context.getCommitterDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+    writeString(writer, "revision_hash", context.getCommitHash());
+    writer.writeEndDocument();
+
+    writer.writeStartDocument("vcs_system");
+    writeObjectId(writer, "_id", context.getVcsId());
+    writeString(writer, "url", context.getVcsUrl());
+    writer.writeEndDocument();
+
+    writer.writeStartDocument("branch");
+    writeObjectId(writer, "_id", context.getBranchId());
+    writeString(writer, "name", context.getBranchName());
+    writer.writeEndDocument();
+
+    writer.writeStartDocument("file_action");
+    writeObjectId(writer, "_id", context.getFileActionId());
+    writer.writeEndDocument();
+
+    writer.writeStartDocument("file");
+    writeObjectId(writer, "_id", context.getFileId());
+    writeString(writer, "path", context.getFilePath());
+    writer.writeEndDocument();
+    writer.writeEndDocument();
+  }
+
+  private static void writeObjectId(BsonWriter writer, String name, ObjectId value) {
+    if (value != null) {
+      writer.writeObjectId(name, value);
+    }
+  }
+
+  private static void writeString(BsonWriter writer, String name, String value) {
+    if (value != null) {
+      writer.writeString(name, value);
+    }
+  }
+
+  @Override
+  public Class<HunkRecord> getEncoderClass() {
+    return HunkRecord.class;
+  }
+}
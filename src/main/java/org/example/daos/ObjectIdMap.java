@@ -0,0 +1,140 @@
+package org.example.daos;
+
+import java.nio.ByteBuffer;
+import org.bson.types.ObjectId;
+
+/**
+ * A hash map from ObjectIds to values that stores its keys as primitives. An ObjectId key takes a
+ * long and an int in two arrays, instead of an ObjectId and a map entry object per key, so the join
+ * tables of a large project stay compact. Keys cannot be removed.
+ *
+ * @param <V> the type of the values
+ */
+public class ObjectIdMap<V> {
+  private static final int MIN_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] highs;
+  private int[] lows;
+  private Object[] values;
+  private int size;
+
+  /** Constructs an empty map. */
+  public ObjectIdMap() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Constructs an empty map that holds the given number of keys without growing.
+   *
+   * @param expectedSize the expected number of keys
+   */
+  public ObjectIdMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    highs = new long[capacity];
+    lows = new int[capacity];
+    values = new Object[capacity];
+  }
+
+  /**
+   * Returns the value of a key.
+   *
+   * @param id the key
+   * @return the value of the key, or null if the map has no value for the key
+   */
+  @SuppressWarnings("unchecked")
+  public V get(ObjectId id) {
+    ByteBuffer bytes = ByteBuffer.wrap(id.toByteArray());
+    long high = bytes.getLong();
+    int low = bytes.getInt();
+    int mask = values.length - 1;
+    for (int slot = slot(high, low, mask); values[slot] != null; slot = (slot + 1) & mask) {
+      if (highs[slot] == high && lows[slot] == low) {
+        return (V) values[slot];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sets the value of a key, replacing its previous value.
+   *
+   * @param id the key
+   * @param value the value, which must not be null
+   */
+  public void put(ObjectId id, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("An ObjectIdMap cannot hold null values");
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(id.toByteArray());
+    long high = bytes.getLong();
+    int low = bytes.getInt();
+    if (insert(high, low, value)) {
+      size++;
+      if (size > values.length * LOAD_FACTOR) {
+        grow();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the map has a value for a key.
+   *
+   * @param id the key
+   * @return true if the map has a value for the key
+   */
+  public boolean containsKey(ObjectId id) {
+    return get(id) != null;
+  }
+
+  /**
+   * Returns the number of keys in the map.
+   *
+   * @return the number of keys
+   */
+  public int size() {
+    return size;
+  }
+
+  private boolean insert(long high, int low, Object value) {
+    int mask = values.length - 1;
+    int slot = slot(high, low, mask);
+    while (values[slot] != null) {
+      if (highs[slot] == high && lows[slot] == low) {
+        values[slot] = value;
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    highs[slot] = high;
+    lows[slot] = low;
+    values[slot] = value;
+    return true;
+  }
+
+  private void grow() {
+    long[] oldHighs = highs;
+    int[] oldLows = lows;
+    Object[] oldValues = values;
+    allocate(oldValues.length << 1);
+    for (int slot = 0; slot < oldValues.length; slot++) {
+      if (oldValues[slot] != null) {
+        insert(oldHighs[slot], oldLows[slot], oldValues[slot]);
+      }
+    }
+  }
+
+  private static int slot(long high, int low, int mask) {
+    // the timestamp and counter bytes of ObjectIds created close together differ in few bits, so
+    // the bits are mixed before they pick a slot
+    long hash = (high ^ (high >>> 29) ^ ((long) low << 17) ^ low) * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & mask;
+  }
+}
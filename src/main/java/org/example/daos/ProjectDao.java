@@ -2,13 +2,20 @@ package org.example.daos;
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import org.bson.BsonRegularExpression;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.models.HunkPartition;
 
 /**
  * This class provides a DAO (Data Access Object) implementation for the project collection in the
@@ -17,7 +24,17 @@ import org.bson.conversions.Bson;
 public class ProjectDao extends AbstractDao {
 
   public static final String PROJECTS_COLLECTION = "project";
+  public static final String VCS_SYSTEMS_COLLECTION = "vcs_system";
+  public static final String COMMITS_COLLECTION = "commit";
+
+  //  TODO integrate the date filter into the CLI with argparser.
+  /** Hunks are only output if they were committed at or after this date. */
+  public static final Date COMMITTED_SINCE =
+      Date.from(OffsetDateTime.parse("2016-01-01T01:00:00.000+01:00").toInstant());
+
   private final MongoCollection<Document> projectsCollection;
+  private final MongoCollection<Document> vcsSystemsCollection;
+  private final MongoCollection<Document> commitsCollection;
 
   /**
    * Constructs a new instance of the ProjectDao class with the specified MongoDB database names and
@@ -28,32 +45,194 @@ public class ProjectDao extends AbstractDao {
    * @param mongoClient The client to connect to the MongoDB database.
    */
   public ProjectDao(String SMARTSHARK_DATABASE, String COMMENT_DATABASE, MongoClient mongoClient) {
-    super(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient);
+    this(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient, mongoClient);
+  }
+
+  /**
+   * Constructs a new instance of the ProjectDao class that reads the SmartSHARK database with one
+   * client and writes the output hunks with another. The aggregation that outputs the hunks merges
+   * them on the server of the SmartSHARK database, so it needs both databases on one server; the
+   * streaming join writes them with the client of the comment database.
+   *
+   * @param SMARTSHARK_DATABASE The name of the MongoDB database for SmartSHARK.
+   * @param COMMENT_DATABASE The name of the MongoDB database for comments.
+   * @param mongoClient The client to connect to the SmartSHARK database.
+   * @param commentMongoClient The client to connect to the database that hunks are output to.
+   */
+  public ProjectDao(
+      String SMARTSHARK_DATABASE,
+      String COMMENT_DATABASE,
+      MongoClient mongoClient,
+      MongoClient commentMongoClient) {
+    super(SMARTSHARK_DATABASE, COMMENT_DATABASE, mongoClient, commentMongoClient);
     projectsCollection = db.getCollection(PROJECTS_COLLECTION);
+    vcsSystemsCollection = db.getCollection(VCS_SYSTEMS_COLLECTION);
+    commitsCollection = db.getCollection(COMMITS_COLLECTION);
+  }
+
+  /**
+   * Returns one partition for every project, or for every vcs system of a project, that covers the
+   * hunks committed since {@link #COMMITTED_SINCE}.
+   *
+   * @param byVcsSystem True for a partition per vcs system, false for a partition per project.
+   * @return The partitions, without a commit range and without an end to their committer-date
+   *     window.
+   */
+  public List<HunkPartition> getPartitions(boolean byVcsSystem) {
+    List<HunkPartition> partitions = new ArrayList<>();
+    if (byVcsSystem) {
+      for (Document vcsSystem :
+          vcsSystemsCollection.find().projection(Projections.include("project_id"))) {
+        partitions.add(
+            new HunkPartition(
+                vcsSystem.getObjectId("project_id"),
+                vcsSystem.getObjectId("_id"),
+                null,
+                null,
+                COMMITTED_SINCE,
+                null));
+      }
+    } else {
+      for (Document project : projectsCollection.find().projection(Projections.include("_id"))) {
+        partitions.add(
+            new HunkPartition(project.getObjectId("_id"), null, null, null, COMMITTED_SINCE, null));
+      }
+    }
+    return partitions;
+  }
+
+  /**
+   * Returns the highest ID of the commits of the project or vcs system of a partition. Commit IDs
+   * grow as commits are added to SmartSHARK, so commits with a higher ID were added later.
+   *
+   * @param partition The partition.
+   * @return The highest commit ID, or null if the partition has no commits.
+   */
+  public ObjectId getLastCommitId(HunkPartition partition) {
+    Document commit =
+        commitsCollection
+            .find(Filters.in("vcs_system_id", getVcsSystemIds(partition)))
+            .sort(Sorts.descending("_id"))
+            .projection(Projections.include("_id"))
+            .first();
+    return commit == null ? null : commit.getObjectId("_id");
+  }
+
+  /**
+   * Creates the index used to find the hunks of a vcs system in a range of commit IDs in the target
+   * collection. Creating an index that already exists does nothing.
+   *
+   * @param database The name of the database that the hunks are merged into.
+   * @param collection The name of the collection that the hunks are merged into.
+   */
+  public void createHunkIndexes(String database, String collection) {
+    commentMongoClient
+        .getDatabase(database)
+        .getCollection(collection)
+        .createIndex(Indexes.ascending("vcs_system._id", "commit._id", "_id"));
+  }
+
+  /**
+   * Returns whether the target collection holds a hunk whose ID is not the ID of its SmartSHARK
+   * hunk. Earlier versions replaced the collection with $out and let the server generate the IDs;
+   * merging by hunk ID into such a collection would add every hunk a second time.
+   *
+   * @param database The name of the database that the hunks are merged into.
+   * @param collection The name of the collection that the hunks are merged into.
+   * @return True if a hunk has an ID generated by the server.
+   */
+  public boolean hasGeneratedHunkIds(String database, String collection) {
+    return commentMongoClient
+            .getDatabase(database)
+            .getCollection(collection)
+            .find(Filters.expr(new Document("$ne", List.of("$_id", "$hunk._id"))))
+            .projection(Projections.include("_id"))
+            .first()
+        != null;
   }
 
-  //  TODO integrate the date filter into the CLI with argparser.
   /**
-   * This method retrieves all projects with their respective hunks from the database using an
-   * aggregation pipeline with multiple stages of $lookup, $unwind, and $match. The resulting
-   * documents are filtered by those with at least one hunk containing more than 0 lines added, and
-   * the committer_date of the commit associated with the hunk is greater than or equal to January
-   * 1, 2020 at 1:00 AM CET. The hunks are collected from each project's branch that is considered
-   * the 'main' branch.
+   * Returns the lowest ID of the hunks of a partition in the target collection.
+   *
+   * @param partition The partition whose hunks were output.
+   * @param database The name of the database that the hunks were merged into.
+   * @param collection The name of the collection that the hunks were merged into.
+   * @return The lowest hunk ID, or null if the partition has no hunks.
    */
-  public void outputProjectsWithHunks() throws ParseException {
+  public ObjectId getFirstHunkId(HunkPartition partition, String database, String collection) {
+    List<Bson> filters = new ArrayList<>();
+    filters.add(Filters.in("vcs_system._id", getVcsSystemIds(partition)));
+    if (partition.getCommitIdAfter() != null) {
+      filters.add(Filters.gt("commit._id", partition.getCommitIdAfter()));
+    }
+    if (partition.getCommitIdUntil() != null) {
+      filters.add(Filters.lte("commit._id", partition.getCommitIdUntil()));
+    }
+    Document hunk =
+        commentMongoClient
+            .getDatabase(database)
+            .getCollection(collection)
+            .find(Filters.and(filters))
+            .sort(Sorts.ascending("_id"))
+            .projection(Projections.include("_id"))
+            .first();
+    return hunk == null ? null : hunk.getObjectId("_id");
+  }
+
+  private List<ObjectId> getVcsSystemIds(HunkPartition partition) {
+    if (partition.getVcsSystemId() != null) {
+      return List.of(partition.getVcsSystemId());
+    }
+    List<ObjectId> vcsSystemIds = new ArrayList<>();
+    for (Document vcsSystem :
+        vcsSystemsCollection
+            .find(Filters.eq("project_id", partition.getProjectId()))
+            .projection(Projections.include("_id"))) {
+      vcsSystemIds.add(vcsSystem.getObjectId("_id"));
+    }
+    return vcsSystemIds;
+  }
 
-    List<? extends Bson> pipeline =
+  /**
+   * Outputs the hunks of one partition to the target collection, using an aggregation pipeline
+   * with multiple stages of $lookup, $unwind, and $match over the projects. The resulting documents
+   * are filtered by those with at least one hunk containing more than 0 lines added, in a .java
+   * file, and the commit associated with the hunk is in the commit range of the partition and its
+   * committer_date is in the committer-date window of the partition. The hunks are collected from
+   * each project's branch that is considered the 'main' branch.
+   *
+   * <p>Every output document gets the ID of its hunk and is merged into the target collection,
+   * replacing a document with the same ID, so outputting a partition again does not add its hunks
+   * twice.
+   *
+   * @param partition The project, vcs system, commit range and committer-date window of the hunks
+   *     to output.
+   * @param database The name of the database that the hunks are merged into.
+   * @param collection The name of the collection that the hunks are merged into.
+   */
+  public void outputHunks(HunkPartition partition, String database, String collection) {
+    List<Bson> pipeline = new ArrayList<>();
+    pipeline.add(
+        new Document().append("$match", new Document().append("_id", partition.getProjectId())));
+    pipeline.add(
+        new Document()
+            .append(
+                "$lookup",
+                new Document()
+                    .append("from", "vcs_system")
+                    .append("localField", "_id")
+                    .append("foreignField", "project_id")
+                    .append("as", "vcs_system")));
+    pipeline.add(new Document().append("$unwind", new Document().append("path", "$vcs_system")));
+    if (partition.getVcsSystemId() != null) {
+      pipeline.add(
+          new Document()
+              .append(
+                  "$match", new Document().append("vcs_system._id", partition.getVcsSystemId())));
+    }
+    pipeline.addAll(
         Arrays.asList(
-            new Document()
-                .append(
-                    "$lookup",
-                    new Document()
-                        .append("from", "vcs_system")
-                        .append("localField", "_id")
-                        .append("foreignField", "project_id")
-                        .append("as", "vcs_system")),
-            new Document().append("$unwind", new Document().append("path", "$vcs_system")),
+
             new Document()
                 .append(
                     "$lookup",
@@ -112,41 +291,7 @@ public class ProjectDao extends AbstractDao {
                                             .append(
                                                 "$expr",
                                                 new Document()
-                                                    .append(
-                                                        "$and",
-                                                        Arrays.asList(
-                                                            new Document()
-                                                                .append(
-                                                                    "$in",
-                                                                    Arrays.asList(
-                                                                        "$$branchName",
-                                                                        new Document()
-                                                                            .append(
-                                                                                "$ifNull",
-                                                                                Arrays.asList(
-                                                                                    "$branches",
-                                                                                    Arrays
-                                                                                        .asList())))),
-                                                            new Document()
-                                                                .append(
-                                                                    "$gte",
-                                                                    Arrays.asList(
-                                                                        "$committer_date",
-                                                                        //
-                                                                        //
-                                                                        //                    TODO
-                                                                        // make date passable
-                                                                        // command line argument
-                                                                        new SimpleDateFormat(
-                                                                                "yyyy-MM-dd HH:mm:ss.SSSZ")
-                                                                            .parse(
-                                                                                "2016-01-01 01:00:00.000+0100"))),
-                                                            new Document()
-                                                                .append(
-                                                                    "$eq",
-                                                                    Arrays.asList(
-                                                                        "$vcs_system_id",
-                                                                        "$$vcs_id"))))))))
+                                                    .append("$and", commitConditions(partition))))))
                         .append("as", "commit")),
             new Document().append("$unwind", new Document().append("path", "$commit")),
             new Document()
@@ -249,7 +394,7 @@ public class ProjectDao extends AbstractDao {
                 .append(
                     "$project",
                     new Document()
-                        .append("_id", 0)
+                        .append("_id", "$hunk._id")
                         .append("name", 1)
                         .append("vcs_system._id", 1)
                         .append("vcs_system.url", 1)
@@ -267,8 +412,67 @@ public class ProjectDao extends AbstractDao {
                         .append("hunk.old_start", 1)
                         .append("hunk.new_start", 1)),
             new Document()
-                .append("$out", new Document().append("db", "twan_satd").append("coll", "hunk")));
+                .append(
+                    "$merge",
+                    new Document()
+                        .append(
+                            "into",
+                            new Document().append("db", database).append("coll", collection))
+                        .append("on", "_id")
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert"))));
 
     projectsCollection.aggregate(pipeline).toCollection();
   }
+
+  /**
+   * Outputs the hunks of one partition to the target collection like {@link #outputHunks}, but
+   * joins the SmartSHARK collections in memory instead of on the server. Every collection is read
+   * once with an indexed query, so the correlated $lookup sub-pipelines are not run per document.
+   *
+   * @param partition The project, vcs system, commit range and committer-date window of the hunks
+   *     to output.
+   * @param database The name of the database that the hunks are merged into.
+   * @param collection The name of the collection that the hunks are merged into.
+   * @return The number of hunks that were output.
+   */
+  public long joinHunks(HunkPartition partition, String database, String collection) {
+    return new StreamingHunkJoin(
+            db, commentMongoClient.getDatabase(database).getCollection(collection))
+        .outputHunks(partition);
+  }
+
+  /**
+   * Returns the conditions on a commit of the main branch of a vcs system that is in the commit
+   * range and the committer-date window of a partition.
+   */
+  private List<Document> commitConditions(HunkPartition partition) {
+    List<Document> conditions = new ArrayList<>();
+    conditions.add(
+        new Document()
+            .append(
+                "$in",
+                Arrays.asList(
+                    "$$branchName",
+                    new Document()
+                        .append("$ifNull", Arrays.asList("$branches", Arrays.asList())))));
+    conditions.add(
+        new Document()
+            .append("$gte", Arrays.asList("$committer_date", partition.getCommittedFrom())));
+    if (partition.getCommitIdAfter() != null) {
+      conditions.add(
+          new Document().append("$gt", Arrays.asList("$_id", partition.getCommitIdAfter())));
+    }
+    if (partition.getCommitIdUntil() != null) {
+      conditions.add(
+          new Document().append("$lte", Arrays.asList("$_id", partition.getCommitIdUntil())));
+    }
+    if (partition.getCommittedUntil() != null) {
+      conditions.add(
+          new Document()
+              .append("$lt", Arrays.asList("$committer_date", partition.getCommittedUntil())));
+    }
+    conditions.add(new Document().append("$eq", Arrays.asList("$vcs_system_id", "$$vcs_id")));
+    return conditions;
+  }
 }
@@ -0,0 +1,289 @@
+package org.example.daos;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.models.HunkPartition;
+
+/**
+ * Outputs the hunks of a partition by joining the SmartSHARK collections in memory, instead of with
+ * the correlated $lookup stages of {@link ProjectDao#outputHunks}. Every collection is read once
+ * with a plain indexed query: the vcs systems and origin-head branches of the partition, its
+ * commits on those branches, the file actions with added lines of those commits, the Java files of
+ * those file actions and finally their hunks. Every read is joined to the earlier ones through maps
+ * keyed by ObjectId, and the joined hunks are merged into the target collection with the same
+ * documents as the aggregation outputs.
+ */
+class StreamingHunkJoin {
+  private static final int IDS_PER_QUERY = 1000;
+  private static final int WRITE_BATCH_SIZE = 1000;
+  private static final String BRANCH_PREFIX = "refs/remotes/";
+
+  private final MongoDatabase db;
+  private final MongoCollection<Document> targetCollection;
+
+  /**
+   * Constructs a new StreamingHunkJoin.
+   *
+   * @param db the SmartSHARK database
+   * @param targetCollection the collection that the joined hunks are merged into
+   */
+  StreamingHunkJoin(MongoDatabase db, MongoCollection<Document> targetCollection) {
+    this.db = db;
+    this.targetCollection = targetCollection;
+  }
+
+  /** A commit joined with its vcs system and branch. */
+  private static class JoinedCommit {
+    private final Document vcsSystem;
+    private final Document branch;
+    private final Document commit;
+
+    private JoinedCommit(Document vcsSystem, Document branch, Document commit) {
+      this.vcsSystem = vcsSystem;
+      this.branch = branch;
+      this.commit = commit;
+    }
+  }
+
+  /** A file action joined with its commit. */
+  private static class JoinedFileAction {
+    private final JoinedCommit commit;
+    private final Document fileAction;
+
+    private JoinedFileAction(JoinedCommit commit, Document fileAction) {
+      this.commit = commit;
+      this.fileAction = fileAction;
+    }
+  }
+
+  /**
+   * Joins and outputs the hunks of a partition.
+   *
+   * @param partition the project, vcs system, commit range and committer-date window of the hunks
+   * @return the number of hunks that were output
+   */
+  long outputHunks(HunkPartition partition) {
+    Document project =
+        db.getCollection(ProjectDao.PROJECTS_COLLECTION)
+            .find(Filters.eq("_id", partition.getProjectId()))
+            .projection(Projections.include("name"))
+            .first();
+    if (project == null) {
+      return 0;
+    }
+    // the name is only output if the project has one, like with an inclusion projection
+    Document name = copy(project, "name");
+
+    ObjectIdMap<Document> vcsSystems = new ObjectIdMap<>();
+    List<ObjectId> vcsSystemIds = new ArrayList<>();
+    Bson vcsSystemFilter = Filters.eq("project_id", partition.getProjectId());
+    if (partition.getVcsSystemId() != null) {
+      vcsSystemFilter =
+          Filters.and(vcsSystemFilter, Filters.eq("_id", partition.getVcsSystemId()));
+    }
+    for (Document vcsSystem :
+        db.getCollection(ProjectDao.VCS_SYSTEMS_COLLECTION)
+            .find(vcsSystemFilter)
+            .projection(Projections.include("url"))) {
+      vcsSystems.put(vcsSystem.getObjectId("_id"), copy(vcsSystem, "_id", "url"));
+      vcsSystemIds.add(vcsSystem.getObjectId("_id"));
+    }
+
+    ObjectIdMap<List<Document>> branchesByVcsSystem = new ObjectIdMap<>();
+    Set<String> branchRefs = new HashSet<>();
+    for (Document branch :
+        db.getCollection("branch")
+            .find(
+                Filters.and(
+                    Filters.in("vcs_system_id", vcsSystemIds), Filters.eq("is_origin_head", true)))
+            .projection(Projections.include("vcs_system_id", "name"))) {
+      List<Document> branches = branchesByVcsSystem.get(branch.getObjectId("vcs_system_id"));
+      if (branches == null) {
+        branches = new ArrayList<>();
+        branchesByVcsSystem.put(branch.getObjectId("vcs_system_id"), branches);
+      }
+      branches.add(copy(branch, "_id", "name"));
+      branchRefs.add(BRANCH_PREFIX + branch.getString("name"));
+    }
+
+    ObjectIdMap<JoinedCommit> commits = new ObjectIdMap<>();
+    List<ObjectId> commitIds = new ArrayList<>();
+    for (Document commit :
+        db.getCollection(ProjectDao.COMMITS_COLLECTION)
+            .find(commitFilter(partition, vcsSystemIds, branchRefs))
+            .projection(
+                Projections.include(
+                    "vcs_system_id", "branches", "committer_date", "revision_hash"))) {
+      ObjectId vcsSystemId = commit.getObjectId("vcs_system_id");
+      Document branch = originHead(branchesByVcsSystem.get(vcsSystemId), commit);
+      if (branch != null) {
+        commits.put(
+            commit.getObjectId("_id"),
+            new JoinedCommit(
+                vcsSystems.get(vcsSystemId),
+                branch,
+                copy(commit, "_id", "committer_date", "revision_hash")));
+        commitIds.add(commit.getObjectId("_id"));
+      }
+    }
+
+    ObjectIdMap<JoinedFileAction> fileActions = new ObjectIdMap<>();
+    List<Document> fileActionDocuments = new ArrayList<>();
+    forEachInChunks(
+        commitIds,
+        chunk -> Filters.and(Filters.in("commit_id", chunk), Filters.gt("lines_added", 0)),
+        "file_action",
+        Projections.include("commit_id", "file_id"),
+        fileAction -> {
+          Document joined = copy(fileAction, "_id", "file_id");
+          fileActions.put(
+              fileAction.getObjectId("_id"),
+              new JoinedFileAction(commits.get(fileAction.getObjectId("commit_id")), joined));
+          fileActionDocuments.add(joined);
+        });
+
+    ObjectIdMap<Document> javaFiles = new ObjectIdMap<>();
+    forEachInChunks(
+        distinct(fileActionDocuments, "file_id"),
+        chunk -> Filters.and(Filters.in("_id", chunk), Filters.regex("path", "\\.java$", "i")),
+        "file",
+        Projections.include("path"),
+        file -> javaFiles.put(file.getObjectId("_id"), copy(file, "_id", "path")));
+
+    List<ObjectId> javaFileActionIds = new ArrayList<>();
+    for (Document fileAction : fileActionDocuments) {
+      ObjectId fileId = fileAction.getObjectId("file_id");
+      if (fileId != null && javaFiles.containsKey(fileId)) {
+        javaFileActionIds.add(fileAction.getObjectId("_id"));
+      }
+    }
+
+    List<WriteModel<Document>> writes = new ArrayList<>();
+    LongAdder output = new LongAdder();
+    forEachInChunks(
+        javaFileActionIds,
+        chunk -> Filters.in("file_action_id", chunk),
+        "hunk",
+        Projections.include("file_action_id", "content", "new_start", "old_start"),
+        hunk -> {
+          JoinedFileAction fileAction = fileActions.get(hunk.getObjectId("file_action_id"));
+          Document joined = new Document("_id", hunk.getObjectId("_id"));
+          joined.putAll(name);
+          joined.put("vcs_system", fileAction.commit.vcsSystem);
+          joined.put("branch", fileAction.commit.branch);
+          joined.put("commit", fileAction.commit.commit);
+          joined.put("file_action", fileAction.fileAction);
+          joined.put("hunk", copy(hunk, "_id", "content", "new_start", "old_start"));
+          joined.put("file", javaFiles.get(fileAction.fileAction.getObjectId("file_id")));
+          writes.add(
+              new ReplaceOneModel<>(
+                  Filters.eq("_id", joined.get("_id")),
+                  joined,
+                  new ReplaceOptions().upsert(true)));
+          if (writes.size() == WRITE_BATCH_SIZE) {
+            output.add(write(writes));
+          }
+        });
+    output.add(write(writes));
+    return output.sum();
+  }
+
+  private Bson commitFilter(
+      HunkPartition partition, List<ObjectId> vcsSystemIds, Set<String> branchRefs) {
+    List<Bson> filters = new ArrayList<>();
+    filters.add(Filters.in("vcs_system_id", vcsSystemIds));
+    filters.add(Filters.in("branches", branchRefs));
+    filters.add(Filters.gte("committer_date", partition.getCommittedFrom()));
+    if (partition.getCommittedUntil() != null) {
+      filters.add(Filters.lt("committer_date", partition.getCommittedUntil()));
+    }
+    if (partition.getCommitIdAfter() != null) {
+      filters.add(Filters.gt("_id", partition.getCommitIdAfter()));
+    }
+    if (partition.getCommitIdUntil() != null) {
+      filters.add(Filters.lte("_id", partition.getCommitIdUntil()));
+    }
+    return Filters.and(filters);
+  }
+
+  /** Returns the origin-head branch of a vcs system that the commit is on, or null if none. */
+  private Document originHead(List<Document> branches, Document commit) {
+    List<?> commitBranches = commit.get("branches", List.class);
+    if (branches == null || commitBranches == null) {
+      return null;
+    }
+    for (Document branch : branches) {
+      if (commitBranches.contains(BRANCH_PREFIX + branch.getString("name"))) {
+        return branch;
+      }
+    }
+    return null;
+  }
+
+  /** Reads the documents of a collection that match a filter on a chunk of at most 1000 IDs. */
+  private void forEachInChunks(
+      List<ObjectId> ids,
+      Function<List<ObjectId>, Bson> filter,
+      String collection,
+      Bson projection,
+      Consumer<Document> consumer) {
+    for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+      List<ObjectId> chunk = ids.subList(from, Math.min(from + IDS_PER_QUERY, ids.size()));
+      for (Document document :
+          db.getCollection(collection).find(filter.apply(chunk)).projection(projection)) {
+        consumer.accept(document);
+      }
+    }
+  }
+
+  private long write(List<WriteModel<Document>> writes) {
+    if (writes.isEmpty()) {
+      return 0;
+    }
+    targetCollection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    long written = writes.size();
+    writes.clear();
+    return written;
+  }
+
+  /** Returns the distinct IDs in a field of documents, in their first order. */
+  private static List<ObjectId> distinct(List<Document> documents, String field) {
+    ObjectIdMap<Boolean> seen = new ObjectIdMap<>(documents.size());
+    List<ObjectId> distinct = new ArrayList<>();
+    for (Document document : documents) {
+      ObjectId id = document.getObjectId(field);
+      if (id != null && !seen.containsKey(id)) {
+        seen.put(id, Boolean.TRUE);
+        distinct.add(id);
+      }
+    }
+    return distinct;
+  }
+
+  /** Copies the given fields of a document that are present, like an inclusion projection. */
+  private static Document copy(Document source, String... fields) {
+    Document copy = new Document();
+    for (String field : fields) {
+      if (source.containsKey(field)) {
+        copy.append(field, source.get(field));
+      }
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,43 @@
+package org.example.daos;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps equal strings to one instance, so the project names, vcs urls, branch names, commit hashes
+ * and file paths that many hunks share are held once instead of once per hunk. Safe to use from
+ * several threads at once. The dictionary is cleared when it is full, so strings that are no longer
+ * used do not stay in memory for the whole run.
+ */
+class StringDictionary {
+  private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  /**
+   * Constructs a new StringDictionary.
+   *
+   * @param maxSize the number of strings after which the dictionary is cleared
+   */
+  StringDictionary(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the instance of the dictionary that is equal to the given string.
+   *
+   * @param string the string to look up, or null
+   * @return an equal string that was looked up before, the given string if there is none, or null
+   */
+  String intern(String string) {
+    if (string == null) {
+      return null;
+    }
+    String interned = strings.putIfAbsent(string, string);
+    if (interned != null) {
+      return interned;
+    }
+    if (strings.size() > maxSize) {
+      strings.clear();
+    }
+    return string;
+  }
+}
@@ -0,0 +1,85 @@
+package org.example.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the metrics of a registry as read-only JMX attributes, one per counter, gauge and timer
+ * statistic. The attributes follow the metrics in the registry, so metrics that are created during
+ * the run appear when the MBean is read again.
+ */
+class MetricsMBean implements DynamicMBean {
+  private final MetricsRegistry registry;
+
+  MetricsMBean(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number value = registry.snapshot().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException("No extractor metric named " + attribute);
+    }
+    return value;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(
+        "Extractor metrics are read-only, cannot set " + attribute.getName());
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    Map<String, Number> snapshot = registry.snapshot();
+    AttributeList values = new AttributeList();
+    for (String attribute : attributes) {
+      Number value = snapshot.get(attribute);
+      if (value != null) {
+        values.add(new Attribute(attribute, value));
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+      throws ReflectionException {
+    throw new ReflectionException(
+        new NoSuchMethodException(actionName), "Extractor metrics have no operations");
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<>();
+    registry
+        .snapshot()
+        .forEach(
+            (name, value) ->
+                attributes.add(
+                    new MBeanAttributeInfo(
+                        name, value.getClass().getName(), name, true, false, false)));
+    return new MBeanInfo(
+        MetricsRegistry.class.getName(),
+        "Counters, gauges and latency percentiles of the comment extraction run",
+        attributes.toArray(new MBeanAttributeInfo[0]),
+        null,
+        new MBeanOperationInfo[0],
+        null);
+  }
+}
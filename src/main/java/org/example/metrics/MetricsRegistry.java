@@ -0,0 +1,139 @@
+package org.example.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Holds the counters, timers and gauges of an extraction run by name. Counters are striped {@link
+ * LongAdder}s and timers are striped histograms, so the parse workers and write threads update
+ * them without contending with each other. Gauges are read when the metrics are reported.
+ *
+ * <p>The metrics of the default registry are exposed as attributes of the {@value #OBJECT_NAME}
+ * MBean and can be written as one machine-readable log line.
+ */
+public class MetricsRegistry {
+  public static final String OBJECT_NAME = "org.example:type=ExtractorMetrics";
+
+  private static final MetricsRegistry DEFAULT = createDefault();
+
+  private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+  private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+  private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+  /** Constructs a registry with the heap usage gauges. */
+  public MetricsRegistry() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    gauge("heap_used_bytes", () -> memory.getHeapMemoryUsage().getUsed());
+    gauge("heap_committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+  }
+
+  private static MetricsRegistry createDefault() {
+    MetricsRegistry registry = new MetricsRegistry();
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(new MetricsMBean(registry), new ObjectName(OBJECT_NAME));
+    } catch (JMException e) {
+      System.out.println("Could not expose the extractor metrics through JMX: " + e);
+    }
+    return registry;
+  }
+
+  /**
+   * Returns the registry of the extraction run, which is exposed through JMX.
+   *
+   * @return the default registry
+   */
+  public static MetricsRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the counter with the given name, which is created on first use.
+   *
+   * @param name the name of the counter
+   * @return the counter
+   */
+  public LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Returns the timer with the given name, which is created on first use.
+   *
+   * @param name the name of the timer
+   * @return the timer
+   */
+  public Timer timer(String name) {
+    return timers.computeIfAbsent(name, key -> new Timer());
+  }
+
+  /**
+   * Sets the gauge with the given name, replacing an earlier gauge with that name.
+   *
+   * @param name the name of the gauge
+   * @param gauge the function that reads the current value of the gauge
+   */
+  public void gauge(String name, LongSupplier gauge) {
+    gauges.put(name, gauge);
+  }
+
+  /**
+   * Removes the gauge with the given name, for example when the queue it reads is gone.
+   *
+   * @param name the name of the gauge
+   */
+  public void removeGauge(String name) {
+    gauges.remove(name);
+  }
+
+  /**
+   * Returns the current value of every metric, by name. A timer has a count, mean, percentile and
+   * maximum value, named after the timer with the suffixes "_count", "_mean_ms", "_p50_ms",
+   * "_p95_ms", "_p99_ms" and "_max_ms".
+   *
+   * @return the counters and gauges as Longs and the timer latencies as Doubles, sorted by name
+   */
+  public Map<String, Number> snapshot() {
+    Map<String, Number> snapshot = new ConcurrentSkipListMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+    gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+    timers.forEach(
+        (name, timer) -> {
+          snapshot.put(name + "_count", timer.getCount());
+          snapshot.put(name + "_mean_ms", timer.getMeanMillis());
+          snapshot.put(name + "_p50_ms", timer.getPercentileMillis(50));
+          snapshot.put(name + "_p95_ms", timer.getPercentileMillis(95));
+          snapshot.put(name + "_p99_ms", timer.getPercentileMillis(99));
+          snapshot.put(name + "_max_ms", timer.getMaxMillis());
+        });
+    return snapshot;
+  }
+
+  /**
+   * Formats the current value of every metric as one log line of space-separated key=value pairs,
+   * starting with "metrics" and the time.
+   *
+   * @return the log line
+   */
+  public String format() {
+    StringBuilder line = new StringBuilder("metrics time=").append(Instant.now());
+    snapshot()
+        .forEach(
+            (name, value) -> {
+              line.append(' ').append(name).append('=');
+              if (value instanceof Double) {
+                line.append(String.format("%.3f", value.doubleValue()));
+              } else {
+                line.append(value);
+              }
+            });
+    return line.toString();
+  }
+}
@@ -0,0 +1,48 @@
+package org.example.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a registry as one machine-readable line at a fixed interval, and once more
+ * when it is closed.
+ */
+public class MetricsReporter implements AutoCloseable {
+  private final MetricsRegistry registry;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Starts reporting the metrics of a registry.
+   *
+   * @param registry the registry to report
+   * @param intervalSeconds the number of seconds between two reports, or 0 to only report when
+   *     the reporter is closed
+   */
+  public MetricsReporter(MetricsRegistry registry, long intervalSeconds) {
+    this.registry = registry;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "metrics-reporter");
+              thread.setDaemon(true);
+              return thread;
+            });
+    if (intervalSeconds > 0) {
+      scheduler.scheduleAtFixedRate(
+          this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Writes the current metrics as one line. */
+  public void report() {
+    System.out.println(registry.format());
+  }
+
+  /** Stops the periodic reports and writes the final metrics. */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    report();
+  }
+}
@@ -0,0 +1,126 @@
+package org.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram that many threads can record into without contention. Every power of two is
+ * split into eight buckets, so a percentile is off by at most one eighth of its value. Every bucket
+ * is a striped counter, so recording a latency costs a few uncontended additions.
+ */
+public class Timer {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+  private static final double NANOS_IN_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  Timer() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds; negative latencies are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    buckets[bucket(value)].increment();
+    count.increment();
+    totalNanos.add(value);
+    maxNanos.accumulate(value);
+  }
+
+  /**
+   * Records the latency since a start time.
+   *
+   * @param startNanos the start time, as returned by {@link System#nanoTime()}
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   *
+   * @return the number of latencies recorded since the timer was created
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the mean of the recorded latencies.
+   *
+   * @return the mean latency in milliseconds, or 0 if none was recorded
+   */
+  public double getMeanMillis() {
+    long recorded = count.sum();
+    return recorded == 0 ? 0 : totalNanos.sum() / NANOS_IN_MILLI / recorded;
+  }
+
+  /**
+   * Returns the highest recorded latency.
+   *
+   * @return the highest latency in milliseconds
+   */
+  public double getMaxMillis() {
+    return maxNanos.get() / NANOS_IN_MILLI;
+  }
+
+  /**
+   * Returns a percentile of the recorded latencies. Latencies recorded while the percentile is
+   * computed may or may not be included.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in milliseconds below which the given percentage of latencies fall, or 0
+   *     if none was recorded
+   */
+  public double getPercentileMillis(double percentile) {
+    long[] counts = new long[BUCKETS];
+    long recorded = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+      recorded += counts[i];
+    }
+    if (recorded == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(midpoint(i), maxNanos.get()) / NANOS_IN_MILLI;
+      }
+    }
+    return getMaxMillis();
+  }
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static double midpoint(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = bucket % SUB_BUCKETS;
+    double width = Math.pow(2, exponent - SUB_BUCKET_BITS);
+    return (SUB_BUCKETS + subBucket) * width + width / 2;
+  }
+}
@@ -0,0 +1,123 @@
+package org.example.models;
+
+import java.util.Arrays;
+
+/**
+ * A group of consecutive added lines of a hunk, without their leading "+" markers. The group is a
+ * view on the hunk content: it keeps the offsets of its lines instead of a copy of their text, and
+ * only copies the text when {@link #toString()} is called. Every line has at least one character
+ * after its marker. The line terminators between the lines are part of the group, the terminator of
+ * the last line is not.
+ */
+public final class AddedLines implements CharSequence {
+  private final CharSequence content;
+  private final int[] starts;
+  private final int[] ends;
+  /** The index in this group of the first character of every line. */
+  private final int[] offsets;
+
+  private final int length;
+
+  /**
+   * Constructs a new AddedLines view.
+   *
+   * @param content the hunk content
+   * @param starts the offset in the content of every line, just after its "+" marker
+   * @param ends the offset in the content of the end of every line, after its terminator for every
+   *     line but the last
+   */
+  public AddedLines(CharSequence content, int[] starts, int[] ends) {
+    this.content = content;
+    this.starts = starts;
+    this.ends = ends;
+    this.offsets = new int[starts.length];
+    int total = 0;
+    for (int i = 0; i < starts.length; i++) {
+      offsets[i] = total;
+      total += ends[i] - starts[i];
+    }
+    this.length = total;
+  }
+
+  /** Returns the number of lines in this group. */
+  public int getLineCount() {
+    return starts.length;
+  }
+
+  /** Returns the offset in the hunk content of the given line, just after its "+" marker. */
+  public int getStart(int line) {
+    return starts[line];
+  }
+
+  /** Returns the offset in the hunk content of the end of the given line. */
+  public int getEnd(int line) {
+    return ends[line];
+  }
+
+  /**
+   * Returns the index of the first occurrence of the given character in this group.
+   *
+   * @param c the character to look for
+   * @return the index of the character, or -1 if the group does not contain it
+   */
+  public int indexOf(char c) {
+    for (int line = 0; line < starts.length; line++) {
+      for (int i = starts[line]; i < ends[line]; i++) {
+        if (content.charAt(i) == c) {
+          return offsets[line] + i - starts[line];
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first occurrence of the given two consecutive characters in this
+   * group.
+   *
+   * @param first the first character to look for
+   * @param second the character that has to follow it
+   * @return the index of the first character, or -1 if the group does not contain the pair
+   */
+  public int indexOf(char first, char second) {
+    for (int line = 0; line < starts.length; line++) {
+      for (int i = starts[line]; i < ends[line] - 1; i++) {
+        if (content.charAt(i) == first && content.charAt(i + 1) == second) {
+          return offsets[line] + i - starts[line];
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    }
+    int line = Arrays.binarySearch(offsets, index);
+    if (line < 0) {
+      line = -line - 2;
+    }
+    return content.charAt(starts[line] + index - offsets[line]);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder(length);
+    for (int line = 0; line < starts.length; line++) {
+      text.append(content, starts[line], ends[line]);
+    }
+    return text.toString();
+  }
+}
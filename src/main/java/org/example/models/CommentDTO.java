@@ -5,71 +5,99 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import org.bson.codecs.pojo.annotations.BsonId;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.codecs.pojo.annotations.BsonProperty;
 import org.bson.types.ObjectId;
 
+/**
+ * A comment extracted from a hunk. The metadata of the hunk is not copied into every comment:
+ * the comments of a hunk share one {@link HunkContext}, whose fields are written as fields of the
+ * comment. A comment without a context has no hunk metadata.
+ */
 @Data
 @EqualsAndHashCode
 public class CommentDTO {
   @EqualsAndHashCode.Exclude @BsonId private ObjectId id;
 
+  @EqualsAndHashCode.Exclude @BsonIgnore private HunkContext hunkContext;
+
+  @NonNull private String content;
+
   @EqualsAndHashCode.Exclude
+  @BsonProperty(value = "content_hash")
+  private String contentHash;
+
+  @EqualsAndHashCode.Exclude @NonNull private boolean filtered;
+  @EqualsAndHashCode.Exclude @NonNull private CommentType type;
+
   @BsonProperty(value = "project_name")
-  private String projectName;
+  public String getProjectName() {
+    return hunkContext == null ? null : hunkContext.getProjectName();
+  }
 
   @BsonProperty(value = "hunk_id")
-  private ObjectId hunkId;
+  @EqualsAndHashCode.Include
+  public ObjectId getHunkId() {
+    return hunkContext == null ? null : hunkContext.getHunkId();
+  }
 
   @BsonProperty(value = "hunk_new_start")
-  @EqualsAndHashCode.Exclude
-  private int hunkNewStart;
+  public int getHunkNewStart() {
+    return hunkContext == null ? 0 : hunkContext.getHunkNewStart();
+  }
 
   @BsonProperty(value = "hunk_old_start")
-  @EqualsAndHashCode.Exclude
-  private int hunkOldStart;
+  public int getHunkOldStart() {
+    return hunkContext == null ? 0 : hunkContext.getHunkOldStart();
+  }
 
   @BsonProperty(value = "vcs_id")
-  @EqualsAndHashCode.Exclude
-  private ObjectId vcsId;
+  public ObjectId getVcsId() {
+    return hunkContext == null ? null : hunkContext.getVcsId();
+  }
 
   @BsonProperty(value = "vcs_url")
-  @EqualsAndHashCode.Exclude
-  private String vcsUrl;
+  public String getVcsUrl() {
+    return hunkContext == null ? null : hunkContext.getVcsUrl();
+  }
 
   @BsonProperty(value = "branch_id")
-  @EqualsAndHashCode.Exclude
-  private ObjectId branchId;
+  public ObjectId getBranchId() {
+    return hunkContext == null ? null : hunkContext.getBranchId();
+  }
 
   @BsonProperty(value = "branch_name")
-  @EqualsAndHashCode.Exclude
-  private String branchName;
-
-  @NonNull private String content;
+  public String getBranchName() {
+    return hunkContext == null ? null : hunkContext.getBranchName();
+  }
 
-  @EqualsAndHashCode.Exclude
   @BsonProperty(value = "committer_date")
-  private LocalDateTime committerDate;
+  public LocalDateTime getCommitterDate() {
+    return hunkContext == null ? null : hunkContext.getCommitterDate();
+  }
 
   @BsonProperty(value = "commit_id")
-  @EqualsAndHashCode.Exclude
-  private ObjectId commitId;
+  public ObjectId getCommitId() {
+    return hunkContext == null ? null : hunkContext.getCommitId();
+  }
 
   @BsonProperty(value = "commit_hash")
-  @EqualsAndHashCode.Exclude
-  private String commitHash;
+  public String getCommitHash() {
+    return hunkContext == null ? null : hunkContext.getCommitHash();
+  }
 
   @BsonProperty(value = "file_action_id")
-  @EqualsAndHashCode.Exclude
-  private ObjectId fileActionId;
+  public ObjectId getFileActionId() {
+    return hunkContext == null ? null : hunkContext.getFileActionId();
+  }
 
   @BsonProperty(value = "file_id")
-  @EqualsAndHashCode.Exclude
-  private ObjectId fileId;
+  public ObjectId getFileId() {
+    return hunkContext == null ? null : hunkContext.getFileId();
+  }
 
   @BsonProperty(value = "file_path")
-  @EqualsAndHashCode.Exclude
-  private String filePath;
-
-  @EqualsAndHashCode.Exclude @NonNull private boolean filtered;
-  @EqualsAndHashCode.Exclude @NonNull private CommentType type;
+  public String getFilePath() {
+    return hunkContext == null ? null : hunkContext.getFilePath();
+  }
 }
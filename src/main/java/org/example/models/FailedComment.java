@@ -0,0 +1,36 @@
+package org.example.models;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.codecs.pojo.annotations.BsonId;
+import org.bson.codecs.pojo.annotations.BsonProperty;
+import org.bson.types.ObjectId;
+
+/**
+ * A comment that could not be written, together with the error of its last write attempt. Comments
+ * that can never be written are kept in the dead-letter collection in this form.
+ */
+@Data
+@NoArgsConstructor
+public class FailedComment {
+  @BsonId private ObjectId id;
+
+  private CommentDTO comment;
+
+  @BsonProperty(value = "error_code")
+  private int errorCode;
+
+  @BsonProperty(value = "error_message")
+  private String errorMessage;
+
+  @BsonProperty(value = "failed_at")
+  private LocalDateTime failedAt;
+
+  public FailedComment(CommentDTO comment, int errorCode, String errorMessage) {
+    this.comment = comment;
+    this.errorCode = errorCode;
+    this.errorMessage = errorMessage;
+    this.failedAt = LocalDateTime.now();
+  }
+}
@@ -0,0 +1,28 @@
+package org.example.models;
+
+import java.time.LocalDateTime;
+import lombok.Value;
+import org.bson.types.ObjectId;
+
+/**
+ * The metadata of a hunk that every comment extracted from the hunk shares: its project, vcs
+ * system, branch, commit, file action and file. The comments of a hunk point to one immutable
+ * context instead of each holding a copy of its fields.
+ */
+@Value
+public class HunkContext {
+  String projectName;
+  LocalDateTime committerDate;
+  ObjectId hunkId;
+  int hunkNewStart;
+  int hunkOldStart;
+  ObjectId vcsId;
+  String vcsUrl;
+  ObjectId branchId;
+  String branchName;
+  ObjectId commitId;
+  String commitHash;
+  ObjectId fileActionId;
+  ObjectId fileId;
+  String filePath;
+}
@@ -0,0 +1,66 @@
+package org.example.models;
+
+import java.util.Date;
+import lombok.Data;
+import org.bson.types.ObjectId;
+
+/**
+ * A part of the hunks of the SmartSHARK database that is output to the intermediate hunk collection
+ * by its own aggregation. A partition holds the hunks of one project, or of one vcs system of a
+ * project, whose commits were added to SmartSHARK in a range of commit IDs and were committed in a
+ * committer-date window.
+ */
+@Data
+public class HunkPartition {
+  private final ObjectId projectId;
+
+  /** The vcs system of the partition, or null if the partition covers every vcs system. */
+  private final ObjectId vcsSystemId;
+
+  /** The highest commit ID that was output by an earlier run, or null if there was none. */
+  private final ObjectId commitIdAfter;
+
+  /** The highest commit ID of the partition, inclusive, or null if the range has no end. */
+  private final ObjectId commitIdUntil;
+
+  private final Date committedFrom;
+
+  /** The end of the committer-date window, exclusive, or null if the window has no end. */
+  private final Date committedUntil;
+
+  /**
+   * Returns the key of the project or vcs system of the partition, which is the same for every
+   * commit range and committer-date window.
+   *
+   * @return The project and vcs system of the partition.
+   */
+  public String getSourceKey() {
+    StringBuilder key = new StringBuilder("project:").append(projectId);
+    if (vcsSystemId != null) {
+      key.append("/vcs_system:").append(vcsSystemId);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns the key that identifies the partition in the partition state collection.
+   *
+   * @return The project, vcs system, commit range and committer-date window of the partition.
+   */
+  public String getKey() {
+    StringBuilder key = new StringBuilder(getSourceKey());
+    key.append("/commits:");
+    if (commitIdAfter != null) {
+      key.append(commitIdAfter);
+    }
+    key.append("..");
+    if (commitIdUntil != null) {
+      key.append(commitIdUntil);
+    }
+    key.append("/committed:").append(committedFrom.toInstant()).append("..");
+    if (committedUntil != null) {
+      key.append(committedUntil.toInstant());
+    }
+    return key.toString();
+  }
+}
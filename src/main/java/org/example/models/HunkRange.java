@@ -0,0 +1,35 @@
+package org.example.models;
+
+import lombok.Data;
+import org.bson.types.ObjectId;
+
+/**
+ * A range of hunk IDs of the intermediate hunk collection that one worker process extracts the
+ * comments of, under a lease in the hunk range collection. The ranges of a plan cover every hunk
+ * ID: the first range has no lower bound and the last range has no upper bound.
+ */
+@Data
+public class HunkRange {
+  private final int index;
+
+  /** The highest hunk ID before the range, exclusive, or null if the range has no start. */
+  private final ObjectId afterId;
+
+  /** The highest hunk ID of the range, inclusive, or null if the range has no end. */
+  private final ObjectId untilId;
+
+  /**
+   * The ID of the last hunk whose comments were written by an earlier lease of the range, or null
+   * if no page of the range was finished yet.
+   */
+  private final ObjectId lastId;
+
+  /**
+   * Returns the ID after which the extraction of the range starts or continues.
+   *
+   * @return The checkpoint of the range, or its lower bound if it has no checkpoint.
+   */
+  public ObjectId getResumeId() {
+    return lastId != null ? lastId : afterId;
+  }
+}
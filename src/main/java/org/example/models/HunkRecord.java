@@ -0,0 +1,56 @@
+package org.example.models;
+
+import java.nio.charset.StandardCharsets;
+import org.bson.types.ObjectId;
+
+/**
+ * A hunk of the intermediate hunk collection, with only the fields that are used to extract its
+ * comments. The metadata of the hunk is held in the {@link HunkContext} that its comments share.
+ * The content is held as the UTF-8 bytes it was read as, which take half the memory of a string for
+ * the mostly ASCII source code of a hunk, and is only decoded when it is read.
+ */
+public class HunkRecord {
+  private final ObjectId id;
+  private final HunkContext hunkContext;
+  private final byte[] content;
+
+  /**
+   * Constructs a new HunkRecord.
+   *
+   * @param id the ID of the hunk in the intermediate hunk collection
+   * @param hunkContext the metadata of the hunk
+   * @param content the UTF-8 encoded content of the hunk, or null if the hunk has no content
+   */
+  public HunkRecord(ObjectId id, HunkContext hunkContext, byte[] content) {
+    this.id = id;
+    this.hunkContext = hunkContext;
+    this.content = content;
+  }
+
+  public ObjectId getId() {
+    return id;
+  }
+
+  public HunkContext getHunkContext() {
+    return hunkContext;
+  }
+
+  /**
+   * Returns the size of the content of the hunk, without decoding it.
+   *
+   * @return the number of UTF-8 bytes of the content, or 0 if the hunk has no content
+   */
+  public int getContentSize() {
+    return content == null ? 0 : content.length;
+  }
+
+  /**
+   * Decodes the content of the hunk. Every call decodes it again, so the string is not kept alive
+   * by the page after the comments of the hunk were extracted.
+   *
+   * @return the unified diff content of the hunk, or null if the hunk has no content
+   */
+  public String getContent() {
+    return content == null ? null : new String(content, StandardCharsets.UTF_8);
+  }
+}
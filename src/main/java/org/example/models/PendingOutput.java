@@ -0,0 +1,19 @@
+package org.example.models;
+
+import java.util.Date;
+import lombok.Data;
+import org.bson.types.ObjectId;
+
+/**
+ * The new commits of a project or vcs system that a run started to output to the intermediate hunk
+ * collection. It is kept next to the high-water mark until the mark moves, so a run that retries
+ * the output plans the same partitions, even if more commits were added to SmartSHARK since.
+ */
+@Data
+public class PendingOutput {
+  /** The highest commit ID whose hunks are output, inclusive. */
+  private final ObjectId commitIdUntil;
+
+  /** The time the output was planned, which ends the last committer-date window with an end. */
+  private final Date plannedAt;
+}
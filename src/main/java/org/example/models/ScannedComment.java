@@ -0,0 +1,15 @@
+package org.example.models;
+
+import lombok.Data;
+
+/**
+ * A comment as found in a piece of source code, before it is filtered and mapped to a CommentDTO.
+ * The type is either {@link CommentType#JAVADOC}, {@link CommentType#BLOCK} or {@link
+ * CommentType#LINE}.
+ */
+@Data
+public class ScannedComment {
+  private final CommentType type;
+  private final String content;
+  private final int line;
+}
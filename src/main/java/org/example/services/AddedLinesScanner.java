@@ -0,0 +1,89 @@
+package org.example.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.example.models.AddedLines;
+
+/**
+ * Splits the content of a diff hunk into groups of consecutive added lines in a single pass over
+ * its characters. An added line starts with a "+" marker followed by at least one character. Lines
+ * end at "\n", "\r\n" or "\r". Only the leading marker of a line is stripped, so a "+" in the code
+ * itself is kept.
+ */
+public class AddedLinesScanner {
+  private static final char ADDED_LINE_MARKER = '+';
+  private static final int INITIAL_GROUP_CAPACITY = 16;
+
+  /**
+   * Returns the groups of added lines of the given hunk content, in order of appearance.
+   *
+   * @param content the content of a hunk
+   * @return views on the groups of added lines of the content
+   */
+  public List<AddedLines> scan(CharSequence content) {
+    List<AddedLines> groups = new ArrayList<>();
+    scan(content, groups::add);
+    return groups;
+  }
+
+  /**
+   * Hands every group of added lines of the given hunk content to the given consumer, in order of
+   * appearance, as soon as the end of the group has been read.
+   *
+   * @param content the content of a hunk
+   * @param consumer the consumer of the views on the groups of added lines
+   */
+  public void scan(CharSequence content, Consumer<AddedLines> consumer) {
+    int length = content.length();
+    int[] starts = new int[INITIAL_GROUP_CAPACITY];
+    int[] ends = new int[INITIAL_GROUP_CAPACITY];
+    int lineCount = 0;
+    // The end of the last added line without its terminator, used when the group ends there.
+    int lastLineEnd = 0;
+
+    int lineStart = 0;
+    while (lineStart < length) {
+      int lineEnd = lineStart;
+      while (lineEnd < length
+          && content.charAt(lineEnd) != '\n'
+          && content.charAt(lineEnd) != '\r') {
+        lineEnd++;
+      }
+      int nextLineStart = lineEnd;
+      if (nextLineStart < length && content.charAt(nextLineStart) == '\r') {
+        nextLineStart++;
+      }
+      if (nextLineStart < length && content.charAt(nextLineStart) == '\n') {
+        nextLineStart++;
+      }
+
+      if (lineEnd - lineStart > 1 && content.charAt(lineStart) == ADDED_LINE_MARKER) {
+        if (lineCount == starts.length) {
+          starts = Arrays.copyOf(starts, lineCount * 2);
+          ends = Arrays.copyOf(ends, lineCount * 2);
+        }
+        starts[lineCount] = lineStart + 1;
+        ends[lineCount] = nextLineStart;
+        lastLineEnd = lineEnd;
+        lineCount++;
+      } else if (lineCount > 0) {
+        consumer.accept(newGroup(content, starts, ends, lineCount, lastLineEnd));
+        lineCount = 0;
+      }
+      lineStart = nextLineStart;
+    }
+
+    if (lineCount > 0) {
+      consumer.accept(newGroup(content, starts, ends, lineCount, lastLineEnd));
+    }
+  }
+
+  private AddedLines newGroup(
+      CharSequence content, int[] starts, int[] ends, int lineCount, int lastLineEnd) {
+    int[] groupEnds = Arrays.copyOf(ends, lineCount);
+    groupEnds[lineCount - 1] = lastLineEnd;
+    return new AddedLines(content, Arrays.copyOf(starts, lineCount), groupEnds);
+  }
+}
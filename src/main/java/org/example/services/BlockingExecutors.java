@@ -0,0 +1,80 @@
+package org.example.services;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors of the tasks that mostly wait on MongoDB, such as reading pages of hunks,
+ * writing batches of comments and adding checkpoints. Such a task can run on a virtual thread,
+ * which releases its carrier thread while it waits on the network, so many tasks can wait at the
+ * same time without a platform thread each.
+ *
+ * <p>The extractor is built for Java 17, so virtual threads are looked up when the class loads.
+ * They are only used on a Java runtime that has them, which is Java 21 or newer; on an older
+ * runtime the executors fall back to a fixed pool of platform threads.
+ */
+public final class BlockingExecutors {
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+      findVirtualThreadPerTaskExecutor();
+  private static boolean fallbackReported;
+
+  private BlockingExecutors() {}
+
+  /**
+   * Returns whether the Java runtime has virtual threads.
+   *
+   * @return true if virtual threads are available
+   */
+  public static boolean isVirtualThreadsAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Returns an executor that runs every task on its own virtual thread, or a fixed pool of platform
+   * threads if virtual threads are not requested or not available. The number of tasks that run at
+   * the same time on virtual threads is not bounded, so callers bound it themselves.
+   *
+   * @param virtualThreads whether to run the tasks on virtual threads
+   * @param platformThreads the number of platform threads if the tasks run on platform threads
+   * @return the executor, which must be shut down after use
+   */
+  public static ExecutorService newExecutor(boolean virtualThreads, int platformThreads) {
+    if (virtualThreads && isVirtualThreadsAvailable()) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+      } catch (UnsupportedOperationException e) {
+        // virtual threads are a preview feature of Java 19 and 20 that was not enabled
+      } catch (Throwable e) {
+        throw new IllegalStateException("Could not create a virtual thread executor", e);
+      }
+    }
+    if (virtualThreads) {
+      reportFallback();
+    }
+    return Executors.newFixedThreadPool(platformThreads);
+  }
+
+  private static synchronized void reportFallback() {
+    if (!fallbackReported) {
+      fallbackReported = true;
+      System.out.printf(
+          "Virtual threads are not available on Java %s, using platform threads%n",
+          Runtime.version().feature());
+    }
+  }
+
+  private static MethodHandle findVirtualThreadPerTaskExecutor() {
+    try {
+      return MethodHandles.publicLookup()
+          .findStatic(
+              Executors.class,
+              "newVirtualThreadPerTaskExecutor",
+              MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package org.example.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+
+/**
+ * A bounded cache of the comments extracted from a group of added lines, keyed by the SHA-256 hash
+ * of the lines. The same line groups occur in many hunks, for example in cherry-picked commits,
+ * merges, vendored files and copied license headers, and a cached group does not have to be
+ * scanned and classified again.
+ *
+ * <p>Only the content, type and filtered flag of the comments are cached, so a hit returns new
+ * comments without the metadata of a hunk. The lines themselves are not kept, so a large group
+ * takes as little room as a small group with the same comments.
+ *
+ * <p>The cache is split into segments that each evict their least recently used groups, so parse
+ * workers that use different segments do not wait for each other. A segment evicts groups when it
+ * holds more than its share of the maximum number of groups or of the memory budget. The memory of
+ * a group is estimated from the lengths of its comments.
+ */
+public class CommentCache {
+  private static final int SEGMENTS = 16;
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+  private static final int COMMENT_OVERHEAD_BYTES = 56;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(CommentCache::sha256);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Constructs a new CommentCache that reports its statistics to the default metrics registry.
+   *
+   * @param maxEntries the maximum number of cached line groups
+   * @param maxBytes the estimated memory budget of the cached comments in bytes
+   */
+  public CommentCache(long maxEntries, long maxBytes) {
+    this(maxEntries, maxBytes, MetricsRegistry.getDefault());
+  }
+
+  /**
+   * Constructs a new CommentCache.
+   *
+   * @param maxEntries the maximum number of cached line groups
+   * @param maxBytes the estimated memory budget of the cached comments in bytes
+   * @param metrics the registry that the hits, misses, evictions and size are reported to
+   */
+  public CommentCache(long maxEntries, long maxBytes, MetricsRegistry metrics) {
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] =
+          new Segment(Math.max(1, maxEntries / SEGMENTS), Math.max(1, maxBytes / SEGMENTS));
+    }
+    metrics.gauge("comment_cache_hits", hits::sum);
+    metrics.gauge("comment_cache_misses", misses::sum);
+    metrics.gauge("comment_cache_evictions", evictions::sum);
+    metrics.gauge("comment_cache_entries", this::getEntryCount);
+    metrics.gauge("comment_cache_bytes", this::getEstimatedBytes);
+  }
+
+  /** The comments of a line group, without the metadata of a hunk. */
+  private static final class CachedComment {
+    private final String content;
+    private final boolean filtered;
+    private final CommentType type;
+
+    private CachedComment(CommentDTO commentDTO) {
+      this.content = commentDTO.getContent();
+      this.filtered = commentDTO.isFiltered();
+      this.type = commentDTO.getType();
+    }
+  }
+
+  /** The cached comments of a line group and their estimated memory. */
+  private static final class Entry {
+    private final CachedComment[] comments;
+    private final long bytes;
+
+    private Entry(CachedComment[] comments, long bytes) {
+      this.comments = comments;
+      this.bytes = bytes;
+    }
+  }
+
+  /** The 128 leading bits of the SHA-256 hash of a line group. */
+  private static final class Key {
+    private final long high;
+    private final long low;
+
+    private Key(long high, long low) {
+      this.high = high;
+      this.low = low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(high);
+    }
+  }
+
+  /**
+   * Returns the comments of a line group, extracting and caching them if the group is not cached.
+   *
+   * @param lineGroup the added lines to extract the comments of
+   * @param extractor the function that extracts the comments of a line group
+   * @return new comments with the content, type and filtered flag of the comments of the group
+   */
+  public List<CommentDTO> get(String lineGroup, Function<String, List<CommentDTO>> extractor) {
+    Key key = key(lineGroup);
+    Segment segment = segments[(int) (key.low >>> (Long.SIZE - 4))];
+    Entry cached = segment.get(key);
+    if (cached != null) {
+      hits.increment();
+      List<CommentDTO> commentDTOs = new ArrayList<>(cached.comments.length);
+      for (CachedComment comment : cached.comments) {
+        commentDTOs.add(new CommentDTO(comment.content, comment.filtered, comment.type));
+      }
+      return commentDTOs;
+    }
+
+    misses.increment();
+    List<CommentDTO> commentDTOs = extractor.apply(lineGroup);
+    CachedComment[] comments = new CachedComment[commentDTOs.size()];
+    long bytes = ENTRY_OVERHEAD_BYTES;
+    for (int i = 0; i < comments.length; i++) {
+      comments[i] = new CachedComment(commentDTOs.get(i));
+      bytes += COMMENT_OVERHEAD_BYTES + 2L * comments[i].content.length();
+    }
+    evictions.add(segment.put(key, new Entry(comments, bytes)));
+    return commentDTOs;
+  }
+
+  /**
+   * Returns the share of lookups that found a cached line group.
+   *
+   * @return the hit rate between 0 and 1, or 0 if nothing was looked up
+   */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  /**
+   * Returns the number of cached line groups.
+   *
+   * @return the number of cached line groups
+   */
+  public long getEntryCount() {
+    long entries = 0;
+    for (Segment segment : segments) {
+      entries += segment.getEntryCount();
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the estimated memory of the cached comments.
+   *
+   * @return the estimated memory in bytes
+   */
+  public long getEstimatedBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.getBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns a summary of the cache statistics.
+   *
+   * @return the hit rate, hits, misses, evictions, entries and estimated memory of the cache
+   */
+  public String getStats() {
+    return String.format(
+        "comment cache: %.1f%% hit rate, %d hits, %d misses, %d evictions, %d entries, %d KiB",
+        getHitRate() * 100,
+        hits.sum(),
+        misses.sum(),
+        evictions.sum(),
+        getEntryCount(),
+        getEstimatedBytes() / 1024);
+  }
+
+  private Key key(String lineGroup) {
+    MessageDigest digest = digests.get();
+    ByteBuffer hash = ByteBuffer.wrap(digest.digest(lineGroup.getBytes(StandardCharsets.UTF_8)));
+    return new Key(hash.getLong(), hash.getLong());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /** A part of the cache with its own lock and least-recently-used order. */
+  private static final class Segment {
+    private final long maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private Segment(long maxEntries, long maxBytes) {
+      this.maxEntries = maxEntries;
+      this.maxBytes = maxBytes;
+    }
+
+    private synchronized Entry get(Key key) {
+      return entries.get(key);
+    }
+
+    /** Adds a line group and returns the number of evicted line groups. */
+    private synchronized int put(Key key, Entry entry) {
+      // a group that another worker cached in the meantime, or that exceeds the budget on its own,
+      // is not added
+      if (entry.bytes > maxBytes || entries.containsKey(key)) {
+        return 0;
+      }
+      entries.put(key, entry);
+      bytes += entry.bytes;
+
+      int evicted = 0;
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (entries.size() > maxEntries || bytes > maxBytes) {
+        bytes -= eldest.next().bytes;
+        eldest.remove();
+        evicted++;
+      }
+      return evicted;
+    }
+
+    private synchronized int getEntryCount() {
+      return entries.size();
+    }
+
+    private synchronized long getBytes() {
+      return bytes;
+    }
+  }
+}
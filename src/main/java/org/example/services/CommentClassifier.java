@@ -0,0 +1,171 @@
+package org.example.services;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies a comment for the heuristic filters of Maldonado et al. (2017) in a single pass over
+ * its characters. The keyword rules (SATD tags, license words and auto-generated phrases) are
+ * compiled into one Aho-Corasick automaton and the source code rules into one deterministic pattern
+ * automaton, so adding a rule does not add another scan of the comment.
+ *
+ * <p>Keywords are matched case-insensitively: the keyword and the comment are lowercased with the
+ * same character mappings as {@link String#toLowerCase()} in a locale without special casing rules,
+ * apart from the context-sensitive final sigma.
+ */
+public class CommentClassifier {
+  /** The comment contains a SATD tag. */
+  public static final int SATD_TAG = 1;
+  /** The comment contains a license word. */
+  public static final int LICENSE = 1 << 1;
+  /** The comment contains a source code pattern. */
+  public static final int SOURCE_CODE = 1 << 2;
+  /** The comment contains a phrase of an IDE auto-generated comment. */
+  public static final int AUTO_GENERATED = 1 << 3;
+  /** The comment is empty or only contains whitespace. */
+  public static final int BLANK = 1 << 4;
+
+  public static final List<String> DEFAULT_SATD_TAGS = List.of("fixme", "xxx", "todo");
+  public static final List<String> DEFAULT_LICENSE_WORDS = List.of("license", "copyright");
+  public static final List<String> DEFAULT_AUTO_GENERATED_PHRASES =
+      List.of("todo auto-generated");
+
+  /** Common Java syntax for control structures, primitive wrapper types and class methods. */
+  private static final List<String> SOURCE_CODE_PATTERNS =
+      List.of(
+          "else\\s*\\{",
+          "try\\s*\\{",
+          "do\\s*\\{",
+          "finally\\s*\\{",
+          "if\\s*\\(",
+          "for\\s*\\(",
+          "while\\s*\\(",
+          "switch\\s*\\(",
+          "Long\\s*\\(",
+          "Byte\\s*\\(",
+          "Double\\s*\\(",
+          "Float\\s*\\(",
+          "Integer\\s*\\(",
+          "Short\\s*\\(",
+          "BigDecimal\\s*\\(",
+          "BigInteger\\s*\\(",
+          "Character\\s*\\(",
+          "Boolean\\s*\\(",
+          "String\\s*\\(",
+          "assert\\s*\\(",
+          "System\\.out.",
+          "public\\s*void",
+          "private\\s*static\\*final",
+          "catch\\s*\\(");
+
+  private static final char CAPITAL_I_WITH_DOT_ABOVE = '\u0130';
+  private static final char COMBINING_DOT_ABOVE = '\u0307';
+
+  private final KeywordAutomaton keywords;
+  private final PatternAutomaton sourceCode;
+
+  /** Constructs a new CommentClassifier with the default rules. */
+  public CommentClassifier() {
+    this(DEFAULT_SATD_TAGS, DEFAULT_LICENSE_WORDS, DEFAULT_AUTO_GENERATED_PHRASES);
+  }
+
+  /**
+   * Constructs a new CommentClassifier with the given keyword rules and the default source code
+   * rules.
+   *
+   * @param satdTags the tags that mark a comment as SATD, such as "todo" or "hack"
+   * @param licenseWords the words that mark a comment as a license
+   * @param autoGeneratedPhrases the phrases that mark a comment as generated by an IDE
+   */
+  public CommentClassifier(
+      List<String> satdTags, List<String> licenseWords, List<String> autoGeneratedPhrases) {
+    Map<String, Integer> keywordFlags = new LinkedHashMap<>();
+    addKeywords(keywordFlags, satdTags, SATD_TAG);
+    addKeywords(keywordFlags, licenseWords, LICENSE);
+    addKeywords(keywordFlags, autoGeneratedPhrases, AUTO_GENERATED);
+    keywords = new KeywordAutomaton(keywordFlags);
+
+    Map<String, Integer> patternFlags = new LinkedHashMap<>();
+    for (String pattern : SOURCE_CODE_PATTERNS) {
+      patternFlags.put(pattern, SOURCE_CODE);
+    }
+    sourceCode = new PatternAutomaton(patternFlags);
+  }
+
+  private static void addKeywords(Map<String, Integer> keywordFlags, List<String> words, int flag) {
+    for (String word : words) {
+      String lowerCase = toLowerCase(word);
+      if (!lowerCase.isEmpty()) {
+        keywordFlags.merge(lowerCase, flag, (a, b) -> a | b);
+      }
+    }
+  }
+
+  private static String toLowerCase(String word) {
+    StringBuilder lowerCase = new StringBuilder();
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (c == CAPITAL_I_WITH_DOT_ABOVE) {
+        lowerCase.append('i').append(COMBINING_DOT_ABOVE);
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < word.length()
+          && Character.isLowSurrogate(word.charAt(i + 1))) {
+        lowerCase.appendCodePoint(
+            Character.toLowerCase(Character.toCodePoint(c, word.charAt(++i))));
+      } else {
+        lowerCase.append(Character.toLowerCase(c));
+      }
+    }
+    return lowerCase.toString();
+  }
+
+  /**
+   * Returns the flags of every rule that the given comment matches.
+   *
+   * @param comment the comment to classify
+   * @return a combination of {@link #SATD_TAG}, {@link #LICENSE}, {@link #SOURCE_CODE}, {@link
+   *     #AUTO_GENERATED} and {@link #BLANK}
+   */
+  public int classify(CharSequence comment) {
+    int flags = 0;
+    boolean blank = true;
+    int keywordState = keywords.start();
+    int sourceCodeState = sourceCode.start();
+
+    int length = comment.length();
+    for (int i = 0; i < length; i++) {
+      char c = comment.charAt(i);
+      sourceCodeState = sourceCode.next(sourceCodeState, c);
+      flags |= sourceCode.flags(sourceCodeState);
+      if (blank && !Character.isWhitespace(c)) {
+        blank = false;
+      }
+
+      if (c == CAPITAL_I_WITH_DOT_ABOVE) {
+        keywordState = keywords.next(keywordState, 'i');
+        flags |= keywords.flags(keywordState);
+        keywordState = keywords.next(keywordState, COMBINING_DOT_ABOVE);
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(comment.charAt(i + 1))) {
+        char low = comment.charAt(++i);
+        sourceCodeState = sourceCode.next(sourceCodeState, low);
+        flags |= sourceCode.flags(sourceCodeState);
+        int lowerCase = Character.toLowerCase(Character.toCodePoint(c, low));
+        if (Character.isBmpCodePoint(lowerCase)) {
+          keywordState = keywords.next(keywordState, (char) lowerCase);
+        } else {
+          keywordState = keywords.next(keywordState, Character.highSurrogate(lowerCase));
+          flags |= keywords.flags(keywordState);
+          keywordState = keywords.next(keywordState, Character.lowSurrogate(lowerCase));
+        }
+      } else {
+        keywordState = keywords.next(keywordState, Character.toLowerCase(c));
+      }
+      flags |= keywords.flags(keywordState);
+    }
+
+    return blank ? flags | BLANK : flags;
+  }
+}
@@ -0,0 +1,294 @@
+package org.example.services;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.bson.types.ObjectId;
+import org.example.daos.CommentColumns;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.CommentDTO;
+
+/**
+ * Writes comments to a comment column file, see {@link CommentColumns} for its layout. The
+ * comments are collected until a chunk is full, and the chunk is then encoded column by column and
+ * appended to the file, so only the comments of one chunk are held in memory. A file that exists
+ * is replaced.
+ */
+public class CommentColumnWriter implements CommentSink {
+  /** The default number of comments of a chunk. */
+  public static final int DEFAULT_CHUNK_COMMENTS = 65_536;
+
+  private static final float MILLIS_IN_SECOND = 1000;
+  private static final int BUFFER_BYTES = 1 << 20;
+
+  private final Path path;
+  private final OutputStream output;
+  private final int chunkComments;
+  private final List<CommentDTO> chunk = new ArrayList<>();
+  private final Instant start = Instant.now();
+  private long writtenCount;
+  private final LongAdder writtenMetric = MetricsRegistry.getDefault().counter("comments_written");
+
+  /**
+   * Creates or replaces a comment column file with chunks of the default size.
+   *
+   * @param path the file to write the comments to
+   * @throws UncheckedIOException if the file cannot be created
+   */
+  public CommentColumnWriter(Path path) {
+    this(path, DEFAULT_CHUNK_COMMENTS);
+  }
+
+  /**
+   * Creates or replaces a comment column file.
+   *
+   * @param path the file to write the comments to
+   * @param chunkComments the number of comments of a chunk
+   * @throws UncheckedIOException if the file cannot be created
+   */
+  public CommentColumnWriter(Path path, int chunkComments) {
+    this.path = path;
+    this.chunkComments = chunkComments;
+    try {
+      output = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_BYTES);
+      ByteBuffer header =
+          ByteBuffer.allocate(CommentColumns.FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(CommentColumns.MAGIC).put(CommentColumns.VERSION);
+      output.write(header.array());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create comment column file " + path, e);
+    }
+  }
+
+  /**
+   * Adds comments to the file. The comments are only certain to be in the file once the writer is
+   * closed.
+   *
+   * @param commentDTOs the comments to write
+   * @return a completed future
+   */
+  @Override
+  public synchronized CompletableFuture<Void> write(List<CommentDTO> commentDTOs) {
+    for (CommentDTO commentDTO : commentDTOs) {
+      chunk.add(commentDTO);
+      if (chunk.size() == chunkComments) {
+        writeChunk();
+      }
+    }
+    writtenCount += commentDTOs.size();
+    writtenMetric.add(commentDTOs.size());
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private void writeChunk() {
+    List<byte[]> columns = new ArrayList<>();
+    ByteBuffer header =
+        ByteBuffer.allocate(CommentColumns.CHUNK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(chunk.size());
+    for (String name : CommentColumns.NAMES) {
+      byte[] column = encodeColumn(name);
+      header.putInt(column.length);
+      columns.add(column);
+    }
+    try {
+      output.write(header.array());
+      for (byte[] column : columns) {
+        output.write(column);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write to comment column file " + path, e);
+    }
+    chunk.clear();
+  }
+
+  private byte[] encodeColumn(String name) {
+    switch (name) {
+      case "_id":
+        return encodeObjectIds(CommentDTO::getId);
+      case "content":
+        return encodeStrings(CommentDTO::getContent);
+      case "content_hash":
+        return encodeStrings(CommentDTO::getContentHash);
+      case "filtered":
+        return encodeBits(commentDTO -> commentDTO.isFiltered() ? 1 : 0, 1);
+      case "type":
+        return encodeBits(
+            commentDTO -> commentDTO.getType() == null ? 0 : commentDTO.getType().ordinal() + 1,
+            CommentColumns.TYPE_BITS);
+      case "project_name":
+        return encodeStrings(CommentDTO::getProjectName);
+      case "vcs_id":
+        return encodeObjectIds(CommentDTO::getVcsId);
+      case "vcs_url":
+        return encodeStrings(CommentDTO::getVcsUrl);
+      case "branch_id":
+        return encodeObjectIds(CommentDTO::getBranchId);
+      case "branch_name":
+        return encodeStrings(CommentDTO::getBranchName);
+      case "commit_id":
+        return encodeObjectIds(CommentDTO::getCommitId);
+      case "commit_hash":
+        return encodeStrings(CommentDTO::getCommitHash);
+      case "committer_date":
+        return encodeDates(CommentDTO::getCommitterDate);
+      case "file_action_id":
+        return encodeObjectIds(CommentDTO::getFileActionId);
+      case "file_id":
+        return encodeObjectIds(CommentDTO::getFileId);
+      case "file_path":
+        return encodeStrings(CommentDTO::getFilePath);
+      case "hunk_id":
+        return encodeObjectIds(CommentDTO::getHunkId);
+      case "hunk_new_start":
+        return encodeInts(CommentDTO::getHunkNewStart);
+      case "hunk_old_start":
+        return encodeInts(CommentDTO::getHunkOldStart);
+      default:
+        throw new IllegalStateException("Unknown comment column " + name);
+    }
+  }
+
+  private byte[] encodeStrings(Function<CommentDTO, String> getter) {
+    Map<String, Integer> codes = new HashMap<>();
+    ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+    ByteArrayOutputStream rows = new ByteArrayOutputStream();
+    for (CommentDTO commentDTO : chunk) {
+      String string = getter.apply(commentDTO);
+      if (string == null) {
+        writeVarint(rows, 0);
+        continue;
+      }
+      Integer code = codes.get(string);
+      if (code == null) {
+        code = codes.size() + 1;
+        codes.put(string, code);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(dictionary, bytes.length);
+        dictionary.writeBytes(bytes);
+      }
+      writeVarint(rows, code);
+    }
+    ByteArrayOutputStream column = new ByteArrayOutputStream();
+    writeVarint(column, codes.size());
+    column.writeBytes(dictionary.toByteArray());
+    column.writeBytes(rows.toByteArray());
+    return column.toByteArray();
+  }
+
+  private byte[] encodeObjectIds(Function<CommentDTO, ObjectId> getter) {
+    ByteArrayOutputStream column = new ByteArrayOutputStream();
+    ObjectId previous = null;
+    int previousTimestamp = 0;
+    long previousRest = 0;
+    for (CommentDTO commentDTO : chunk) {
+      ObjectId id = getter.apply(commentDTO);
+      if (id == null) {
+        writeVarint(column, CommentColumns.OBJECT_ID_NULL);
+      } else if (id.equals(previous)) {
+        writeVarint(column, CommentColumns.OBJECT_ID_REPEATED);
+      } else {
+        ByteBuffer bytes = ByteBuffer.wrap(id.toByteArray());
+        int timestamp = bytes.getInt();
+        long rest = bytes.getLong();
+        writeVarint(column, CommentColumns.OBJECT_ID_DELTA);
+        writeVarint(column, zigzag(timestamp - previousTimestamp));
+        writeVarint(column, zigzag(rest - previousRest));
+        previous = id;
+        previousTimestamp = timestamp;
+        previousRest = rest;
+      }
+    }
+    return column.toByteArray();
+  }
+
+  private byte[] encodeDates(Function<CommentDTO, LocalDateTime> getter) {
+    ByteArrayOutputStream column = new ByteArrayOutputStream();
+    long previous = 0;
+    for (CommentDTO commentDTO : chunk) {
+      LocalDateTime date = getter.apply(commentDTO);
+      if (date == null) {
+        writeVarint(column, 0);
+      } else {
+        long millis = date.toInstant(ZoneOffset.UTC).toEpochMilli();
+        writeVarint(column, zigzag(millis - previous) + 1);
+        previous = millis;
+      }
+    }
+    return column.toByteArray();
+  }
+
+  private byte[] encodeInts(ToIntFunction<CommentDTO> getter) {
+    ByteArrayOutputStream column = new ByteArrayOutputStream();
+    for (CommentDTO commentDTO : chunk) {
+      writeVarint(column, zigzag(getter.applyAsInt(commentDTO)));
+    }
+    return column.toByteArray();
+  }
+
+  private byte[] encodeBits(ToIntFunction<CommentDTO> getter, int bits) {
+    byte[] column = new byte[(chunk.size() * bits + Byte.SIZE - 1) / Byte.SIZE];
+    long bit = 0;
+    for (CommentDTO commentDTO : chunk) {
+      int value = getter.applyAsInt(commentDTO);
+      for (int i = 0; i < bits; i++, bit++) {
+        if ((value >>> i & 1) != 0) {
+          column[(int) (bit / Byte.SIZE)] |= (byte) (1 << bit % Byte.SIZE);
+        }
+      }
+    }
+    return column;
+  }
+
+  private static long zigzag(long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7fL) != 0) {
+      output.write((int) (value & 0x7f | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  /** Prints the number of written comments and the write throughput since the file was created. */
+  @Override
+  public synchronized void reportThroughput() {
+    float seconds = Duration.between(start, Instant.now()).toMillis() / MILLIS_IN_SECOND;
+    System.out.printf(
+        "%d comments written to %s (%.1f comments/s)%n",
+        writtenCount, path, seconds > 0 ? writtenCount / seconds : 0);
+  }
+
+  /** Writes the last chunk and closes the file. */
+  @Override
+  public synchronized void close() {
+    try {
+      if (!chunk.isEmpty()) {
+        writeChunk();
+      }
+      output.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not close comment column file " + path, e);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package org.example.services;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+import org.example.daos.CommentCodec;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.CommentDTO;
+
+/**
+ * Writes comments to a local file instead of the comments collection, so comments can be extracted
+ * without a MongoDB server. A file that ends in ".bson" gets the BSON documents of the comments one
+ * after the other, which mongorestore can load into the collection named after the file. Any other
+ * file gets one JSON document per line in relaxed MongoDB Extended JSON, which mongoimport can
+ * load.
+ *
+ * <p>The comments are encoded by a {@link CommentCodec}, so they have the same fields as in the
+ * comments collection. The comment contents collection and the dead-letter collection have no file
+ * counterpart. A file that exists is replaced.
+ */
+public class CommentFileWriter implements CommentSink {
+  private static final float MILLIS_IN_SECOND = 1000;
+  private static final int BUFFER_BYTES = 1 << 20;
+
+  private final Path path;
+  private final OutputStream output;
+  private final boolean bson;
+  private final CommentCodec codec;
+  private final EncoderContext encoderContext = EncoderContext.builder().build();
+  private final JsonWriterSettings jsonSettings =
+      JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+  private final Instant start = Instant.now();
+  private long writtenCount;
+  private final LongAdder writtenMetric = MetricsRegistry.getDefault().counter("comments_written");
+
+  /**
+   * Creates or replaces a comment file.
+   *
+   * @param path the .bson file or JSON lines file to write the comments to
+   * @param compactComments whether to also leave out the empty strings and zero start lines of
+   *     comments
+   * @throws UncheckedIOException if the file cannot be created
+   */
+  public CommentFileWriter(Path path, boolean compactComments) {
+    this.path = path;
+    this.bson = path.getFileName().toString().endsWith(".bson");
+    this.codec = new CommentCodec(compactComments);
+    try {
+      output = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_BYTES);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create comment file " + path, e);
+    }
+  }
+
+  /**
+   * Writes comments to the file. The comments are buffered, so they are only certain to be in the
+   * file once the writer is closed.
+   *
+   * @param commentDTOs the comments to write
+   * @return a completed future
+   */
+  @Override
+  public synchronized CompletableFuture<Void> write(List<CommentDTO> commentDTOs) {
+    try {
+      if (bson) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        for (CommentDTO commentDTO : commentDTOs) {
+          codec.encode(new BsonBinaryWriter(buffer), commentDTO, encoderContext);
+        }
+        buffer.pipe(output);
+      } else {
+        for (CommentDTO commentDTO : commentDTOs) {
+          StringWriter json = new StringWriter();
+          codec.encode(new JsonWriter(json, jsonSettings), commentDTO, encoderContext);
+          json.write('\n');
+          output.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write to comment file " + path, e);
+    }
+    writtenCount += commentDTOs.size();
+    writtenMetric.add(commentDTOs.size());
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /** Prints the number of written comments and the write throughput since the file was created. */
+  @Override
+  public synchronized void reportThroughput() {
+    float seconds = Duration.between(start, Instant.now()).toMillis() / MILLIS_IN_SECOND;
+    System.out.printf(
+        "%d comments written to %s (%.1f comments/s)%n",
+        writtenCount, path, seconds > 0 ? writtenCount / seconds : 0);
+  }
+
+  /** Flushes the buffered comments and closes the file. */
+  @Override
+  public synchronized void close() {
+    try {
+      output.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not close comment file " + path, e);
+    }
+  }
+}
@@ -0,0 +1,397 @@
+package org.example.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.daos.HunkReader;
+import org.example.metrics.MetricsRegistry;
+import org.example.metrics.MetricsReporter;
+import org.example.metrics.Timer;
+import org.example.models.CommentDTO;
+import org.example.models.HunkRecord;
+
+/**
+ * Extracts comments from the intermediate hunk collection in three concurrent stages: a reader that
+ * prefetches the next page of hunks, a parser that extracts the comments of a page and a writer
+ * that persists the comments of a page. The stages are connected by bounded queues, so a stage that
+ * runs ahead blocks instead of piling up pages in memory. The checkpoint of a page is only added
+ * after the comments of that page have been written.
+ *
+ * <p>With more than one parse worker, the parse stage splits a page into contiguous chunks of hunks
+ * that are extracted concurrently. The chunks are joined in page order, so the comments of a page
+ * are in the same order as in a run with a single worker.
+ *
+ * <p>The writer hands the comments of a page to a {@link CommentWriter}, which writes them in
+ * unordered batches while the next pages are parsed. The checkpoints of pages are still added in
+ * page order, each as soon as the comments of its page and of all earlier pages have been written.
+ *
+ * <p>By default, the reader fills the pages from one server-side cursor that fetches the hunks in
+ * small batches, instead of querying every page with a sort and a limit.
+ *
+ * <p>The hunks can also be read from any {@link HunkReader}, such as a local export of the hunk
+ * collection, and the comments handed to any {@link CommentSink}, such as a local file, so that a
+ * run does not need a database.
+ *
+ * <p>The read and write stages, and the batches of the comment writer, mostly wait on MongoDB. They
+ * can run on virtual threads, see {@link BlockingExecutors}; the comments are then always extracted
+ * by the pool of parse workers, which are platform threads.
+ *
+ * <p>The number of hunks in a page, and of comments in a write batch, is set by a {@link
+ * PageSizeController}, which can adjust them after every page to the memory and time that the
+ * pages take.
+ *
+ * <p>The stages record their page fetch and hunk parse latencies, the number of processed hunks and
+ * the depth of the queues in the {@link MetricsRegistry}, which is reported as one line at a fixed
+ * interval during the run.
+ */
+public class CommentPipeline {
+  private static final int STAGE_COUNT = 3;
+  private static final int CHUNKS_PER_WORKER = 4;
+
+  private final HunkService hunkService;
+  private final CommentService commentService;
+  private final ConfigDAO configDAO;
+  private final Function<HunkRecord, List<CommentDTO>> hunkProcessor;
+  private final int queueCapacity;
+  private final int parseWorkers;
+  private final boolean cursorRead;
+  private final int readBatchSize;
+  private final boolean virtualThreads;
+  private final ExtractorConfiguration extractorConfig;
+  private final PageSizeController pageSize;
+
+  private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+  private final Timer pageFetch = metrics.timer("page_fetch");
+  private final Timer hunkParse = metrics.timer("hunk_parse");
+  private final LongAdder hunksParsed = metrics.counter("hunks_parsed");
+  private final LongAdder hunksCheckpointed = metrics.counter("hunks_checkpointed");
+
+  /**
+   * Constructs a new CommentPipeline.
+   *
+   * @param hunkService the service used to read pages of hunks
+   * @param commentService the service used to persist the extracted comments
+   * @param configDAO the data access object used to persist the checkpoint of a written page
+   * @param hunkProcessor the function that extracts the comments of a single hunk
+   * @param extractorConfig the settings of the queues, parse workers and hunk reads
+   */
+  public CommentPipeline(
+      HunkService hunkService,
+      CommentService commentService,
+      ConfigDAO configDAO,
+      Function<HunkRecord, List<CommentDTO>> hunkProcessor,
+      ExtractorConfiguration extractorConfig) {
+    this.hunkService = hunkService;
+    this.commentService = commentService;
+    this.configDAO = configDAO;
+    this.hunkProcessor = hunkProcessor;
+    this.queueCapacity = extractorConfig.getPipelineQueueCapacity();
+    this.parseWorkers = extractorConfig.getParseWorkers();
+    this.cursorRead = extractorConfig.isCursorRead();
+    this.readBatchSize = extractorConfig.getReadBatchSize();
+    this.virtualThreads = extractorConfig.isVirtualThreads();
+    this.extractorConfig = extractorConfig;
+    this.pageSize = new PageSizeController(extractorConfig);
+  }
+
+  /**
+   * Runs the pipeline until every hunk after the given ID has been processed. Fails fast: if one
+   * stage fails, the other stages are interrupted and the failure is rethrown.
+   *
+   * @param lastSeenId the ID of the last processed hunk, or null to start at the first hunk
+   * @param limit the maximum number of hunks in a page
+   * @param totalHunksCount the number of hunks to be processed, used for progress reporting
+   */
+  public void run(ObjectId lastSeenId, int limit, long totalHunksCount) {
+    run(lastSeenId, null, limit, totalHunksCount, configDAO::addLastId);
+  }
+
+  /**
+   * Runs the pipeline until every hunk after the first given ID, up to and including the second
+   * given ID, has been processed. Instead of adding the checkpoints of the pages to the
+   * configurations collection, they are handed to the given consumer, in page order. A consumer
+   * that throws fails the pipeline.
+   *
+   * @param lastSeenId the ID of the last processed hunk, or null to start at the first hunk
+   * @param untilId the ID of the last hunk to process, or null to process every following hunk
+   * @param limit the maximum number of hunks in a page
+   * @param totalHunksCount the number of hunks to be processed, used for progress reporting
+   * @param checkpoint receives the ID of the last hunk of a page once its comments are written
+   */
+  public void run(
+      ObjectId lastSeenId,
+      ObjectId untilId,
+      int limit,
+      long totalHunksCount,
+      Consumer<ObjectId> checkpoint) {
+    runStages(
+        pages ->
+            cursorRead
+                ? readAll(hunkService.openHunkCursor(lastSeenId, untilId, readBatchSize), pages)
+                : read(lastSeenId, untilId, pages),
+        this::newCommentWriter,
+        limit,
+        totalHunksCount,
+        checkpoint);
+  }
+
+  /**
+   * Runs the pipeline over every hunk of the given reader, and hands the comments to the given sink
+   * instead of the comments collection. No checkpoints are added, so neither the reader nor the
+   * sink has to be a database. The reader and the sink are closed when the pipeline finishes.
+   *
+   * @param hunks the reader of the hunks to process
+   * @param sink the sink that stores the extracted comments
+   * @param limit the maximum number of hunks in a page
+   * @param totalHunksCount the number of hunks to be processed, or 0 if it is not known
+   */
+  public void run(HunkReader hunks, CommentSink sink, int limit, long totalHunksCount) {
+    runStages(pages -> readAll(hunks, pages), () -> sink, limit, totalHunksCount, lastId -> {});
+  }
+
+  private void runStages(
+      ReadStage readStage,
+      Supplier<CommentSink> sinkFactory,
+      int limit,
+      long totalHunksCount,
+      Consumer<ObjectId> checkpoint) {
+    pageSize.start(limit);
+    BlockingQueue<List<HunkRecord>> pages = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<PageResult> results = new ArrayBlockingQueue<>(queueCapacity);
+    metrics.gauge("hunks_total", () -> totalHunksCount);
+    metrics.gauge("pages_queue_depth", pages::size);
+    metrics.gauge("results_queue_depth", results::size);
+    MetricsReporter reporter =
+        new MetricsReporter(metrics, extractorConfig.getMetricsReportSeconds());
+    ExecutorService stages = BlockingExecutors.newExecutor(virtualThreads, STAGE_COUNT);
+    ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(stages);
+    // on virtual threads, the comments are still extracted on platform threads
+    ExecutorService workers =
+        parseWorkers > 1 || virtualThreads ? Executors.newFixedThreadPool(parseWorkers) : null;
+
+    completion.submit(() -> readStage.read(pages));
+    completion.submit(() -> parse(pages, results, workers));
+    completion.submit(() -> write(results, sinkFactory, checkpoint));
+    try {
+      for (int i = 0; i < STAGE_COUNT; i++) {
+        completion.take().get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Comment pipeline failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Comment pipeline was interrupted", e);
+    } finally {
+      stages.shutdownNow();
+      if (workers != null) {
+        workers.shutdownNow();
+      }
+      reporter.close();
+      metrics.removeGauge("hunks_total");
+      metrics.removeGauge("pages_queue_depth");
+      metrics.removeGauge("results_queue_depth");
+    }
+  }
+
+  /**
+   * Reads pages of hunks ordered by ID and hands them to the parse stage. An empty page marks the
+   * end of the hunks.
+   */
+  private Void read(ObjectId lastSeenId, ObjectId untilId, BlockingQueue<List<HunkRecord>> pages)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    List<HunkRecord> hunks = hunkService.getHunks(lastSeenId, untilId, pageSize.getPageSize());
+    recordFetch(start);
+    while (!hunks.isEmpty()) {
+      pages.put(hunks);
+      lastSeenId = hunks.get(hunks.size() - 1).getId();
+      start = System.nanoTime();
+      hunks = hunkService.getHunks(lastSeenId, untilId, pageSize.getPageSize());
+      recordFetch(start);
+    }
+    pages.put(List.of());
+    return null;
+  }
+
+  /**
+   * Reads pages of hunks from one reader, such as a cursor over the hunks, and closes it. The fetch
+   * time of a page is the time spent in the reader while filling it, without the time spent waiting
+   * for room in the queue.
+   */
+  private Void readAll(HunkReader reader, BlockingQueue<List<HunkRecord>> pages)
+      throws InterruptedException {
+    try (reader) {
+      List<HunkRecord> hunks = new ArrayList<>();
+      long start = System.nanoTime();
+      while (reader.hasNext()) {
+        hunks.add(reader.next());
+        if (hunks.size() >= pageSize.getPageSize()) {
+          recordFetch(start);
+          pages.put(hunks);
+          hunks = new ArrayList<>();
+          start = System.nanoTime();
+        }
+      }
+      if (!hunks.isEmpty()) {
+        recordFetch(start);
+        pages.put(hunks);
+      }
+    }
+    pages.put(List.of());
+    return null;
+  }
+
+  /** Extracts the comments of every page and hands them to the write stage. */
+  private Void parse(
+      BlockingQueue<List<HunkRecord>> pages,
+      BlockingQueue<PageResult> results,
+      ExecutorService workers)
+      throws InterruptedException {
+    List<HunkRecord> hunks = pages.take();
+    while (!hunks.isEmpty()) {
+      long start = System.nanoTime();
+      List<CommentDTO> commentDTOs =
+          workers == null ? extractChunk(hunks) : extractPage(hunks, workers);
+      pageSize.recordPage(hunks, commentDTOs, System.nanoTime() - start);
+      ObjectId lastId = hunks.get(hunks.size() - 1).getId();
+      results.put(new PageResult(lastId, hunks.size(), commentDTOs));
+      hunks = pages.take();
+    }
+    results.put(PageResult.END);
+    return null;
+  }
+
+  /**
+   * Extracts the comments of a page by handing contiguous chunks of its hunks to the workers and
+   * joining their results in page order.
+   */
+  private List<CommentDTO> extractPage(List<HunkRecord> hunks, ExecutorService workers)
+      throws InterruptedException {
+    int chunkSize = Math.max(1, hunks.size() / (parseWorkers * CHUNKS_PER_WORKER));
+    List<Future<List<CommentDTO>>> chunks = new ArrayList<>();
+    for (int from = 0; from < hunks.size(); from += chunkSize) {
+      List<HunkRecord> chunk = hunks.subList(from, Math.min(from + chunkSize, hunks.size()));
+      chunks.add(workers.submit(() -> extractChunk(chunk)));
+    }
+
+    List<CommentDTO> commentDTOs = new ArrayList<>();
+    try {
+      for (Future<List<CommentDTO>> chunk : chunks) {
+        commentDTOs.addAll(chunk.get());
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not extract the comments of a page", e.getCause());
+    }
+    return commentDTOs;
+  }
+
+  private List<CommentDTO> extractChunk(List<HunkRecord> hunks) {
+    List<CommentDTO> commentDTOs = new ArrayList<>();
+    for (HunkRecord hunk : hunks) {
+      long start = System.nanoTime();
+      commentDTOs.addAll(hunkProcessor.apply(hunk));
+      hunkParse.recordSince(start);
+    }
+    hunksParsed.add(hunks.size());
+    return commentDTOs;
+  }
+
+  /** Persists the comments of every page, followed by the checkpoint of that page. */
+  private Void write(
+      BlockingQueue<PageResult> results,
+      Supplier<CommentSink> sinkFactory,
+      Consumer<ObjectId> checkpoint)
+      throws InterruptedException {
+    Deque<PageResult> unwrittenPages = new ArrayDeque<>();
+
+    try (CommentSink sink = sinkFactory.get()) {
+      PageResult page = results.take();
+      while (page != PageResult.END) {
+        sink.setBatchSize(pageSize.getWriteBatchSize());
+        page.written =
+            page.commentDTOs.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : sink.write(page.commentDTOs);
+        unwrittenPages.add(page);
+        addCheckpoints(unwrittenPages, checkpoint, false);
+
+        page = results.take();
+      }
+      addCheckpoints(unwrittenPages, checkpoint, true);
+      sink.reportThroughput();
+    }
+    return null;
+  }
+
+  private void recordFetch(long start) {
+    pageSize.recordFetch(System.nanoTime() - start);
+    pageFetch.recordSince(start);
+  }
+
+  private CommentSink newCommentWriter() {
+    return commentService.newCommentWriter(
+        extractorConfig.getWriteBatchSize(),
+        extractorConfig.getWritesInFlight(),
+        extractorConfig.getWriteMaxRetries(),
+        extractorConfig.getWriteRetryBackoffMillis(),
+        virtualThreads);
+  }
+
+  /**
+   * Adds the checkpoints of the oldest pages whose comments have been written, in page order.
+   *
+   * @param wait whether to wait until the comments of every page have been written
+   */
+  private void addCheckpoints(
+      Deque<PageResult> unwrittenPages, Consumer<ObjectId> checkpoint, boolean wait)
+      throws InterruptedException {
+    while (!unwrittenPages.isEmpty() && (wait || unwrittenPages.peek().written.isDone())) {
+      PageResult page = unwrittenPages.poll();
+      try {
+        page.written.get();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Could not write the comments of a page", e.getCause());
+      }
+      checkpoint.accept(page.lastId);
+      hunksCheckpointed.add(page.hunkCount);
+    }
+  }
+
+  /** Reads the pages of hunks and hands them to the parse stage, followed by an empty page. */
+  private interface ReadStage {
+    Void read(BlockingQueue<List<HunkRecord>> pages) throws InterruptedException;
+  }
+
+  /** The comments extracted from one page of hunks, together with the ID of its last hunk. */
+  private static final class PageResult {
+    private static final PageResult END = new PageResult(null, 0, List.of());
+
+    private final ObjectId lastId;
+    private final int hunkCount;
+    private final List<CommentDTO> commentDTOs;
+    /** Completes when the comments of the page have been written. Set by the write stage. */
+    private CompletableFuture<Void> written;
+
+    private PageResult(ObjectId lastId, int hunkCount, List<CommentDTO> commentDTOs) {
+      this.lastId = lastId;
+      this.hunkCount = hunkCount;
+      this.commentDTOs = commentDTOs;
+    }
+  }
+}
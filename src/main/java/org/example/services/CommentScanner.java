@@ -0,0 +1,16 @@
+package org.example.services;
+
+import java.util.List;
+import org.example.models.ScannedComment;
+
+/** Finds the comments in a piece of (possibly incomplete) Java source code. */
+public interface CommentScanner {
+
+  /**
+   * Returns the comments in the given code in order of appearance.
+   *
+   * @param code the Java code in which to find comments
+   * @return the comments in the code, or an empty list if the code could not be tokenized
+   */
+  List<ScannedComment> scan(String code);
+}
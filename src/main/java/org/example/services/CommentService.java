@@ -1,159 +1,293 @@
 package org.example.services;
 
-import com.github.javaparser.JavaParser;
-import com.github.javaparser.ParseResult;
-import com.github.javaparser.Position;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.comments.BlockComment;
-import com.github.javaparser.ast.comments.CommentsCollection;
-import com.github.javaparser.ast.comments.JavadocComment;
-import com.github.javaparser.ast.comments.LineComment;
-import java.time.LocalDateTime;
+import com.mongodb.client.MongoCursor;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.example.daos.CommentColumns;
 import org.example.daos.CommentDao;
 import org.example.models.CommentDTO;
 import org.example.models.CommentType;
+import org.example.models.HunkContext;
+import org.example.models.ScannedComment;
 
 /** A service for managing comments in source code files. */
 public class CommentService {
+  private static final int OBJECT_ID_LENGTH = 12;
 
   private final CommentDao commentDao;
-  private final JavaParser parser;
+  private final CommentScanner commentScanner;
+  private final CommentClassifier commentClassifier;
+  private final CommentCache commentCache;
 
   /**
-   * Constructs a new CommentService object.
+   * Constructs a new CommentService object that finds comments with JavaParser.
    *
    * @param commentDao the data access object used to store and retrieve comments
    */
   public CommentService(CommentDao commentDao) {
+    this(commentDao, new JavaParserCommentScanner());
+  }
+
+  /**
+   * Constructs a new CommentService object that filters comments with the default rules.
+   *
+   * @param commentDao the data access object used to store and retrieve comments
+   * @param commentScanner the scanner used to find the comments in a piece of code
+   */
+  public CommentService(CommentDao commentDao, CommentScanner commentScanner) {
+    this(commentDao, commentScanner, new CommentClassifier());
+  }
+
+  /**
+   * Constructs a new CommentService object.
+   *
+   * @param commentDao the data access object used to store and retrieve comments
+   * @param commentScanner the scanner used to find the comments in a piece of code
+   * @param commentClassifier the classifier that decides which comments are filtered out
+   */
+  public CommentService(
+      CommentDao commentDao, CommentScanner commentScanner, CommentClassifier commentClassifier) {
+    this(commentDao, commentScanner, commentClassifier, null);
+  }
+
+  /**
+   * Constructs a new CommentService object that caches the comments of line groups.
+   *
+   * @param commentDao the data access object used to store and retrieve comments
+   * @param commentScanner the scanner used to find the comments in a piece of code
+   * @param commentClassifier the classifier that decides which comments are filtered out
+   * @param commentCache the cache of the comments of line groups, or null to extract the comments
+   *     of every line group
+   */
+  public CommentService(
+      CommentDao commentDao,
+      CommentScanner commentScanner,
+      CommentClassifier commentClassifier,
+      CommentCache commentCache) {
     this.commentDao = commentDao;
-    parser = new JavaParser();
-    parser.getParserConfiguration().setPreprocessUnicodeEscapes(true);
+    this.commentScanner = commentScanner;
+    this.commentClassifier = commentClassifier;
+    this.commentCache = commentCache;
   }
 
   /**
-   * Maps a list of CommentDTO objects to a new list of CommentDTO objects, setting additional
-   * properties for each CommentDTO.
+   * Gives every comment of a hunk the shared metadata of that hunk.
+   *
+   * @param hunkContext the metadata of the hunk
+   * @param comments the comments extracted from the hunk
+   */
+  public void assignHunkContext(HunkContext hunkContext, List<CommentDTO> comments) {
+    for (CommentDTO commentDTO : comments) {
+      commentDTO.setHunkContext(hunkContext);
+    }
+  }
+
+  /**
+   * Gives every comment of a hunk an ID derived from the hunk ID and the position of the comment in
+   * the hunk. Extracting the comments of the same hunk again gives the same IDs, so writing them
+   * again is recognized as a duplicate instead of adding a copy.
+   *
+   * @param hunkId the ID of the hunk
+   * @param commentDTOs all comments of the hunk, in order of extraction
+   */
+  public void assignCommentIds(ObjectId hunkId, List<CommentDTO> commentDTOs) {
+    if (commentDTOs.isEmpty()) {
+      return;
+    }
+    MessageDigest digest = sha256();
+    byte[] hunkIdBytes = hunkId.toByteArray();
+    for (int ordinal = 0; ordinal < commentDTOs.size(); ordinal++) {
+      commentDTOs.get(ordinal).setId(commentId(digest, hunkIdBytes, ordinal));
+    }
+  }
+
+  /**
+   * Returns the first 12 bytes of the SHA-256 hash of the hunk ID and the ordinal as an ObjectId.
+   * Computing the hash resets the digest, so it is reused for the next comment of the hunk.
+   */
+  private static ObjectId commentId(MessageDigest digest, byte[] hunkIdBytes, int ordinal) {
+    digest.update(hunkIdBytes);
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(ordinal).array());
+    return new ObjectId(ByteBuffer.wrap(digest.digest(), 0, OBJECT_ID_LENGTH));
+  }
+
+  /**
+   * Gives every comment the hexadecimal SHA-256 hash of its content, which identifies the comment
+   * in the collection of unique comment contents.
+   *
+   * @param commentDTOs the comments to hash
+   */
+  public void assignContentHashes(List<CommentDTO> commentDTOs) {
+    MessageDigest digest = sha256();
+    for (CommentDTO commentDTO : commentDTOs) {
+      byte[] hash = digest.digest(commentDTO.getContent().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      commentDTO.setContentHash(hex.toString());
+    }
+  }
+
+  private MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Creates a writer that adds comments to the data store asynchronously in unordered batches. The
+   * writer must be closed after use.
+   *
+   * @param batchSize the maximum number of comments in one bulk write
+   * @param maxInFlight the maximum number of bulk writes that run at the same time
+   * @param maxRetries the maximum number of retries of a comment that fails with a transient error
+   * @param retryBackoffMillis the wait before the first retry, which doubles for every next retry
+   * @param virtualThreads whether every bulk write runs on its own virtual thread
+   * @return a new CommentWriter
+   */
+  public CommentWriter newCommentWriter(
+      int batchSize,
+      int maxInFlight,
+      int maxRetries,
+      long retryBackoffMillis,
+      boolean virtualThreads) {
+    return new CommentWriter(
+        commentDao, batchSize, maxInFlight, maxRetries, retryBackoffMillis, virtualThreads);
+  }
+
+  /**
+   * Returns the deduplicated view of the non-filtered comments of a project: every unique comment
+   * content of the project with the number of its comments, most common first.
    *
    * @param projectName the name of the project
-   * @param comments the list of CommentDTO objects to map
-   * @param committerDate the date the comment was committed
-   * @param originalHunkId the ID of the original hunk
-   * @param hunkNewStart the starting line number of the new hunk
-   * @param hunkOldStart the starting line number of the old hunk
-   * @param vcsId the ID of the version control system
-   * @param vcsUrl the URL of the version control system
-   * @param branchId the ID of the branch
-   * @param branchName the name of the branch
-   * @param commitId the ID of the commit
-   * @param commitHash the hash of the commit
-   * @param fileActionId the ID of the file action
-   * @param fileId the ID of the file
-   * @param filePath the path of the file
-   * @return a new list of CommentDTO objects
+   * @return documents with the project_name, content_hash, content and count of every unique
+   *     content
+   */
+  public List<Document> getUniqueContents(String projectName) {
+    return commentDao.getUniqueContents(projectName);
+  }
+
+  /**
+   * Returns the comments of a unique comment content, as returned by {@link
+   * #getUniqueContents(String)}.
+   *
+   * @param contentHash the content_hash of the unique content
+   * @return the comments with that content, in all projects
    */
-  public List<CommentDTO> mapToCommentDTO(
-      String projectName,
-      List<CommentDTO> comments,
-      LocalDateTime committerDate,
-      ObjectId originalHunkId,
-      int hunkNewStart,
-      int hunkOldStart,
-      ObjectId vcsId,
-      String vcsUrl,
-      ObjectId branchId,
-      String branchName,
-      ObjectId commitId,
-      String commitHash,
-      ObjectId fileActionId,
-      ObjectId fileId,
-      String filePath) {
-    return comments.stream()
-        .peek(
-            (commentDTO) -> {
-              commentDTO.setProjectName(projectName);
-              commentDTO.setCommitterDate(committerDate);
-              commentDTO.setHunkId(originalHunkId);
-              commentDTO.setHunkNewStart(hunkNewStart);
-              commentDTO.setHunkOldStart(hunkOldStart);
-              commentDTO.setVcsId(vcsId);
-              commentDTO.setVcsUrl(vcsUrl);
-              commentDTO.setBranchId(branchId);
-              commentDTO.setBranchName(branchName);
-              commentDTO.setCommitId(commitId);
-              commentDTO.setCommitHash(commitHash);
-              commentDTO.setFileActionId(fileActionId);
-              commentDTO.setFileId(fileId);
-              commentDTO.setFilePath(filePath);
-            })
-        .collect(Collectors.toList());
+  public List<Document> getCommentsByContentHash(String contentHash) {
+    return commentDao.getCommentsByContentHash(contentHash);
   }
 
   /**
-   * Adds a list of CommentDTO objects to the data store.
+   * Exports every comment of the data store to a comment column file, which holds the comments
+   * column by column in a fraction of the size of their documents.
    *
-   * @param commentDTOs the list of CommentDTO objects to add
+   * @param file the comment column file to write, see {@link CommentColumns}
+   * @param batchSize the number of comments that are fetched at a time
    */
-  public void addComments(List<CommentDTO> commentDTOs) {
-    commentDao.addComments(commentDTOs);
+  public void exportComments(Path file, int batchSize) {
+    System.out.println("Exporting comments to " + file);
+    try (MongoCursor<CommentDTO> cursor = commentDao.openCommentCursor(batchSize);
+        CommentColumnWriter writer = new CommentColumnWriter(file)) {
+      List<CommentDTO> batch = new ArrayList<>(batchSize);
+      while (cursor.hasNext()) {
+        batch.add(cursor.next());
+        if (batch.size() == batchSize || !cursor.hasNext()) {
+          writer.write(batch);
+          batch.clear();
+        }
+      }
+      writer.reportThroughput();
+    }
   }
 
   /**
-   * Extracts comments from the given Java code and returns a list of CommentDTO objects.
+   * Extracts comments from the given Java code and returns a list of CommentDTO objects. Safe to
+   * call from several threads at once. With a comment cache, code whose comments were extracted
+   * before is looked up instead of scanned again.
    *
    * @param str the Java code from which to extract comments
    * @return a list of CommentDTO objects representing the extracted comments
    */
   public List<CommentDTO> extractComments(String str) {
-    ParseResult<CompilationUnit> pr = parser.parse(str);
-
-    //        just merge the items but do not need set.
-    List<CommentDTO> commentList = new ArrayList<>();
-    Optional<CommentsCollection> commentsCol = pr.getCommentsCollection();
-
-    if (commentsCol.isPresent()) {
-      CommentsCollection comments = commentsCol.get();
+    if (commentCache != null) {
+      return commentCache.get(str, this::scanComments);
+    }
+    return scanComments(str);
+  }
 
-      if (!comments.getComments().isEmpty()) {
-        Set<JavadocComment> javadocComments = comments.getJavadocComments();
-        Set<BlockComment> blockComments = comments.getBlockComments();
-        Set<LineComment> lineComments = comments.getLineComments();
+  /**
+   * Returns the statistics of the comment cache.
+   *
+   * @return the hit rate, size and evictions of the cache, or null if comments are not cached
+   */
+  public String getCacheStats() {
+    return commentCache == null ? null : commentCache.getStats();
+  }
 
-        List<CommentDTO> javaDocStrComments = filterJavaDocComments(javadocComments);
-        List<CommentDTO> blockStrComments = filterBlockComments(blockComments);
-        List<CommentDTO> lineStrComments = filterLineComments(lineComments);
+  private List<CommentDTO> scanComments(String str) {
+    return filterComments(commentScanner.scan(str));
+  }
 
-        commentList.addAll(javaDocStrComments);
-        commentList.addAll(blockStrComments);
-        commentList.addAll(lineStrComments);
+  /**
+   * Filters comments that were found in a piece of code and returns them as CommentDTO objects,
+   * like {@link #extractComments(String)} does with the comments found by the comment scanner.
+   * Line comments on consecutive lines are grouped into one comment.
+   *
+   * @param scannedComments the comments of the code in order of appearance
+   * @return a list of CommentDTO objects representing the comments
+   */
+  public List<CommentDTO> filterComments(List<ScannedComment> scannedComments) {
+    List<ScannedComment> javadocComments = new ArrayList<>();
+    List<ScannedComment> blockComments = new ArrayList<>();
+    List<ScannedComment> lineComments = new ArrayList<>();
+
+    for (ScannedComment comment : scannedComments) {
+      if (comment.getType() == CommentType.JAVADOC) {
+        javadocComments.add(comment);
+      } else if (comment.getType() == CommentType.BLOCK) {
+        blockComments.add(comment);
+      } else {
+        lineComments.add(comment);
       }
     }
 
+    //        just merge the items but do not need set.
+    List<CommentDTO> commentList = new ArrayList<>();
+    commentList.addAll(filterJavaDocComments(javadocComments));
+    commentList.addAll(filterBlockComments(blockComments));
+    commentList.addAll(filterLineComments(lineComments));
+
     return commentList;
   }
 
   /**
-   * Filters a set of Javadoc comments and returns a list of CommentDTO objects.
+   * Filters a list of Javadoc comments and returns a list of CommentDTO objects.
    *
-   * @param javadocComments the set of Javadoc comments to filter
+   * @param javadocComments the list of Javadoc comments to filter
    * @return a list of CommentDTO objects representing the filtered comments
    */
-  private List<CommentDTO> filterJavaDocComments(Set<JavadocComment> javadocComments) {
+  private List<CommentDTO> filterJavaDocComments(List<ScannedComment> javadocComments) {
 
     List<CommentDTO> commentDTOs = new ArrayList<>();
 
-    for (JavadocComment javaDocComment : javadocComments) {
+    for (ScannedComment javaDocComment : javadocComments) {
       String javaDocContent = javaDocComment.getContent().strip();
       CommentDTO commentDTO = new CommentDTO(javaDocContent, true, CommentType.JAVADOC);
-      if (containsSatdTags(javaDocContent)
-          && !containsLicense(javaDocContent)
-          && !isBlankString(javaDocContent)) {
+      int flags = commentClassifier.classify(javaDocContent);
+      if (isSet(flags, CommentClassifier.SATD_TAG)
+          && !isSet(flags, CommentClassifier.LICENSE)
+          && !isSet(flags, CommentClassifier.BLANK)) {
         commentDTO.setFiltered(false);
       }
 
@@ -164,20 +298,20 @@ public class CommentService {
   }
 
   /**
-   * Filters a set of BlockComment and creates CommentDTO objects for the non-filtered comments.
+   * Filters a list of block comments and creates CommentDTO objects for the non-filtered comments.
    *
-   * @param blockComments a set of BlockComment to filter
-   * @return a List of CommentDTO objects representing the non-filtered BlockComment objects
+   * @param blockComments a list of block comments to filter
+   * @return a List of CommentDTO objects representing the non-filtered block comments
    */
-  private List<CommentDTO> filterBlockComments(Set<BlockComment> blockComments) {
+  private List<CommentDTO> filterBlockComments(List<ScannedComment> blockComments) {
     List<CommentDTO> commentDTOs = new ArrayList<>();
 
-    for (BlockComment blockComment : blockComments) {
+    for (ScannedComment blockComment : blockComments) {
       String blockContent = blockComment.getContent().strip();
       CommentDTO commentDTO = new CommentDTO(blockContent, true, CommentType.BLOCK);
-      if (!containsLicense(blockContent)
-          && !containsSourceCode(blockContent)
-          && !isBlankString(blockContent)) {
+      if (!isSet(
+          commentClassifier.classify(blockContent),
+          CommentClassifier.LICENSE | CommentClassifier.SOURCE_CODE | CommentClassifier.BLANK)) {
         commentDTO.setFiltered(false);
       }
 
@@ -188,34 +322,33 @@ public class CommentService {
   }
 
   /**
-   * Filters the line comments and creates a list of CommentDTO objects.
+   * Filters the line comments and creates a list of CommentDTO objects. Line comments on
+   * consecutive lines are grouped into one comment.
    *
-   * @param lineComments a set of LineComment objects to be filtered
+   * @param lineComments a list of line comments in order of appearance to be filtered
    * @return a list of CommentDTO objects containing the non-filtered line comments
    */
-  private List<CommentDTO> filterLineComments(Set<LineComment> lineComments) {
+  private List<CommentDTO> filterLineComments(List<ScannedComment> lineComments) {
 
     List<CommentDTO> commentDTOs = new ArrayList<>();
 
     int lastLineNumb = -1;
     StringBuilder groupedLineComments = new StringBuilder();
 
-    int lineCountStart = 1;
     int i = 0;
     CommentDTO commentDTO;
     int currLineNumb;
-    for (LineComment lineComment : lineComments) {
+    for (ScannedComment lineComment : lineComments) {
 
       String lineContent = lineComment.getContent().strip();
       commentDTO = new CommentDTO(lineContent, true, CommentType.LINE);
 
-      if (isAutoGeneratedComment(lineContent)) {
+      if (isSet(commentClassifier.classify(lineContent), CommentClassifier.AUTO_GENERATED)) {
         commentDTOs.add(commentDTO);
         continue;
       }
 
-      currLineNumb =
-          lineComment.getBegin().orElse(new Position(lineCountStart, lineCountStart)).line;
+      currLineNumb = lineComment.getLine();
       if (i == 0) {
         lastLineNumb = currLineNumb - 1;
       }
@@ -243,82 +376,14 @@ public class CommentService {
   }
 
   /**
-   * Checks if the given comment contains any of the SATD tags ("FIXME", "XXX", or "TODO").
-   *
-   * @param comment the comment string to check
-   * @return true if the comment contains any of the SATD tags, false otherwise
-   */
-  private boolean containsSatdTags(String comment) {
-    String lowerCase = comment.toLowerCase();
-    return lowerCase.contains("fixme") || lowerCase.contains("xxx") || lowerCase.contains("todo");
-  }
-
-  /**
-   * Checks if the given comment string contains the word "license" or "copyright" in any case.
-   *
-   * @param comment the comment string to check for a license.
-   * @return true if the comment contains a license, false otherwise.
-   */
-  private boolean containsLicense(String comment) {
-    String lowerCase = comment.toLowerCase();
-    return lowerCase.contains("license") || lowerCase.contains("copyright");
-  }
-
-  /**
-   * Checks if the given comment contains any source code by matching against a regular expression
-   * pattern that looks for common Java syntax for control structures, primitive data types, and
-   * common Java class methods.
-   *
-   * @param comment the comment to check for source code
-   * @return true if the comment contains source code, false otherwise
-   */
-  private boolean containsSourceCode(String comment) {
-    String SOURCE_CODE_REGEX =
-        "else\\s*\\{|"
-            + "try\\s*\\{|"
-            + "do\\s*\\{|"
-            + "finally\\s*\\{|"
-            + "if\\s*\\(|"
-            + "for\\s*\\(|"
-            + "while\\s*\\(|"
-            + "switch\\s*\\(|"
-            + "Long\\s*\\(|"
-            + "Byte\\s*\\(|"
-            + "Double\\s*\\(|"
-            + "Float\\s*\\(|"
-            + "Integer\\s*\\(|"
-            + "Short\\s*\\(|"
-            + "BigDecimal\\s*\\(|"
-            + "BigInteger\\s*\\(|"
-            + "Character\\s*\\(|"
-            + "Boolean\\s*\\(|"
-            + "String\\s*\\(|"
-            + "assert\\s*\\(|"
-            + "System\\.out.|"
-            + "public\\s*void|"
-            + "private\\s*static\\*final|"
-            + "catch\\s*\\(";
-    return Pattern.compile(SOURCE_CODE_REGEX).matcher(comment).find();
-  }
-
-  /**
-   * Returns true if the provided comment string is blank, false otherwise.
-   *
-   * @param comment the comment string to check for blankness
-   * @return true if the provided comment string is blank, false otherwise
-   */
-  private boolean isBlankString(String comment) {
-    return comment.replace("\t", "").isBlank();
-  }
-
-  /**
-   * Checks if the given comment is an IDE auto-generated comment.
+   * Checks if any of the given flags is set.
    *
-   * @param comment the comment to check
-   * @return true if the comment is an auto-generated comment, false otherwise
+   * @param flags the flags returned by the comment classifier
+   * @param flag one or more flags to check
+   * @return true if at least one of the flags is set, false otherwise
    */
-  private boolean isAutoGeneratedComment(String comment) {
-    return comment.toLowerCase().contains("todo auto-generated");
+  private boolean isSet(int flags, int flag) {
+    return (flags & flag) != 0;
   }
 
   /**
@@ -330,9 +395,9 @@ public class CommentService {
   private CommentDTO createCommentDTOFromConds(StringBuilder strBuilder) {
     String groupedLineStr = strBuilder.toString();
     CommentDTO commentDTO = new CommentDTO(groupedLineStr, true, CommentType.GROUPED_LINE);
-    if (!containsSourceCode(groupedLineStr)
-        && !isBlankString(groupedLineStr)
-        && !containsLicense(groupedLineStr)) {
+    if (!isSet(
+        commentClassifier.classify(groupedLineStr),
+        CommentClassifier.SOURCE_CODE | CommentClassifier.BLANK | CommentClassifier.LICENSE)) {
       commentDTO.setFiltered(false);
     }
     return commentDTO;
@@ -0,0 +1,34 @@
+package org.example.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.example.models.CommentDTO;
+
+/**
+ * Stores the comments that the write stage of the {@link CommentPipeline} hands over, page by page,
+ * such as the comments collection or a local file. A sink must be closed after use.
+ */
+public interface CommentSink extends AutoCloseable {
+  /**
+   * Submits comments to be stored. May block while earlier comments are being stored.
+   *
+   * @param commentDTOs the comments to store
+   * @return a future that completes when every comment has been stored
+   * @throws InterruptedException if interrupted while waiting for earlier comments
+   */
+  CompletableFuture<Void> write(List<CommentDTO> commentDTOs) throws InterruptedException;
+
+  /**
+   * Sets the number of comments that are stored at once from now on. A sink that does not store
+   * comments in batches ignores it.
+   *
+   * @param batchSize the number of comments in a batch
+   */
+  default void setBatchSize(int batchSize) {}
+
+  /** Prints the number of stored comments and the throughput since the sink was opened. */
+  void reportThroughput();
+
+  @Override
+  void close();
+}
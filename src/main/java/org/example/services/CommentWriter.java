@@ -0,0 +1,314 @@
+package org.example.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.example.daos.CommentDao;
+import org.example.metrics.MetricsRegistry;
+import org.example.metrics.Timer;
+import org.example.models.CommentDTO;
+import org.example.models.FailedComment;
+
+/**
+ * Writes comments asynchronously in unordered bulk batches. At most a fixed number of batches is in
+ * flight; a caller that submits more comments blocks until a batch completes. Comments that fail
+ * with a transient error are retried with exponential backoff, without retrying the comments of
+ * their batch that were written. Comments that fail with any other error, or that still fail after
+ * the last retry, are added to the dead-letter collection instead of failing the run. A batch that
+ * fails for another reason than a MongoDB error, such as a comment that cannot be encoded, is
+ * written again one comment at a time, so only the comment that caused it is dead-lettered. A
+ * comment that cannot be added to the dead-letter collection either is logged and counted as lost.
+ *
+ * <p>Comments have IDs derived from their hunk, so a comment that fails with a duplicate key error
+ * was written before, for example by a run that stopped before it added the checkpoint of the page.
+ * Such a comment counts as written.
+ *
+ * <p>Only the comments that were newly added are counted in the comment contents collection, so a
+ * replayed page does not count its comments twice. A write that fails as a whole, for example on a
+ * lost connection, may still have added some of its comments; their retry fails with a duplicate
+ * key error, and they are counted then. A batch that fails on the client is not taken to have
+ * added any of its comments, so a replayed page that is written one comment at a time does not
+ * count the comments of an earlier run again. If the run stops between adding comments and
+ * counting them, or the count fails, those comments are not counted.
+ *
+ * <p>The latency of every bulk write and the number of written, retried and dead-lettered comments
+ * of all writers are also recorded in the {@link MetricsRegistry}.
+ */
+public class CommentWriter implements CommentSink {
+  /** The error codes of transient errors, as retried by the driver for retryable writes. */
+  private static final Set<Integer> RETRYABLE_ERROR_CODES =
+      Set.of(6, 7, 89, 91, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436);
+
+  private static final int DUPLICATE_KEY = 11000;
+  /** The error code of a comment that could not be written for another reason than MongoDB. */
+  private static final int CLIENT_ERROR = -1;
+  private static final float MILLIS_IN_SECOND = 1000;
+
+  private final CommentDao commentDao;
+  private volatile int batchSize;
+  private final int maxRetries;
+  private final long retryBackoffMillis;
+  private final Semaphore inFlight;
+  private final ExecutorService executor;
+
+  private final Instant start = Instant.now();
+  private final LongAdder writtenCount = new LongAdder();
+  private final LongAdder alreadyWrittenCount = new LongAdder();
+  private final LongAdder retriedCount = new LongAdder();
+  private final LongAdder deadLetterCount = new LongAdder();
+  private final LongAdder lostCount = new LongAdder();
+
+  private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+  private final Timer bulkWrite = metrics.timer("bulk_write");
+  private final LongAdder writtenMetric = metrics.counter("comments_written");
+  private final LongAdder alreadyWrittenMetric = metrics.counter("comments_already_written");
+  private final LongAdder retriedMetric = metrics.counter("comments_retried");
+  private final LongAdder deadLetterMetric = metrics.counter("comments_dead_lettered");
+  private final LongAdder lostMetric = metrics.counter("comments_lost");
+
+  /**
+   * Constructs a new CommentWriter.
+   *
+   * @param commentDao the data access object used to write the comments
+   * @param batchSize the maximum number of comments in one bulk write
+   * @param maxInFlight the maximum number of bulk writes that run at the same time
+   * @param maxRetries the maximum number of retries of a comment that fails with a transient error
+   * @param retryBackoffMillis the wait before the first retry, which doubles for every next retry
+   */
+  public CommentWriter(
+      CommentDao commentDao,
+      int batchSize,
+      int maxInFlight,
+      int maxRetries,
+      long retryBackoffMillis) {
+    this(commentDao, batchSize, maxInFlight, maxRetries, retryBackoffMillis, false);
+  }
+
+  /**
+   * Constructs a new CommentWriter whose bulk writes optionally run on virtual threads, see {@link
+   * BlockingExecutors}.
+   *
+   * @param commentDao the data access object used to write the comments
+   * @param batchSize the maximum number of comments in one bulk write
+   * @param maxInFlight the maximum number of bulk writes that run at the same time
+   * @param maxRetries the maximum number of retries of a comment that fails with a transient error
+   * @param retryBackoffMillis the wait before the first retry, which doubles for every next retry
+   * @param virtualThreads whether every bulk write runs on its own virtual thread
+   */
+  public CommentWriter(
+      CommentDao commentDao,
+      int batchSize,
+      int maxInFlight,
+      int maxRetries,
+      long retryBackoffMillis,
+      boolean virtualThreads) {
+    this.commentDao = commentDao;
+    this.batchSize = batchSize;
+    this.maxRetries = maxRetries;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.executor = BlockingExecutors.newExecutor(virtualThreads, maxInFlight);
+    metrics.gauge("writes_in_flight", () -> maxInFlight - inFlight.availablePermits());
+  }
+
+  @Override
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Submits comments to be written in batches. Blocks while the maximum number of batches is in
+   * flight.
+   *
+   * @param commentDTOs the comments to write
+   * @return a future that completes when every comment has been written or added to the dead-letter
+   *     collection
+   * @throws InterruptedException if interrupted while waiting for a batch to complete
+   */
+  @Override
+  public CompletableFuture<Void> write(List<CommentDTO> commentDTOs) throws InterruptedException {
+    List<CompletableFuture<Void>> batches = new ArrayList<>();
+    int batchSize = this.batchSize;
+    for (int from = 0; from < commentDTOs.size(); from += batchSize) {
+      List<CommentDTO> batch =
+          commentDTOs.subList(from, Math.min(from + batchSize, commentDTOs.size()));
+      inFlight.acquire();
+      batches.add(
+          CompletableFuture.runAsync(() -> writeBatch(batch), executor)
+              .whenComplete((result, e) -> inFlight.release()));
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]));
+  }
+
+  private void writeBatch(List<CommentDTO> batch) {
+    writeBatch(batch, false);
+  }
+
+  /**
+   * Writes a batch of comments, retrying and dead-lettering the comments that fail.
+   *
+   * @param mayBeWritten whether the comments may have been added by an earlier write that failed as
+   *     a whole, in which case a duplicate key error means that they were added by this writer
+   */
+  private void writeBatch(List<CommentDTO> batch, boolean mayBeWritten) {
+    List<CommentDTO> pending = batch;
+    long backoffMillis = retryBackoffMillis;
+    for (int attempt = 0; ; attempt++) {
+      List<FailedComment> failed;
+      boolean batchFailed = false;
+      long writeStart = System.nanoTime();
+      try {
+        failed = commentDao.insertUnordered(pending);
+        bulkWrite.recordSince(writeStart);
+      } catch (MongoException e) {
+        // The batch as a whole failed, for example because the connection was lost, so every
+        // comment of the batch is retried.
+        failed =
+            pending.stream()
+                .map(commentDTO -> new FailedComment(commentDTO, e.getCode(), e.getMessage()))
+                .collect(Collectors.toList());
+        batchFailed = true;
+      } catch (RuntimeException e) {
+        // The batch failed on the client, for example because a comment is too large to encode,
+        // which would fail again on a retry, so the comments that cause it are found one by one.
+        // A duplicate key error then means that an earlier run wrote the comment, unless an
+        // earlier attempt of this batch failed as a whole.
+        if (pending.size() > 1) {
+          boolean writtenByFailedAttempt = mayBeWritten;
+          pending.forEach(commentDTO -> writeBatch(List.of(commentDTO), writtenByFailedAttempt));
+          return;
+        }
+        failed = List.of(new FailedComment(pending.get(0), CLIENT_ERROR, e.toString()));
+      }
+
+      List<FailedComment> retryable = new ArrayList<>();
+      List<FailedComment> deadLetters = new ArrayList<>();
+      List<FailedComment> addedBefore = new ArrayList<>();
+      List<FailedComment> notAdded = new ArrayList<>();
+      for (FailedComment failedComment : failed) {
+        if (!batchFailed && failedComment.getErrorCode() == DUPLICATE_KEY) {
+          if (mayBeWritten) {
+            // the failed write of the whole batch added this comment after all
+            addedBefore.add(failedComment);
+          } else {
+            notAdded.add(failedComment);
+            alreadyWrittenCount.increment();
+            alreadyWrittenMetric.increment();
+          }
+          continue;
+        }
+        boolean transientError =
+            batchFailed || RETRYABLE_ERROR_CODES.contains(failedComment.getErrorCode());
+        if (transientError && attempt < maxRetries) {
+          retryable.add(failedComment);
+        } else {
+          deadLetters.add(failedComment);
+        }
+      }
+      int added = pending.size() - failed.size() + addedBefore.size();
+      writtenCount.add(added);
+      writtenMetric.add(added);
+      notAdded.addAll(retryable);
+      notAdded.addAll(deadLetters);
+      addContentCounts(pending, notAdded);
+      addDeadLetters(deadLetters);
+      if (retryable.isEmpty()) {
+        return;
+      }
+
+      retriedCount.add(retryable.size());
+      retriedMetric.add(retryable.size());
+      sleep(backoffMillis);
+      backoffMillis *= 2;
+      pending = retryable.stream().map(FailedComment::getComment).collect(Collectors.toList());
+      mayBeWritten |= batchFailed;
+    }
+  }
+
+  private void addContentCounts(List<CommentDTO> attempted, List<FailedComment> notAdded) {
+    Set<CommentDTO> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+    notAdded.forEach(failedComment -> skipped.add(failedComment.getComment()));
+    List<CommentDTO> added =
+        attempted.stream()
+            .filter(commentDTO -> !skipped.contains(commentDTO))
+            .collect(Collectors.toList());
+    if (added.isEmpty()) {
+      return;
+    }
+
+    // Counting is not idempotent, so a failed count is not retried: part of it may have been added.
+    try {
+      commentDao.addContentCounts(added);
+    } catch (MongoException e) {
+      System.out.println("Could not count the contents of written comments: " + e);
+    }
+  }
+
+  private void addDeadLetters(List<FailedComment> deadLetters) {
+    if (deadLetters.isEmpty()) {
+      return;
+    }
+    deadLetterCount.add(deadLetters.size());
+    deadLetterMetric.add(deadLetters.size());
+    for (FailedComment deadLetter : deadLetters) {
+      System.out.printf(
+          "Could not write comment of hunk %s: %s%n",
+          deadLetter.getComment().getHunkId(), deadLetter.getErrorMessage());
+    }
+    try {
+      commentDao.addDeadLetters(deadLetters);
+    } catch (MongoBulkWriteException e) {
+      System.out.println("Could not add comments to the dead-letter collection: " + e);
+      lostCount.add(e.getWriteErrors().size());
+      lostMetric.add(e.getWriteErrors().size());
+    } catch (RuntimeException e) {
+      // a dead letter that cannot be encoded, or a lost connection, must not fail the page either
+      System.out.println("Could not add comments to the dead-letter collection: " + e);
+      lostCount.add(deadLetters.size());
+      lostMetric.add(deadLetters.size());
+    }
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to retry comments", e);
+    }
+  }
+
+  /** Prints the number of written comments and the write throughput since the writer started. */
+  @Override
+  public void reportThroughput() {
+    float seconds = Duration.between(start, Instant.now()).toMillis() / MILLIS_IN_SECOND;
+    long written = writtenCount.sum();
+    System.out.printf(
+        "%d comments written (%.1f comments/s), %d already written, %d retried, %d dead-lettered,"
+            + " %d lost%n",
+        written,
+        seconds > 0 ? written / seconds : 0,
+        alreadyWrittenCount.sum(),
+        retriedCount.sum(),
+        deadLetterCount.sum(),
+        lostCount.sum());
+  }
+
+  /** Stops the write threads. Batches that are still in flight are interrupted. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    metrics.removeGauge("writes_in_flight");
+  }
+}
@@ -0,0 +1,271 @@
+package org.example.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.daos.ProjectDao;
+import org.example.models.HunkPartition;
+import org.example.models.PendingOutput;
+
+/**
+ * Outputs the initial hunks of the SmartSHARK database to the intermediate hunk collection in
+ * partitions, instead of in one aggregation over every project. A partition holds the hunks of a
+ * project or of a vcs system, optionally split into committer-date windows. Several partitions are
+ * output at the same time, each by its own aggregation, or by a join in memory, that merges its
+ * hunks into the target collection.
+ *
+ * <p>A partition that was output completely is recorded in the partition state collection, so a
+ * restarted run only outputs the partitions that did not finish. A partition that failed halfway
+ * is output again; its hunks replace the hunks that were merged before.
+ *
+ * <p>Every project or vcs system has a high-water mark: the highest ID of the commits whose hunks
+ * were output. Commit IDs grow as commits are added to SmartSHARK, so a next run only outputs the
+ * hunks of commits after the high-water mark and appends them to the target collection. The mark
+ * moves once every partition of the new commits has been output, after the lowest ID of the new
+ * hunks was recorded as the resume floor of the comment extraction. Until then, the highest commit
+ * ID and the planning time of the output are kept as its pending output, so a retried run outputs
+ * the same partitions and skips the ones that finished, even if commits were added meanwhile.
+ */
+public class HunkMaterializer {
+  private static final float SECONDS_IN_MINUTE = 60;
+
+  private final ProjectDao projectDao;
+  private final ConfigDAO configDAO;
+  private final ExtractorConfiguration extractorConfig;
+
+  /**
+   * Constructs a new HunkMaterializer.
+   *
+   * @param projectDao the data access object used to list the partitions and output their hunks
+   * @param configDAO the data access object used to record the finished partitions
+   * @param extractorConfig the settings of the partitions, their parallelism and the target
+   */
+  public HunkMaterializer(
+      ProjectDao projectDao, ConfigDAO configDAO, ExtractorConfiguration extractorConfig) {
+    this.projectDao = projectDao;
+    this.configDAO = configDAO;
+    this.extractorConfig = extractorConfig;
+  }
+
+  /**
+   * Outputs the hunks of the commits that were added to SmartSHARK since the last run, in every
+   * partition that has not been output to the target collection yet. Partitions that fail do not
+   * stop the other partitions.
+   *
+   * @return the lowest ID of the hunks that were output, or null if no hunks were output
+   * @throws IllegalStateException if a partition could not be output. Running again retries only
+   *     the partitions that did not finish. Also if the target collection holds hunks with IDs
+   *     generated by an earlier version, or if the aggregation engine is set up to output to
+   *     another server than SmartSHARK, before any hunk is output.
+   */
+  public ObjectId materialize() {
+    String database = extractorConfig.getMaterializeDatabase();
+    String collection = extractorConfig.getMaterializeCollection();
+    String target = database + "." + collection;
+    boolean streamingJoin = extractorConfig.isStreamingJoin();
+    // the aggregation merges into the database of its own server, which would not be the target
+    if (!streamingJoin && !extractorConfig.isTargetOnSourceServer()) {
+      throw new IllegalStateException(
+          "The aggregation engine cannot output hunks to "
+              + target
+              + " on another server than SmartSHARK, use extractor.materialize.engine=streaming");
+    }
+    Map<String, ObjectId> recordedWatermarks = configDAO.getWatermarks(target);
+    Set<String> recordedPartitions = configDAO.getFinishedPartitions(target);
+    // a target without recorded output may hold the hunks of an earlier version, which the merge
+    // by hunk ID would not replace
+    if (recordedWatermarks.isEmpty()
+        && recordedPartitions.isEmpty()
+        && projectDao.hasGeneratedHunkIds(database, collection)) {
+      throw new IllegalStateException(
+          target
+              + " holds hunks with IDs generated by an earlier version, drop it and the"
+              + " checkpoints and comments extracted from it before outputting the hunks again");
+    }
+    projectDao.createHunkIndexes(database, collection);
+
+    Map<String, ObjectId> watermarks = extractorConfig.isResume() ? recordedWatermarks : Map.of();
+    Map<String, PendingOutput> pendingOutputs =
+        extractorConfig.isResume() ? configDAO.getPendingOutputs(target) : Map.of();
+    Date now = new Date();
+    Map<String, HunkPartition> sources = new LinkedHashMap<>();
+    List<HunkPartition> partitions = new ArrayList<>();
+    for (HunkPartition partition :
+        projectDao.getPartitions(extractorConfig.isPartitionedByVcsSystem())) {
+      ObjectId after = watermarks.get(partition.getSourceKey());
+      // a retried output keeps the commit range and windows that it was planned with, so the keys
+      // of its finished partitions still match
+      PendingOutput pendingOutput = pendingOutputs.get(partition.getSourceKey());
+      if (pendingOutput == null) {
+        ObjectId until = projectDao.getLastCommitId(partition);
+        if (until == null || (after != null && until.compareTo(after) <= 0)) {
+          continue;
+        }
+        pendingOutput = new PendingOutput(until, now);
+        configDAO.setPendingOutput(target, partition, pendingOutput);
+      }
+      HunkPartition source =
+          new HunkPartition(
+              partition.getProjectId(),
+              partition.getVcsSystemId(),
+              after,
+              pendingOutput.getCommitIdUntil(),
+              partition.getCommittedFrom(),
+              partition.getCommittedUntil());
+      sources.put(partition.getSourceKey(), source);
+      partitions.addAll(
+          splitIntoWindows(
+              source, extractorConfig.getMaterializeWindowDays(), pendingOutput.getPlannedAt()));
+    }
+
+    Set<String> finished = extractorConfig.isResume() ? recordedPartitions : Set.of();
+    List<HunkPartition> pending =
+        partitions.stream()
+            .filter(partition -> !finished.contains(partition.getKey()))
+            .collect(Collectors.toList());
+    System.out.printf(
+        "Outputting %d of %d hunk partitions with new commits to %s, %d already finished%n",
+        pending.size(), partitions.size(), target, partitions.size() - pending.size());
+
+    Map<String, AtomicInteger> pendingBySource = new HashMap<>();
+    sources.keySet().forEach(source -> pendingBySource.put(source, new AtomicInteger()));
+    pending.forEach(
+        partition -> pendingBySource.get(partition.getSourceKey()).incrementAndGet());
+    AtomicReference<ObjectId> firstHunkId = new AtomicReference<>();
+    for (HunkPartition source : sources.values()) {
+      if (pendingBySource.get(source.getSourceKey()).get() == 0) {
+        finishSource(source, database, collection, target, firstHunkId);
+      }
+    }
+
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(extractorConfig.getMaterializeParallelism());
+    try {
+      List<CompletableFuture<Void>> outputs = new ArrayList<>();
+      for (HunkPartition partition : pending) {
+        outputs.add(
+            CompletableFuture.runAsync(
+                () -> {
+                  Instant start = Instant.now();
+                  if (streamingJoin) {
+                    projectDao.joinHunks(partition, database, collection);
+                  } else {
+                    projectDao.outputHunks(partition, database, collection);
+                  }
+                  configDAO.addFinishedPartition(target, partition);
+                  System.out.printf(
+                      "Output hunk partition %s in %.1f minutes (%d of %d)%n",
+                      partition.getKey(),
+                      Duration.between(start, Instant.now()).toSeconds() / SECONDS_IN_MINUTE,
+                      done.incrementAndGet(),
+                      pending.size());
+                  if (pendingBySource.get(partition.getSourceKey()).decrementAndGet() == 0) {
+                    finishSource(
+                        sources.get(partition.getSourceKey()),
+                        database,
+                        collection,
+                        target,
+                        firstHunkId);
+                  }
+                },
+                executor)
+                .exceptionally(
+                    e -> {
+                      failed.incrementAndGet();
+                      System.out.printf(
+                          "Could not output hunk partition %s: %s%n", partition.getKey(), e);
+                      return null;
+                    }));
+      }
+      CompletableFuture.allOf(outputs.toArray(new CompletableFuture[0])).join();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (failed.get() > 0) {
+      throw new IllegalStateException(
+          failed.get() + " hunk partitions could not be output, run again to retry them");
+    }
+    return firstHunkId.get();
+  }
+
+  /**
+   * Moves the high-water mark of a project or vcs system after every partition of its new commits
+   * was output, and keeps the lowest ID of its output hunks. That ID lowers the resume floor before
+   * the mark moves, so a run that stops before it processes the hunks still finds them.
+   */
+  private void finishSource(
+      HunkPartition source,
+      String database,
+      String collection,
+      String target,
+      AtomicReference<ObjectId> firstHunkId) {
+    ObjectId sourceFirstHunkId = projectDao.getFirstHunkId(source, database, collection);
+    if (sourceFirstHunkId != null) {
+      firstHunkId.accumulateAndGet(
+          sourceFirstHunkId,
+          (first, id) -> first == null || id.compareTo(first) < 0 ? id : first);
+      configDAO.lowerResumeFloor(sourceFirstHunkId);
+    }
+    configDAO.setWatermark(target, source, source.getCommitIdUntil());
+  }
+
+  /**
+   * Splits a partition into committer-date windows of the given length, from the start of its
+   * window until the given time. The last window has no end, so it also covers hunks committed
+   * later.
+   *
+   * @param partition the partition to split
+   * @param windowDays the length of a window in days, or 0 to not split the partition
+   * @param now the end of the last window with an end
+   * @return the partitions of every window
+   */
+  private static List<HunkPartition> splitIntoWindows(
+      HunkPartition partition, int windowDays, Date now) {
+    if (windowDays <= 0) {
+      return List.of(partition);
+    }
+    Duration window = Duration.ofDays(windowDays);
+    List<HunkPartition> windows = new ArrayList<>();
+    Instant from = partition.getCommittedFrom().toInstant();
+    Instant until = from.plus(window);
+    while (until.isBefore(now.toInstant())) {
+      windows.add(
+          new HunkPartition(
+              partition.getProjectId(),
+              partition.getVcsSystemId(),
+              partition.getCommitIdAfter(),
+              partition.getCommitIdUntil(),
+              Date.from(from),
+              Date.from(until)));
+      from = until;
+      until = from.plus(window);
+    }
+    windows.add(
+        new HunkPartition(
+            partition.getProjectId(),
+            partition.getVcsSystemId(),
+            partition.getCommitIdAfter(),
+            partition.getCommitIdUntil(),
+            Date.from(from),
+            null));
+    return windows;
+  }
+}
@@ -0,0 +1,255 @@
+package org.example.services;
+
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.models.HunkRange;
+
+/**
+ * Extracts the comments of the hunks together with other worker processes, on one machine or on
+ * several. The first worker splits the IDs of the intermediate hunk collection into ranges of about
+ * the same number of hunks. Every worker then leases the next free range, runs the comment pipeline
+ * over it and marks it as finished, until every range is finished.
+ *
+ * <p>A worker renews the lease of its range in the background, and adds the checkpoint of every
+ * written page to the range. If a worker stops, its lease expires and another worker continues the
+ * range after its last checkpoint. A worker whose lease expired while it was still working, for
+ * example during a long garbage collection pause, stops working on the range as soon as it notices.
+ * Comments have IDs derived from their hunk, so the pages that both workers processed are not
+ * written twice.
+ *
+ * <p>Hunks that are output after the ranges were planned lower the resume floor. Once every range
+ * is finished, one worker reopens the plan as its next generation and splits the hunks from the
+ * resume floor on into new ranges, which the workers then process like the first ones.
+ */
+public class HunkRangeWorker {
+  private static final long MILLIS_IN_SECOND = 1000;
+  private static final int RENEWALS_PER_LEASE = 3;
+
+  private final HunkService hunkService;
+  private final ConfigDAO configDAO;
+  private final CommentPipeline pipeline;
+  private final String workerId;
+  private final int rangeCount;
+  private final long leaseMillis;
+
+  /**
+   * Constructs a new HunkRangeWorker.
+   *
+   * @param hunkService the service used to split the hunks into ranges and count their hunks
+   * @param configDAO the data access object of the hunk range collection
+   * @param pipeline the pipeline that extracts the comments of a range
+   * @param extractorConfig the settings of the worker ID, the number of ranges and the leases
+   */
+  public HunkRangeWorker(
+      HunkService hunkService,
+      ConfigDAO configDAO,
+      CommentPipeline pipeline,
+      ExtractorConfiguration extractorConfig) {
+    this.hunkService = hunkService;
+    this.configDAO = configDAO;
+    this.pipeline = pipeline;
+    this.workerId = extractorConfig.getWorkerId();
+    this.rangeCount = extractorConfig.getCoordinationRanges();
+    this.leaseMillis = extractorConfig.getCoordinationLeaseSeconds() * MILLIS_IN_SECOND;
+  }
+
+  /**
+   * Processes ranges of hunks until every range has been finished, by this worker or by others, and
+   * no hunks were output after the ranges were planned. Waits while the remaining ranges are leased
+   * by other workers, since their leases may expire.
+   *
+   * @param limit the maximum number of hunks in a page
+   */
+  public void run(int limit) {
+    System.out.printf("Worker %s started%n", workerId);
+    ScheduledExecutorService renewals =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "hunk-range-lease");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      planRanges();
+      int processed = 0;
+      while (true) {
+        HunkRange range = configDAO.claimRange(workerId, leaseMillis);
+        if (range != null) {
+          if (process(range, limit, renewals)) {
+            processed++;
+          }
+        } else if (configDAO.countUnfinishedRanges() > 0) {
+          sleep(getPollMillis());
+        } else if (!planNextGeneration()) {
+          break;
+        }
+      }
+      System.out.printf("Worker %s finished %d hunk ranges, no ranges left%n", workerId, processed);
+    } finally {
+      renewals.shutdownNow();
+    }
+  }
+
+  /** Waits until the hunks are split into ranges, splitting them if no other worker does. */
+  private void planRanges() {
+    while (!configDAO.isRangePlanReady()) {
+      if (configDAO.claimRangePlan(workerId, leaseMillis)) {
+        if (splitRanges()) {
+          return;
+        }
+      } else {
+        sleep(getPollMillis());
+      }
+    }
+  }
+
+  /**
+   * Plans the next generation of ranges after every range was finished, if hunks were output after
+   * the ranges were planned, or waits while another worker plans it.
+   *
+   * @return true if there may be new ranges to process, false if no hunks are left
+   */
+  private boolean planNextGeneration() {
+    if (!configDAO.isRangePlanReady()) {
+      planRanges();
+      return true;
+    }
+    int generation = configDAO.getRangePlanGeneration();
+    if (configDAO.getResumeFloor() == null) {
+      return false;
+    }
+    if (configDAO.reopenRangePlan(workerId, generation, leaseMillis)) {
+      splitRanges();
+    }
+    return true;
+  }
+
+  /**
+   * Splits the hunks into ranges while the worker holds the plan: every hunk for the first
+   * generation, and the hunks from the resume floor on for a later one. The resume floor that the
+   * ranges cover is cleared once the ranges are stored.
+   *
+   * @return true if the ranges were stored, false if another worker took the plan over
+   */
+  private boolean splitRanges() {
+    ObjectId floor = configDAO.getResumeFloor();
+    List<HunkRange> ranges;
+    if (configDAO.getRangePlanGeneration() == 0) {
+      ranges = toRanges(null, hunkService.getRangeEnds(rangeCount));
+    } else if (floor != null) {
+      ObjectId afterId = ProjectService.idBefore(floor);
+      ranges = toRanges(afterId, hunkService.getRangeEnds(afterId, rangeCount));
+    } else {
+      ranges = List.of();
+    }
+    if (!configDAO.setRanges(workerId, ranges, leaseMillis)) {
+      return false;
+    }
+    if (floor != null) {
+      configDAO.clearResumeFloor(floor);
+    }
+    System.out.printf(
+        "Split the hunks%s into %d ranges%n",
+        ranges.isEmpty() || ranges.get(0).getAfterId() == null
+            ? ""
+            : " after " + ranges.get(0).getAfterId(),
+        ranges.size());
+    return true;
+  }
+
+  /**
+   * Returns ranges that end at the given IDs. The first range starts after the given ID and the
+   * last range has no end, so hunks outside the IDs that were split still belong to a range.
+   */
+  private static List<HunkRange> toRanges(ObjectId startId, List<ObjectId> ends) {
+    List<HunkRange> ranges = new ArrayList<>();
+    for (int i = 0; i < ends.size(); i++) {
+      ObjectId afterId = i == 0 ? startId : ends.get(i - 1);
+      ObjectId untilId = i == ends.size() - 1 ? null : ends.get(i);
+      ranges.add(new HunkRange(i, afterId, untilId, null));
+    }
+    return ranges;
+  }
+
+  /**
+   * Extracts the comments of a leased range, and marks the range as finished.
+   *
+   * @return true if the range was finished, false if another worker took it over
+   */
+  private boolean process(HunkRange range, int limit, ScheduledExecutorService renewals) {
+    AtomicBoolean leaseLost = new AtomicBoolean();
+    long renewMillis = getPollMillis();
+    ScheduledFuture<?> renewal =
+        renewals.scheduleAtFixedRate(
+            () -> renewLease(range, leaseLost), renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    try {
+      long totalHunksCount = hunkService.getHunksCount(range.getResumeId(), range.getUntilId());
+      System.out.printf(
+          "Worker %s leased hunk range %d after %s until %s, %d hunks to be processed%n",
+          workerId, range.getIndex(), range.getResumeId(), range.getUntilId(), totalHunksCount);
+      pipeline.run(
+          range.getResumeId(),
+          range.getUntilId(),
+          limit,
+          totalHunksCount,
+          lastId -> addCheckpoint(range, lastId, leaseLost));
+    } catch (IllegalStateException e) {
+      if (!leaseLost.get()) {
+        throw e;
+      }
+    } finally {
+      renewal.cancel(false);
+    }
+
+    if (!leaseLost.get() && configDAO.finishRange(range, workerId)) {
+      System.out.printf("Worker %s finished hunk range %d%n", workerId, range.getIndex());
+      return true;
+    }
+    System.out.printf(
+        "Worker %s lost the lease of hunk range %d to another worker%n",
+        workerId, range.getIndex());
+    return false;
+  }
+
+  /** Adds the checkpoint of a written page to a range, and fails the pipeline if it was lost. */
+  private void addCheckpoint(HunkRange range, ObjectId lastId, AtomicBoolean leaseLost) {
+    if (leaseLost.get() || !configDAO.addRangeCheckpoint(range, workerId, lastId, leaseMillis)) {
+      leaseLost.set(true);
+      throw new IllegalStateException("Lost the lease of hunk range " + range.getIndex());
+    }
+  }
+
+  /** Renews the lease of a range, unless it was lost. A renewal that fails is tried again later. */
+  private void renewLease(HunkRange range, AtomicBoolean leaseLost) {
+    try {
+      if (!leaseLost.get() && !configDAO.renewRangeLease(range, workerId, leaseMillis)) {
+        leaseLost.set(true);
+      }
+    } catch (MongoException e) {
+      System.out.printf("Could not renew the lease of hunk range %d: %s%n", range.getIndex(), e);
+    }
+  }
+
+  /** Returns the interval between two lease renewals, which is also the wait for other workers. */
+  private long getPollMillis() {
+    return Math.max(1, leaseMillis / RENEWALS_PER_LEASE);
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for other workers", e);
+    }
+  }
+}
@@ -1,9 +1,10 @@
 package org.example.services;
 
 import java.util.List;
-import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.example.daos.HunkCursor;
 import org.example.daos.HunkDAO;
+import org.example.models.HunkRecord;
 
 public class HunkService {
   private final HunkDAO hunkDAO;
@@ -12,14 +13,26 @@ public class HunkService {
     this.hunkDAO = hunkDAO;
   }
 
-  public List<Document> getHunks(ObjectId lastSeenId, int limit) {
+  public List<HunkRecord> getHunks(ObjectId lastSeenId, int limit) {
     return hunkDAO.getHunks(lastSeenId, limit);
   }
 
-  public List<Document> getHunks(int limit) {
+  public List<HunkRecord> getHunks(int limit) {
     return hunkDAO.getHunks(limit);
   }
 
+  public List<HunkRecord> getHunks(ObjectId lastSeenId, ObjectId untilId, int limit) {
+    return hunkDAO.getHunks(lastSeenId, untilId, limit);
+  }
+
+  public HunkCursor openHunkCursor(ObjectId lastSeenId, int batchSize) {
+    return hunkDAO.openHunkCursor(lastSeenId, batchSize);
+  }
+
+  public HunkCursor openHunkCursor(ObjectId lastSeenId, ObjectId untilId, int batchSize) {
+    return hunkDAO.openHunkCursor(lastSeenId, untilId, batchSize);
+  }
+
   public long getHunksCount() {
     return hunkDAO.getHunksCount();
   }
@@ -27,4 +40,16 @@ public class HunkService {
   public long getHunksCount(ObjectId lastSeenId) {
     return hunkDAO.getHunksCount(lastSeenId);
   }
+
+  public long getHunksCount(ObjectId lastSeenId, ObjectId untilId) {
+    return hunkDAO.getHunksCount(lastSeenId, untilId);
+  }
+
+  public List<ObjectId> getRangeEnds(int ranges) {
+    return hunkDAO.getRangeEnds(ranges);
+  }
+
+  public List<ObjectId> getRangeEnds(ObjectId afterId, int ranges) {
+    return hunkDAO.getRangeEnds(afterId, ranges);
+  }
 }
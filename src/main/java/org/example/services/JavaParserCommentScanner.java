@@ -0,0 +1,56 @@
+package org.example.services;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.comments.BlockComment;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.comments.CommentsCollection;
+import com.github.javaparser.ast.comments.JavadocComment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.example.models.CommentType;
+import org.example.models.ScannedComment;
+
+/**
+ * Finds comments by parsing the code into a CompilationUnit with JavaParser and reading the
+ * comments collection of the parse result.
+ */
+public class JavaParserCommentScanner implements CommentScanner {
+  private static final int LINE_COUNT_START = 1;
+
+  /** A JavaParser instance is not thread-safe, so every thread scanning code gets its own. */
+  private final ThreadLocal<JavaParser> parser =
+      ThreadLocal.withInitial(JavaParserCommentScanner::newParser);
+
+  private static JavaParser newParser() {
+    JavaParser javaParser = new JavaParser();
+    javaParser.getParserConfiguration().setPreprocessUnicodeEscapes(true);
+    return javaParser;
+  }
+
+  @Override
+  public List<ScannedComment> scan(String code) {
+    List<ScannedComment> scannedComments = new ArrayList<>();
+    Optional<CommentsCollection> commentsCol = parser.get().parse(code).getCommentsCollection();
+
+    if (commentsCol.isPresent()) {
+      for (Comment comment : commentsCol.get().getComments()) {
+        int line =
+            comment.getBegin().orElse(new Position(LINE_COUNT_START, LINE_COUNT_START)).line;
+        scannedComments.add(new ScannedComment(typeOf(comment), comment.getContent(), line));
+      }
+    }
+
+    return scannedComments;
+  }
+
+  private CommentType typeOf(Comment comment) {
+    if (comment instanceof JavadocComment) {
+      return CommentType.JAVADOC;
+    } else if (comment instanceof BlockComment) {
+      return CommentType.BLOCK;
+    }
+    return CommentType.LINE;
+  }
+}
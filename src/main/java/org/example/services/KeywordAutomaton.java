@@ -0,0 +1,139 @@
+package org.example.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An Aho-Corasick automaton that finds every keyword of a fixed set in a single pass over a text.
+ * The goto and failure functions are folded into one transition table, so every character costs a
+ * single table lookup. Each keyword carries a flag, and a state reports the flags of every keyword
+ * that ends at it.
+ *
+ * <p>The automaton matches characters exactly. Case-insensitive matching is done by the caller,
+ * which lowercases the keywords and the text in the same way.
+ */
+final class KeywordAutomaton {
+  private static final int ROOT = 0;
+  private static final int ASCII_SIZE = 128;
+  private static final int OTHER_SYMBOL = 0;
+
+  /** The symbol of every ASCII character, or {@link #OTHER_SYMBOL}. */
+  private final int[] asciiSymbols = new int[ASCII_SIZE];
+  /** The sorted non-ASCII characters of the keywords. Their symbols follow the ASCII symbols. */
+  private final char[] otherChars;
+
+  private final int asciiSymbolCount;
+  private final int[][] transitions;
+  private final int[] stateFlags;
+
+  /**
+   * Compiles the automaton.
+   *
+   * @param keywords the keywords to find, mapped to the flag that is reported when one is found
+   */
+  KeywordAutomaton(Map<String, Integer> keywords) {
+    TreeSet<Character> chars = new TreeSet<>();
+    for (String keyword : keywords.keySet()) {
+      for (char c : keyword.toCharArray()) {
+        chars.add(c);
+      }
+    }
+
+    int symbol = OTHER_SYMBOL + 1;
+    StringBuilder other = new StringBuilder();
+    for (char c : chars) {
+      if (c < ASCII_SIZE) {
+        asciiSymbols[c] = symbol++;
+      } else {
+        other.append(c);
+      }
+    }
+    asciiSymbolCount = symbol;
+    otherChars = other.toString().toCharArray();
+    int symbolCount = asciiSymbolCount + otherChars.length;
+
+    // The trie of the keywords, in which a missing edge is -1.
+    List<int[]> trie = new ArrayList<>();
+    List<Integer> flags = new ArrayList<>();
+    trie.add(newTrieState(symbolCount));
+    flags.add(0);
+    for (Map.Entry<String, Integer> keyword : keywords.entrySet()) {
+      int state = ROOT;
+      for (char c : keyword.getKey().toCharArray()) {
+        int s = symbolOf(c);
+        if (trie.get(state)[s] < 0) {
+          trie.get(state)[s] = trie.size();
+          trie.add(newTrieState(symbolCount));
+          flags.add(0);
+        }
+        state = trie.get(state)[s];
+      }
+      flags.set(state, flags.get(state) | keyword.getValue());
+    }
+
+    // Breadth-first, so the failure state of a state is complete before the state itself.
+    transitions = new int[trie.size()][];
+    stateFlags = new int[trie.size()];
+    int[] failure = new int[trie.size()];
+    Deque<Integer> queue = new ArrayDeque<>();
+    transitions[ROOT] = new int[symbolCount];
+    for (int s = 0; s < symbolCount; s++) {
+      int next = trie.get(ROOT)[s];
+      if (next > 0) {
+        failure[next] = ROOT;
+        queue.add(next);
+        transitions[ROOT][s] = next;
+      }
+    }
+    stateFlags[ROOT] = flags.get(ROOT);
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      stateFlags[state] = flags.get(state) | stateFlags[failure[state]];
+      transitions[state] = new int[symbolCount];
+      for (int s = 0; s < symbolCount; s++) {
+        int next = trie.get(state)[s];
+        if (next > 0) {
+          failure[next] = transitions[failure[state]][s];
+          queue.add(next);
+          transitions[state][s] = next;
+        } else {
+          transitions[state][s] = transitions[failure[state]][s];
+        }
+      }
+    }
+  }
+
+  private static int[] newTrieState(int symbolCount) {
+    int[] edges = new int[symbolCount];
+    Arrays.fill(edges, -1);
+    return edges;
+  }
+
+  private int symbolOf(char c) {
+    if (c < ASCII_SIZE) {
+      return asciiSymbols[c];
+    }
+    int index = Arrays.binarySearch(otherChars, c);
+    return index < 0 ? OTHER_SYMBOL : asciiSymbolCount + index;
+  }
+
+  /** Returns the state in which no part of a keyword has been read. */
+  int start() {
+    return ROOT;
+  }
+
+  /** Returns the state after reading the given character in the given state. */
+  int next(int state, char c) {
+    return transitions[state][symbolOf(c)];
+  }
+
+  /** Returns the flags of the keywords that end at the given state. */
+  int flags(int state) {
+    return stateFlags[state];
+  }
+}
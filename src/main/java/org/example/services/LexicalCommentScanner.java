@@ -0,0 +1,439 @@
+package org.example.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.example.models.CommentType;
+import org.example.models.ScannedComment;
+
+/**
+ * Finds comments with a single pass over the characters of the code, without building an AST. The
+ * scanner tokenizes just enough Java to know where a comment starts: string literals, character
+ * literals and text blocks are skipped, and unicode escapes are translated first, like JavaParser
+ * does with setPreprocessUnicodeEscapes(true).
+ *
+ * <p>The scanner reports the same comments as {@link JavaParserCommentScanner}. Syntax errors do
+ * not matter, because the code is never parsed. When the code cannot be tokenized, only the
+ * comments in front of the last token read before the lexical error are returned, which is what
+ * JavaParser keeps in that case.
+ */
+public class LexicalCommentScanner implements CommentScanner {
+  private static final String OPERATOR_CHARS = "(){}[];,.@=><!~?:+-*/&|^%";
+  private static final char CTRL_Z = '\u001a';
+  private static final String SINGLE_CHAR_ESCAPES = "ntbrf\\'\"";
+  private static final int LEXICAL_ERROR = -1;
+
+  /** A hexadecimal or binary literal, as in JLS 3.10.1 and 3.10.2. */
+  private static final Pattern HEX_OR_BINARY_LITERAL =
+      Pattern.compile(
+          "0[xX](?:[0-9a-fA-F][0-9a-fA-F_]*(?:\\.[0-9a-fA-F_]*)?|\\.[0-9a-fA-F][0-9a-fA-F_]*)"
+              + "[pP][+-]?[0-9](?:[0-9_]*[0-9])?[fFdD]?"
+              + "|0[xX][0-9a-fA-F](?:[0-9a-fA-F_]*[0-9a-fA-F])?[lL]?"
+              + "|0[bB][01](?:[01_]*[01])?[lL]?");
+
+  @Override
+  public List<ScannedComment> scan(String code) {
+    String src = translateUnicodeEscapes(code);
+    int length = src.length();
+    List<ScannedComment> comments = new ArrayList<>();
+    int keptComments = 0;
+    boolean compilationUnitMayEnd = true;
+    int line = 1;
+
+    int i = 0;
+    while (i < length) {
+      char c = src.charAt(i);
+      int end;
+      if (c == '\n') {
+        line++;
+        i++;
+        continue;
+      } else if (c == '\r') {
+        line++;
+        i += i + 1 < length && src.charAt(i + 1) == '\n' ? 2 : 1;
+        continue;
+      } else if (isWhitespace(c)) {
+        i++;
+        continue;
+      } else if (c == '/' && i + 1 < length && src.charAt(i + 1) == '/') {
+        end = i + 2;
+        while (end < length && src.charAt(end) != '\n' && src.charAt(end) != '\r') {
+          end++;
+        }
+        comments.add(new ScannedComment(CommentType.LINE, src.substring(i + 2, end), line));
+        i = end;
+        continue;
+      } else if (c == '/' && i + 1 < length && src.charAt(i + 1) == '*') {
+        boolean javadoc =
+            i + 3 < length && src.charAt(i + 2) == '*' && src.charAt(i + 3) != '/';
+        int contentStart = javadoc ? i + 3 : i + 2;
+        int contentEnd = src.indexOf("*/", contentStart);
+        if (contentEnd < 0) {
+          break;
+        }
+        CommentType type = javadoc ? CommentType.JAVADOC : CommentType.BLOCK;
+        comments.add(new ScannedComment(type, src.substring(contentStart, contentEnd), line));
+        end = contentEnd + 2;
+        line += countLineBreaks(src, i, end);
+        i = end;
+        continue;
+      } else if (src.startsWith("\"\"\"", i)) {
+        end = textBlockEnd(src, i);
+        if (end != LEXICAL_ERROR) {
+          line += countLineBreaks(src, i, end);
+        }
+      } else if (c == '"') {
+        end = stringLiteralEnd(src, i);
+      } else if (c == '\'') {
+        end = charLiteralEnd(src, i);
+      } else if (isIdentifierStart(c)) {
+        end = identifierEnd(src, i + 1);
+      } else if (isAsciiDigit(c)
+          || (c == '.' && i + 1 < length && isAsciiDigit(src.charAt(i + 1)))) {
+        end = numberEnd(src, i);
+      } else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+        end = i + 1;
+      } else if (c == CTRL_Z) {
+        if (compilationUnitMayEnd) {
+          // JavaParser ends the compilation unit here and does not read any further
+          return comments;
+        }
+        end = i + 1;
+      } else {
+        end = LEXICAL_ERROR;
+      }
+
+      if (end == LEXICAL_ERROR) {
+        return new ArrayList<>(comments.subList(0, keptComments));
+      }
+      keptComments = comments.size();
+      compilationUnitMayEnd = compilationUnitMayEnd && c == ';';
+      i = end;
+    }
+
+    if (i < length) {
+      // an unterminated block comment
+      return new ArrayList<>(comments.subList(0, keptComments));
+    }
+    return comments;
+  }
+
+  /**
+   * Returns the comments of code that has nothing but comments and white space, such as a group of
+   * added lines that only adds comments. The comments are the same as those of {@link #scan}, but
+   * since no token has to be read, the code is only checked for the start and end of every comment.
+   *
+   * @param code the code in which to find comments
+   * @return the comments in the code, or null if the code has anything but comments and white
+   *     space, a unicode escape or an unterminated block comment, so it has to be scanned
+   */
+  public static List<ScannedComment> scanCommentsOnly(String code) {
+    if (code.contains("\\u")) {
+      return null;
+    }
+    int length = code.length();
+    List<ScannedComment> comments = new ArrayList<>();
+    int line = 1;
+
+    int i = 0;
+    while (i < length) {
+      char c = code.charAt(i);
+      if (c == '\n') {
+        line++;
+        i++;
+      } else if (c == '\r') {
+        line++;
+        i += i + 1 < length && code.charAt(i + 1) == '\n' ? 2 : 1;
+      } else if (isWhitespace(c)) {
+        i++;
+      } else if (c == '/' && i + 1 < length && code.charAt(i + 1) == '/') {
+        int end = i + 2;
+        while (end < length && code.charAt(end) != '\n' && code.charAt(end) != '\r') {
+          end++;
+        }
+        comments.add(new ScannedComment(CommentType.LINE, code.substring(i + 2, end), line));
+        i = end;
+      } else if (c == '/' && i + 1 < length && code.charAt(i + 1) == '*') {
+        boolean javadoc =
+            i + 3 < length && code.charAt(i + 2) == '*' && code.charAt(i + 3) != '/';
+        int contentStart = javadoc ? i + 3 : i + 2;
+        int contentEnd = code.indexOf("*/", contentStart);
+        if (contentEnd < 0) {
+          return null;
+        }
+        CommentType type = javadoc ? CommentType.JAVADOC : CommentType.BLOCK;
+        comments.add(new ScannedComment(type, code.substring(contentStart, contentEnd), line));
+        int end = contentEnd + 2;
+        line += countLineBreaks(code, i, end);
+        i = end;
+      } else {
+        return null;
+      }
+    }
+    return comments;
+  }
+
+  /**
+   * Translates the unicode escapes in the code as described in JLS 3.3: a backslash preceded by an
+   * odd number of backslashes does not start an escape, and malformed escapes are left as they are.
+   */
+  private static String translateUnicodeEscapes(String code) {
+    if (!code.contains("\\u")) {
+      return code;
+    }
+    int first = code.indexOf('\\');
+
+    int length = code.length();
+    StringBuilder translated = new StringBuilder(length);
+    translated.append(code, 0, first);
+    int precedingBackslashes = 0;
+    int i = first;
+    while (i < length) {
+      char c = code.charAt(i);
+      if (c == '\\'
+          && precedingBackslashes % 2 == 0
+          && i + 1 < length
+          && code.charAt(i + 1) == 'u') {
+        int hexStart = i + 2;
+        while (hexStart < length && code.charAt(hexStart) == 'u') {
+          hexStart++;
+        }
+        int value = parseHex(code, hexStart);
+        if (value >= 0) {
+          translated.append((char) value);
+          precedingBackslashes = 0;
+          i = hexStart + 4;
+          continue;
+        }
+      }
+      precedingBackslashes = c == '\\' ? precedingBackslashes + 1 : 0;
+      translated.append(c);
+      i++;
+    }
+    return translated.toString();
+  }
+
+  private static int parseHex(String code, int start) {
+    if (start + 4 > code.length()) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = start; i < start + 4; i++) {
+      int digit = Character.digit(code.charAt(i), 16);
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * 16 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Returns the end of the text block starting at the given quote, or LEXICAL_ERROR if it is not
+   * terminated. Like JavaParser, every three quotes open a text block, also when they are not
+   * followed by a line terminator, and only an escaped quote is skipped as a unit.
+   */
+  private static int textBlockEnd(String src, int start) {
+    int length = src.length();
+    int i = start + 3;
+    while (i < length) {
+      if (src.startsWith("\\\"", i)) {
+        i += 2;
+      } else if (src.startsWith("\"\"\"", i)) {
+        return i + 3;
+      } else {
+        i++;
+      }
+    }
+    return LEXICAL_ERROR;
+  }
+
+  /** Returns the end of the string literal starting at the given quote, or LEXICAL_ERROR. */
+  private static int stringLiteralEnd(String src, int start) {
+    int length = src.length();
+    int i = start + 1;
+    while (i < length) {
+      char c = src.charAt(i);
+      if (c == '"') {
+        return i + 1;
+      } else if (c == '\n' || c == '\r') {
+        return LEXICAL_ERROR;
+      } else if (c == '\\') {
+        i = escapeSequenceEnd(src, i);
+        if (i == LEXICAL_ERROR) {
+          return LEXICAL_ERROR;
+        }
+      } else {
+        i++;
+      }
+    }
+    return LEXICAL_ERROR;
+  }
+
+  /** Returns the end of the character literal starting at the given quote, or LEXICAL_ERROR. */
+  private static int charLiteralEnd(String src, int start) {
+    int length = src.length();
+    int i = start + 1;
+    if (i >= length) {
+      return LEXICAL_ERROR;
+    }
+    char c = src.charAt(i);
+    if (c == '\'' || c == '\n' || c == '\r') {
+      return LEXICAL_ERROR;
+    } else if (c == '\\') {
+      i = escapeSequenceEnd(src, i);
+      if (i == LEXICAL_ERROR) {
+        return LEXICAL_ERROR;
+      }
+    } else {
+      i++;
+    }
+    return i < length && src.charAt(i) == '\'' ? i + 1 : LEXICAL_ERROR;
+  }
+
+  /**
+   * Returns the end of the escape sequence starting at the given backslash, or LEXICAL_ERROR. An
+   * octal escape starting with 0-3 has up to three digits, any other octal escape up to two.
+   */
+  private static int escapeSequenceEnd(String src, int backslash) {
+    int i = backslash + 1;
+    if (i >= src.length()) {
+      return LEXICAL_ERROR;
+    }
+    char c = src.charAt(i);
+    if (SINGLE_CHAR_ESCAPES.indexOf(c) >= 0) {
+      return i + 1;
+    } else if (isOctalDigit(c)) {
+      int maxDigits = c <= '3' ? 3 : 2;
+      int end = i + 1;
+      while (end < src.length() && end - i < maxDigits && isOctalDigit(src.charAt(end))) {
+        end++;
+      }
+      return end;
+    }
+    return LEXICAL_ERROR;
+  }
+
+  private static int identifierEnd(String src, int start) {
+    int end = start;
+    while (end < src.length() && isIdentifierPart(src.charAt(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Returns the end of the number literal starting at the given digit or decimal point. A number
+   * literal never fails to tokenize, but it does decide where the next token starts: in "1f9" the
+   * literal is "1f", and letters after a literal start an identifier.
+   */
+  private static int numberEnd(String src, int start) {
+    int length = src.length();
+    if (src.charAt(start) == '0'
+        && start + 1 < length
+        && "xXbB".indexOf(src.charAt(start + 1)) >= 0) {
+      Matcher matcher = HEX_OR_BINARY_LITERAL.matcher(src).region(start, length);
+      if (matcher.lookingAt()) {
+        return matcher.end();
+      }
+    }
+
+    boolean floatingPoint = false;
+    int i = start;
+    if (src.charAt(i) != '.') {
+      i = digitsEnd(src, i);
+    }
+    if (i < length && src.charAt(i) == '.') {
+      floatingPoint = true;
+      i++;
+      if (i < length && isAsciiDigit(src.charAt(i))) {
+        i = digitsEnd(src, i);
+      }
+    }
+    if (i < length && (src.charAt(i) == 'e' || src.charAt(i) == 'E')) {
+      int exponent = i + 1;
+      if (exponent < length && (src.charAt(exponent) == '+' || src.charAt(exponent) == '-')) {
+        exponent++;
+      }
+      if (exponent < length && isAsciiDigit(src.charAt(exponent))) {
+        floatingPoint = true;
+        i = digitsEnd(src, exponent);
+      }
+    }
+    if (i < length && "fFdD".indexOf(src.charAt(i)) >= 0) {
+      return i + 1;
+    } else if (!floatingPoint && i < length && (src.charAt(i) == 'l' || src.charAt(i) == 'L')) {
+      return i + 1;
+    }
+    return i;
+  }
+
+  /** Returns the end of the digits starting at the given digit. Underscores may not end them. */
+  private static int digitsEnd(String src, int start) {
+    int end = start;
+    while (end < src.length() && (isAsciiDigit(src.charAt(end)) || src.charAt(end) == '_')) {
+      end++;
+    }
+    while (src.charAt(end - 1) == '_') {
+      end--;
+    }
+    return end;
+  }
+
+  private static int countLineBreaks(String src, int start, int end) {
+    int lineBreaks = 0;
+    for (int i = start; i < end; i++) {
+      char c = src.charAt(i);
+      if (c == '\n' && (i == start || src.charAt(i - 1) != '\r')) {
+        lineBreaks++;
+      } else if (c == '\r') {
+        lineBreaks++;
+      }
+    }
+    return lineBreaks;
+  }
+
+  private static boolean isAsciiDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isOctalDigit(char c) {
+    return c >= '0' && c <= '7';
+  }
+
+  /**
+   * Returns whether the character starts an identifier. JavaParser also accepts the halves of a
+   * surrogate pair, so identifiers outside the basic multilingual plane tokenize.
+   */
+  private static boolean isIdentifierStart(char c) {
+    return Character.isJavaIdentifierStart(c) || Character.isSurrogate(c);
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isJavaIdentifierPart(c) || Character.isSurrogate(c);
+  }
+
+  /** Returns whether the character is white space according to JavaParser, including BOMs. */
+  private static boolean isWhitespace(char c) {
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\f':
+      case '\u0085':
+      case '\u00a0':
+      case '\u1680':
+      case '\u180e':
+      case '\u2028':
+      case '\u2029':
+      case '\u202f':
+      case '\u205f':
+      case '\u2060':
+      case '\u3000':
+      case '\ufeff':
+        return true;
+      default:
+        return c >= '\u2000' && c <= '\u200d';
+    }
+  }
+}
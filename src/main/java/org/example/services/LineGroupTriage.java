@@ -0,0 +1,93 @@
+package org.example.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.AddedLines;
+import org.example.models.CommentDTO;
+import org.example.models.ScannedComment;
+
+/**
+ * Sorts the groups of added lines of a hunk by how much work it takes to find their comments,
+ * before any of them is scanned. Most added code has no comments at all, so a comment is only
+ * looked for where it can be:
+ *
+ * <ul>
+ *   <li>comment-free: the group has no "//", no "/*" and no unicode escape that could stand for
+ *       one, so it has no comments and is not scanned
+ *   <li>comment-only: the group has nothing but comments and white space, so its comments are
+ *       found without tokenizing it, see {@link LexicalCommentScanner#scanCommentsOnly}
+ *   <li>mixed: the group has code and comments, so its comments are found by the comment scanner
+ *       of the {@link CommentService}, and by its comment cache if it has one
+ * </ul>
+ *
+ * <p>The comments of every group are the same as when every group is scanned. The number of
+ * groups of each kind is counted, so the share of each kind can be reported after a run. Safe to
+ * use from several threads at once.
+ */
+public class LineGroupTriage {
+  private final CommentService commentService;
+  private final LongAdder commentFreeCount = new LongAdder();
+  private final LongAdder commentOnlyCount = new LongAdder();
+  private final LongAdder mixedCount = new LongAdder();
+  private final LongAdder commentFreeMetric =
+      MetricsRegistry.getDefault().counter("line_groups_comment_free");
+  private final LongAdder commentOnlyMetric =
+      MetricsRegistry.getDefault().counter("line_groups_comment_only");
+  private final LongAdder mixedMetric = MetricsRegistry.getDefault().counter("line_groups_mixed");
+
+  /**
+   * Constructs a new LineGroupTriage.
+   *
+   * @param commentService the service that scans and filters the comments of a group
+   */
+  public LineGroupTriage(CommentService commentService) {
+    this.commentService = commentService;
+  }
+
+  /**
+   * Extracts the comments of a group of added lines, in the cheapest way its kind allows.
+   *
+   * @param lineGroup the added lines
+   * @return the comments of the lines
+   */
+  public List<CommentDTO> extractComments(AddedLines lineGroup) {
+    if (lineGroup.indexOf('/', '/') < 0
+        && lineGroup.indexOf('/', '*') < 0
+        && lineGroup.indexOf('\\', 'u') < 0) {
+      commentFreeCount.increment();
+      commentFreeMetric.increment();
+      return List.of();
+    }
+
+    String code = lineGroup.toString();
+    List<ScannedComment> comments = LexicalCommentScanner.scanCommentsOnly(code);
+    if (comments != null) {
+      commentOnlyCount.increment();
+      commentOnlyMetric.increment();
+      return commentService.filterComments(comments);
+    }
+
+    mixedCount.increment();
+    mixedMetric.increment();
+    return commentService.extractComments(code);
+  }
+
+  /**
+   * Returns the number of groups and the share of each kind of group since the triage was created.
+   *
+   * @return the number of groups and the percentage of comment-free, comment-only and mixed groups
+   */
+  public String getStats() {
+    long commentFree = commentFreeCount.sum();
+    long commentOnly = commentOnlyCount.sum();
+    long mixed = mixedCount.sum();
+    double total = Math.max(1, commentFree + commentOnly + mixed);
+    return String.format(
+        "Line groups: %d, %.1f%% comment-free, %.1f%% comment-only, %.1f%% mixed",
+        commentFree + commentOnly + mixed,
+        100 * commentFree / total,
+        100 * commentOnly / total,
+        100 * mixed / total);
+  }
+}
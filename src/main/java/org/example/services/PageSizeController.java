@@ -0,0 +1,300 @@
+package org.example.services;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.LongSupplier;
+import org.example.ExtractorConfiguration;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.CommentDTO;
+import org.example.models.HunkRecord;
+
+/**
+ * Sizes the pages of hunks of the {@link CommentPipeline} and the comment write batches. Without
+ * adaptive sizing, every page has the maximum page size and every write batch the configured write
+ * batch size.
+ *
+ * <p>With adaptive sizing, the first page has the minimum page size, and the page size is adjusted
+ * after every page, from what the page cost:
+ *
+ * <ul>
+ *   <li>the heap: the pages that can be in memory at once, each with the estimated bytes of its
+ *       hunks and comments, must fit in the heap budget
+ *   <li>GC: when garbage collection took more than a tenth of the time, measured over windows of at
+ *       least two seconds, the page size is halved, and later only grows to three quarters of the
+ *       size that caused it. That limit rises by a tenth with every window without GC pressure
+ *   <li>latency: when the fetch or the parse of a page took longer than the latency goal, the page
+ *       size shrinks by the same factor; when a full page took less than half the goal, it doubles
+ * </ul>
+ *
+ * <p>A write batch gets the comments of a page split over the writes in flight, so that a page of a
+ * sparse project still keeps every write busy. Every adjustment is printed with its reason, and the
+ * current sizes are the "page_size" and "write_batch_size" gauges of the {@link MetricsRegistry}.
+ */
+public class PageSizeController {
+  private static final double MAX_GC_SHARE = 0.1;
+  private static final long GC_WINDOW_MILLIS = 2000;
+  private static final double MIN_CHANGE = 0.1;
+  private static final double PRESSURE_MARGIN = 0.75;
+  private static final double PRESSURE_RELIEF = 1.1;
+  private static final double SMOOTHING = 0.3;
+  private static final int MIN_WRITE_BATCH_SIZE = 100;
+  private static final long NANOS_IN_MILLI = 1_000_000;
+  private static final long BYTES_IN_MB = 1024 * 1024;
+  // the pages in the queue in front of and behind the parse stage, and one page in every stage
+  private static final int QUEUES = 2;
+  private static final int STAGES = 3;
+  // the hunk record, its ID, the header of its content and its place in the page
+  private static final int HUNK_OVERHEAD_BYTES = 80;
+  // the comment, the header of its content and its content hash
+  private static final int COMMENT_OVERHEAD_BYTES = 200;
+
+  private final boolean adaptive;
+  private final int minPageSize;
+  private final int maxWriteBatchSize;
+  private final int writesInFlight;
+  private final long heapBudgetBytes;
+  private final long latencyGoalMillis;
+  private final int pagesInMemory;
+  private final LongSupplier gcMillis;
+  private final LongSupplier nanoTime;
+
+  private volatile int pageSize;
+  private volatile int writeBatchSize;
+  private volatile long lastFetchNanos;
+  private int maxPageSize;
+  private boolean started;
+  private double bytesPerHunk;
+  private double commentsPerHunk;
+  private long pressurePageSize = Long.MAX_VALUE;
+  private long lastGcMillis;
+  private long lastNanos;
+
+  /**
+   * Constructs a new PageSizeController with the page, write batch and pipeline settings of the
+   * given configuration. Adaptive sizing uses the collection times of the garbage collectors of
+   * this JVM.
+   *
+   * @param extractorConfig the settings of the page sizes, write batches and pipeline queues
+   */
+  public PageSizeController(ExtractorConfiguration extractorConfig) {
+    this(
+        extractorConfig.isAdaptivePageSize(),
+        extractorConfig.getMinPageSize(),
+        extractorConfig.getWriteBatchSize(),
+        extractorConfig.getWritesInFlight(),
+        extractorConfig.getPageHeapBudgetMb() * BYTES_IN_MB,
+        extractorConfig.getPageLatencyGoalMillis(),
+        QUEUES * extractorConfig.getPipelineQueueCapacity() + STAGES,
+        PageSizeController::getCollectionMillis,
+        System::nanoTime);
+  }
+
+  /**
+   * Constructs a new adaptive PageSizeController.
+   *
+   * @param minPageSize the minimum number of hunks in a page, which is also the first page size
+   * @param maxWriteBatchSize the maximum number of comments in a write batch
+   * @param writesInFlight the number of write batches that run at the same time
+   * @param heapBudgetBytes the estimated memory that the pages in memory may take
+   * @param latencyGoalMillis the time that the fetch or the parse of one page should take
+   * @param pagesInMemory the number of pages that can be in memory at the same time
+   * @param gcMillis the total time spent in garbage collection so far, in milliseconds
+   * @param nanoTime the current time, in nanoseconds
+   */
+  public PageSizeController(
+      int minPageSize,
+      int maxWriteBatchSize,
+      int writesInFlight,
+      long heapBudgetBytes,
+      long latencyGoalMillis,
+      int pagesInMemory,
+      LongSupplier gcMillis,
+      LongSupplier nanoTime) {
+    this(
+        true,
+        minPageSize,
+        maxWriteBatchSize,
+        writesInFlight,
+        heapBudgetBytes,
+        latencyGoalMillis,
+        pagesInMemory,
+        gcMillis,
+        nanoTime);
+  }
+
+  private PageSizeController(
+      boolean adaptive,
+      int minPageSize,
+      int maxWriteBatchSize,
+      int writesInFlight,
+      long heapBudgetBytes,
+      long latencyGoalMillis,
+      int pagesInMemory,
+      LongSupplier gcMillis,
+      LongSupplier nanoTime) {
+    this.adaptive = adaptive;
+    this.minPageSize = Math.max(1, minPageSize);
+    this.maxWriteBatchSize = maxWriteBatchSize;
+    this.writesInFlight = Math.max(1, writesInFlight);
+    this.heapBudgetBytes = heapBudgetBytes;
+    this.latencyGoalMillis = latencyGoalMillis;
+    this.pagesInMemory = pagesInMemory;
+    this.gcMillis = gcMillis;
+    this.nanoTime = nanoTime;
+    this.writeBatchSize = maxWriteBatchSize;
+    MetricsRegistry metrics = MetricsRegistry.getDefault();
+    metrics.gauge("page_size", () -> pageSize);
+    metrics.gauge("write_batch_size", () -> writeBatchSize);
+  }
+
+  /**
+   * Starts a run of the pipeline with the given maximum page size. The first run starts at the
+   * first page size, a later run continues with the sizes of the earlier runs.
+   *
+   * @param maxPageSize the maximum number of hunks in a page
+   */
+  public synchronized void start(int maxPageSize) {
+    this.maxPageSize = maxPageSize;
+    if (!adaptive) {
+      pageSize = maxPageSize;
+    } else if (!started) {
+      pageSize = Math.min(minPageSize, maxPageSize);
+      lastGcMillis = gcMillis.getAsLong();
+      lastNanos = nanoTime.getAsLong();
+    } else {
+      pageSize = Math.min(pageSize, maxPageSize);
+    }
+    started = true;
+  }
+
+  /**
+   * Returns the number of hunks that the next page should have.
+   *
+   * @return the page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Returns the number of comments that the next write batches should have.
+   *
+   * @return the write batch size
+   */
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  /**
+   * Records the time it took to fetch a page, which is compared with the latency goal after the
+   * page was parsed.
+   *
+   * @param nanos the fetch time of the page
+   */
+  public void recordFetch(long nanos) {
+    lastFetchNanos = nanos;
+  }
+
+  /**
+   * Records what a parsed page cost, and adjusts the page and write batch sizes if needed. The
+   * memory of the page is estimated from the lengths of the contents of its hunks and comments.
+   *
+   * @param hunks the hunks of the page
+   * @param commentDTOs the comments extracted from the hunks
+   * @param parseNanos the time it took to extract the comments
+   */
+  public synchronized void recordPage(
+      List<HunkRecord> hunks, List<CommentDTO> commentDTOs, long parseNanos) {
+    if (!adaptive || hunks.isEmpty()) {
+      return;
+    }
+    long bytes = 0;
+    for (HunkRecord hunk : hunks) {
+      bytes += HUNK_OVERHEAD_BYTES + hunk.getContentSize();
+    }
+    for (CommentDTO commentDTO : commentDTOs) {
+      bytes += COMMENT_OVERHEAD_BYTES + 2L * commentDTO.getContent().length();
+    }
+    bytesPerHunk = smooth(bytesPerHunk, bytes / (double) hunks.size());
+    commentsPerHunk = smooth(commentsPerHunk, commentDTOs.size() / (double) hunks.size());
+
+    // a short window can fall on a single collection, so the GC share is measured over a window
+    // of several pages
+    long gc = gcMillis.getAsLong();
+    long now = nanoTime.getAsLong();
+    long elapsedMillis = (now - lastNanos) / NANOS_IN_MILLI;
+    double gcShare = 0;
+    if (elapsedMillis >= GC_WINDOW_MILLIS) {
+      gcShare = (gc - lastGcMillis) / (double) elapsedMillis;
+      lastGcMillis = gc;
+      lastNanos = now;
+      if (gcShare <= MAX_GC_SHARE && pressurePageSize < Long.MAX_VALUE) {
+        pressurePageSize = (long) (PRESSURE_RELIEF * pressurePageSize);
+      }
+    }
+    long pageMillis = Math.max(parseNanos, lastFetchNanos) / NANOS_IN_MILLI;
+
+    long size = pageSize;
+    String reason = null;
+    if (gcShare > MAX_GC_SHARE) {
+      pressurePageSize = pageSize;
+      size = pageSize / 2;
+      reason = String.format("GC took %.0f%% of the last %d ms", 100 * gcShare, elapsedMillis);
+    } else if (pageMillis > latencyGoalMillis) {
+      size = pageSize * latencyGoalMillis / pageMillis;
+      reason = String.format("a page took %d ms, over the goal", pageMillis);
+    } else if (pageMillis < latencyGoalMillis / 2 && hunks.size() >= pageSize) {
+      size = Math.min(2L * pageSize, (long) (PRESSURE_MARGIN * pressurePageSize));
+      reason = String.format("a page took %d ms, under half the goal", pageMillis);
+    }
+    long heapPageSize = (long) (heapBudgetBytes / (pagesInMemory * bytesPerHunk));
+    if (size > heapPageSize) {
+      size = heapPageSize;
+      reason =
+          String.format(
+              "%d pages of %.0f bytes per hunk fit in the heap budget of %d MB",
+              pagesInMemory, bytesPerHunk, heapBudgetBytes / BYTES_IN_MB);
+    }
+    size = Math.max(Math.min(size, maxPageSize), Math.min(minPageSize, maxPageSize));
+    if (Math.abs(size - pageSize) <= MIN_CHANGE * pageSize) {
+      size = pageSize;
+    }
+
+    long batchSize = (long) Math.ceil(commentsPerHunk * size / writesInFlight);
+    batchSize =
+        Math.max(
+            Math.min(batchSize, maxWriteBatchSize),
+            Math.min(MIN_WRITE_BATCH_SIZE, maxWriteBatchSize));
+    if (Math.abs(batchSize - writeBatchSize) <= MIN_CHANGE * writeBatchSize) {
+      batchSize = writeBatchSize;
+    }
+    if (size == pageSize && batchSize == writeBatchSize) {
+      return;
+    }
+    System.out.printf(
+        "Page size %d -> %d hunks, write batch size %d -> %d comments: %s, with %.0f bytes and"
+            + " %.1f comments per hunk%n",
+        pageSize,
+        size,
+        writeBatchSize,
+        batchSize,
+        size == pageSize || reason == null ? "comments per page changed" : reason,
+        bytesPerHunk,
+        commentsPerHunk);
+    pageSize = (int) size;
+    writeBatchSize = (int) batchSize;
+  }
+
+  private static double smooth(double average, double sample) {
+    return average == 0 ? sample : average + SMOOTHING * (sample - average);
+  }
+
+  private static long getCollectionMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, collector.getCollectionTime());
+    }
+    return millis;
+  }
+}
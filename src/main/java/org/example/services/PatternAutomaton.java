@@ -0,0 +1,214 @@
+package org.example.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A deterministic automaton that finds the matches of a fixed set of simple patterns anywhere in a
+ * text, in a single pass and without backtracking. The patterns are compiled into a
+ * nondeterministic automaton that is turned into a deterministic one by subset construction.
+ *
+ * <p>A pattern is a sequence of the following elements, which have the same meaning as in a {@link
+ * java.util.regex.Pattern} without flags:
+ *
+ * <ul>
+ *   <li>a character, or a character escaped with a backslash, matches itself;
+ *   <li>{@code .} matches any character except a line terminator;
+ *   <li>{@code \s*} matches any number of whitespace characters {@code [ \t\n\x0B\f\r]}.
+ * </ul>
+ */
+final class PatternAutomaton {
+  private static final int ANY = -1;
+  private static final int WHITESPACE_STAR = -2;
+  private static final String WHITESPACE = " \t\n\u000b\f\r";
+  private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+  private static final int ASCII_SIZE = 128;
+
+  private static final int OTHER_SYMBOL = 0;
+  private static final int WHITESPACE_SYMBOL = 1;
+  private static final int WHITESPACE_LINE_TERMINATOR_SYMBOL = 2;
+  private static final int LINE_TERMINATOR_SYMBOL = 3;
+  private static final int FIRST_LITERAL_SYMBOL = 4;
+
+  private final int[] asciiSymbols = new int[ASCII_SIZE];
+  /** The sorted literal characters of the patterns. Their symbols follow the character classes. */
+  private final char[] literals;
+
+  private final int[][] transitions;
+  private final int[] stateFlags;
+
+  /**
+   * Compiles the automaton.
+   *
+   * @param patterns the patterns to find, mapped to the flag that is reported when one matches
+   * @throws IllegalArgumentException if a pattern uses an unsupported element
+   */
+  PatternAutomaton(Map<String, Integer> patterns) {
+    List<int[]> elements = new ArrayList<>();
+    List<Integer> flags = new ArrayList<>();
+    TreeSet<Character> literalSet = new TreeSet<>();
+    for (Map.Entry<String, Integer> pattern : patterns.entrySet()) {
+      int[] parsed = parse(pattern.getKey());
+      for (int element : parsed) {
+        if (element >= 0) {
+          literalSet.add((char) element);
+        }
+      }
+      elements.add(parsed);
+      flags.add(pattern.getValue());
+    }
+
+    literals = new char[literalSet.size()];
+    int index = 0;
+    for (char c : literalSet) {
+      literals[index++] = c;
+    }
+    for (char c = 0; c < ASCII_SIZE; c++) {
+      asciiSymbols[c] = classify(c);
+    }
+    // Every character of a symbol moves the automaton in the same way, so one of them is enough.
+    char[] representatives = new char[FIRST_LITERAL_SYMBOL + index];
+    BitSet represented = new BitSet();
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      int symbol = classify((char) c);
+      if (!represented.get(symbol)) {
+        represented.set(symbol);
+        representatives[symbol] = (char) c;
+      }
+    }
+
+    // An NFA state is a position in a pattern; the positions of all patterns are numbered in turn.
+    int[] patternOffsets = new int[elements.size() + 1];
+    for (int p = 0; p < elements.size(); p++) {
+      patternOffsets[p + 1] = patternOffsets[p] + elements.get(p).length + 1;
+    }
+    BitSet start = new BitSet();
+    for (int p = 0; p < elements.size(); p++) {
+      start.set(patternOffsets[p]);
+    }
+    closeOver(start, elements, patternOffsets);
+
+    Map<BitSet, Integer> stateIds = new HashMap<>();
+    List<BitSet> states = new ArrayList<>();
+    List<int[]> dfaTransitions = new ArrayList<>();
+    stateIds.put(start, 0);
+    states.add(start);
+    for (int state = 0; state < states.size(); state++) {
+      int[] row = new int[representatives.length];
+      for (int symbol = 0; symbol < representatives.length; symbol++) {
+        BitSet next = step(states.get(state), representatives[symbol], elements, patternOffsets);
+        next.or(start);
+        Integer id = stateIds.get(next);
+        if (id == null) {
+          id = states.size();
+          stateIds.put(next, id);
+          states.add(next);
+        }
+        row[symbol] = id;
+      }
+      dfaTransitions.add(row);
+    }
+
+    transitions = dfaTransitions.toArray(new int[0][]);
+    stateFlags = new int[states.size()];
+    for (int state = 0; state < states.size(); state++) {
+      for (int p = 0; p < elements.size(); p++) {
+        if (states.get(state).get(patternOffsets[p + 1] - 1)) {
+          stateFlags[state] |= flags.get(p);
+        }
+      }
+    }
+  }
+
+  private static int[] parse(String pattern) {
+    List<Integer> elements = new ArrayList<>();
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (pattern.startsWith("\\s*", i)) {
+        elements.add(WHITESPACE_STAR);
+        i += 2;
+      } else if (c == '\\' && i + 1 < pattern.length()) {
+        char escaped = pattern.charAt(++i);
+        if (Character.isLetterOrDigit(escaped)) {
+          throw new IllegalArgumentException("Unsupported escape in pattern: " + pattern);
+        }
+        elements.add((int) escaped);
+      } else if (c == '.') {
+        elements.add(ANY);
+      } else if ("\\[](){}*+?|^$".indexOf(c) >= 0) {
+        throw new IllegalArgumentException("Unsupported element in pattern: " + pattern);
+      } else {
+        elements.add((int) c);
+      }
+    }
+    return elements.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /** Adds the positions that follow a whitespace run that may be empty. */
+  private static void closeOver(BitSet positions, List<int[]> elements, int[] patternOffsets) {
+    for (int p = 0; p < elements.size(); p++) {
+      int[] pattern = elements.get(p);
+      for (int pos = 0; pos < pattern.length; pos++) {
+        if (positions.get(patternOffsets[p] + pos) && pattern[pos] == WHITESPACE_STAR) {
+          positions.set(patternOffsets[p] + pos + 1);
+        }
+      }
+    }
+  }
+
+  private static BitSet step(
+      BitSet positions, char c, List<int[]> elements, int[] patternOffsets) {
+    BitSet next = new BitSet();
+    for (int p = 0; p < elements.size(); p++) {
+      int[] pattern = elements.get(p);
+      for (int pos = 0; pos < pattern.length; pos++) {
+        if (!positions.get(patternOffsets[p] + pos)) {
+          continue;
+        }
+        int element = pattern[pos];
+        if (element == WHITESPACE_STAR) {
+          if (WHITESPACE.indexOf(c) >= 0) {
+            next.set(patternOffsets[p] + pos);
+          }
+        } else if (element == ANY ? LINE_TERMINATORS.indexOf(c) < 0 : element == c) {
+          next.set(patternOffsets[p] + pos + 1);
+        }
+      }
+    }
+    closeOver(next, elements, patternOffsets);
+    return next;
+  }
+
+  private int classify(char c) {
+    int index = Arrays.binarySearch(literals, c);
+    if (index >= 0) {
+      return FIRST_LITERAL_SYMBOL + index;
+    }
+    boolean whitespace = WHITESPACE.indexOf(c) >= 0;
+    boolean lineTerminator = LINE_TERMINATORS.indexOf(c) >= 0;
+    if (whitespace) {
+      return lineTerminator ? WHITESPACE_LINE_TERMINATOR_SYMBOL : WHITESPACE_SYMBOL;
+    }
+    return lineTerminator ? LINE_TERMINATOR_SYMBOL : OTHER_SYMBOL;
+  }
+
+  /** Returns the state in which no part of a pattern has been read. */
+  int start() {
+    return 0;
+  }
+
+  /** Returns the state after reading the given character in the given state. */
+  int next(int state, char c) {
+    return transitions[state][c < ASCII_SIZE ? asciiSymbols[c] : classify(c)];
+  }
+
+  /** Returns the flags of the patterns that match up to the given state. */
+  int flags(int state) {
+    return stateFlags[state];
+  }
+}
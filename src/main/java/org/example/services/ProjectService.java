@@ -1,59 +1,86 @@
 package org.example.services;
 
-import java.text.ParseException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
-import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.CommentColumns;
 import org.example.daos.ConfigDAO;
+import org.example.daos.HunkFileReader;
 import org.example.daos.ProjectDao;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.AddedLines;
 import org.example.models.CommentDTO;
+import org.example.models.HunkContext;
+import org.example.models.HunkRecord;
 
 public class ProjectService {
-
   private final ProjectDao projectDao;
   private final HunkService hunkService;
   private final ConfigDAO configDAO;
   private final CommentService commentService;
+  private final ExtractorConfiguration extractorConfig;
+  private final AddedLinesScanner addedLinesScanner = new AddedLinesScanner();
+  private final LineGroupTriage lineGroupTriage;
+  private final LongAdder lineGroupCount = MetricsRegistry.getDefault().counter("line_groups");
+  private final LongAdder extractedCount =
+      MetricsRegistry.getDefault().counter("comments_extracted");
+  private final LongAdder filteredCount = MetricsRegistry.getDefault().counter("comments_filtered");
 
   public ProjectService(
       ProjectDao projectDao,
       HunkService hunkService,
       ConfigDAO configDAO,
       CommentService commentService) {
+    this(projectDao, hunkService, configDAO, commentService, new ExtractorConfiguration());
+  }
+
+  public ProjectService(
+      ProjectDao projectDao,
+      HunkService hunkService,
+      ConfigDAO configDAO,
+      CommentService commentService,
+      ExtractorConfiguration extractorConfig) {
     this.projectDao = projectDao;
     this.hunkService = hunkService;
     this.configDAO = configDAO;
 
     this.commentService = commentService;
+    this.extractorConfig = extractorConfig;
+    this.lineGroupTriage = new LineGroupTriage(commentService);
   }
 
   /**
    * Retrieves and processes hunks of code, extracting comments and storing them in the database.
    *
-   * <p>If outputOriginalHunks is true, it also outputs the initial hunks.
+   * <p>If outputOriginalHunks is true, it first outputs the hunks of the commits that were added to
+   * SmartSHARK since the last run. It then processes the hunks after the newest checkpoint, or from
+   * the first output hunk that was not processed yet if that hunk sorts before the checkpoint.
+   *
+   * <p>If coordination is enabled, the hunks are processed together with other worker processes,
+   * see {@link HunkRangeWorker}, instead of after the newest checkpoint. Hunks that were output
+   * after the ranges of the workers were planned are split into a new generation of ranges.
    *
    * @param limit the maximum number of hunks to process at once
    * @param outputOriginalHunks whether or not to extract the initial hunks from the SmartSHARK
    *     database and persist them in the intermediate database for further processing. If set to
    *     False, will assume initial (time-consuming) collection of hunks from SmartSHARK database
-   *     has already happened. Continue to retrieve comments from the extracted hunks.
+   *     has already happened. Continue to retrieve comments from the extracted hunks, after the
+   *     newest checkpoint unless resuming is disabled.
    */
-  public void addCommentsByProject(int limit, boolean outputOriginalHunks) throws ParseException {
+  public void addCommentsByProject(int limit, boolean outputOriginalHunks) {
     float secondInHour = 3600;
     if (outputOriginalHunks) {
 
       System.out.println("Retrieving and outputting initial hunks");
       Instant startQueryCount = Instant.now();
 
-      projectDao.outputProjectsWithHunks();
+      new HunkMaterializer(projectDao, configDAO, extractorConfig).materialize();
 
       Instant endQueryCount = Instant.now();
       System.out.printf(
@@ -61,200 +88,145 @@ public class ProjectService {
           Duration.between(startQueryCount, endQueryCount).toSeconds() / secondInHour);
     }
 
+    if (extractorConfig.isCoordinated()) {
+      System.out.println("Hunk processing started as a coordinated worker!");
+      new HunkRangeWorker(hunkService, configDAO, createPipeline(), extractorConfig).run(limit);
+      printRunStats();
+      return;
+    }
+
+    ObjectId lastSeenId = extractorConfig.isResume() ? configDAO.getLastId() : null;
+    //    new hunks can sort before the newest checkpoint, so the run continues before the first
+    //    new hunk, which an earlier run that stopped may have output; comments that were written
+    //    before are not added twice
+    ObjectId resumeFloor = lastSeenId == null ? null : configDAO.getResumeFloor();
+    if (resumeFloor != null && resumeFloor.compareTo(lastSeenId) <= 0) {
+      lastSeenId = idBefore(resumeFloor);
+    }
+    if (lastSeenId != null) {
+      System.out.printf("Resuming after checkpoint %s%n", lastSeenId);
+      addCommentsByProject(lastSeenId, limit);
+      return;
+    }
+
     System.out.println("Getting total hunks to be processed count..");
     long totalHunksCount = hunkService.getHunksCount();
     System.out.printf("%d hunks to be processed!%n", totalHunksCount);
 
-    Instant startHunkCount = Instant.now();
     System.out.println("Hunk processing started!");
-
-    ObjectId lastSeenObjectId;
-    int amountHunksProcessed = 0;
-
-    List<Document> hunks = hunkService.getHunks(limit);
-    while (!hunks.isEmpty()) {
-      List<CommentDTO> commentDTOS = new ArrayList<>();
-
-      for (Document document : hunks) {
-
-        List<String> addedLinesGroups =
-            extractAddedLinesFromContent(document.get("hunk", Document.class).getString("content"));
-        String projectName = document.getString("name");
-
-        LocalDateTime committerDate =
-            document
-                .get("commit", Document.class)
-                .getDate("committer_date")
-                .toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDateTime();
-        ObjectId originalHunkId = document.get("hunk", Document.class).getObjectId("_id");
-        int hunkNewStart = document.get("hunk", Document.class).getInteger("new_start");
-        int hunkOldStart = document.get("hunk", Document.class).getInteger("old_start");
-
-        ObjectId vcsId = document.get("vcs_system", Document.class).getObjectId("_id");
-        String vcsUrl = document.get("vcs_system", Document.class).getString("url");
-        ObjectId branchId = document.get("branch", Document.class).getObjectId("_id");
-        String branchName = document.get("branch", Document.class).getString("name");
-
-        ObjectId commitId = document.get("commit", Document.class).getObjectId("_id");
-        String commitHash = document.get("commit", Document.class).getString("revision_hash");
-
-        ObjectId fileActionId = document.get("file_action", Document.class).getObjectId("_id");
-
-        ObjectId fileId = document.get("file", Document.class).getObjectId("_id");
-        String filePath = document.get("file", Document.class).getString("path");
-
-        for (String lineGroup : addedLinesGroups) {
-          List<CommentDTO> comments = commentService.extractComments(lineGroup);
-
-          if (!comments.isEmpty()) {
-            comments =
-                commentService.mapToCommentDTO(
-                    projectName,
-                    comments,
-                    committerDate,
-                    originalHunkId,
-                    hunkNewStart,
-                    hunkOldStart,
-                    vcsId,
-                    vcsUrl,
-                    branchId,
-                    branchName,
-                    commitId,
-                    commitHash,
-                    fileActionId,
-                    fileId,
-                    filePath);
-            commentDTOS.addAll(comments);
-          }
-        }
-      }
-
-      commentService.addComments(commentDTOS);
-
-      lastSeenObjectId = hunks.get(hunks.size() - 1).getObjectId("_id");
-      configDAO.addLastId(lastSeenObjectId);
-
-      amountHunksProcessed += hunks.size();
-      System.out.printf("%d/%d hunks processed %n", amountHunksProcessed, totalHunksCount);
-      Instant endHunkCount = Instant.now();
-
-      System.out.printf(
-          "Hours passed since start of processing hunks: %.2f%n",
-          Duration.between(startHunkCount, endHunkCount).toSeconds() / secondInHour);
-
-      hunks = hunkService.getHunks(lastSeenObjectId, limit);
-    }
+    createPipeline().run(null, limit, totalHunksCount);
+    printRunStats();
   }
 
-  //  TODO can be used to start extracting comments from a specific hunk_id
+  /**
+   * Retrieves and processes the hunks after the given hunk, extracting comments and storing them in
+   * the database.
+   *
+   * @param lastSeenId the ID of the last processed hunk
+   * @param limit the maximum number of hunks to process at once
+   */
   public void addCommentsByProject(ObjectId lastSeenId, int limit) {
-
-    float secondInHour = 3600;
     System.out.println("Getting total hunks to be processed count..");
     long totalHunksCount = hunkService.getHunksCount(lastSeenId);
-    System.out.printf("%d hunks to be processed!", totalHunksCount);
+    System.out.printf("%d hunks to be processed!%n", totalHunksCount);
 
-    Instant startHunkCount = Instant.now();
     System.out.println("Hunk processing started!");
+    createPipeline().run(lastSeenId, limit, totalHunksCount);
+    printRunStats();
+  }
 
-    int amountHunksProcessed = 0;
-    List<Document> hunks = hunkService.getHunks(lastSeenId, limit);
-
-    while (!hunks.isEmpty()) {
-      List<CommentDTO> commentDTOS = new ArrayList<>();
-
-      for (Document document : hunks) {
-
-        List<String> addedLinesGroups =
-            extractAddedLinesFromContent(document.get("hunk", Document.class).getString("content"));
-        String projectName = document.getString("name");
-
-        LocalDateTime committerDate =
-            document
-                .get("commit", Document.class)
-                .getDate("committer_date")
-                .toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDateTime();
-
-        ObjectId originalHunkId = document.get("hunk", Document.class).getObjectId("_id");
-        int hunkNewStart = document.get("hunk", Document.class).getInteger("new_start");
-        int hunkOldStart = document.get("hunk", Document.class).getInteger("old_start");
-
-        ObjectId vcsId = document.get("vcs_system", Document.class).getObjectId("_id");
-        String vcsUrl = document.get("vcs_system", Document.class).getString("url");
-        ObjectId branchId = document.get("branch", Document.class).getObjectId("_id");
-        String branchName = document.get("branch", Document.class).getString("name");
-
-        ObjectId commitId = document.get("commit", Document.class).getObjectId("_id");
-        String commitHash = document.get("commit", Document.class).getString("revision_hash");
+  /**
+   * Extracts the comments of the hunks of a local export of the intermediate hunk collection and
+   * writes them to a local file, without connecting to MongoDB. Every hunk of the export is
+   * processed; no checkpoints are added.
+   *
+   * @param source the .bson file or JSON lines file of the hunks, see {@link HunkFileReader}
+   * @param sink the .bson file, JSON lines file or comment column file to write the comments to,
+   *     see {@link CommentFileWriter} and {@link CommentColumnWriter}
+   * @param limit the maximum number of hunks to process at once
+   */
+  public void addCommentsFromFile(Path source, Path sink, int limit) {
+    System.out.printf("Extracting comments from %s to %s%n", source, sink);
+    createPipeline()
+        .run(
+            new HunkFileReader(source),
+            sink.getFileName().toString().endsWith(CommentColumns.FILE_EXTENSION)
+                ? new CommentColumnWriter(sink)
+                : new CommentFileWriter(sink, extractorConfig.isCompactComments()),
+            limit,
+            0);
+    printRunStats();
+  }
 
-        ObjectId fileActionId = document.get("file_action", Document.class).getObjectId("_id");
+  private void printRunStats() {
+    System.out.println(lineGroupTriage.getStats());
+    String cacheStats = commentService.getCacheStats();
+    if (cacheStats != null) {
+      System.out.println(cacheStats);
+    }
+  }
 
-        ObjectId fileId = document.get("file", Document.class).getObjectId("_id");
-        String filePath = document.get("file", Document.class).getString("path");
+  /**
+   * Extracts the comments that were added in a hunk and gives them the metadata of the hunk. The
+   * comments of a hunk share its {@link HunkContext}.
+   *
+   * @param hunk a hunk from the intermediate hunk collection
+   * @return the comments added in the hunk
+   */
+  public List<CommentDTO> extractCommentsFromHunk(HunkRecord hunk) {
+    List<CommentDTO> commentDTOS = new ArrayList<>();
 
-        for (String lineGroup : addedLinesGroups) {
-          List<CommentDTO> comments = commentService.extractComments(lineGroup);
+    List<AddedLines> addedLinesGroups = addedLinesScanner.scan(hunk.getContent());
+    for (AddedLines lineGroup : addedLinesGroups) {
+      commentDTOS.addAll(lineGroupTriage.extractComments(lineGroup));
+    }
 
-          if (!comments.isEmpty()) {
-            comments =
-                commentService.mapToCommentDTO(
-                    projectName,
-                    comments,
-                    committerDate,
-                    originalHunkId,
-                    hunkNewStart,
-                    hunkOldStart,
-                    vcsId,
-                    vcsUrl,
-                    branchId,
-                    branchName,
-                    commitId,
-                    commitHash,
-                    fileActionId,
-                    fileId,
-                    filePath);
-            commentDTOS.addAll(comments);
-          }
-        }
+    commentService.assignHunkContext(hunk.getHunkContext(), commentDTOS);
+    commentService.assignCommentIds(hunk.getHunkContext().getHunkId(), commentDTOS);
+    commentService.assignContentHashes(commentDTOS);
+    lineGroupCount.add(addedLinesGroups.size());
+    extractedCount.add(commentDTOS.size());
+    for (CommentDTO commentDTO : commentDTOS) {
+      if (commentDTO.isFiltered()) {
+        filteredCount.increment();
       }
+    }
+    return commentDTOS;
+  }
 
-      commentService.addComments(commentDTOS);
-
-      lastSeenId = hunks.get(hunks.size() - 1).getObjectId("_id");
-      configDAO.addLastId(lastSeenId);
-
-      amountHunksProcessed += hunks.size();
-      System.out.printf("%d/%d hunks processed %n", amountHunksProcessed, totalHunksCount);
-      Instant endHunkCount = Instant.now();
-
-      System.out.printf(
-          "Hours passed since start of processing hunks: %.2f%n",
-          Duration.between(startHunkCount, endHunkCount).toSeconds() / secondInHour);
-
-      hunks = hunkService.getHunks(lastSeenId, limit);
+  /** Returns the ID right before the given ID, so a query for greater IDs includes the given ID. */
+  static ObjectId idBefore(ObjectId id) {
+    byte[] bytes = id.toByteArray();
+    // subtract one from the last byte, and borrow from the next more significant byte while a
+    // byte wraps around from 0 to 0xff
+    for (int i = bytes.length - 1; i >= 0; i--) {
+      bytes[i]--;
+      if (bytes[i] != (byte) 0xff) {
+        break;
+      }
     }
+    return new ObjectId(bytes);
+  }
+
+  private CommentPipeline createPipeline() {
+    return new CommentPipeline(
+        hunkService,
+        commentService,
+        configDAO,
+        this::extractCommentsFromHunk,
+        extractorConfig);
   }
 
   /**
    * Extracts added lines from the provided content string. Added lines are lines that start with a
-   * "+" symbol.
+   * "+" symbol, which is stripped. Consecutive added lines are returned as one string.
    *
    * @param content the content to extract added lines from
    * @return a list of strings containing the added lines from the content
    */
   public List<String> extractAddedLinesFromContent(String content) {
-    String ADDED_LINES_REGEX = "^(?:\\+.+\\r?\\n?)+$";
-    return Pattern.compile(ADDED_LINES_REGEX, Pattern.MULTILINE)
-        .matcher(content)
-        .results()
-        .map(MatchResult::group)
-        .collect(Collectors.toList())
-        .stream()
-        .map((str) -> str.replace("+", ""))
+    return addedLinesScanner.scan(content).stream()
+        .map(AddedLines::toString)
         .collect(Collectors.toList());
   }
 }
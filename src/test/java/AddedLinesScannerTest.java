@@ -0,0 +1,67 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.apache.commons.io.IOUtils;
+import org.example.models.AddedLines;
+import org.example.services.AddedLinesScanner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AddedLinesScannerTest {
+  private static final String ADDED_LINES_REGEX = "^(?:\\+.+\\r?\\n?)+$";
+
+  private final AddedLinesScanner addedLinesScanner = new AddedLinesScanner();
+
+  @Test
+  void stripsOnlyLeadingMarker() {
+    String content =
+        " context\n+int a = b + c;\n+String s = \"x\" + y; // a + b\n-removed\n+\n++i;";
+
+    List<AddedLines> groups = addedLinesScanner.scan(content);
+
+    Assertions.assertEquals(2, groups.size());
+    Assertions.assertEquals(
+        "int a = b + c;\nString s = \"x\" + y; // a + b", groups.get(0).toString());
+    Assertions.assertEquals("+i;", groups.get(1).toString());
+  }
+
+  @Test
+  void groupsLikeRegex() throws IOException {
+    FileInputStream fis = new FileInputStream("src/test/resources/testString.txt");
+    String content = IOUtils.toString(fis, StandardCharsets.UTF_8);
+
+    //    the regex also stripped a "+" inside a line and kept some trailing line terminators
+    List<String> expected =
+        Pattern.compile(ADDED_LINES_REGEX, Pattern.MULTILINE)
+            .matcher(content)
+            .results()
+            .map(MatchResult::group)
+            .map(group -> group.replaceAll("(?m)^\\+", "").stripTrailing())
+            .collect(Collectors.toList());
+    List<String> actual =
+        addedLinesScanner.scan(content).stream()
+            .map(group -> group.toString().stripTrailing())
+            .collect(Collectors.toList());
+
+    Assertions.assertEquals(expected, actual);
+  }
+
+  @Test
+  void viewMatchesCopiedText() {
+    String content = "+ab\r\n+c\r+/d\n x\n+\\u002F";
+
+    for (AddedLines group : addedLinesScanner.scan(content)) {
+      String text = group.toString();
+      Assertions.assertEquals(text.length(), group.length());
+      for (int i = 0; i < text.length(); i++) {
+        Assertions.assertEquals(text.charAt(i), group.charAt(i));
+      }
+      Assertions.assertEquals(text.indexOf('/'), group.indexOf('/'));
+      Assertions.assertEquals(text.indexOf('\\'), group.indexOf('\\'));
+    }
+  }
+}
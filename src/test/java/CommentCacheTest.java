@@ -0,0 +1,58 @@
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.example.daos.CommentDao;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.CommentDTO;
+import org.example.services.CommentCache;
+import org.example.services.CommentService;
+import org.example.services.LexicalCommentScanner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommentCacheTest {
+  private static final String LINE_GROUP = "// TODO remove this hack\nint a = 1; /* block */";
+
+  private final CommentService commentService =
+      new CommentService(mock(CommentDao.class), new LexicalCommentScanner());
+
+  @Test
+  void returnsNewCopiesOfTheCachedComments() {
+    CommentCache cache = new CommentCache(100, 1 << 20, new MetricsRegistry());
+    AtomicInteger scans = new AtomicInteger();
+    Function<String, List<CommentDTO>> extractor =
+        lineGroup -> {
+          scans.incrementAndGet();
+          return commentService.extractComments(lineGroup);
+        };
+
+    List<CommentDTO> first = cache.get(LINE_GROUP, extractor);
+    first.get(0).setContent("changed");
+    List<CommentDTO> second = cache.get(LINE_GROUP, extractor);
+
+    Assertions.assertEquals(1, scans.get());
+    Assertions.assertEquals(commentService.extractComments(LINE_GROUP), second);
+    for (int i = 0; i < first.size(); i++) {
+      Assertions.assertEquals(first.get(i).isFiltered(), second.get(i).isFiltered());
+      Assertions.assertEquals(first.get(i).getType(), second.get(i).getType());
+    }
+    Assertions.assertNotEquals("changed", second.get(0).getContent());
+    Assertions.assertEquals(0.5, cache.getHitRate());
+  }
+
+  @Test
+  void evictsLineGroupsBeyondTheBudgets() {
+    CommentCache byEntries = new CommentCache(16, 1 << 20, new MetricsRegistry());
+    CommentCache byBytes = new CommentCache(1000, 16 * 1024, new MetricsRegistry());
+    for (int i = 0; i < 500; i++) {
+      byEntries.get(LINE_GROUP + i, commentService::extractComments);
+      byBytes.get(LINE_GROUP + i, commentService::extractComments);
+    }
+
+    Assertions.assertTrue(byEntries.getEntryCount() <= 16);
+    Assertions.assertTrue(byBytes.getEstimatedBytes() <= 16 * 1024);
+    Assertions.assertTrue(byBytes.getEntryCount() > 0);
+  }
+}
@@ -0,0 +1,99 @@
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.example.services.CommentClassifier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Checks the single-pass comment classifier against the filter checks it replaced. */
+public class CommentClassifierTest {
+  private static final String SOURCE_CODE_REGEX =
+      "else\\s*\\{|"
+          + "try\\s*\\{|"
+          + "do\\s*\\{|"
+          + "finally\\s*\\{|"
+          + "if\\s*\\(|"
+          + "for\\s*\\(|"
+          + "while\\s*\\(|"
+          + "switch\\s*\\(|"
+          + "Long\\s*\\(|"
+          + "Byte\\s*\\(|"
+          + "Double\\s*\\(|"
+          + "Float\\s*\\(|"
+          + "Integer\\s*\\(|"
+          + "Short\\s*\\(|"
+          + "BigDecimal\\s*\\(|"
+          + "BigInteger\\s*\\(|"
+          + "Character\\s*\\(|"
+          + "Boolean\\s*\\(|"
+          + "String\\s*\\(|"
+          + "assert\\s*\\(|"
+          + "System\\.out.|"
+          + "public\\s*void|"
+          + "private\\s*static\\*final|"
+          + "catch\\s*\\(";
+  private static final List<String> FRAGMENTS =
+      List.of(
+          "todo", "ToDo", "FIXME", "xX", "x", "License", "COPYRIGHT", "auto-generated", "if",
+          "else", "Integer", "System", ".", "out", "private", "static", "*", "final", "public",
+          "void", "(", "{", " ", "\t", "\n", "\r", "\u000b", "\u2028", "\u00a0",
+          "\u0130", "\u212a", "\ud801\udc00", "a", "-");
+  private static final int RANDOM_CASES = 50_000;
+  private static final int RANDOM_CASE_MAX_FRAGMENTS = 12;
+
+  private final CommentClassifier commentClassifier = new CommentClassifier();
+
+  @Test
+  void classifiesLikeSeparateChecks() {
+    Random random = new Random(7);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      StringBuilder comment = new StringBuilder();
+      int fragments = random.nextInt(RANDOM_CASE_MAX_FRAGMENTS);
+      for (int j = 0; j < fragments; j++) {
+        comment.append(FRAGMENTS.get(random.nextInt(FRAGMENTS.size())));
+      }
+      String str = comment.toString();
+      Assertions.assertEquals(
+          expectedFlags(str), commentClassifier.classify(str), "Flags of: " + str);
+    }
+  }
+
+  @Test
+  void findsConfiguredTags() {
+    CommentClassifier classifier =
+        new CommentClassifier(
+            List.of("todo", "HACK", "kludge"),
+            CommentClassifier.DEFAULT_LICENSE_WORDS,
+            CommentClassifier.DEFAULT_AUTO_GENERATED_PHRASES);
+
+    Assertions.assertEquals(
+        CommentClassifier.SATD_TAG, classifier.classify("quick hack, remove later"));
+    Assertions.assertEquals(CommentClassifier.SATD_TAG, classifier.classify("KLUDGE"));
+    Assertions.assertEquals(
+        CommentClassifier.SATD_TAG | CommentClassifier.LICENSE | CommentClassifier.SOURCE_CODE,
+        classifier.classify("hack around the license check in if (valid)"));
+    Assertions.assertEquals(0, classifier.classify("a plain comment"));
+    Assertions.assertEquals(CommentClassifier.BLANK, classifier.classify(" \t "));
+  }
+
+  private int expectedFlags(String comment) {
+    String lowerCase = comment.toLowerCase();
+    int flags = 0;
+    if (lowerCase.contains("fixme") || lowerCase.contains("xxx") || lowerCase.contains("todo")) {
+      flags |= CommentClassifier.SATD_TAG;
+    }
+    if (lowerCase.contains("license") || lowerCase.contains("copyright")) {
+      flags |= CommentClassifier.LICENSE;
+    }
+    if (Pattern.compile(SOURCE_CODE_REGEX).matcher(comment).find()) {
+      flags |= CommentClassifier.SOURCE_CODE;
+    }
+    if (lowerCase.contains("todo auto-generated")) {
+      flags |= CommentClassifier.AUTO_GENERATED;
+    }
+    if (comment.replace("\t", "").isBlank()) {
+      flags |= CommentClassifier.BLANK;
+    }
+    return flags;
+  }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.example.daos.CommentCodec;
+import org.example.daos.CommentColumnReader;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkContext;
+import org.example.services.CommentColumnWriter;
+import org.example.services.CommentFileWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CommentColumnsTest {
+  private static final int COMMENTS = 2500;
+  private static final int CHUNK_COMMENTS = 1000;
+
+  @TempDir Path directory;
+
+  private final List<CommentDTO> comments = new ArrayList<>();
+
+  public CommentColumnsTest() {
+    ObjectId vcsId = new ObjectId();
+    ObjectId branchId = new ObjectId();
+    HunkContext hunkContext = null;
+    for (int i = 0; i < COMMENTS; i++) {
+      if (i % 5 == 0) {
+        hunkContext =
+            new HunkContext(
+                "project" + i / 1000,
+                LocalDateTime.of(2020, 1, 1, 0, 0).plusMinutes(i * 7L),
+                new ObjectId(),
+                i,
+                -i,
+                vcsId,
+                "https://github.com/apache/project" + i / 1000,
+                branchId,
+                i % 2 == 0 ? "master" : null,
+                new ObjectId(),
+                Integer.toHexString(i / 10),
+                new ObjectId(),
+                new ObjectId(),
+                "src/main/java/Class" + i / 50 + ".java");
+      }
+      CommentDTO comment =
+          new CommentDTO(
+              "// comment " + i % 300 + " caf\u00e9",
+              i % 3 == 0,
+              CommentType.values()[i % CommentType.values().length]);
+      if (i % 100 != 0) {
+        comment.setId(new ObjectId());
+        comment.setContentHash(Integer.toHexString(i % 300));
+        comment.setHunkContext(hunkContext);
+      }
+      comments.add(comment);
+    }
+  }
+
+  @Test
+  void readsEveryColumnAcrossChunks() throws IOException {
+    Path file = directory.resolve("comments.ccol");
+    try (CommentColumnWriter writer = new CommentColumnWriter(file, CHUNK_COMMENTS)) {
+      writer.write(comments.subList(0, 10));
+      writer.write(comments.subList(10, COMMENTS));
+    }
+
+    List<CommentDTO> read = new ArrayList<>();
+    try (CommentColumnReader reader = new CommentColumnReader(file)) {
+      reader.forEachRemaining(read::add);
+      Assertions.assertEquals(Files.size(file), reader.getBytesRead());
+    }
+
+    Assertions.assertEquals(COMMENTS, read.size());
+    for (int i = 0; i < COMMENTS; i++) {
+      Assertions.assertEquals(encode(comments.get(i)), encode(read.get(i)));
+      Assertions.assertEquals(comments.get(i).getHunkContext(), read.get(i).getHunkContext());
+    }
+  }
+
+  @Test
+  void readsOnlyProjectedColumns() throws IOException {
+    Path file = directory.resolve("comments.ccol");
+    try (CommentColumnWriter writer = new CommentColumnWriter(file, CHUNK_COMMENTS)) {
+      writer.write(comments);
+    }
+    Path bson = directory.resolve("comments.bson");
+    try (CommentFileWriter writer = new CommentFileWriter(bson, false)) {
+      writer.write(comments);
+    }
+    Assertions.assertTrue(Files.size(file) < Files.size(bson) / 4);
+
+    try (CommentColumnReader reader = new CommentColumnReader(file, List.of("content"))) {
+      for (CommentDTO comment : comments) {
+        CommentDTO read = reader.next();
+        Assertions.assertEquals(comment.getContent(), read.getContent());
+        Assertions.assertEquals(comment.getType(), read.getType());
+        Assertions.assertNull(read.getId());
+        Assertions.assertNull(read.getHunkContext());
+        Assertions.assertFalse(read.isFiltered());
+      }
+      Assertions.assertFalse(reader.hasNext());
+      Assertions.assertTrue(reader.getBytesRead() < Files.size(file) / 2);
+    }
+  }
+
+  @Test
+  void rejectsUnknownColumns() throws IOException {
+    Path file = directory.resolve("comments.ccol");
+    new CommentColumnWriter(file).close();
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new CommentColumnReader(file, List.of("name")));
+    try (CommentColumnReader reader = new CommentColumnReader(file)) {
+      Assertions.assertFalse(reader.hasNext());
+    }
+  }
+
+  private static BsonDocument encode(CommentDTO comment) {
+    BsonDocument document = new BsonDocument();
+    new CommentCodec(false)
+        .encode(new BsonDocumentWriter(document), comment, EncoderContext.builder().build());
+    return document;
+  }
+}
@@ -0,0 +1,138 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.example.daos.CommentDao;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.FailedComment;
+import org.example.models.HunkContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Checks the upserts of the comment contents collection and the query of the unique contents. */
+public class CommentDaoTest {
+  private static final CodecRegistry REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+
+  private final MongoCollection<Document> contentsCollection = mockCollection();
+  private CommentDao commentDao;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    MongoClient mongoClient = mock(MongoClient.class);
+    MongoDatabase database = mock(MongoDatabase.class);
+    MongoCollection<CommentDTO> commentsCollection = mock(MongoCollection.class);
+    MongoCollection<FailedComment> deadLetterCollection = mock(MongoCollection.class);
+    when(mongoClient.getDatabase(any())).thenReturn(database);
+    when(database.getCollection(CommentDao.COMMENTS_COLLECTION, CommentDTO.class))
+        .thenReturn(commentsCollection);
+    when(commentsCollection.withCodecRegistry(any())).thenReturn(commentsCollection);
+    when(database.getCollection(CommentDao.DEAD_LETTER_COLLECTION, FailedComment.class))
+        .thenReturn(deadLetterCollection);
+    when(deadLetterCollection.withCodecRegistry(any())).thenReturn(deadLetterCollection);
+    when(database.getCollection(CommentDao.COMMENTS_COLLECTION)).thenReturn(mockCollection());
+    when(database.getCollection(CommentDao.CONTENTS_COLLECTION)).thenReturn(contentsCollection);
+    commentDao = new CommentDao("smartshark", "comments", mongoClient);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void upsertsOneCountPerProjectAndContent() {
+    commentDao.addContentCounts(
+        List.of(
+            newComment("// a", "ha", "p", false),
+            newComment("// b", "hb", "p", true),
+            newComment("// a", "ha", "p", false),
+            newComment("// a", "ha", "q", false)));
+
+    ArgumentCaptor<List<WriteModel<Document>>> upserts = ArgumentCaptor.forClass(List.class);
+    ArgumentCaptor<BulkWriteOptions> options = ArgumentCaptor.forClass(BulkWriteOptions.class);
+    verify(contentsCollection).bulkWrite(upserts.capture(), options.capture());
+    Assertions.assertFalse(options.getValue().isOrdered());
+    Assertions.assertEquals(2, upserts.getValue().size());
+    assertUpsert(upserts.getValue().get(0), "p", "ha", "// a", 2);
+    assertUpsert(upserts.getValue().get(1), "q", "ha", "// a", 1);
+  }
+
+  @Test
+  void writesNothingForFilteredComments() {
+    commentDao.addContentCounts(List.of(newComment("// b", "hb", "p", true)));
+
+    verify(contentsCollection, never()).bulkWrite(anyList(), any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void findsTheUniqueContentsOfAProjectMostCommonFirst() {
+    FindIterable<Document> found = mock(FindIterable.class);
+    List<Document> contents = List.of(new Document("content", "// a"));
+    when(contentsCollection.find(any(Bson.class))).thenReturn(found);
+    when(found.sort(any())).thenReturn(found);
+    when(found.into(anyList())).thenReturn(contents);
+
+    Assertions.assertSame(contents, commentDao.getUniqueContents("p"));
+
+    ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+    ArgumentCaptor<Bson> sort = ArgumentCaptor.forClass(Bson.class);
+    verify(contentsCollection).find(filter.capture());
+    verify(found).sort(sort.capture());
+    Assertions.assertEquals(BsonDocument.parse("{project_name: 'p'}"), render(filter.getValue()));
+    Assertions.assertEquals(BsonDocument.parse("{count: -1}"), render(sort.getValue()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertUpsert(
+      WriteModel<Document> model, String project, String hash, String content, int count) {
+    UpdateOneModel<Document> upsert = (UpdateOneModel<Document>) model;
+    Assertions.assertTrue(upsert.getOptions().isUpsert());
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format("{_id: {project_name: '%s', content_hash: '%s'}}", project, hash)),
+        render(upsert.getFilter()));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format(
+                "{$setOnInsert: {project_name: '%s', content_hash: '%s', content: '%s'},"
+                    + " $inc: {count: %d}}",
+                project, hash, content, count)),
+        render(upsert.getUpdate()));
+  }
+
+  private static BsonDocument render(Bson bson) {
+    return bson.toBsonDocument(Document.class, REGISTRY);
+  }
+
+  private static CommentDTO newComment(
+      String content, String contentHash, String projectName, boolean filtered) {
+    CommentDTO commentDTO = new CommentDTO(content, filtered, CommentType.LINE);
+    commentDTO.setContentHash(contentHash);
+    commentDTO.setHunkContext(
+        new HunkContext(
+            projectName, null, null, 0, 0, null, null, null, null, null, null, null, null, null));
+    return commentDTO;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MongoCollection<Document> mockCollection() {
+    return mock(MongoCollection.class);
+  }
+}
@@ -0,0 +1,145 @@
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+import com.mongodb.MongoClientSettings;
+import java.time.LocalDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.types.ObjectId;
+import org.example.daos.CommentCodec;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.FailedComment;
+import org.example.models.HunkContext;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommentEncodingTest {
+  private final CodecRegistry registry =
+      fromRegistries(
+          MongoClientSettings.getDefaultCodecRegistry(),
+          fromProviders(PojoCodecProvider.builder().automatic(true).build()));
+
+  private final CodecRegistry commentCodecRegistry =
+      fromRegistries(fromCodecs(new CommentCodec(false)), registry);
+
+  @Test
+  void writesTheHunkContextAsFieldsOfTheComment() {
+    CommentDTO commentDTO = newComment();
+
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            "{_id: {$oid: '000000000000000000000001'},"
+                + " branch_id: {$oid: '000000000000000000000006'}, branch_name: 'b',"
+                + " commit_hash: 'h', commit_id: {$oid: '000000000000000000000007'},"
+                + " committer_date: {$date: '2020-01-02T03:04:05Z'}, content: '// TODO x',"
+                + " content_hash: 'ch', file_action_id: {$oid: '000000000000000000000008'},"
+                + " file_id: {$oid: '000000000000000000000009'}, file_path: 'f', filtered: false,"
+                + " hunk_id: {$oid: '000000000000000000000002'}, hunk_new_start: 3,"
+                + " hunk_old_start: 4, project_name: 'p', type: 'LINE',"
+                + " vcs_id: {$oid: '000000000000000000000005'}, vcs_url: 'u'}")
+            .toJson(),
+        encode(commentDTO).toJson());
+  }
+
+  @Test
+  void commentCodecWritesTheSameDocumentsAsThePojoCodec() {
+    CommentDTO commentDTO = newComment();
+    CommentDTO withoutContext = new CommentDTO("x", true, CommentType.BLOCK);
+    FailedComment failedComment = new FailedComment(commentDTO, 11000, "duplicate key");
+
+    Assertions.assertEquals(
+        encode(commentDTO).toJson(), encode(commentDTO, new CommentCodec(false)).toJson());
+    Assertions.assertEquals(
+        encode(withoutContext).toJson(), encode(withoutContext, new CommentCodec(false)).toJson());
+    Assertions.assertEquals(
+        encode(failedComment, registry.get(FailedComment.class)).toJson(),
+        encode(failedComment, commentCodecRegistry.get(FailedComment.class)).toJson());
+  }
+
+  @Test
+  void commentCodecReadsBackTheCommentsItWrites() {
+    CommentDTO commentDTO = newComment();
+    CommentCodec codec = new CommentCodec(false);
+
+    CommentDTO decoded =
+        codec.decode(
+            new BsonDocumentReader(encode(commentDTO)), DecoderContext.builder().build());
+
+    Assertions.assertEquals(commentDTO, decoded);
+    Assertions.assertEquals(commentDTO.getId(), decoded.getId());
+    Assertions.assertEquals(commentDTO.getHunkContext(), decoded.getHunkContext());
+    Assertions.assertEquals(commentDTO.getContentHash(), decoded.getContentHash());
+    Assertions.assertEquals(commentDTO.isFiltered(), decoded.isFiltered());
+    Assertions.assertEquals(commentDTO.getType(), decoded.getType());
+  }
+
+  @Test
+  void compactCommentCodecLeavesOutDefaultFields() {
+    CommentDTO withoutContext = new CommentDTO("x", true, CommentType.BLOCK);
+    withoutContext.setContentHash("");
+    CommentCodec codec = new CommentCodec(true);
+
+    BsonDocument document = encode(withoutContext, codec);
+
+    Assertions.assertEquals(
+        BsonDocument.parse("{content: 'x', filtered: true, type: 'BLOCK'}").toJson(),
+        document.toJson());
+    CommentDTO decoded =
+        codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    Assertions.assertEquals(withoutContext, decoded);
+    Assertions.assertNull(decoded.getHunkContext());
+  }
+
+  @Test
+  void writesNoMetadataOfACommentWithoutHunkContext() {
+    CommentDTO commentDTO = new CommentDTO("x", true, CommentType.BLOCK);
+
+    Assertions.assertEquals(
+        BsonDocument.parse(
+                "{content: 'x', filtered: true, hunk_new_start: 0, hunk_old_start: 0,"
+                    + " type: 'BLOCK'}")
+            .toJson(),
+        encode(commentDTO).toJson());
+  }
+
+  private CommentDTO newComment() {
+    CommentDTO commentDTO = new CommentDTO("// TODO x", false, CommentType.LINE);
+    commentDTO.setId(new ObjectId("000000000000000000000001"));
+    commentDTO.setContentHash("ch");
+    commentDTO.setHunkContext(
+        new HunkContext(
+            "p",
+            LocalDateTime.of(2020, 1, 2, 3, 4, 5),
+            new ObjectId("000000000000000000000002"),
+            3,
+            4,
+            new ObjectId("000000000000000000000005"),
+            "u",
+            new ObjectId("000000000000000000000006"),
+            "b",
+            new ObjectId("000000000000000000000007"),
+            "h",
+            new ObjectId("000000000000000000000008"),
+            new ObjectId("000000000000000000000009"),
+            "f"));
+    return commentDTO;
+  }
+
+  private BsonDocument encode(CommentDTO commentDTO) {
+    return encode(commentDTO, registry.get(CommentDTO.class));
+  }
+
+  private <T> BsonDocument encode(T value, Codec<T> codec) {
+    BsonDocument document = new BsonDocument();
+    codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+    return document;
+  }
+}
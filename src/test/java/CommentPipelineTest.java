@@ -0,0 +1,233 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.daos.HunkReader;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkRecord;
+import org.example.services.CommentPipeline;
+import org.example.services.CommentService;
+import org.example.services.CommentSink;
+import org.example.services.CommentWriter;
+import org.example.services.HunkService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Checks the order of the checkpoints and comments of the pipeline, and how it fails. */
+public class CommentPipelineTest {
+  private static final int PAGE_SIZE = 2;
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final HunkService hunkService = mock(HunkService.class);
+  private final CommentService commentService = mock(CommentService.class);
+  private final ExecutorService runner = Executors.newSingleThreadExecutor();
+
+  @AfterEach
+  void tearDown() {
+    runner.shutdownNow();
+  }
+
+  @Test
+  void addsCheckpointsInPageOrderOnlyAfterTheirPagesWereWritten() throws Exception {
+    List<HunkRecord> hunks = newHunks(6);
+    stubPages(hunks);
+    List<CompletableFuture<Void>> writes = Collections.synchronizedList(new ArrayList<>());
+    CommentWriter writer = mock(CommentWriter.class);
+    when(writer.write(anyList()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<Void> written = new CompletableFuture<>();
+              writes.add(written);
+              return written;
+            });
+    when(commentService.newCommentWriter(anyInt(), anyInt(), anyInt(), anyLong(), anyBoolean()))
+        .thenReturn(writer);
+    List<ObjectId> checkpoints = Collections.synchronizedList(new ArrayList<>());
+
+    CommentPipeline pipeline = newPipeline(1, this::commentOf);
+    Future<?> run =
+        runner.submit(() -> pipeline.run(null, null, PAGE_SIZE, hunks.size(), checkpoints::add));
+
+    awaitSize(writes, 3);
+    Assertions.assertEquals(List.of(), checkpoints);
+
+    writes.get(1).complete(null);
+    Thread.sleep(100);
+    Assertions.assertEquals(List.of(), checkpoints);
+
+    writes.get(0).complete(null);
+    awaitSize(checkpoints, 2);
+    Thread.sleep(100);
+    Assertions.assertEquals(List.of(hunks.get(1).getId(), hunks.get(3).getId()), checkpoints);
+
+    writes.get(2).complete(null);
+    run.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    Assertions.assertEquals(
+        List.of(hunks.get(1).getId(), hunks.get(3).getId(), hunks.get(5).getId()), checkpoints);
+  }
+
+  @Test
+  void failingStageStopsTheOtherStages() {
+    HunkRecord hunk = newHunks(1).get(0);
+    HunkReader endless =
+        new HunkReader() {
+          @Override
+          public boolean hasNext() {
+            return true;
+          }
+
+          @Override
+          public HunkRecord next() {
+            return hunk;
+          }
+
+          @Override
+          public void close() {}
+        };
+    CommentPipeline pipeline =
+        newPipeline(
+            1,
+            failing -> {
+              throw new IllegalArgumentException("cannot parse");
+            });
+
+    IllegalStateException e =
+        Assertions.assertTimeoutPreemptively(
+            TIMEOUT,
+            () ->
+                Assertions.assertThrows(
+                    IllegalStateException.class,
+                    () -> pipeline.run(endless, new CollectingSink(), PAGE_SIZE, 0)));
+    Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+  }
+
+  @Test
+  void parallelExtractionKeepsTheCommentsInHunkOrder() {
+    List<HunkRecord> hunks = newHunks(1000);
+    CollectingSink serial = new CollectingSink();
+    CollectingSink parallel = new CollectingSink();
+
+    newPipeline(1, this::commentsOf).run(readerOf(hunks), serial, 100, hunks.size());
+    newPipeline(4, this::commentsOf).run(readerOf(hunks), parallel, 100, hunks.size());
+
+    Assertions.assertEquals(3 * hunks.size(), serial.contents().size());
+    Assertions.assertEquals(serial.contents(), parallel.contents());
+  }
+
+  private CommentPipeline newPipeline(
+      int parseWorkers, Function<HunkRecord, List<CommentDTO>> hunkProcessor) {
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    config.setProperty("extractor.parse.workers", parseWorkers);
+    config.setProperty("extractor.read.cursor", false);
+    config.setProperty("extractor.metrics.report.seconds", 0);
+    return new CommentPipeline(
+        hunkService,
+        commentService,
+        mock(ConfigDAO.class),
+        hunkProcessor,
+        new ExtractorConfiguration(config));
+  }
+
+  /** Pages the given hunks by the ID after which a page starts, as the hunk collection does. */
+  private void stubPages(List<HunkRecord> hunks) {
+    when(hunkService.getHunks(any(), any(), anyInt()))
+        .thenAnswer(
+            invocation -> {
+              ObjectId lastSeenId = invocation.getArgument(0);
+              int limit = invocation.getArgument(2);
+              return hunks.stream()
+                  .filter(hunk -> lastSeenId == null || hunk.getId().compareTo(lastSeenId) > 0)
+                  .limit(limit)
+                  .collect(Collectors.toList());
+            });
+  }
+
+  private List<CommentDTO> commentOf(HunkRecord hunk) {
+    return List.of(new CommentDTO(hunk.getContent(), false, CommentType.LINE));
+  }
+
+  private List<CommentDTO> commentsOf(HunkRecord hunk) {
+    List<CommentDTO> commentDTOs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      commentDTOs.add(new CommentDTO(hunk.getContent() + "/" + i, false, CommentType.LINE));
+    }
+    return commentDTOs;
+  }
+
+  private static List<HunkRecord> newHunks(int count) {
+    List<HunkRecord> hunks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      hunks.add(new HunkRecord(new ObjectId(), null, ("+// hunk " + i).getBytes()));
+    }
+    return hunks;
+  }
+
+  private static HunkReader readerOf(List<HunkRecord> hunks) {
+    Iterator<HunkRecord> iterator = hunks.iterator();
+    return new HunkReader() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public HunkRecord next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  private static void awaitSize(List<?> list, int size) throws InterruptedException {
+    long deadline = System.nanoTime() + TIMEOUT.toNanos();
+    while (list.size() < size) {
+      Assertions.assertTrue(System.nanoTime() < deadline, "timed out waiting for " + size);
+      Thread.sleep(10);
+    }
+  }
+
+  /** A sink that keeps the comments it was handed, in order. */
+  private static final class CollectingSink implements CommentSink {
+    private final List<CommentDTO> commentDTOs = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public CompletableFuture<Void> write(List<CommentDTO> commentDTOs) {
+      this.commentDTOs.addAll(commentDTOs);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void reportThroughput() {}
+
+    @Override
+    public void close() {}
+
+    private List<String> contents() {
+      return commentDTOs.stream().map(CommentDTO::getContent).collect(Collectors.toList());
+    }
+  }
+}
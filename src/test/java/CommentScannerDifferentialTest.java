@@ -0,0 +1,100 @@
+import static org.mockito.Mockito.mock;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.example.daos.CommentDao;
+import org.example.daos.ConfigDAO;
+import org.example.daos.ProjectDao;
+import org.example.services.CommentScanner;
+import org.example.services.CommentService;
+import org.example.services.HunkService;
+import org.example.services.JavaParserCommentScanner;
+import org.example.services.LexicalCommentScanner;
+import org.example.services.ProjectService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks that the lexical comment scanner finds the same comments as the JavaParser scanner. */
+public class CommentScannerDifferentialTest {
+  private static final String CASE_SEPARATOR = "\n==== case ====\n";
+  private static final String RANDOM_ALPHABET = "ab01_ \n\r\t/*\"'\\u+.;{}()x#\u00a0";
+  private static final int RANDOM_CASES = 20_000;
+  private static final int RANDOM_CASE_MAX_LENGTH = 40;
+
+  private CommentScanner javaParserScanner;
+  private CommentScanner lexicalScanner;
+  private CommentService javaParserCommentService;
+  private CommentService lexicalCommentService;
+  private ProjectService projectService;
+
+  @BeforeEach
+  void setUp() {
+    CommentDao commentDao = mock(CommentDao.class);
+    javaParserScanner = new JavaParserCommentScanner();
+    lexicalScanner = new LexicalCommentScanner();
+    javaParserCommentService = new CommentService(commentDao, javaParserScanner);
+    lexicalCommentService = new CommentService(commentDao, lexicalScanner);
+    projectService =
+        new ProjectService(
+            mock(ProjectDao.class),
+            mock(HunkService.class),
+            mock(ConfigDAO.class),
+            javaParserCommentService);
+  }
+
+  @Test
+  void findsSameCommentsInHunk() throws IOException {
+    String codeStr = readResource("src/test/resources/testString.txt");
+    List<String> addedLinesGroups = projectService.extractAddedLinesFromContent(codeStr);
+
+    assertSameComments(addedLinesGroups);
+  }
+
+  @Test
+  void findsSameCommentsInEdgeCases() throws IOException {
+    String corpus = readResource("src/test/resources/scannerEdgeCases.txt");
+    List<String> edgeCases = List.of(corpus.split(CASE_SEPARATOR));
+
+    assertSameComments(edgeCases);
+  }
+
+  @Test
+  void findsSameCommentsInRandomCode() {
+    Random random = new Random(42);
+    List<String> randomCases = new ArrayList<>();
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      StringBuilder code = new StringBuilder();
+      int length = random.nextInt(RANDOM_CASE_MAX_LENGTH);
+      for (int j = 0; j < length; j++) {
+        code.append(RANDOM_ALPHABET.charAt(random.nextInt(RANDOM_ALPHABET.length())));
+      }
+      randomCases.add(code.toString());
+    }
+
+    assertSameComments(randomCases);
+  }
+
+  private void assertSameComments(List<String> codes) {
+    for (String code : codes) {
+      Assertions.assertEquals(
+          javaParserScanner.scan(code), lexicalScanner.scan(code), "Scanned comments of: " + code);
+      //    CommentDTO equality only looks at the hunk id and content, so compare every field.
+      Assertions.assertEquals(
+          javaParserCommentService.extractComments(code).toString(),
+          lexicalCommentService.extractComments(code).toString(),
+          "Extracted comments of: " + code);
+    }
+  }
+
+  private String readResource(String path) throws IOException {
+    try (FileInputStream fis = new FileInputStream(path)) {
+      return IOUtils.toString(fis, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -6,10 +6,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import org.apache.commons.io.IOUtils;
+import org.bson.types.ObjectId;
 import org.example.daos.CommentDao;
 import org.example.daos.ConfigDAO;
 import org.example.daos.ProjectDao;
 import org.example.models.CommentDTO;
+import org.example.models.CommentType;
 import org.example.services.CommentService;
 import org.example.services.HunkService;
 import org.example.services.ProjectService;
@@ -79,4 +81,24 @@ public class CommentServiceTest {
 
     Assertions.assertTrue(expCommentFound);
   }
+
+  @Test
+  void assignsSameCommentIdsWhenHunkIsExtractedAgain() {
+    ObjectId hunkId = new ObjectId();
+    List<CommentDTO> comments =
+        List.of(
+            new CommentDTO("first", false, CommentType.LINE),
+            new CommentDTO("second", false, CommentType.LINE));
+    List<CommentDTO> extractedAgain =
+        List.of(
+            new CommentDTO("first", false, CommentType.LINE),
+            new CommentDTO("second", false, CommentType.LINE));
+
+    commentService.assignCommentIds(hunkId, comments);
+    commentService.assignCommentIds(hunkId, extractedAgain);
+
+    Assertions.assertEquals(comments.get(0).getId(), extractedAgain.get(0).getId());
+    Assertions.assertEquals(comments.get(1).getId(), extractedAgain.get(1).getId());
+    Assertions.assertNotEquals(comments.get(0).getId(), comments.get(1).getId());
+  }
 }
@@ -0,0 +1,155 @@
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.ServerAddress;
+import java.util.List;
+import org.example.daos.CommentDao;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.FailedComment;
+import org.bson.BsonMaximumSizeExceededException;
+import org.example.services.CommentWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommentWriterTest {
+  private static final int NOT_WRITABLE_PRIMARY = 10107;
+  private static final int DOCUMENT_VALIDATION_FAILURE = 121;
+  private static final int DUPLICATE_KEY = 11000;
+
+  private final CommentDao commentDao = mock(CommentDao.class);
+  private final CommentDTO first = new CommentDTO("first", false, CommentType.LINE);
+  private final CommentDTO second = new CommentDTO("second", false, CommentType.LINE);
+  private final CommentDTO third = new CommentDTO("third", false, CommentType.LINE);
+
+  @Test
+  void retriesOnlyTransientFailuresAndDeadLettersTheRest() throws Exception {
+    FailedComment transientFailure = new FailedComment(second, NOT_WRITABLE_PRIMARY, "step down");
+    FailedComment permanentFailure =
+        new FailedComment(third, DOCUMENT_VALIDATION_FAILURE, "invalid");
+    when(commentDao.insertUnordered(List.of(first, second, third)))
+        .thenReturn(List.of(transientFailure, permanentFailure));
+    when(commentDao.insertUnordered(List.of(second))).thenReturn(List.of());
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 2, 3, 1)) {
+      commentWriter.write(List.of(first, second, third)).get();
+    }
+
+    verify(commentDao).insertUnordered(List.of(second));
+    verify(commentDao).addDeadLetters(List.of(permanentFailure));
+  }
+
+  @Test
+  void retriesWholeBatchAfterLostConnection() throws Exception {
+    when(commentDao.insertUnordered(List.of(first, second)))
+        .thenThrow(new MongoSocketReadException("connection reset", new ServerAddress()))
+        .thenReturn(List.of());
+    when(commentDao.insertUnordered(List.of(third))).thenReturn(List.of());
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 2, 2, 3, 1)) {
+      commentWriter.write(List.of(first, second, third)).get();
+    }
+
+    verify(commentDao, never()).addDeadLetters(anyList());
+  }
+
+  @Test
+  void deadLettersTransientFailuresAfterLastRetry() throws Exception {
+    FailedComment transientFailure = new FailedComment(first, NOT_WRITABLE_PRIMARY, "step down");
+    when(commentDao.insertUnordered(List.of(first))).thenReturn(List.of(transientFailure));
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first)).get();
+    }
+
+    verify(commentDao).addDeadLetters(List.of(transientFailure));
+    Assertions.assertEquals(NOT_WRITABLE_PRIMARY, transientFailure.getErrorCode());
+  }
+
+  @Test
+  void countsDuplicateKeyAsWritten() throws Exception {
+    FailedComment duplicate = new FailedComment(first, DUPLICATE_KEY, "duplicate key");
+    when(commentDao.insertUnordered(List.of(first, second))).thenReturn(List.of(duplicate));
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first, second)).get();
+    }
+
+    verify(commentDao).insertUnordered(anyList());
+    verify(commentDao, never()).addDeadLetters(anyList());
+    verify(commentDao).addContentCounts(List.of(second));
+  }
+
+  @Test
+  void deadLettersOnlyTheCommentThatCannotBeEncoded() throws Exception {
+    BsonMaximumSizeExceededException tooLarge = new BsonMaximumSizeExceededException("too large");
+    when(commentDao.insertUnordered(List.of(first, second, third))).thenThrow(tooLarge);
+    when(commentDao.insertUnordered(List.of(first))).thenReturn(List.of());
+    when(commentDao.insertUnordered(List.of(second))).thenThrow(tooLarge);
+    when(commentDao.insertUnordered(List.of(third))).thenReturn(List.of());
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first, second, third)).get();
+    }
+
+    verify(commentDao).addContentCounts(List.of(first));
+    verify(commentDao).addContentCounts(List.of(third));
+    verify(commentDao).addDeadLetters(argThat(deadLetters -> isOnly(second, deadLetters)));
+  }
+
+  @Test
+  void doesNotCountCommentsOfAnEarlierRunWhenABatchFailsOnTheClient() throws Exception {
+    BsonMaximumSizeExceededException tooLarge = new BsonMaximumSizeExceededException("too large");
+    when(commentDao.insertUnordered(List.of(first, second, third))).thenThrow(tooLarge);
+    when(commentDao.insertUnordered(List.of(first)))
+        .thenReturn(List.of(new FailedComment(first, DUPLICATE_KEY, "duplicate key")));
+    when(commentDao.insertUnordered(List.of(second))).thenThrow(tooLarge);
+    when(commentDao.insertUnordered(List.of(third))).thenReturn(List.of());
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first, second, third)).get();
+    }
+
+    verify(commentDao, never()).addContentCounts(List.of(first));
+    verify(commentDao).addContentCounts(List.of(third));
+  }
+
+  @Test
+  void completesWhenTheDeadLettersCannotBeAdded() throws Exception {
+    FailedComment permanentFailure =
+        new FailedComment(first, DOCUMENT_VALIDATION_FAILURE, "invalid");
+    when(commentDao.insertUnordered(List.of(first))).thenReturn(List.of(permanentFailure));
+    doThrow(new MongoTimeoutException("no server")).when(commentDao).addDeadLetters(anyList());
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first)).get();
+    }
+
+    verify(commentDao).addDeadLetters(List.of(permanentFailure));
+  }
+
+  @Test
+  void countsCommentsThatAFailedBatchAddedAfterAll() throws Exception {
+    FailedComment duplicate = new FailedComment(first, DUPLICATE_KEY, "duplicate key");
+    when(commentDao.insertUnordered(List.of(first, second)))
+        .thenThrow(new MongoSocketReadException("connection reset", new ServerAddress()))
+        .thenReturn(List.of(duplicate));
+
+    try (CommentWriter commentWriter = new CommentWriter(commentDao, 10, 1, 2, 1)) {
+      commentWriter.write(List.of(first, second)).get();
+    }
+
+    verify(commentDao).addContentCounts(List.of(first, second));
+  }
+
+  private static boolean isOnly(CommentDTO commentDTO, List<FailedComment> deadLetters) {
+    return deadLetters.size() == 1 && deadLetters.get(0).getComment() == commentDTO;
+  }
+}
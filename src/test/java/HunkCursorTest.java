@@ -0,0 +1,61 @@
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoCursorNotFoundException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCursor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.example.daos.HunkCursor;
+import org.example.models.HunkRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HunkCursorTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void resumesAfterLastHunkWhenCursorIsClosed() {
+    HunkRecord first = new HunkRecord(new ObjectId(), null, null);
+    HunkRecord second = new HunkRecord(new ObjectId(), null, null);
+    HunkRecord third = new HunkRecord(new ObjectId(), null, null);
+    MongoCursorNotFoundException timeout = new MongoCursorNotFoundException(1, new ServerAddress());
+
+    MongoCursor<HunkRecord> timedOut = mock(MongoCursor.class);
+    //    hasNext is called twice per hunk: by forEachRemaining and by next
+    when(timedOut.hasNext()).thenReturn(true, true, true, true).thenThrow(timeout);
+    when(timedOut.next()).thenReturn(first, second);
+    MongoCursor<HunkRecord> resumed = mock(MongoCursor.class);
+    when(resumed.hasNext()).thenReturn(true, true, false);
+    when(resumed.next()).thenReturn(third);
+
+    List<ObjectId> openedAfter = new ArrayList<>();
+    List<HunkRecord> hunks = new ArrayList<>();
+    try (HunkCursor cursor =
+        new HunkCursor(
+            afterId -> {
+              openedAfter.add(afterId);
+              return openedAfter.size() == 1 ? timedOut : resumed;
+            },
+            null)) {
+      cursor.forEachRemaining(hunks::add);
+    }
+
+    Assertions.assertEquals(List.of(first, second, third), hunks);
+    Assertions.assertEquals(Arrays.asList(null, second.getId()), openedAfter);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void givesUpWhenResumingMakesNoProgress() {
+    MongoCursor<HunkRecord> timedOut = mock(MongoCursor.class);
+    when(timedOut.hasNext())
+        .thenThrow(new MongoCursorNotFoundException(1, new ServerAddress()));
+
+    HunkCursor cursor = new HunkCursor(afterId -> timedOut, null);
+
+    Assertions.assertThrows(MongoCursorNotFoundException.class, cursor::hasNext);
+  }
+}
@@ -0,0 +1,228 @@
+import static org.example.daos.ProjectDao.COMMITTED_SINCE;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoException;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.daos.ProjectDao;
+import org.example.models.HunkPartition;
+import org.example.models.PendingOutput;
+import org.example.services.HunkMaterializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+public class HunkMaterializerTest {
+  private static final String TARGET = "twan_satd.hunk";
+
+  private ProjectDao projectDao;
+  private ConfigDAO configDAO;
+  private PropertiesConfiguration config;
+  private HunkPartition firstProject;
+  private HunkPartition secondProject;
+  private ObjectId firstLastCommitId;
+  private HunkPartition first;
+  private HunkPartition second;
+
+  @BeforeEach
+  void setUp() {
+    projectDao = mock(ProjectDao.class);
+    configDAO = mock(ConfigDAO.class);
+    config = new PropertiesConfiguration();
+    config.setProperty("mongodb.database.comments", "twan_satd");
+    firstProject = new HunkPartition(new ObjectId(), null, null, null, COMMITTED_SINCE, null);
+    secondProject = new HunkPartition(new ObjectId(), null, null, null, COMMITTED_SINCE, null);
+    firstLastCommitId = new ObjectId();
+    ObjectId secondLastCommitId = new ObjectId();
+    first =
+        new HunkPartition(
+            firstProject.getProjectId(), null, null, firstLastCommitId, COMMITTED_SINCE, null);
+    second =
+        new HunkPartition(
+            secondProject.getProjectId(), null, null, secondLastCommitId, COMMITTED_SINCE, null);
+    when(projectDao.getPartitions(false)).thenReturn(List.of(firstProject, secondProject));
+    when(projectDao.getLastCommitId(firstProject)).thenReturn(firstLastCommitId);
+    when(projectDao.getLastCommitId(secondProject)).thenReturn(secondLastCommitId);
+  }
+
+  @Test
+  void skipsPartitionsThatFinishedBefore() {
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of(first.getKey()));
+
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    verify(projectDao, never()).outputHunks(first, "twan_satd", "hunk");
+    verify(projectDao).outputHunks(second, "twan_satd", "hunk");
+    verify(configDAO).addFinishedPartition(TARGET, second);
+  }
+
+  @Test
+  void doesNotRecordFailedPartitions() {
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of());
+    doThrow(new MongoException("interrupted"))
+        .when(projectDao)
+        .outputHunks(first, "twan_satd", "hunk");
+
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () ->
+            new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config))
+                .materialize());
+
+    verify(configDAO, never()).addFinishedPartition(TARGET, first);
+    verify(configDAO).addFinishedPartition(TARGET, second);
+  }
+
+  @Test
+  void refusesToAggregateIntoATargetOnAnotherServer() {
+    config.setProperty("mongodb.uri", "mongodb://smartshark:27017/");
+    config.setProperty("mongodb.target.uri", "mongodb://localhost:27017/");
+    config.setProperty("extractor.materialize.engine", "aggregation");
+
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () ->
+            new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config))
+                .materialize());
+
+    verify(projectDao, never()).createHunkIndexes(any(), any());
+    verify(projectDao, never()).outputHunks(any(), any(), any());
+  }
+
+  @Test
+  void joinsOnTheClientForATargetOnAnotherServerByDefault() {
+    config.setProperty("mongodb.uri", "mongodb://smartshark:27017/");
+    config.setProperty("mongodb.target.uri", "mongodb://localhost:27017/");
+
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    verify(projectDao).joinHunks(first, "twan_satd", "hunk");
+    verify(projectDao, never()).outputHunks(any(), any(), any());
+  }
+
+  @Test
+  void recordsThePlannedCommitRangeBeforeOutput() {
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    InOrder plannedFirst = inOrder(configDAO, projectDao);
+    plannedFirst
+        .verify(configDAO)
+        .setPendingOutput(
+            eq(TARGET), eq(secondProject), argThat(output -> output.getCommitIdUntil() != null));
+    plannedFirst.verify(projectDao).outputHunks(second, "twan_satd", "hunk");
+  }
+
+  @Test
+  void retriesThePlannedCommitRangeAfterNewCommitsWereAdded() {
+    when(configDAO.getPendingOutputs(TARGET))
+        .thenReturn(
+            Map.of(firstProject.getSourceKey(), new PendingOutput(firstLastCommitId, new Date())));
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of(first.getKey()));
+    when(projectDao.getLastCommitId(firstProject)).thenReturn(new ObjectId());
+
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    verify(projectDao, never()).getLastCommitId(firstProject);
+    verify(configDAO, never()).setPendingOutput(eq(TARGET), eq(firstProject), any());
+    verify(projectDao, never()).outputHunks(eq(first), any(), any());
+    verify(configDAO).setWatermark(TARGET, first, firstLastCommitId);
+    verify(projectDao).outputHunks(second, "twan_satd", "hunk");
+  }
+
+  @Test
+  void refusesATargetWithTheHunksOfAnEarlierVersion() {
+    when(projectDao.hasGeneratedHunkIds("twan_satd", "hunk")).thenReturn(true);
+
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () ->
+            new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config))
+                .materialize());
+
+    verify(projectDao, never()).outputHunks(any(), any(), any());
+    verify(configDAO, never()).setWatermark(any(), any(), any());
+  }
+
+  @Test
+  void checksTheTargetOnlyBeforeItsFirstOutput() {
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of(first.getKey()));
+    when(projectDao.hasGeneratedHunkIds("twan_satd", "hunk")).thenReturn(true);
+
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    verify(projectDao, never()).hasGeneratedHunkIds(any(), any());
+    verify(projectDao).outputHunks(second, "twan_satd", "hunk");
+  }
+
+  @Test
+  void splitsPartitionsIntoAdjacentCommitterDateWindows() {
+    config.setProperty("extractor.materialize.window.days", 365);
+    when(projectDao.getPartitions(false)).thenReturn(List.of(firstProject));
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of());
+
+    new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config)).materialize();
+
+    ArgumentCaptor<HunkPartition> windows = ArgumentCaptor.forClass(HunkPartition.class);
+    verify(projectDao, atLeast(2)).outputHunks(windows.capture(), eq("twan_satd"), any());
+    List<HunkPartition> sorted =
+        windows.getAllValues().stream()
+            .sorted(Comparator.comparing(HunkPartition::getCommittedFrom))
+            .collect(Collectors.toList());
+    Assertions.assertEquals(COMMITTED_SINCE, sorted.get(0).getCommittedFrom());
+    for (int i = 1; i < sorted.size(); i++) {
+      Assertions.assertEquals(first.getSourceKey(), sorted.get(i).getSourceKey());
+      Assertions.assertEquals(firstLastCommitId, sorted.get(i).getCommitIdUntil());
+      Assertions.assertEquals(
+          sorted.get(i - 1).getCommittedUntil(), sorted.get(i).getCommittedFrom());
+    }
+    Assertions.assertNull(sorted.get(sorted.size() - 1).getCommittedUntil());
+  }
+
+  @Test
+  void outputsOnlyCommitsAfterTheWatermarkAndRecordsTheFirstNewHunk() {
+    ObjectId watermark = new ObjectId();
+    ObjectId newHunkId = new ObjectId();
+    when(configDAO.getWatermarks(TARGET))
+        .thenReturn(
+            Map.of(
+                firstProject.getSourceKey(), firstLastCommitId,
+                secondProject.getSourceKey(), watermark));
+    when(configDAO.getFinishedPartitions(TARGET)).thenReturn(Set.of());
+    ObjectId newCommitId = new ObjectId();
+    when(projectDao.getLastCommitId(secondProject)).thenReturn(newCommitId);
+    HunkPartition newCommits =
+        new HunkPartition(
+            secondProject.getProjectId(), null, watermark, newCommitId, COMMITTED_SINCE, null);
+    when(projectDao.getFirstHunkId(newCommits, "twan_satd", "hunk")).thenReturn(newHunkId);
+
+    ObjectId firstNewHunkId =
+        new HunkMaterializer(projectDao, configDAO, new ExtractorConfiguration(config))
+            .materialize();
+
+    Assertions.assertEquals(newHunkId, firstNewHunkId);
+    verify(projectDao).outputHunks(newCommits, "twan_satd", "hunk");
+    verify(projectDao, never()).outputHunks(eq(first), any(), any());
+    InOrder resumeFloorFirst = inOrder(configDAO);
+    resumeFloorFirst.verify(configDAO).lowerResumeFloor(newHunkId);
+    resumeFloorFirst.verify(configDAO).setWatermark(TARGET, newCommits, newCommitId);
+  }
+}
@@ -0,0 +1,119 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.daos.ConfigDAO;
+import org.example.models.HunkRange;
+import org.example.services.CommentPipeline;
+import org.example.services.HunkRangeWorker;
+import org.example.services.HunkService;
+import org.junit.jupiter.api.Test;
+
+public class HunkRangeWorkerTest {
+  private static final String WORKER_ID = "worker-1";
+
+  private final HunkService hunkService = mock(HunkService.class);
+  private final ConfigDAO configDAO = mock(ConfigDAO.class);
+  private final CommentPipeline pipeline = mock(CommentPipeline.class);
+  private final ObjectId firstEnd = new ObjectId();
+  private final ObjectId secondEnd = new ObjectId();
+  private final HunkRange first = new HunkRange(0, null, firstEnd, null);
+  private final HunkRange second = new HunkRange(1, firstEnd, null, null);
+
+  private HunkRangeWorker newWorker() {
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    config.setProperty("extractor.coordination.worker.id", WORKER_ID);
+    config.setProperty("extractor.coordination.ranges", 2);
+    return new HunkRangeWorker(
+        hunkService, configDAO, pipeline, new ExtractorConfiguration(config));
+  }
+
+  /** Makes the pipeline add the checkpoint of one page with the given last hunk. */
+  @SuppressWarnings("unchecked")
+  private void checkpointPage(ObjectId lastId) {
+    doAnswer(
+            invocation -> {
+              invocation.getArgument(4, Consumer.class).accept(lastId);
+              return null;
+            })
+        .when(pipeline)
+        .run(any(), any(), anyInt(), anyLong(), any());
+  }
+
+  @Test
+  void splitsHunksIntoRangesAndFinishesEveryLeasedRange() {
+    when(configDAO.isRangePlanReady()).thenReturn(false).thenReturn(true);
+    when(configDAO.claimRangePlan(eq(WORKER_ID), anyLong())).thenReturn(true);
+    when(hunkService.getRangeEnds(2)).thenReturn(List.of(firstEnd, secondEnd));
+    when(configDAO.setRanges(eq(WORKER_ID), eq(List.of(first, second)), anyLong()))
+        .thenReturn(true);
+    when(configDAO.claimRange(eq(WORKER_ID), anyLong())).thenReturn(first, second, null);
+    when(configDAO.countUnfinishedRanges()).thenReturn(0L);
+    when(configDAO.addRangeCheckpoint(any(), eq(WORKER_ID), any(), anyLong())).thenReturn(true);
+    when(configDAO.finishRange(any(), eq(WORKER_ID))).thenReturn(true);
+    checkpointPage(secondEnd);
+
+    newWorker().run(100);
+
+    verify(pipeline).run(isNull(), eq(firstEnd), eq(100), anyLong(), any());
+    verify(pipeline).run(eq(firstEnd), isNull(), eq(100), anyLong(), any());
+    verify(configDAO).finishRange(first, WORKER_ID);
+    verify(configDAO).finishRange(second, WORKER_ID);
+  }
+
+  @Test
+  void plansTheHunksOutputAfterTheFirstPassAsANewGeneration() {
+    ObjectId floor = new ObjectId("65f000000000000000000100");
+    ObjectId beforeFloor = new ObjectId("65f0000000000000000000ff");
+    HunkRange newRange = new HunkRange(0, beforeFloor, null, null);
+    when(configDAO.isRangePlanReady()).thenReturn(true);
+    when(configDAO.claimRange(eq(WORKER_ID), anyLong()))
+        .thenReturn(null)
+        .thenReturn(newRange)
+        .thenReturn(null);
+    when(configDAO.countUnfinishedRanges()).thenReturn(0L);
+    when(configDAO.getRangePlanGeneration()).thenReturn(1).thenReturn(2);
+    when(configDAO.getResumeFloor()).thenReturn(floor).thenReturn(floor).thenReturn(null);
+    when(configDAO.reopenRangePlan(eq(WORKER_ID), eq(1), anyLong())).thenReturn(true);
+    when(hunkService.getRangeEnds(beforeFloor, 2)).thenReturn(List.of(secondEnd));
+    when(configDAO.setRanges(eq(WORKER_ID), eq(List.of(newRange)), anyLong())).thenReturn(true);
+    when(configDAO.addRangeCheckpoint(any(), eq(WORKER_ID), any(), anyLong())).thenReturn(true);
+    when(configDAO.finishRange(any(), eq(WORKER_ID))).thenReturn(true);
+    checkpointPage(secondEnd);
+
+    newWorker().run(100);
+
+    verify(configDAO).clearResumeFloor(floor);
+    verify(pipeline).run(eq(beforeFloor), isNull(), eq(100), anyLong(), any());
+    verify(configDAO).finishRange(newRange, WORKER_ID);
+    verify(configDAO, never()).claimRangePlan(any(), anyLong());
+  }
+
+  @Test
+  void leavesRangeUnfinishedWhenItsLeaseWasTakenOver() {
+    HunkRange resumed = new HunkRange(1, firstEnd, null, secondEnd);
+    when(configDAO.isRangePlanReady()).thenReturn(true);
+    when(configDAO.claimRange(eq(WORKER_ID), anyLong())).thenReturn(resumed).thenReturn(null);
+    when(configDAO.countUnfinishedRanges()).thenReturn(0L);
+    when(configDAO.addRangeCheckpoint(any(), eq(WORKER_ID), any(), anyLong())).thenReturn(false);
+    checkpointPage(new ObjectId());
+
+    newWorker().run(100);
+
+    verify(pipeline).run(eq(secondEnd), isNull(), eq(100), anyLong(), any());
+    verify(configDAO, never()).claimRangePlan(any(), anyLong());
+    verify(configDAO, never()).finishRange(any(), any());
+  }
+}
@@ -0,0 +1,86 @@
+import java.time.ZoneId;
+import java.util.Date;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+import org.example.daos.HunkRecordCodec;
+import org.example.models.HunkContext;
+import org.example.models.HunkRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HunkRecordCodecTest {
+  private static final String CONTENT = "@@ -1,2 +1,3 @@\n+// TODO caf\u00e9 \u2603\n int a;\n";
+
+  private final Document document =
+      new Document("_id", new ObjectId())
+          .append("name", "project")
+          .append("unused", new Document("nested", 1))
+          .append(
+              "hunk",
+              new Document("_id", new ObjectId())
+                  .append("new_start", 12)
+                  .append("content", CONTENT)
+                  .append("old_start", 10L)
+                  .append("lines_added", 1))
+          .append(
+              "commit",
+              new Document("_id", new ObjectId())
+                  .append("committer_date", new Date(1_600_000_000_000L))
+                  .append("revision_hash", "abc"))
+          .append("vcs_system", new Document("_id", new ObjectId()).append("url", "vcs"))
+          .append("branch", new Document("_id", new ObjectId()).append("name", null))
+          .append("file_action", new Document("_id", new ObjectId()).append("mode", "M"))
+          .append("file", new Document("_id", new ObjectId()).append("path", "A.java"));
+
+  @Test
+  void readsTheExtractedFieldsFromBinaryBson() {
+    RawBsonDocument raw = RawBsonDocument.parse(document.toJson());
+
+    HunkRecord hunk = decode(new BsonBinaryReader(raw.getByteBuffer().asNIO()));
+
+    assertDecoded(hunk);
+  }
+
+  @Test
+  void readsTheExtractedFieldsFromOtherReaders() {
+    HunkRecord hunk = decode(new BsonDocumentReader(document.toBsonDocument()));
+
+    assertDecoded(hunk);
+  }
+
+  private HunkRecord decode(BsonReader reader) {
+    return new HunkRecordCodec().decode(reader, DecoderContext.builder().build());
+  }
+
+  private void assertDecoded(HunkRecord hunk) {
+    Document embeddedHunk = document.get("hunk", Document.class);
+    Document commit = document.get("commit", Document.class);
+    HunkContext context = hunk.getHunkContext();
+    Assertions.assertEquals(document.getObjectId("_id"), hunk.getId());
+    Assertions.assertEquals(CONTENT, hunk.getContent());
+    Assertions.assertEquals("project", context.getProjectName());
+    Assertions.assertEquals(embeddedHunk.getObjectId("_id"), context.getHunkId());
+    Assertions.assertEquals(12, context.getHunkNewStart());
+    Assertions.assertEquals(10, context.getHunkOldStart());
+    Assertions.assertEquals(commit.getObjectId("_id"), context.getCommitId());
+    Assertions.assertEquals(
+        commit
+            .getDate("committer_date")
+            .toInstant()
+            .atZone(ZoneId.systemDefault())
+            .toLocalDateTime(),
+        context.getCommitterDate());
+    Assertions.assertEquals("abc", context.getCommitHash());
+    Assertions.assertEquals("vcs", context.getVcsUrl());
+    Assertions.assertNull(context.getBranchName());
+    Assertions.assertEquals(
+        document.get("file_action", Document.class).getObjectId("_id"),
+        context.getFileActionId());
+    Assertions.assertEquals("A.java", context.getFilePath());
+  }
+}
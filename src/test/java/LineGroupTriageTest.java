@@ -0,0 +1,84 @@
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.Random;
+import org.example.daos.CommentDao;
+import org.example.models.AddedLines;
+import org.example.services.AddedLinesScanner;
+import org.example.services.CommentService;
+import org.example.services.JavaParserCommentScanner;
+import org.example.services.LexicalCommentScanner;
+import org.example.services.LineGroupTriage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Checks that the triage of line groups finds the same comments as scanning every group. */
+public class LineGroupTriageTest {
+  private static final List<String> RANDOM_TOKENS =
+      List.of(
+          "// todo fix", "/* block */", "/** javadoc */", "/**/", "/*", "*/", "//", " ", "\t",
+          "\n", "\r", "\r\n", "x", ";", "\"s\"", "\\u002f", "/", "*", "\u00a0", "\u001a");
+  private static final int RANDOM_CASES = 20_000;
+  private static final int RANDOM_CASE_MAX_TOKENS = 12;
+
+  @Test
+  void findsSameCommentsAsScanningEveryGroup() {
+    CommentDao commentDao = mock(CommentDao.class);
+    CommentService javaParserCommentService =
+        new CommentService(commentDao, new JavaParserCommentScanner());
+    CommentService lexicalCommentService =
+        new CommentService(commentDao, new LexicalCommentScanner());
+    LineGroupTriage triage = new LineGroupTriage(lexicalCommentService);
+
+    Random random = new Random(42);
+    int commentOnlyCases = 0;
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      StringBuilder code = new StringBuilder();
+      int tokens = random.nextInt(RANDOM_CASE_MAX_TOKENS);
+      for (int j = 0; j < tokens; j++) {
+        code.append(RANDOM_TOKENS.get(random.nextInt(RANDOM_TOKENS.size())));
+      }
+      String expected = javaParserCommentService.extractComments(code.toString()).toString();
+      Assertions.assertEquals(
+          expected,
+          lexicalCommentService.extractComments(code.toString()).toString(),
+          "Scanned comments of: " + code);
+      Assertions.assertEquals(
+          expected,
+          triage
+              .extractComments(new AddedLines(code, new int[] {0}, new int[] {code.length()}))
+              .toString(),
+          "Triaged comments of: " + code);
+      if (LexicalCommentScanner.scanCommentsOnly(code.toString()) != null && tokens > 0) {
+        commentOnlyCases++;
+      }
+    }
+    Assertions.assertTrue(commentOnlyCases > RANDOM_CASES / 100);
+  }
+
+  @Test
+  void countsTheShareOfEveryKind() {
+    CommentService commentService =
+        new CommentService(mock(CommentDao.class), new LexicalCommentScanner());
+    LineGroupTriage triage = new LineGroupTriage(commentService);
+    String hunk =
+        String.join(
+            "\n",
+            "+int a = b / c;",
+            " context",
+            "+  // only a comment",
+            "+  /* and a block */",
+            " context",
+            "+int d = 1; // mixed",
+            " context",
+            "+return a;",
+            "");
+
+    for (AddedLines lineGroup : new AddedLinesScanner().scan(hunk)) {
+      triage.extractComments(lineGroup);
+    }
+
+    Assertions.assertEquals(
+        "Line groups: 4, 50.0% comment-free, 25.0% comment-only, 25.0% mixed", triage.getStats());
+  }
+}
@@ -0,0 +1,75 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.example.metrics.MetricsRegistry;
+import org.example.metrics.Timer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+  @Test
+  void timerPercentilesAreWithinTheBucketResolution() {
+    Timer timer = new MetricsRegistry().timer("latency");
+    for (int millis = 1; millis <= 1000; millis++) {
+      timer.record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    Assertions.assertEquals(1000, timer.getCount());
+    Assertions.assertEquals(500, timer.getPercentileMillis(50), 500 * 0.07);
+    Assertions.assertEquals(990, timer.getPercentileMillis(99), 990 * 0.07);
+    Assertions.assertEquals(1000, timer.getMaxMillis(), 0.001);
+    Assertions.assertEquals(500.5, timer.getMeanMillis(), 0.001);
+  }
+
+  @Test
+  void countsUpdatesFromManyThreads() throws InterruptedException {
+    MetricsRegistry registry = new MetricsRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      executor.submit(
+          () -> {
+            for (int j = 0; j < 10_000; j++) {
+              registry.counter("hunks").increment();
+            }
+          });
+    }
+    executor.shutdown();
+    Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    Assertions.assertEquals(80_000L, registry.snapshot().get("hunks"));
+    Assertions.assertTrue(registry.format().contains(" hunks=80000"));
+  }
+
+  @Test
+  void exposesTheDefaultRegistryThroughJmx() throws Exception {
+    MetricsRegistry.getDefault().gauge("test_gauge", () -> 42);
+
+    Object value =
+        ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(new ObjectName(MetricsRegistry.OBJECT_NAME), "test_gauge");
+
+    Assertions.assertEquals(42L, value);
+    MetricsRegistry.getDefault().removeGauge("test_gauge");
+  }
+
+  @Test
+  void rejectsWritesAndOperationsThroughJmx() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(MetricsRegistry.OBJECT_NAME);
+
+    Assertions.assertThrows(
+        AttributeNotFoundException.class,
+        () -> server.setAttribute(name, new Attribute("hunks", 1L)));
+    ReflectionException e =
+        Assertions.assertThrows(
+            ReflectionException.class, () -> server.invoke(name, "reset", null, null));
+    Assertions.assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+  }
+}
@@ -0,0 +1,112 @@
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.example.MongoDBConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MongoDBConfigurationTest {
+  private static final String SHARED_KEYS =
+      String.join(
+          "\n",
+          "mongodb.uri=mongodb://%s:%s@%s:%s/%s",
+          "mongodb.user=user",
+          "mongodb.password=password",
+          "mongodb.hostname=smartshark",
+          "mongodb.port=27017",
+          "mongodb.options=?authSource=admin&maxPoolSize=50&w=majority",
+          "");
+
+  @Test
+  void profileWithoutKeysUsesTheSharedConnectionString() throws ConfigurationException {
+    MongoClientSettings settings =
+        configuration(SHARED_KEYS).getClientSettings(MongoDBConfiguration.TARGET_PROFILE);
+
+    Assertions.assertEquals(
+        List.of("smartshark:27017"),
+        settings.getClusterSettings().getHosts().stream()
+            .map(Object::toString)
+            .collect(Collectors.toList()));
+    Assertions.assertEquals(50, settings.getConnectionPoolSettings().getMaxSize());
+    Assertions.assertEquals(WriteConcern.MAJORITY, settings.getWriteConcern());
+    Assertions.assertEquals(ReadPreference.primary(), settings.getReadPreference());
+  }
+
+  @Test
+  void profilesOverrideTheConnectionString() throws ConfigurationException {
+    MongoDBConfiguration configuration =
+        configuration(
+            SHARED_KEYS
+                + String.join(
+                    "\n",
+                    "mongodb.source.pool.max.size=8",
+                    "mongodb.source.compressors=zstd, snappy",
+                    "mongodb.source.read.preference=secondaryPreferred",
+                    "mongodb.source.socket.read.timeout.ms=600000",
+                    "mongodb.target.uri=mongodb://localhost:27018,localhost:27019/?replicaSet=rs",
+                    "mongodb.target.pool.min.size=4",
+                    "mongodb.target.write.concern=1",
+                    "mongodb.target.write.journal=false",
+                    "mongodb.target.socket.connect.timeout.ms=2000"));
+
+    MongoClientSettings source =
+        configuration.getClientSettings(MongoDBConfiguration.SOURCE_PROFILE);
+    Assertions.assertEquals(8, source.getConnectionPoolSettings().getMaxSize());
+    Assertions.assertEquals(
+        List.of("zstd", "snappy"),
+        source.getCompressorList().stream()
+            .map(MongoCompressor::getName)
+            .collect(Collectors.toList()));
+    Assertions.assertEquals(ReadPreference.secondaryPreferred(), source.getReadPreference());
+    Assertions.assertEquals(
+        600_000, source.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+    Assertions.assertEquals(WriteConcern.MAJORITY, source.getWriteConcern());
+
+    MongoClientSettings target =
+        configuration.getClientSettings(MongoDBConfiguration.TARGET_PROFILE);
+    Assertions.assertEquals(2, target.getClusterSettings().getHosts().size());
+    Assertions.assertEquals("rs", target.getClusterSettings().getRequiredReplicaSetName());
+    Assertions.assertEquals(4, target.getConnectionPoolSettings().getMinSize());
+    Assertions.assertEquals(WriteConcern.W1.withJournal(false), target.getWriteConcern());
+    Assertions.assertEquals(
+        2000, target.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS));
+    Assertions.assertTrue(target.getCompressorList().isEmpty());
+  }
+
+  @Test
+  void comparesTheHostsOfTheProfiles() throws ConfigurationException {
+    Assertions.assertTrue(configuration(SHARED_KEYS).isTargetOnSourceServer());
+    Assertions.assertTrue(
+        configuration(
+                SHARED_KEYS
+                    + "mongodb.target.uri=mongodb://smartshark:27017/?w=1&compressors=zstd")
+            .isTargetOnSourceServer());
+    Assertions.assertFalse(
+        configuration(SHARED_KEYS + "mongodb.target.uri=mongodb://localhost:27017/")
+            .isTargetOnSourceServer());
+  }
+
+  @Test
+  void rejectsUnknownCompressors() throws ConfigurationException {
+    MongoDBConfiguration configuration =
+        configuration(SHARED_KEYS + "mongodb.source.compressors=lz4");
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> configuration.getClientSettings(MongoDBConfiguration.SOURCE_PROFILE));
+  }
+
+  private static MongoDBConfiguration configuration(String properties)
+      throws ConfigurationException {
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    config.load(new StringReader(properties));
+    return new MongoDBConfiguration(config);
+  }
+}
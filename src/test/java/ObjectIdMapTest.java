@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bson.types.ObjectId;
+import org.example.daos.ObjectIdMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectIdMapTest {
+
+  @Test
+  void holdsTheSameValuesAsAHashMap() {
+    Random random = new Random(13);
+    ObjectIdMap<Integer> map = new ObjectIdMap<>();
+    Map<ObjectId, Integer> expected = new HashMap<>();
+    List<ObjectId> ids = new ArrayList<>();
+    for (int i = 0; i < 50_000; i++) {
+      // ids of the same second and of random times, and ids that are put again
+      ObjectId id;
+      if (i % 3 == 0 && !ids.isEmpty()) {
+        id = ids.get(random.nextInt(ids.size()));
+      } else if (i % 3 == 1) {
+        id = new ObjectId();
+      } else {
+        id = new ObjectId(new Date(random.nextInt() & 0xffffffffL));
+      }
+      ids.add(id);
+      map.put(id, i);
+      expected.put(id, i);
+    }
+
+    Assertions.assertEquals(expected.size(), map.size());
+    for (Map.Entry<ObjectId, Integer> entry : expected.entrySet()) {
+      Assertions.assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+    for (int i = 0; i < 1000; i++) {
+      Assertions.assertNull(map.get(new ObjectId()));
+    }
+  }
+}
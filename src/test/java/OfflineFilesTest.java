@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.example.daos.CommentCodec;
+import org.example.daos.HunkFileReader;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkRecord;
+import org.example.services.CommentFileWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OfflineFilesTest {
+  private static final int HUNKS = 20;
+  private static final long SMALL_WINDOW_BYTES = 1024;
+
+  @TempDir Path directory;
+
+  private final List<Document> documents = new ArrayList<>();
+
+  public OfflineFilesTest() {
+    for (int i = 0; i < HUNKS; i++) {
+      documents.add(
+          new Document("_id", new ObjectId())
+              .append("name", "project")
+              .append(
+                  "hunk",
+                  new Document("_id", new ObjectId())
+                      .append("content", "+// comment " + i + " caf\u00e9\n".repeat(i))
+                      .append("new_start", i)
+                      .append("old_start", i))
+              .append(
+                  "commit",
+                  new Document("_id", new ObjectId())
+                      .append("committer_date", new Date(1_600_000_000_000L)))
+              .append("file", new Document("_id", new ObjectId()).append("path", i + ".java")));
+    }
+  }
+
+  @Test
+  void readsBsonFileAcrossWindows() throws IOException {
+    Path file = directory.resolve("hunk.bson");
+    try (var output = Files.newOutputStream(file)) {
+      for (Document document : documents) {
+        ByteBuffer bson = RawBsonDocument.parse(document.toJson()).getByteBuffer().asNIO();
+        output.write(bson.array(), bson.arrayOffset(), bson.remaining());
+      }
+    }
+
+    assertReadsEveryHunk(new HunkFileReader(file, SMALL_WINDOW_BYTES));
+  }
+
+  @Test
+  void readsJsonLinesAcrossWindows() throws IOException {
+    Path file = directory.resolve("hunk.json");
+    JsonWriterSettings settings = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+    StringBuilder lines = new StringBuilder();
+    for (Document document : documents) {
+      lines.append(document.toJson(settings)).append('\n');
+    }
+    Files.writeString(file, lines + "\n");
+
+    assertReadsEveryHunk(new HunkFileReader(file, SMALL_WINDOW_BYTES));
+  }
+
+  @Test
+  void writesCommentsThatDecodeAgain() throws IOException {
+    Path file = directory.resolve("comments.bson");
+    CommentDTO comment = new CommentDTO("// caf\u00e9", true, CommentType.LINE);
+    comment.setId(new ObjectId());
+    try (CommentFileWriter writer = new CommentFileWriter(file, false)) {
+      writer.write(List.of(comment, comment));
+    }
+
+    ByteBuffer bson = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    CommentCodec codec = new CommentCodec(false);
+    for (int offset = 0; offset < bson.limit(); offset += bson.getInt(offset)) {
+      BsonBinaryReader reader = new BsonBinaryReader(bson.slice(offset, bson.getInt(offset)));
+      Assertions.assertEquals(comment, codec.decode(reader, DecoderContext.builder().build()));
+    }
+
+    Path json = directory.resolve("comments.json");
+    try (CommentFileWriter writer = new CommentFileWriter(json, false)) {
+      writer.write(List.of(comment));
+    }
+    Assertions.assertEquals(
+        "// caf\u00e9",
+        Document.parse(Files.readString(json, StandardCharsets.UTF_8)).getString("content"));
+  }
+
+  private void assertReadsEveryHunk(HunkFileReader reader) {
+    List<HunkRecord> hunks = new ArrayList<>();
+    try (reader) {
+      reader.forEachRemaining(hunks::add);
+    }
+
+    Assertions.assertEquals(HUNKS, hunks.size());
+    for (int i = 0; i < HUNKS; i++) {
+      Document hunk = documents.get(i).get("hunk", Document.class);
+      Assertions.assertEquals(documents.get(i).getObjectId("_id"), hunks.get(i).getId());
+      Assertions.assertEquals(hunk.getString("content"), hunks.get(i).getContent());
+      Assertions.assertEquals(i, hunks.get(i).getHunkContext().getHunkNewStart());
+      Assertions.assertEquals(i + ".java", hunks.get(i).getHunkContext().getFilePath());
+    }
+  }
+}
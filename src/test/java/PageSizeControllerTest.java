@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.example.ExtractorConfiguration;
+import org.example.models.CommentDTO;
+import org.example.models.CommentType;
+import org.example.models.HunkRecord;
+import org.example.services.PageSizeController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks how the page and write batch sizes follow the memory, GC and latency of the pages. */
+public class PageSizeControllerTest {
+  private static final int MIN_PAGE_SIZE = 1000;
+  private static final int MAX_PAGE_SIZE = 100_000;
+  private static final int MAX_WRITE_BATCH_SIZE = 1000;
+  private static final int WRITES_IN_FLIGHT = 4;
+  private static final long HEAP_BUDGET_BYTES = 64L * 1024 * 1024;
+  private static final long LATENCY_GOAL_MILLIS = 5000;
+  private static final int PAGES_IN_MEMORY = 7;
+  private static final long NANOS_IN_MILLI = 1_000_000;
+
+  private long gcMillis;
+  private long nanoTime;
+  private PageSizeController controller;
+
+  @BeforeEach
+  void setUp() {
+    controller =
+        new PageSizeController(
+            MIN_PAGE_SIZE,
+            MAX_WRITE_BATCH_SIZE,
+            WRITES_IN_FLIGHT,
+            HEAP_BUDGET_BYTES,
+            LATENCY_GOAL_MILLIS,
+            PAGES_IN_MEMORY,
+            () -> gcMillis,
+            () -> nanoTime);
+    controller.start(MAX_PAGE_SIZE);
+  }
+
+  @Test
+  void growsFastPagesUntilTheHeapBudget() {
+    Assertions.assertEquals(MIN_PAGE_SIZE, controller.getPageSize());
+
+    for (int i = 0; i < 20; i++) {
+      recordPage(controller.getPageSize(), 1000, 0, 100);
+    }
+
+    int pageSize = controller.getPageSize();
+    Assertions.assertTrue(pageSize > MIN_PAGE_SIZE, "page size " + pageSize);
+    Assertions.assertTrue(
+        (long) pageSize * PAGES_IN_MEMORY * 1000 <= HEAP_BUDGET_BYTES, "page size " + pageSize);
+  }
+
+  @Test
+  void halvesThePagesUnderGcPressure() {
+    for (int i = 0; i < 4; i++) {
+      recordPage(controller.getPageSize(), 100, 0, 100);
+    }
+    int pageSize = controller.getPageSize();
+
+    gcMillis += 500;
+    recordPage(pageSize, 100, 0, 2000);
+
+    Assertions.assertEquals(pageSize / 2, controller.getPageSize());
+  }
+
+  @Test
+  void shrinksSlowPagesToTheLatencyGoal() {
+    for (int i = 0; i < 4; i++) {
+      recordPage(controller.getPageSize(), 100, 0, 100);
+    }
+    int pageSize = controller.getPageSize();
+
+    recordPage(pageSize, 100, 0, 4 * LATENCY_GOAL_MILLIS);
+
+    Assertions.assertEquals(pageSize / 4, controller.getPageSize());
+  }
+
+  @Test
+  void splitsTheCommentsOfAPageOverTheWritesInFlight() {
+    recordPage(MIN_PAGE_SIZE, 100, 2, LATENCY_GOAL_MILLIS);
+    Assertions.assertEquals(2 * MIN_PAGE_SIZE / WRITES_IN_FLIGHT, controller.getWriteBatchSize());
+
+    controller.start(MAX_PAGE_SIZE);
+    for (int i = 0; i < 20; i++) {
+      recordPage(controller.getPageSize(), 100, 2, 100);
+    }
+    Assertions.assertEquals(MAX_WRITE_BATCH_SIZE, controller.getWriteBatchSize());
+  }
+
+  @Test
+  void keepsTheSizesFixedWithoutAdaptiveSizing() {
+    controller = new PageSizeController(new ExtractorConfiguration());
+    controller.start(MAX_PAGE_SIZE);
+
+    recordPage(MAX_PAGE_SIZE, 100, 0, 4 * LATENCY_GOAL_MILLIS);
+
+    Assertions.assertEquals(MAX_PAGE_SIZE, controller.getPageSize());
+    Assertions.assertEquals(MAX_WRITE_BATCH_SIZE, controller.getWriteBatchSize());
+  }
+
+  private void recordPage(int hunkCount, int hunkBytes, int commentsPerHunk, long parseMillis) {
+    List<HunkRecord> hunks = new ArrayList<>();
+    List<CommentDTO> commentDTOs = new ArrayList<>();
+    for (int i = 0; i < hunkCount; i++) {
+      hunks.add(new HunkRecord(new ObjectId(), null, new byte[hunkBytes]));
+      for (int j = 0; j < commentsPerHunk; j++) {
+        commentDTOs.add(new CommentDTO("// comment", false, CommentType.LINE));
+      }
+    }
+    nanoTime += parseMillis * NANOS_IN_MILLI;
+    controller.recordPage(hunks, commentDTOs, parseMillis * NANOS_IN_MILLI);
+  }
+}
@@ -0,0 +1,268 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.daos.ProjectDao;
+import org.example.models.HunkPartition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Checks the queries of the streaming hunk join and the hunk documents that it outputs. */
+public class StreamingHunkJoinTest {
+  private static final CodecRegistry REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+  private static final Date COMMITTED_FROM = new Date(1_000_000_000_000L);
+  private static final Date COMMITTED_UNTIL = new Date(1_100_000_000_000L);
+  private static final Date COMMITTER_DATE = new Date(1_050_000_000_000L);
+
+  private final ObjectId projectId = new ObjectId();
+  private final ObjectId vcsSystemId = new ObjectId();
+  private final ObjectId branchId = new ObjectId();
+  private final ObjectId commitIdAfter = new ObjectId();
+  private final ObjectId commitId = new ObjectId();
+  private final ObjectId otherBranchCommitId = new ObjectId();
+  private final ObjectId commitIdUntil = new ObjectId();
+  private final ObjectId javaFileActionId = new ObjectId();
+  private final ObjectId otherFileActionId = new ObjectId();
+  private final ObjectId javaFileId = new ObjectId();
+  private final ObjectId otherFileId = new ObjectId();
+  private final ObjectId hunkId = new ObjectId();
+
+  private final List<WriteModel<? extends Document>> writes = new ArrayList<>();
+  private MongoDatabase database;
+  private MongoCollection<Document> targetCollection;
+  private ProjectDao projectDao;
+
+  @BeforeEach
+  void setUp() {
+    MongoClient mongoClient = mock(MongoClient.class);
+    MongoClient commentMongoClient = mock(MongoClient.class);
+    database = mock(MongoDatabase.class);
+    MongoDatabase targetDatabase = mock(MongoDatabase.class);
+    targetCollection = mockCollection();
+    when(mongoClient.getDatabase("smartshark")).thenReturn(database);
+    when(commentMongoClient.getDatabase(any())).thenReturn(targetDatabase);
+    when(targetDatabase.getCollection("hunk")).thenReturn(targetCollection);
+    when(database.getCollection(any())).thenReturn(mockCollection());
+    // the join clears its list of writes after every bulk write, so they are copied
+    when(targetCollection.bulkWrite(anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              writes.addAll(invocation.getArgument(0));
+              return null;
+            });
+    projectDao = new ProjectDao("smartshark", "twan_satd", mongoClient, commentMongoClient);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void joinsTheHunksOfJavaFilesOnTheOriginHeadIntoTheAggregationDocuments() {
+    MongoCollection<Document> projects =
+        collection(
+            ProjectDao.PROJECTS_COLLECTION,
+            new Document("_id", projectId).append("name", "p").append("mailing_lists", List.of()));
+    MongoCollection<Document> vcsSystems =
+        collection(
+            ProjectDao.VCS_SYSTEMS_COLLECTION,
+            new Document("_id", vcsSystemId)
+                .append("project_id", projectId)
+                .append("url", "https://example.org/p.git")
+                .append("repository_type", "git"));
+    MongoCollection<Document> branches =
+        collection(
+            "branch",
+            new Document("_id", branchId)
+                .append("vcs_system_id", vcsSystemId)
+                .append("name", "origin/master")
+                .append("is_origin_head", true));
+    MongoCollection<Document> commits =
+        collection(
+            ProjectDao.COMMITS_COLLECTION,
+            newCommit(commitId, "refs/remotes/origin/master", "h1"),
+            newCommit(otherBranchCommitId, "refs/remotes/origin/feature", "h2"));
+    MongoCollection<Document> fileActions =
+        collection(
+            "file_action",
+            newFileAction(javaFileActionId, javaFileId),
+            newFileAction(otherFileActionId, otherFileId));
+    // the server only returns the .java file of the two file actions
+    MongoCollection<Document> files =
+        collection(
+            "file",
+            new Document("_id", javaFileId)
+                .append("path", "src/Main.JAVA")
+                .append("vcs_system_id", vcsSystemId));
+    MongoCollection<Document> hunks =
+        collection(
+            "hunk",
+            new Document("_id", hunkId)
+                .append("file_action_id", javaFileActionId)
+                .append("content", "+// added")
+                .append("new_start", 3)
+                .append("old_start", 2)
+                .append("new_lines", 1)
+                .append("old_lines", 0));
+
+    long output =
+        projectDao.joinHunks(
+            new HunkPartition(
+                projectId, null, commitIdAfter, commitIdUntil, COMMITTED_FROM, COMMITTED_UNTIL),
+            "twan_satd",
+            "hunk");
+
+    Assertions.assertEquals(1, output);
+    Assertions.assertEquals(
+        BsonDocument.parse(String.format("{_id: %s}", oid(projectId))), filterOf(projects));
+    Assertions.assertEquals(
+        BsonDocument.parse(String.format("{project_id: %s}", oid(projectId))),
+        filterOf(vcsSystems));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format(
+                "{$and: [{vcs_system_id: {$in: [%s]}}, {is_origin_head: true}]}",
+                oid(vcsSystemId))),
+        filterOf(branches));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format(
+                "{$and: [{vcs_system_id: {$in: [%s]}},"
+                    + " {branches: {$in: ['refs/remotes/origin/master']}},"
+                    + " {committer_date: {$gte: %s}}, {committer_date: {$lt: %s}},"
+                    + " {_id: {$gt: %s}}, {_id: {$lte: %s}}]}",
+                oid(vcsSystemId),
+                date(COMMITTED_FROM),
+                date(COMMITTED_UNTIL),
+                oid(commitIdAfter),
+                oid(commitIdUntil))),
+        filterOf(commits));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format(
+                "{$and: [{commit_id: {$in: [%s]}}, {lines_added: {$gt: 0}}]}", oid(commitId))),
+        filterOf(fileActions));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format(
+                "{$and: [{_id: {$in: [%s, %s]}},"
+                    + " {path: {$regularExpression: {'pattern': '\\\\.java$', 'options': 'i'}}}]}",
+                oid(javaFileId), oid(otherFileId))),
+        filterOf(files));
+    Assertions.assertEquals(
+        BsonDocument.parse(
+            String.format("{file_action_id: {$in: [%s]}}", oid(javaFileActionId))),
+        filterOf(hunks));
+
+    ArgumentCaptor<BulkWriteOptions> options = ArgumentCaptor.forClass(BulkWriteOptions.class);
+    verify(targetCollection).bulkWrite(anyList(), options.capture());
+    Assertions.assertFalse(options.getValue().isOrdered());
+    Assertions.assertEquals(1, writes.size());
+    ReplaceOneModel<Document> replace = (ReplaceOneModel<Document>) writes.get(0);
+    Assertions.assertTrue(replace.getReplaceOptions().isUpsert());
+    Assertions.assertEquals(
+        BsonDocument.parse(String.format("{_id: %s}", oid(hunkId))), render(replace.getFilter()));
+    Assertions.assertEquals(
+        new Document("_id", hunkId)
+            .append("name", "p")
+            .append(
+                "vcs_system",
+                new Document("_id", vcsSystemId).append("url", "https://example.org/p.git"))
+            .append("branch", new Document("_id", branchId).append("name", "origin/master"))
+            .append(
+                "commit",
+                new Document("_id", commitId)
+                    .append("committer_date", COMMITTER_DATE)
+                    .append("revision_hash", "h1"))
+            .append(
+                "file_action", new Document("_id", javaFileActionId).append("file_id", javaFileId))
+            .append(
+                "hunk",
+                new Document("_id", hunkId)
+                    .append("content", "+// added")
+                    .append("new_start", 3)
+                    .append("old_start", 2))
+            .append("file", new Document("_id", javaFileId).append("path", "src/Main.JAVA")),
+        replace.getReplacement());
+  }
+
+  private Document newCommit(ObjectId id, String branch, String revisionHash) {
+    return new Document("_id", id)
+        .append("vcs_system_id", vcsSystemId)
+        .append("branches", List.of(branch))
+        .append("committer_date", COMMITTER_DATE)
+        .append("revision_hash", revisionHash)
+        .append("message", "change");
+  }
+
+  private Document newFileAction(ObjectId id, ObjectId fileId) {
+    return new Document("_id", id)
+        .append("commit_id", commitId)
+        .append("file_id", fileId)
+        .append("lines_added", 1)
+        .append("mode", "M");
+  }
+
+  /** Returns a collection of the SmartSHARK database whose queries return the given documents. */
+  @SuppressWarnings("unchecked")
+  private MongoCollection<Document> collection(String name, Document... documents) {
+    MongoCollection<Document> collection = mockCollection();
+    FindIterable<Document> found = mock(FindIterable.class);
+    when(collection.find(any(Bson.class))).thenReturn(found);
+    when(found.projection(any())).thenReturn(found);
+    when(found.first()).thenReturn(documents[0]);
+    when(found.iterator()).thenAnswer(invocation -> cursor(List.of(documents).iterator()));
+    when(database.getCollection(name)).thenReturn(collection);
+    return collection;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MongoCursor<Document> cursor(Iterator<Document> documents) {
+    MongoCursor<Document> cursor = mock(MongoCursor.class);
+    when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+    when(cursor.next()).thenAnswer(invocation -> documents.next());
+    return cursor;
+  }
+
+  private static BsonDocument filterOf(MongoCollection<Document> collection) {
+    ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+    verify(collection).find(filter.capture());
+    return render(filter.getValue());
+  }
+
+  private static BsonDocument render(Bson bson) {
+    return bson.toBsonDocument(Document.class, REGISTRY);
+  }
+
+  private static String oid(ObjectId id) {
+    return String.format("{$oid: '%s'}", id.toHexString());
+  }
+
+  private static String date(Date date) {
+    return String.format("{$date: {$numberLong: '%d'}}", date.getTime());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MongoCollection<Document> mockCollection() {
+    return mock(MongoCollection.class);
+  }
+}